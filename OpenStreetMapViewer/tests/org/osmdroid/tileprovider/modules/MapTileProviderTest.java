@@ -97,7 +97,7 @@ public class MapTileProviderTest extends AndroidTestCase {
 		mTileProvider.loadMapTileAsync(state);
 
 		// check that is only one tile pending
-		assertEquals("One tile pending", 1, mTileProvider.mPending.size());
+		assertEquals("One tile pending", 1, mTileProvider.mQueue.size());
 	}
 
 	/**
@@ -0,0 +1,260 @@
+package org.osmdroid.tileprovider;
+
+import java.util.ArrayList;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+/**
+ * The bitmaps of the tiles removed from the memory caches, kept to decode new tiles into them
+ * rather than allocating a bitmap per tile, which churns the heap and causes garbage collection
+ * pauses while panning.
+ * <p>
+ * Bitmaps are kept by size and configuration, up to a number of bytes, and reused through
+ * {@link BitmapFactory.Options#inBitmap}, which needs Honeycomb. On older versions the pool keeps
+ * nothing and bitmaps are recycled as they used to be before Gingerbread.
+ */
+public class BitmapPool implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(BitmapPool.class);
+
+	private static final boolean REUSE_BITMAPS = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+	private static final BitmapPool sInstance = new BitmapPool(BITMAP_POOL_MAXIMUM_SIZE_BYTES);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** the bitmaps by size and configuration, there are seldom more than one or two of them */
+	private final ArrayList<Bucket> mBuckets = new ArrayList<Bucket>();
+
+	private long mMaximumSizeBytes;
+	private long mSizeBytes;
+
+	private long mHitCount;
+	private long mMissCount;
+	private long mDiscardCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pMaximumSizeBytes
+	 *            maximum amount of bitmap bytes kept for reuse
+	 */
+	public BitmapPool(final long pMaximumSizeBytes) {
+		mMaximumSizeBytes = pMaximumSizeBytes;
+	}
+
+	/**
+	 * The pool shared by the tile caches and the tile sources.
+	 */
+	public static BitmapPool getInstance() {
+		return sInstance;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public synchronized long getMaximumSizeBytes() {
+		return mMaximumSizeBytes;
+	}
+
+	public synchronized void setMaximumSizeBytes(final long pMaximumSizeBytes) {
+		mMaximumSizeBytes = pMaximumSizeBytes;
+		while (mSizeBytes > mMaximumSizeBytes && removeEldest()) {
+			mDiscardCount++;
+		}
+	}
+
+	/**
+	 * @return the amount of bitmap bytes currently kept for reuse
+	 */
+	public synchronized long getSizeBytes() {
+		return mSizeBytes;
+	}
+
+	/**
+	 * @return the number of bitmaps asked for that the pool had
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return the number of bitmaps asked for that the pool didn't have, and had to be allocated
+	 */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * @return the number of bitmaps given back that the pool didn't keep, for lack of room
+	 */
+	public synchronized long getDiscardCount() {
+		return mDiscardCount;
+	}
+
+	/**
+	 * @return the share of the bitmaps asked for that the pool had, between 0 and 1
+	 */
+	public synchronized float getHitRate() {
+		final long requests = mHitCount + mMissCount;
+		return requests == 0 ? 0 : (float) mHitCount / requests;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Give back the drawable of a tile removed from a memory cache. Its bitmap is kept for reuse if
+	 * it's a {@link ReusableBitmapDrawable} that isn't being drawn.
+	 */
+	public void returnDrawableToPool(final Drawable pDrawable) {
+		final Bitmap bitmap;
+		if (pDrawable instanceof ReusableBitmapDrawable) {
+			bitmap = ((ReusableBitmapDrawable) pDrawable).tryRecycle();
+		} else if (pDrawable instanceof BitmapDrawable) {
+			bitmap = ((BitmapDrawable) pDrawable).getBitmap();
+		} else {
+			bitmap = null;
+		}
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		if (REUSE_BITMAPS && pDrawable instanceof ReusableBitmapDrawable && bitmap.isMutable()) {
+			add(bitmap);
+		} else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+			// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
+			bitmap.recycle();
+		}
+	}
+
+	/**
+	 * Get a bitmap to draw into, whose content is undefined.
+	 *
+	 * @return a bitmap of the pool, or null if it has none of this size and configuration
+	 */
+	public synchronized Bitmap obtainBitmap(final int pWidth, final int pHeight,
+			final Bitmap.Config pConfig) {
+		final Bucket bucket = getBucket(pWidth, pHeight, pConfig, false);
+		if (bucket == null || bucket.mBitmaps.isEmpty()) {
+			mMissCount++;
+			return null;
+		}
+		mHitCount++;
+		final Bitmap bitmap = bucket.mBitmaps.remove(bucket.mBitmaps.size() - 1);
+		mSizeBytes -= getSizeBytes(bitmap);
+		return bitmap;
+	}
+
+	/**
+	 * Set the options to decode an image, of the given size in most cases, into a bitmap of the
+	 * pool which will be reusable in turn.
+	 */
+	public void applyReusableOptions(final BitmapFactory.Options pOptions, final int pWidth,
+			final int pHeight) {
+		if (!REUSE_BITMAPS) {
+			return;
+		}
+		pOptions.inMutable = true;
+		pOptions.inSampleSize = 1;
+		pOptions.inBitmap = obtainBitmap(pWidth, pHeight,
+				pOptions.inPreferredConfig != null ? pOptions.inPreferredConfig
+						: Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * Forget all the bitmaps of the pool, for example when memory is low.
+	 */
+	public synchronized void clear() {
+		mBuckets.clear();
+		mSizeBytes = 0;
+	}
+
+	private synchronized void add(final Bitmap pBitmap) {
+		final int size = getSizeBytes(pBitmap);
+		if (size > mMaximumSizeBytes) {
+			mDiscardCount++;
+			return;
+		}
+		while (mSizeBytes + size > mMaximumSizeBytes && removeEldest()) {
+			mDiscardCount++;
+		}
+		getBucket(pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getConfig(), true).mBitmaps
+				.add(pBitmap);
+		mSizeBytes += size;
+		if (DEBUGMODE) {
+			logger.debug("Bitmap pool: " + mSizeBytes + " bytes, hit rate " + getHitRate());
+		}
+	}
+
+	/**
+	 * Remove the bitmap at the bottom of the largest bucket, which is the one that was kept for
+	 * the longest time.
+	 */
+	private boolean removeEldest() {
+		Bucket largest = null;
+		for (final Bucket bucket : mBuckets) {
+			if (largest == null || bucket.mBitmaps.size() > largest.mBitmaps.size()) {
+				largest = bucket;
+			}
+		}
+		if (largest == null || largest.mBitmaps.isEmpty()) {
+			return false;
+		}
+		mSizeBytes -= getSizeBytes(largest.mBitmaps.remove(0));
+		return true;
+	}
+
+	private Bucket getBucket(final int pWidth, final int pHeight, final Bitmap.Config pConfig,
+			final boolean pCreate) {
+		for (final Bucket bucket : mBuckets) {
+			if (bucket.mWidth == pWidth && bucket.mHeight == pHeight && bucket.mConfig == pConfig) {
+				return bucket;
+			}
+		}
+		if (!pCreate) {
+			return null;
+		}
+		final Bucket bucket = new Bucket(pWidth, pHeight, pConfig);
+		mBuckets.add(bucket);
+		return bucket;
+	}
+
+	private static int getSizeBytes(final Bitmap pBitmap) {
+		return pBitmap.getRowBytes() * pBitmap.getHeight();
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Bucket {
+		final int mWidth;
+		final int mHeight;
+		final Bitmap.Config mConfig;
+		final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+
+		Bucket(final int pWidth, final int pHeight, final Bitmap.Config pConfig) {
+			mWidth = pWidth;
+			mHeight = pHeight;
+			mConfig = pConfig;
+		}
+	}
+}
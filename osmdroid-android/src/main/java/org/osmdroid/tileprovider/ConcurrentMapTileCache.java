@@ -0,0 +1,327 @@
+package org.osmdroid.tileprovider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osmdroid.util.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A {@link MapTileCache} bounded by the number of bytes held by the decoded bitmaps rather than by
+ * a number of tiles, so that large or 32 bit tiles are not budgeted like small 16 bit ones.
+ * <p>
+ * The tiles are keyed by {@link MapTile#getKey()} in {@link LongHashMap}s, so that a lookup
+ * allocates nothing. The keys are spread over several maps, each guarded by its own lock held for
+ * a single lookup or insertion, so that the lookups of the drawing thread seldom wait for the tile
+ * provider threads that insert into the cache. Only eviction is serialised: when the budget is exceeded the cached
+ * tiles are sorted once by access stamp and the least recently used ones are evicted in that
+ * order, down to a little below the budget so that the next puts don't have to sort them again.
+ * <p>
+ * To use it, override {@link MapTileProviderBase#createTileCache()}.
+ */
+public class ConcurrentMapTileCache extends MapTileCache {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentMapTileCache.class);
+
+	/** Size assumed for a drawable whose size can't be determined: a 256x256 ARGB_8888 tile. */
+	private static final int DEFAULT_TILE_SIZE_BYTES = 256 * 256 * 4;
+
+	/** Share of the maximum heap size used by default. */
+	private static final int DEFAULT_HEAP_FRACTION = 8;
+
+	/** Share of the maximum size freed beyond the budget when trimming. */
+	private static final int TRIM_SLACK_FRACTION = 16;
+
+	/** The tiles are spread over 2^STRIPE_BITS maps. */
+	private static final int STRIPE_BITS = 4;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The cached tiles by key, each map guarded by itself. */
+	private final LongHashMap<CacheEntry>[] mStripes;
+
+	private final AtomicLong mAccessClock = new AtomicLong();
+	private final AtomicLong mSizeBytes = new AtomicLong();
+	private final Object mEvictionLockObject = new Object();
+
+	private volatile long mMaximumSizeBytes;
+	private volatile int mMinimumTileCount = CACHE_MAPTILECOUNT_DEFAULT;
+	private volatile int mLargestTileSizeBytes;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Creates a cache using an eighth of the maximum heap size.
+	 */
+	public ConcurrentMapTileCache() {
+		this(Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION);
+	}
+
+	/**
+	 * @param pMaximumSizeBytes
+	 *            Maximum amount of bitmap bytes to be hold within.
+	 */
+	public ConcurrentMapTileCache(final long pMaximumSizeBytes) {
+		// the LRUMapTileCache of the super class is left empty
+		super(0);
+		mMaximumSizeBytes = pMaximumSizeBytes;
+		@SuppressWarnings("unchecked")
+		final LongHashMap<CacheEntry>[] stripes = new LongHashMap[1 << STRIPE_BITS];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new LongHashMap<CacheEntry>();
+		}
+		mStripes = stripes;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Get the amount of bitmap bytes currently held by the cache.
+	 *
+	 * @return size in bytes
+	 */
+	public long getSizeBytes() {
+		return mSizeBytes.get();
+	}
+
+	public long getMaximumSizeBytes() {
+		return mMaximumSizeBytes;
+	}
+
+	public void setMaximumSizeBytes(final long pMaximumSizeBytes) {
+		mMaximumSizeBytes = pMaximumSizeBytes;
+		trimToSize();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	/**
+	 * The cache always keeps enough bytes to hold the given amount of the largest tiles seen so
+	 * far, even if this exceeds the configured maximum size.
+	 */
+	@Override
+	public void ensureCapacity(final int aCapacity) {
+		if (aCapacity > mMinimumTileCount) {
+			logger.info("Tile cache increased from " + mMinimumTileCount + " to " + aCapacity
+					+ " tiles");
+			mMinimumTileCount = aCapacity;
+		}
+	}
+
+	@Override
+	public Drawable getMapTile(final MapTile aTile) {
+		return getMapTile(aTile.getKey());
+	}
+
+	@Override
+	public Drawable getMapTile(final long aTileKey) {
+		final LongHashMap<CacheEntry> stripe = getStripe(aTileKey);
+		final CacheEntry entry;
+		synchronized (stripe) {
+			entry = stripe.get(aTileKey);
+		}
+		if (entry == null) {
+			return null;
+		}
+		entry.mLastAccess = mAccessClock.incrementAndGet();
+		return entry.mDrawable;
+	}
+
+	@Override
+	public void putTile(final MapTile aTile, final Drawable aDrawable) {
+		if (aDrawable != null) {
+			final int size = sizeOf(aDrawable);
+			if (size > mLargestTileSizeBytes) {
+				mLargestTileSizeBytes = size;
+			}
+			final long key = aTile.getKey();
+			final CacheEntry entry = new CacheEntry(key, aDrawable, size,
+					mAccessClock.incrementAndGet());
+			final LongHashMap<CacheEntry> stripe = getStripe(key);
+			final CacheEntry previous;
+			synchronized (stripe) {
+				previous = stripe.put(key, entry);
+			}
+			mSizeBytes.addAndGet(previous == null ? size : size - previous.mSizeBytes);
+			if (previous != null && previous.mDrawable != aDrawable) {
+				// reuse or recycle the bitmap of the replaced tile
+				BitmapPool.getInstance().returnDrawableToPool(previous.mDrawable);
+			}
+			trimToSize();
+		}
+	}
+
+	@Override
+	public boolean containsTile(final MapTile aTile) {
+		return containsTile(aTile.getKey());
+	}
+
+	@Override
+	public boolean containsTile(final long aTileKey) {
+		final LongHashMap<CacheEntry> stripe = getStripe(aTileKey);
+		synchronized (stripe) {
+			return stripe.containsKey(aTileKey);
+		}
+	}
+
+	@Override
+	public void clear() {
+		// remove them all individually so that they get recycled
+		for (final LongHashMap<CacheEntry> stripe : mStripes) {
+			final List<CacheEntry> entries;
+			synchronized (stripe) {
+				entries = stripe.values();
+			}
+			for (final CacheEntry entry : entries) {
+				remove(entry);
+			}
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Returns the amount of memory held by the given drawable.
+	 */
+	protected int sizeOf(final Drawable pDrawable) {
+		if (pDrawable instanceof BitmapDrawable) {
+			final Bitmap bitmap = ((BitmapDrawable) pDrawable).getBitmap();
+			if (bitmap != null) {
+				return bitmap.getRowBytes() * bitmap.getHeight();
+			}
+		}
+		final int width = pDrawable.getIntrinsicWidth();
+		final int height = pDrawable.getIntrinsicHeight();
+		if (width > 0 && height > 0) {
+			return width * height * 4;
+		}
+		return DEFAULT_TILE_SIZE_BYTES;
+	}
+
+	private LongHashMap<CacheEntry> getStripe(final long pKey) {
+		// the high bits of the hash, the maps use the low ones
+		return mStripes[LongHashMap.hash(pKey) >>> (32 - STRIPE_BITS)];
+	}
+
+	private long getEffectiveMaximumSizeBytes() {
+		return Math.max(mMaximumSizeBytes, (long) mMinimumTileCount * mLargestTileSizeBytes);
+	}
+
+	/**
+	 * The size the cache is trimmed to: a little below the maximum size, but never below the size
+	 * of the minimum amount of tiles.
+	 */
+	private long getTrimSizeBytes() {
+		return Math.max(mMaximumSizeBytes - mMaximumSizeBytes / TRIM_SLACK_FRACTION,
+				(long) mMinimumTileCount * mLargestTileSizeBytes);
+	}
+
+	private void trimToSize() {
+		if (mSizeBytes.get() <= getEffectiveMaximumSizeBytes()) {
+			return;
+		}
+		synchronized (mEvictionLockObject) {
+			if (mSizeBytes.get() <= getEffectiveMaximumSizeBytes()) {
+				return;
+			}
+			// the access stamps are copied as the tiles may be accessed while they're sorted
+			final List<Eviction> evictions = new ArrayList<Eviction>();
+			for (final LongHashMap<CacheEntry> stripe : mStripes) {
+				final List<CacheEntry> entries;
+				synchronized (stripe) {
+					entries = stripe.values();
+				}
+				for (final CacheEntry entry : entries) {
+					evictions.add(new Eviction(entry));
+				}
+			}
+			Collections.sort(evictions);
+
+			final long trimSizeBytes = getTrimSizeBytes();
+			for (final Eviction eviction : evictions) {
+				if (mSizeBytes.get() <= trimSizeBytes) {
+					break;
+				}
+				if (DEBUGMODE) {
+					logger.debug("Remove old tile: " + new MapTile(eviction.mEntry.mKey));
+				}
+				remove(eviction.mEntry);
+			}
+		}
+	}
+
+	/**
+	 * Remove an entry, unless its tile has been put again since.
+	 */
+	private void remove(final CacheEntry pEntry) {
+		final LongHashMap<CacheEntry> stripe = getStripe(pEntry.mKey);
+		synchronized (stripe) {
+			if (stripe.get(pEntry.mKey) != pEntry) {
+				return;
+			}
+			stripe.remove(pEntry.mKey);
+		}
+		mSizeBytes.addAndGet(-pEntry.mSizeBytes);
+		// reuse or recycle the bitmap
+		BitmapPool.getInstance().returnDrawableToPool(pEntry.mDrawable);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class CacheEntry {
+		final long mKey;
+		final Drawable mDrawable;
+		final int mSizeBytes;
+		volatile long mLastAccess;
+
+		CacheEntry(final long pKey, final Drawable pDrawable, final int pSizeBytes,
+				final long pLastAccess) {
+			mKey = pKey;
+			mDrawable = pDrawable;
+			mSizeBytes = pSizeBytes;
+			mLastAccess = pLastAccess;
+		}
+	}
+
+	/**
+	 * A cached tile and its access stamp when the eviction started.
+	 */
+	private static class Eviction implements Comparable<Eviction> {
+		final CacheEntry mEntry;
+		final long mLastAccess;
+
+		Eviction(final CacheEntry pEntry) {
+			mEntry = pEntry;
+			mLastAccess = pEntry.mLastAccess;
+		}
+
+		@Override
+		public int compareTo(final Eviction pOther) {
+			return mLastAccess < pOther.mLastAccess ? -1 : (mLastAccess == pOther.mLastAccess ? 0
+					: 1);
+		}
+	}
+}
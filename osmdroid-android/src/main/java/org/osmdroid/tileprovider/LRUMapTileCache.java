@@ -1,18 +1,18 @@
 package org.osmdroid.tileprovider;
 
-import java.util.LinkedHashMap;
-
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Build;
 
-public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
-	implements OpenStreetMapTileProviderConstants {
+/**
+ * The tiles of a {@link MapTileCache}, least recently used first out. The tiles are looked up by
+ * their {@link MapTile#getKey() key} in a {@link LongHashMap} and kept in access order in a linked
+ * list, so that getting a tile allocates nothing.
+ */
+public class LRUMapTileCache implements OpenStreetMapTileProviderConstants {
 
 	public interface TileRemovedListener {
 		void onTileRemoved(MapTile mapTile);
@@ -20,14 +20,19 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 
 	private static final Logger logger = LoggerFactory.getLogger(LRUMapTileCache.class);
 
-	private static final long serialVersionUID = -541142277575493335L;
+	private final LongHashMap<Entry> mEntries;
+
+	/** Sentinel of the circular list of entries, most recently used first. */
+	private final Entry mHead = new Entry(null, null);
 
 	private int mCapacity;
 	private TileRemovedListener mTileRemovedListener;
 
 	public LRUMapTileCache(final int aCapacity) {
-		super(aCapacity + 2, 0.1f, true);
+		mEntries = new LongHashMap<Entry>(aCapacity + 2);
 		mCapacity = aCapacity;
+		mHead.mNext = mHead;
+		mHead.mPrevious = mHead;
 	}
 
 	public void ensureCapacity(final int aCapacity) {
@@ -37,45 +42,92 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 		}
 	}
 
-	@Override
-	public Drawable remove(final Object aKey) {
-		final Drawable drawable = super.remove(aKey);
-		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
-		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
-			if (drawable instanceof BitmapDrawable) {
-				final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-				if (bitmap != null) {
-					bitmap.recycle();
-				}
-			}
-		}
-		if (getTileRemovedListener() != null && aKey instanceof MapTile)
-			getTileRemovedListener().onTileRemoved((MapTile) aKey);
-		return drawable;
+	public int size() {
+		return mEntries.size();
 	}
 
-	@Override
-	public void clear() {
-		// remove them all individually so that they get recycled
-		while (!isEmpty()) {
-			remove(keySet().iterator().next());
+	public boolean isEmpty() {
+		return mEntries.isEmpty();
+	}
+
+	public Drawable get(final MapTile aTile) {
+		return get(aTile.getKey());
+	}
+
+	/**
+	 * Get a tile and make it the most recently used one.
+	 */
+	public Drawable get(final long aKey) {
+		final Entry entry = mEntries.get(aKey);
+		if (entry == null) {
+			return null;
 		}
+		unlink(entry);
+		linkFirst(entry);
+		return entry.mDrawable;
+	}
+
+	public boolean containsKey(final MapTile aTile) {
+		return mEntries.containsKey(aTile.getKey());
+	}
 
-		// and then clear
-		super.clear();
+	public boolean containsKey(final long aKey) {
+		return mEntries.containsKey(aKey);
 	}
 
-	@Override
-	protected boolean removeEldestEntry(final java.util.Map.Entry<MapTile, Drawable> aEldest) {
-		if (size() > mCapacity) {
-			final MapTile eldest = aEldest.getKey();
+	/**
+	 * Put a tile, replacing the previous drawable of the tile if any, whose bitmap is reused or
+	 * recycled, and remove the least recently used tiles above the capacity.
+	 *
+	 * @return the previous drawable of the tile
+	 */
+	public Drawable put(final MapTile aTile, final Drawable aDrawable) {
+		final Entry previous = mEntries.get(aTile.getKey());
+		if (previous != null) {
+			final Drawable drawable = previous.mDrawable;
+			previous.mDrawable = aDrawable;
+			unlink(previous);
+			linkFirst(previous);
+			if (drawable != aDrawable) {
+				BitmapPool.getInstance().returnDrawableToPool(drawable);
+			}
+			return drawable;
+		}
+
+		final Entry entry = new Entry(aTile, aDrawable);
+		mEntries.put(aTile.getKey(), entry);
+		linkFirst(entry);
+		while (mEntries.size() > mCapacity) {
+			final MapTile eldest = mHead.mPrevious.mTile;
 			if (DEBUGMODE) {
 				logger.debug("Remove old tile: " + eldest);
 			}
 			remove(eldest);
-			// don't return true because we've already removed it
 		}
-		return false;
+		return null;
+	}
+
+	/**
+	 * Remove a tile, and reuse or recycle its bitmap.
+	 */
+	public Drawable remove(final MapTile aTile) {
+		final Entry entry = mEntries.remove(aTile.getKey());
+		if (entry == null) {
+			return null;
+		}
+		unlink(entry);
+		// reuse or recycle the bitmap
+		BitmapPool.getInstance().returnDrawableToPool(entry.mDrawable);
+		if (getTileRemovedListener() != null)
+			getTileRemovedListener().onTileRemoved(entry.mTile);
+		return entry.mDrawable;
+	}
+
+	public void clear() {
+		// remove them all individually so that they get recycled
+		while (mHead.mNext != mHead) {
+			remove(mHead.mNext.mTile);
+		}
 	}
 
 	public TileRemovedListener getTileRemovedListener() {
@@ -85,4 +137,28 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 	public void setTileRemovedListener(TileRemovedListener tileRemovedListener) {
 		mTileRemovedListener = tileRemovedListener;
 	}
+
+	private void linkFirst(final Entry pEntry) {
+		pEntry.mPrevious = mHead;
+		pEntry.mNext = mHead.mNext;
+		mHead.mNext.mPrevious = pEntry;
+		mHead.mNext = pEntry;
+	}
+
+	private static void unlink(final Entry pEntry) {
+		pEntry.mPrevious.mNext = pEntry.mNext;
+		pEntry.mNext.mPrevious = pEntry.mPrevious;
+	}
+
+	private static class Entry {
+		final MapTile mTile;
+		Drawable mDrawable;
+		Entry mPrevious;
+		Entry mNext;
+
+		Entry(final MapTile pTile, final Drawable pDrawable) {
+			mTile = pTile;
+			mDrawable = pDrawable;
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package org.osmdroid.tileprovider;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.views.overlay.TilesOverlay;
 
 /**
@@ -8,12 +9,20 @@ import org.osmdroid.views.overlay.TilesOverlay;
  * (i.e. a descendant of {@link MapTileModuleProviderBase} or
  * {@link MapTileProviderBase} to a consumer of tiles (e.g. descendant of
  * {@link TilesOverlay}). Tiles are typically images (e.g. png or jpeg).
+ * <p>
+ * A tile is also identified by a key packing its zoom level and coordinates in a long, see
+ * {@link #getKey(int, int, int)}, which lets the tiles drawn at each frame be looked up without
+ * allocating a MapTile for each of them.
  */
 public class MapTile {
 
 	public static final int MAPTILE_SUCCESS_ID = 0;
 	public static final int MAPTILE_FAIL_ID = MAPTILE_SUCCESS_ID + 1;
 
+	/** The number of bits of each coordinate in a key, enough for zoom levels up to 29. */
+	private static final int KEY_COORDINATE_BITS = 29;
+	private static final long KEY_COORDINATE_MASK = (1L << KEY_COORDINATE_BITS) - 1;
+
 	// This class must be immutable because it's used as the key in the cache hash map
 	// (ie all the fields are final).
 	private final int x;
@@ -26,6 +35,14 @@ public class MapTile {
 		this.y = tileY;
 	}
 
+	/**
+	 * @param pKey
+	 *            a key returned by {@link #getKey(int, int, int)}
+	 */
+	public MapTile(final long pKey) {
+		this(getZoomLevel(pKey), getX(pKey), getY(pKey));
+	}
+
 	public int getZoomLevel() {
 		return zoomLevel;
 	}
@@ -38,6 +55,31 @@ public class MapTile {
 		return y;
 	}
 
+	public long getKey() {
+		return getKey(zoomLevel, x, y);
+	}
+
+	/**
+	 * Pack the zoom level and the coordinates of a tile in a key, with 6 bits for the zoom level and
+	 * 29 bits for each coordinate, which must not be negative.
+	 */
+	public static long getKey(final int pZoomLevel, final int pX, final int pY) {
+		return (long) pZoomLevel << (2 * KEY_COORDINATE_BITS)
+				| (pX & KEY_COORDINATE_MASK) << KEY_COORDINATE_BITS | (pY & KEY_COORDINATE_MASK);
+	}
+
+	public static int getZoomLevel(final long pKey) {
+		return (int) (pKey >>> (2 * KEY_COORDINATE_BITS));
+	}
+
+	public static int getX(final long pKey) {
+		return (int) (pKey >>> KEY_COORDINATE_BITS & KEY_COORDINATE_MASK);
+	}
+
+	public static int getY(final long pKey) {
+		return (int) (pKey & KEY_COORDINATE_MASK);
+	}
+
 	@Override
 	public String toString() {
 		return "/" + zoomLevel + "/" + x + "/" + y;
@@ -57,10 +99,6 @@ public class MapTile {
 
 	@Override
 	public int hashCode() {
-		int code = 17;
-		code *= 37 + zoomLevel;
-		code *= 37 + x;
-		code *= 37 + y;
-		return code;
+		return LongHashMap.hash(getKey());
 	}
 }
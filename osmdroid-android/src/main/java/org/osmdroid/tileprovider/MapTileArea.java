@@ -0,0 +1,130 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.util.MyMath;
+
+/**
+ * An immutable rectangle of map tiles at a zoom level, typically the tiles visible on screen. The
+ * bounds are inclusive and, like the tile numbers handled by {@link org.osmdroid.util.TileLooper},
+ * they may lie outside of the world when the map wraps around: they are compared to tiles modulo
+ * the number of tiles of the zoom level.
+ */
+public class MapTileArea {
+
+	private final int mZoomLevel;
+	private final int mLeft;
+	private final int mTop;
+	private final int mRight;
+	private final int mBottom;
+
+	public MapTileArea(final int pZoomLevel, final int pLeft, final int pTop, final int pRight,
+			final int pBottom) {
+		mZoomLevel = pZoomLevel;
+		mLeft = pLeft;
+		mTop = pTop;
+		mRight = pRight;
+		mBottom = pBottom;
+	}
+
+	public int getZoomLevel() {
+		return mZoomLevel;
+	}
+
+	public int getLeft() {
+		return mLeft;
+	}
+
+	public int getTop() {
+		return mTop;
+	}
+
+	public int getRight() {
+		return mRight;
+	}
+
+	public int getBottom() {
+		return mBottom;
+	}
+
+	/**
+	 * Whether the tile is in this area extended by the given number of tiles on each side.
+	 */
+	public boolean contains(final MapTile pTile, final int pMargin) {
+		if (pTile.getZoomLevel() != mZoomLevel) {
+			return false;
+		}
+		final int mapTileUpperBound = 1 << mZoomLevel;
+		return contains(pTile.getX(), mLeft - pMargin, mRight + pMargin, mapTileUpperBound)
+				&& contains(pTile.getY(), mTop - pMargin, mBottom + pMargin, mapTileUpperBound);
+	}
+
+	/**
+	 * Gets the squared distance between the center of the tile and the center of this area,
+	 * measured in half tiles so that it stays an integer.
+	 *
+	 * @return the squared distance, or {@link Long#MAX_VALUE} if the tile is at another zoom level
+	 */
+	public long getDistanceSquared(final MapTile pTile) {
+		if (pTile.getZoomLevel() != mZoomLevel) {
+			return Long.MAX_VALUE;
+		}
+		final int mapTileUpperBound = 1 << mZoomLevel;
+		final long dx = distance(pTile.getX(), mLeft + mRight, mapTileUpperBound);
+		final long dy = distance(pTile.getY(), mTop + mBottom, mapTileUpperBound);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Whether this area has the given zoom level and bounds.
+	 */
+	public boolean matches(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		return mZoomLevel == pZoomLevel && mLeft == pLeft && mTop == pTop && mRight == pRight
+				&& mBottom == pBottom;
+	}
+
+	private static boolean contains(final int pTile, final int pMin, final int pMax,
+			final int pMapTileUpperBound) {
+		if (pMax - pMin + 1 >= pMapTileUpperBound) {
+			return true;
+		}
+		return MyMath.mod(pTile - pMin, pMapTileUpperBound) <= pMax - pMin;
+	}
+
+	/**
+	 * Distance, in half tiles, between the center of a tile and the center of an inclusive range
+	 * of tiles given by the sum of its bounds, going the short way around the world.
+	 */
+	private static int distance(final int pTile, final int pMinPlusMax,
+			final int pMapTileUpperBound) {
+		final int worldSizeTimesTwo = pMapTileUpperBound << 1;
+		final int delta = MyMath.mod(pTile * 2 - pMinPlusMax, worldSizeTimesTwo);
+		return delta > pMapTileUpperBound ? worldSizeTimesTwo - delta : delta;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof MapTileArea)) {
+			return false;
+		}
+		final MapTileArea rhs = (MapTileArea) obj;
+		return rhs.matches(mZoomLevel, mLeft, mTop, mRight, mBottom);
+	}
+
+	@Override
+	public int hashCode() {
+		int code = mZoomLevel;
+		code = code * 31 + mLeft;
+		code = code * 31 + mTop;
+		code = code * 31 + mRight;
+		code = code * 31 + mBottom;
+		return code;
+	}
+
+	@Override
+	public String toString() {
+		return "/" + mZoomLevel + "/" + mLeft + ".." + mRight + "/" + mTop + ".." + mBottom;
+	}
+}
@@ -49,8 +49,15 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 	}
 
 	public Drawable getMapTile(final MapTile aTile) {
+		return getMapTile(aTile.getKey());
+	}
+
+	/**
+	 * Get a tile by its key, see {@link MapTile#getKey(int, int, int)}.
+	 */
+	public Drawable getMapTile(final long aTileKey) {
 		synchronized (mCachedTilesLockObject) {
-			return this.mCachedTiles.get(aTile);
+			return this.mCachedTiles.get(aTileKey);
 		}
 	}
 
@@ -71,8 +78,12 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 	// ===========================================================
 
 	public boolean containsTile(final MapTile aTile) {
+		return containsTile(aTile.getKey());
+	}
+
+	public boolean containsTile(final long aTileKey) {
 		synchronized (mCachedTilesLockObject) {
-			return this.mCachedTiles.containsKey(aTile);
+			return this.mCachedTiles.containsKey(aTileKey);
 		}
 	}
 
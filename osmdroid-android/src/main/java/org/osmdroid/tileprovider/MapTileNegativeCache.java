@@ -0,0 +1,132 @@
+package org.osmdroid.tileprovider;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+
+/**
+ * Remembers, for a limited time, the tiles that a tile provider doesn't have, so that the tile
+ * provider chain can skip it the next time the tile is requested rather than look for the tile
+ * again. The least recently missed tiles are forgotten first when the cache is full.
+ */
+public class MapTileNegativeCache {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMaximumSize;
+
+	/** For each tile, when it stops being known as missing from each provider. */
+	private final LinkedHashMap<MapTile, HashMap<MapTileModuleProviderBase, Long>> mMissing;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pMaximumSize
+	 *            the maximum number of tiles remembered
+	 */
+	public MapTileNegativeCache(final int pMaximumSize) {
+		mMaximumSize = pMaximumSize;
+		mMissing = new LinkedHashMap<MapTile, HashMap<MapTileModuleProviderBase, Long>>(
+				Math.min(pMaximumSize, 64), 0.75f, true) {
+			private static final long serialVersionUID = -5418264962715226071L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<MapTile, HashMap<MapTileModuleProviderBase, Long>> pEldest) {
+				return size() > mMaximumSize;
+			}
+		};
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Remember that the provider doesn't have the tile.
+	 *
+	 * @param pTimeToLive
+	 *            how long to remember it, in milliseconds. Nothing is remembered if not positive.
+	 */
+	public void put(final MapTile pTile, final MapTileModuleProviderBase pProvider,
+			final long pTimeToLive) {
+		put(pTile, pProvider, pTimeToLive, System.currentTimeMillis());
+	}
+
+	/**
+	 * Whether the provider is known not to have the tile.
+	 */
+	public boolean contains(final MapTile pTile, final MapTileModuleProviderBase pProvider) {
+		return contains(pTile, pProvider, System.currentTimeMillis());
+	}
+
+	synchronized void put(final MapTile pTile, final MapTileModuleProviderBase pProvider,
+			final long pTimeToLive, final long pNow) {
+		if (pTimeToLive <= 0) {
+			return;
+		}
+		HashMap<MapTileModuleProviderBase, Long> providers = mMissing.get(pTile);
+		if (providers == null) {
+			providers = new HashMap<MapTileModuleProviderBase, Long>(4);
+			mMissing.put(pTile, providers);
+		}
+		providers.put(pProvider, pNow + pTimeToLive);
+	}
+
+	synchronized boolean contains(final MapTile pTile, final MapTileModuleProviderBase pProvider,
+			final long pNow) {
+		final HashMap<MapTileModuleProviderBase, Long> providers = mMissing.get(pTile);
+		if (providers == null) {
+			return false;
+		}
+		final Long expires = providers.get(pProvider);
+		if (expires == null) {
+			return false;
+		}
+		if (expires <= pNow) {
+			providers.remove(pProvider);
+			if (providers.isEmpty()) {
+				mMissing.remove(pTile);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forget that the tile is missing from any provider, typically because one of them found it.
+	 */
+	public synchronized void remove(final MapTile pTile) {
+		mMissing.remove(pTile);
+	}
+
+	/**
+	 * Forget the tiles missing from a provider, typically because it has new tiles.
+	 */
+	public synchronized void remove(final MapTileModuleProviderBase pProvider) {
+		final Iterator<HashMap<MapTileModuleProviderBase, Long>> iterator = mMissing.values()
+				.iterator();
+		while (iterator.hasNext()) {
+			final HashMap<MapTileModuleProviderBase, Long> providers = iterator.next();
+			providers.remove(pProvider);
+			if (providers.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		mMissing.clear();
+	}
+
+	public synchronized int size() {
+		return mMissing.size();
+	}
+}
@@ -2,14 +2,22 @@ package org.osmdroid.tileprovider;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.modules.TileDecodeStage;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MyMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
 
 /**
@@ -24,18 +32,36 @@ import android.graphics.drawable.Drawable;
  * providers in the chain, then the failure result is passed to the base class. The
  * {@link MapTileProviderArray} provides a mechanism so that only one unique tile-request can be in
  * the map tile request chain at a time.
+ * <p>
+ * The tiles that a provider doesn't have are remembered in a {@link MapTileNegativeCache} for the
+ * time returned by {@link MapTileModuleProviderBase#getMissingTileTimeToLive()}, during which that
+ * provider is skipped for those tiles. The cache is cleared when media is mounted or unmounted, and
+ * can be cleared with {@link #clearMissingTiles()} when new tiles become available.
  *
  * @author Marc Kurtz
  *
  */
 public class MapTileProviderArray extends MapTileProviderBase {
 
-	protected final HashMap<MapTile, MapTileRequestState> mWorking;
+	/** The requests in progress, by {@link MapTile#getKey() tile key}. */
+	protected final LongHashMap<MapTileRequestState> mWorking;
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileProviderArray.class);
 
 	protected final List<MapTileModuleProviderBase> mTileProviderList;
 
+	private MapTileArea mViewport;
+	private MapTileArea mPrefetchArea;
+
+	private final MapTileNegativeCache mMissingTiles = new MapTileNegativeCache(
+			MISSING_TILE_CACHE_SIZE);
+
+	private final AtomicLong mCacheHitCount = new AtomicLong();
+	private final AtomicLong mCacheMissCount = new AtomicLong();
+
+	private final IRegisterReceiver mRegisterReceiver;
+	private BroadcastReceiver mMediaReceiver;
+
 	/**
 	 * Creates an {@link MapTileProviderArray} with no tile providers.
 	 *
@@ -60,14 +86,36 @@ public class MapTileProviderArray extends MapTileProviderBase {
 			final MapTileModuleProviderBase[] pTileProviderArray) {
 		super(pTileSource);
 
-		mWorking = new HashMap<MapTile, MapTileRequestState>();
+		mWorking = new LongHashMap<MapTileRequestState>();
 
 		mTileProviderList = new ArrayList<MapTileModuleProviderBase>();
 		Collections.addAll(mTileProviderList, pTileProviderArray);
+
+		mRegisterReceiver = aRegisterReceiver;
+		if (aRegisterReceiver != null) {
+			// archives may have been added or removed
+			mMediaReceiver = new BroadcastReceiver() {
+				@Override
+				public void onReceive(final Context aContext, final Intent aIntent) {
+					clearMissingTiles();
+				}
+			};
+			final IntentFilter mediaFilter = new IntentFilter();
+			mediaFilter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+			mediaFilter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+			mediaFilter.addDataScheme("file");
+			aRegisterReceiver.registerReceiver(mMediaReceiver, mediaFilter);
+		}
 	}
 
 	@Override
 	public void detach() {
+		if (mMediaReceiver != null) {
+			mRegisterReceiver.unregisterReceiver(mMediaReceiver);
+			mMediaReceiver = null;
+		}
+		mMissingTiles.clear();
+
 		synchronized (mTileProviderList) {
 			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
 				tileProvider.detach();
@@ -81,39 +129,60 @@ public class MapTileProviderArray extends MapTileProviderBase {
 
 	@Override
 	public Drawable getMapTile(final MapTile pTile) {
-		final Drawable tile = mTileCache.getMapTile(pTile);
+		return getMapTile(pTile.getKey(), pTile);
+	}
+
+	/**
+	 * A tile of the memory cache is returned without allocating, a MapTile is only made to request
+	 * a missing tile.
+	 */
+	@Override
+	public Drawable getMapTile(final long pTileKey) {
+		return getMapTile(pTileKey, null);
+	}
+
+	private Drawable getMapTile(final long pTileKey, final MapTile pTile) {
+		final Drawable tile = mTileCache.getMapTile(pTileKey);
 		if (tile != null && !ExpirableBitmapDrawable.isDrawableExpired(tile)) {
 			if (DEBUGMODE) {
-				logger.debug("MapTileCache succeeded for: " + pTile);
+				logger.debug("MapTileCache succeeded for: " + new MapTile(pTileKey));
 			}
+			mCacheHitCount.incrementAndGet();
 			return tile;
 		} else {
+			mCacheMissCount.incrementAndGet();
 			boolean alreadyInProgress = false;
 			synchronized (mWorking) {
-				alreadyInProgress = mWorking.containsKey(pTile);
+				final MapTileRequestState working = mWorking.get(pTileKey);
+				if (working != null) {
+					// a prefetched tile that came into view
+					working.setPrefetch(false);
+					alreadyInProgress = true;
+				}
 			}
 
 			if (!alreadyInProgress) {
+				final MapTile mapTile = pTile != null ? pTile : new MapTile(pTileKey);
 				if (DEBUGMODE) {
-					logger.debug("Cache failed, trying from async providers: " + pTile);
+					logger.debug("Cache failed, trying from async providers: " + mapTile);
 				}
 
 				final MapTileRequestState state;
 				synchronized (mTileProviderList) {
 					final MapTileModuleProviderBase[] providerArray =
 						new MapTileModuleProviderBase[mTileProviderList.size()];
-					state = new MapTileRequestState(pTile,
+					state = new MapTileRequestState(mapTile,
 							mTileProviderList.toArray(providerArray), this);
 				}
 
 				synchronized (mWorking) {
 					// Check again
-					alreadyInProgress = mWorking.containsKey(pTile);
+					alreadyInProgress = mWorking.containsKey(pTileKey);
 					if (alreadyInProgress) {
 						return null;
 					}
 
-					mWorking.put(pTile, state);
+					mWorking.put(pTileKey, state);
 				}
 
 				final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
@@ -129,21 +198,25 @@ public class MapTileProviderArray extends MapTileProviderBase {
 
 	@Override
 	public void mapTileRequestCompleted(final MapTileRequestState aState, final Drawable aDrawable) {
-		synchronized (mWorking) {
-			mWorking.remove(aState.getMapTile());
-		}
+		mMissingTiles.remove(aState.getMapTile());
+		removeWorking(aState);
 		super.mapTileRequestCompleted(aState, aDrawable);
 	}
 
 	@Override
 	public void mapTileRequestFailed(final MapTileRequestState aState) {
-		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
+		final MapTileModuleProviderBase provider = aState.getCurrentProvider();
+		if (provider != null && !aState.isCancelled() && !aState.isFailureTransient()) {
+			mMissingTiles.put(aState.getMapTile(), provider, provider.getMissingTileTimeToLive());
+		}
+
+		// a cancelled request doesn't go through the rest of the chain
+		final MapTileModuleProviderBase nextProvider = aState.isCancelled() ? null
+				: findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
 			nextProvider.loadMapTileAsync(aState);
 		} else {
-			synchronized (mWorking) {
-				mWorking.remove(aState.getMapTile());
-			}
+			removeWorking(aState);
 			super.mapTileRequestFailed(aState);
 		}
 	}
@@ -153,25 +226,233 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		// Call through to the super first so aState.getCurrentProvider() still contains the proper
 		// provider.
 		super.mapTileRequestExpiredTile(aState, aDrawable);
+		aState.setExpiredDrawable(aDrawable);
+		mMissingTiles.remove(aState.getMapTile());
 
 		// Continue through the provider chain
-		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
+		final MapTileModuleProviderBase nextProvider = aState.isCancelled() ? null
+				: findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
 			nextProvider.loadMapTileAsync(aState);
 		} else {
-			synchronized (mWorking) {
-				mWorking.remove(aState.getMapTile());
+			removeWorking(aState);
+		}
+	}
+
+	/**
+	 * Cancels the requests for tiles that are outside of the viewport, plus a margin of
+	 * {@link #TILE_REQUEST_VIEWPORT_MARGIN} tiles, and lets the tile providers reorder their queues.
+	 * A cancelled tile is requested again if it comes back into view.
+	 */
+	@Override
+	public void setViewport(final MapTileArea pArea) {
+		synchronized (mWorking) {
+			if (pArea.equals(mViewport)) {
+				return;
+			}
+			mViewport = pArea;
+
+			for (final MapTileRequestState state : mWorking.values()) {
+				if (!isWanted(state)) {
+					if (DEBUGMODE) {
+						logger.debug("Cancel request out of viewport: " + state.getMapTile());
+					}
+					state.cancel();
+					mWorking.remove(state.getMapTile().getKey());
+				}
+			}
+		}
+
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.setViewport(pArea);
+			}
+		}
+	}
+
+	/**
+	 * Requests the tiles of the area that aren't visible, cached or requested yet, at most
+	 * {@link #TILE_PREFETCH_MAXIMUM_TILES} of them, and cancels the previous prefetch requests for
+	 * tiles that are neither in the area nor around the viewport. Prefetch requests are loaded
+	 * after the other ones.
+	 */
+	@Override
+	public void setPrefetchArea(final MapTileArea pArea) {
+		// the area is set again at each frame of a fling, most often unchanged
+		synchronized (mWorking) {
+			if (isPrefetchArea(pArea)) {
+				return;
+			}
+		}
+
+		final MapTileModuleProviderBase[] providers;
+		synchronized (mTileProviderList) {
+			providers = mTileProviderList.toArray(
+					new MapTileModuleProviderBase[mTileProviderList.size()]);
+		}
+
+		final List<MapTileRequestState> states = new ArrayList<MapTileRequestState>();
+		boolean cancelled = false;
+		synchronized (mWorking) {
+			if (isPrefetchArea(pArea)) {
+				return;
+			}
+			mPrefetchArea = pArea;
+
+			for (final MapTileRequestState state : mWorking.values()) {
+				if (!isWanted(state)) {
+					if (DEBUGMODE) {
+						logger.debug("Cancel prefetch request: " + state.getMapTile());
+					}
+					state.cancel();
+					mWorking.remove(state.getMapTile().getKey());
+					cancelled = true;
+				}
+			}
+		}
+
+		// stop the downloads of the cancelled prefetch requests
+		if (cancelled) {
+			for (final MapTileModuleProviderBase provider : providers) {
+				provider.onRequestsCancelled();
+			}
+		}
+		if (pArea == null) {
+			return;
+		}
+
+		synchronized (mWorking) {
+			if (!isPrefetchArea(pArea)) {
+				// superseded meanwhile
+				return;
+			}
+			final int mapTileUpperBound = 1 << pArea.getZoomLevel();
+			for (int y = pArea.getTop(); y <= pArea.getBottom()
+					&& states.size() < TILE_PREFETCH_MAXIMUM_TILES; y++) {
+				for (int x = pArea.getLeft(); x <= pArea.getRight()
+						&& states.size() < TILE_PREFETCH_MAXIMUM_TILES; x++) {
+					final MapTile tile = new MapTile(pArea.getZoomLevel(),
+							MyMath.mod(x, mapTileUpperBound), MyMath.mod(y, mapTileUpperBound));
+					if (mWorking.containsKey(tile.getKey()) || mViewport != null
+							&& mViewport.contains(tile, 0) || mTileCache.containsTile(tile)) {
+						continue;
+					}
+					final MapTileRequestState state = new MapTileRequestState(tile, providers,
+							this);
+					state.setPrefetch(true);
+					mWorking.put(tile.getKey(), state);
+					states.add(state);
+				}
+			}
+
+			// keep room for the prefetched tiles without pushing the visible ones out
+			if (mViewport != null) {
+				ensureCapacity((mViewport.getRight() - mViewport.getLeft() + 1)
+						* (mViewport.getBottom() - mViewport.getTop() + 1) + states.size());
+			}
+		}
+
+		for (final MapTileRequestState state : states) {
+			final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
+			if (provider != null) {
+				provider.loadMapTileAsync(state);
+			} else {
+				mapTileRequestFailed(state);
+			}
+		}
+	}
+
+	/**
+	 * Whether the area is the current prefetch area. To be called while holding mWorking.
+	 */
+	private boolean isPrefetchArea(final MapTileArea pArea) {
+		return pArea == null ? mPrefetchArea == null : pArea.equals(mPrefetchArea);
+	}
+
+	/**
+	 * Whether a request is still worth working on: its tile is around the viewport or, for a
+	 * prefetch request, in the prefetch area. To be called while holding mWorking.
+	 */
+	private boolean isWanted(final MapTileRequestState pState) {
+		final MapTile tile = pState.getMapTile();
+		if (mViewport != null && mViewport.contains(tile, TILE_REQUEST_VIEWPORT_MARGIN)) {
+			return true;
+		}
+		if (pState.isPrefetch()) {
+			return mPrefetchArea != null && mPrefetchArea.contains(tile, 0);
+		}
+		return mViewport == null;
+	}
+
+	/**
+	 * Forget the tiles known to be missing from the tile providers, so that they are all looked for
+	 * again. To be called when new tiles become available, for example when an archive is added.
+	 */
+	public void clearMissingTiles() {
+		mMissingTiles.clear();
+	}
+
+	/**
+	 * Forget the tiles known to be missing from a tile provider.
+	 */
+	public void clearMissingTiles(final MapTileModuleProviderBase pProvider) {
+		mMissingTiles.remove(pProvider);
+	}
+
+	/**
+	 * @return the number of tiles drawn from the memory cache, not expired
+	 */
+	public long getCacheHitCount() {
+		return mCacheHitCount.get();
+	}
+
+	/**
+	 * @return the number of tiles not found in the memory cache, or found expired, when drawn
+	 */
+	public long getCacheMissCount() {
+		return mCacheMissCount.get();
+	}
+
+	/**
+	 * Also exports the hits and misses of the memory cache, the metrics of each tile provider and
+	 * those of the {@link TileDecodeStage}.
+	 */
+	@Override
+	public void exportMetrics(final Map<String, Long> pMetrics) {
+		super.exportMetrics(pMetrics);
+		pMetrics.put("memory_cache.hits", getCacheHitCount());
+		pMetrics.put("memory_cache.misses", getCacheMissCount());
+		synchronized (mWorking) {
+			pMetrics.put("requests_in_progress", (long) mWorking.size());
+		}
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.exportMetrics(pMetrics);
+			}
+		}
+		TileDecodeStage.getInstance().export("decode_stage", pMetrics);
+	}
+
+	/**
+	 * Forget about the request, unless it has been cancelled and the tile requested again since.
+	 */
+	private void removeWorking(final MapTileRequestState aState) {
+		synchronized (mWorking) {
+			final long key = aState.getMapTile().getKey();
+			if (mWorking.get(key) == aState) {
+				mWorking.remove(key);
 			}
 		}
 	}
 
 	/**
 	 * We want to not use a provider that doesn't exist anymore in the chain, and we want to not use
-	 * a provider that requires a data connection when one is not available.
+	 * a provider that requires a data connection when one is not available, nor a provider that
+	 * recently didn't have the tile.
 	 */
 	protected MapTileModuleProviderBase findNextAppropriateProvider(final MapTileRequestState aState) {
 		MapTileModuleProviderBase provider = null;
-		boolean providerDoesntExist = false, providerCantGetDataConnection = false, providerCantServiceZoomlevel = false;
+		boolean providerDoesntExist = false, providerCantGetDataConnection = false, providerCantServiceZoomlevel = false, providerMissesTile = false;
 		// The logic of the while statement is
 		// "Keep looping until you get null, or a provider that still exists
 		// and has a data connection if it needs one and can service the zoom level,"
@@ -186,9 +467,11 @@ public class MapTileProviderArray extends MapTileProviderBase {
 				int zoomLevel = aState.getMapTile().getZoomLevel();
 				providerCantServiceZoomlevel = zoomLevel > provider.getMaximumZoomLevel()
 						|| zoomLevel < provider.getMinimumZoomLevel();
+				providerMissesTile = mMissingTiles.contains(aState.getMapTile(), provider);
 			}
 		} while ((provider != null)
-				&& (providerDoesntExist || providerCantGetDataConnection || providerCantServiceZoomlevel));
+				&& (providerDoesntExist || providerCantGetDataConnection
+						|| providerCantServiceZoomlevel || providerMissesTile));
 		return provider;
 	}
 
@@ -227,6 +510,7 @@ public class MapTileProviderArray extends MapTileProviderBase {
 	@Override
 	public void setTileSource(final ITileSource aTileSource) {
 		super.setTileSource(aTileSource);
+		mMissingTiles.clear();
 
 		synchronized (mTileProviderList) {
 			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
@@ -2,12 +2,15 @@
 package org.osmdroid.tileprovider;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import microsoft.mappoint.TileSystem;
 
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.util.TileLooper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +19,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -38,14 +42,38 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileProviderBase.class);
 
+	/** How many zoom levels up a scaled tile is looked for in the ancestors of a missing tile. */
+	private static final int SCALED_TILE_MAXIMUM_ANCESTOR_DIFF = 4;
+
+	/** How many zoom levels down a scaled tile is looked for in the descendants of a missing tile. */
+	private static final int SCALED_TILE_MAXIMUM_DESCENDANT_DIFF = 2;
+
+	/** How many tiles that couldn't be scaled are remembered, beyond which they're forgotten. */
+	private static final int SCALED_TILE_MAXIMUM_UNSCALABLE = 1024;
+
 	protected final MapTileCache mTileCache;
 	protected Handler mTileRequestCompleteHandler;
 	protected boolean mUseDataConnection = true;
 
 	private ITileSource mTileSource;
 
+	/**
+	 * The keys of the tiles that couldn't be scaled from the tiles of the cache, so that it isn't
+	 * tried again for every frame. Forgotten when a tile is loaded.
+	 */
+	private final LongHashMap<Boolean> mUnscalableTiles = new LongHashMap<Boolean>();
+
 	public abstract Drawable getMapTile(MapTile pTile);
 
+	/**
+	 * Get a tile by its key, see {@link MapTile#getKey(int, int, int)}. Providers override this to
+	 * return the tiles of their memory cache without allocating, as it's called for every tile
+	 * drawn.
+	 */
+	public Drawable getMapTile(final long pTileKey) {
+		return getMapTile(new MapTile(pTileKey));
+	}
+
 	public abstract void detach();
 
 	/**
@@ -83,7 +111,51 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	}
 
 	/**
-	 * Creates a {@link MapTileCache} to be used to cache tiles in memory.
+	 * Tells the tile provider which tiles are currently visible, so that it can load them first
+	 * and give up on requests for tiles that are no longer needed. The default implementation does
+	 * nothing.
+	 *
+	 * @param pArea
+	 *            the visible tiles
+	 */
+	public void setViewport(final MapTileArea pArea) {
+	}
+
+	/**
+	 * Tells the tile provider which tiles are expected to come into view soon, typically where a
+	 * fling or a zoom is heading, so that it can load them after the visible ones. The default
+	 * implementation does nothing.
+	 *
+	 * @param pArea
+	 *            the tiles to prefetch, or null to stop prefetching because the motion changed
+	 */
+	public void setPrefetchArea(final MapTileArea pArea) {
+	}
+
+	/**
+	 * Puts the metrics of the tile pipeline into a map, to send them to a telemetry service for
+	 * example. The counters are cumulative since the objects they belong to were created. The
+	 * default implementation exports those of the {@link BitmapPool} and the decoding times of the
+	 * tile source.
+	 *
+	 * @param pMetrics
+	 *            the map to put the metrics into, by name
+	 */
+	public void exportMetrics(final Map<String, Long> pMetrics) {
+		final BitmapPool pool = BitmapPool.getInstance();
+		pMetrics.put("bitmap_pool.hits", pool.getHitCount());
+		pMetrics.put("bitmap_pool.misses", pool.getMissCount());
+		pMetrics.put("bitmap_pool.discarded", pool.getDiscardCount());
+		pMetrics.put("bitmap_pool.size_bytes", pool.getSizeBytes());
+		if (mTileSource instanceof BitmapTileSourceBase) {
+			((BitmapTileSourceBase) mTileSource).getDecodeLatency().export("decode", pMetrics);
+		}
+	}
+
+	/**
+	 * Creates a {@link MapTileCache} to be used to cache tiles in memory. Override to return a
+	 * {@link ConcurrentMapTileCache} to bound the cache by bitmap bytes and avoid lock contention
+	 * between drawing and the tile provider threads.
 	 */
 	public MapTileCache createTileCache() {
 		return new MapTileCache();
@@ -102,7 +174,8 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	/**
 	 * Called by implementation class methods indicating that they have completed the request as
-	 * best it can. The tile is added to the cache, and a MAPTILE_SUCCESS_ID message is sent.
+	 * best it can. The tile is added to the cache, and a MAPTILE_SUCCESS_ID message carrying the tile
+	 * is sent.
 	 *
 	 * @param pState
 	 *            the map tile request state object
@@ -116,7 +189,8 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 		// tell our caller we've finished and it should update its view
 		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
+			mTileRequestCompleteHandler.obtainMessage(MapTile.MAPTILE_SUCCESS_ID,
+					pState.getMapTile()).sendToTarget();
 		}
 
 		if (DEBUGMODE) {
@@ -159,7 +233,8 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 		// tell our caller we've finished and it should update its view
 		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
+			mTileRequestCompleteHandler.obtainMessage(MapTile.MAPTILE_SUCCESS_ID,
+					pState.getMapTile()).sendToTarget();
 		}
 
 		if (DEBUGMODE) {
@@ -169,15 +244,71 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	protected void putTileIntoCache(MapTileRequestState pState, Drawable pDrawable) {
 		final MapTile tile = pState.getMapTile();
+		if (pDrawable != null && pState.isRevalidated()) {
+			pDrawable = copyRevalidatedTile(pDrawable);
+		}
 		if (pDrawable != null) {
 			mTileCache.putTile(tile, pDrawable);
+			forgetUnscalableTiles();
+		}
+	}
+
+	/**
+	 * Copy a revalidated tile into a tile that isn't expired, rather than change the state of the
+	 * expired tile, which may be drawn meanwhile.
+	 *
+	 * @return the copy, or null if the bitmap of the expired tile has already been reused
+	 */
+	private static Drawable copyRevalidatedTile(final Drawable pExpired) {
+		try {
+			final Bitmap expiredBitmap = beginUsingDrawable(pExpired);
+			if (expiredBitmap == null) {
+				return null;
+			}
+			final Bitmap bitmap = BitmapPool.getInstance().obtainBitmap(
+					expiredBitmap.getWidth(), expiredBitmap.getHeight(),
+					getConfig(expiredBitmap));
+			final Bitmap copy = bitmap != null ? bitmap : Bitmap.createBitmap(
+					expiredBitmap.getWidth(), expiredBitmap.getHeight(), getConfig(expiredBitmap));
+			if (copy.hasAlpha()) {
+				// the bitmap of the pool still has the pixels of its previous tile
+				copy.eraseColor(Color.TRANSPARENT);
+			}
+			new Canvas(copy).drawBitmap(expiredBitmap, 0, 0, null);
+			return new ReusableBitmapDrawable(copy);
+		} catch (final OutOfMemoryError e) {
+			logger.error("OutOfMemoryError copying revalidated tile");
+			return null;
+		} finally {
+			finishUsingDrawable(pExpired);
 		}
 	}
 
+	/**
+	 * Put an expired tile into the cache, unless the cache already has the tile. A tile scaled
+	 * from another zoom level is replaced though, as any tile loaded is better.
+	 */
 	protected void putExpiredTileIntoCache(MapTileRequestState pState, Drawable pDrawable) {
 		final MapTile tile = pState.getMapTile();
-		if (pDrawable != null && !mTileCache.containsTile(tile)) {
+		if (pDrawable != null && canPutExpiredTile(tile)) {
 			mTileCache.putTile(tile, pDrawable);
+			if (!(pDrawable instanceof ScaledTileDrawable)) {
+				forgetUnscalableTiles();
+			}
+		}
+	}
+
+	private boolean canPutExpiredTile(final MapTile pTile) {
+		final Drawable existing = mTileCache.getMapTile(pTile);
+		return existing == null || existing instanceof ScaledTileDrawable;
+	}
+
+	/**
+	 * A tile has been loaded, which the tiles that couldn't be scaled may now be scaled from.
+	 */
+	private void forgetUnscalableTiles() {
+		synchronized (mUnscalableTiles) {
+			mUnscalableTiles.clear();
 		}
 	}
 
@@ -191,6 +322,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	public void clearTileCache() {
 		mTileCache.clear();
+		forgetUnscalableTiles();
 	}
 
 	/**
@@ -212,6 +344,183 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		mUseDataConnection = pMode;
 	}
 
+	/**
+	 * Make a tile that isn't in the cache from a scaled region of its nearest cached ancestor or,
+	 * if there is none, from its cached descendants, to draw while the tile is loaded. The scaled
+	 * tile is put in the cache as a {@link ScaledTileDrawable}, so that it's made only once and
+	 * replaced by the tile when it's loaded. A tile that can't be scaled isn't tried again until
+	 * a tile is loaded.
+	 *
+	 * @return the scaled tile, or null if there isn't any tile to make it from
+	 */
+	public Drawable getScaledMapTile(final MapTile pTile) {
+		return getScaledMapTile(pTile.getKey());
+	}
+
+	/**
+	 * Same as {@link #getScaledMapTile(MapTile)}, by the key of the tile, which doesn't allocate
+	 * when the tile can't be scaled.
+	 */
+	public Drawable getScaledMapTile(final long pTileKey) {
+		synchronized (mUnscalableTiles) {
+			if (mUnscalableTiles.containsKey(pTileKey)) {
+				return null;
+			}
+		}
+		final int tileSize = getTileSource().getTileSizePixels();
+		Bitmap bitmap = null;
+		try {
+			bitmap = scaleAncestor(pTileKey, tileSize);
+			if (bitmap == null) {
+				bitmap = scaleDescendants(pTileKey, tileSize);
+			}
+		} catch (final OutOfMemoryError e) {
+			logger.error("OutOfMemoryError scaling tile: " + new MapTile(pTileKey));
+		}
+		if (bitmap == null) {
+			synchronized (mUnscalableTiles) {
+				if (mUnscalableTiles.size() >= SCALED_TILE_MAXIMUM_UNSCALABLE) {
+					mUnscalableTiles.clear();
+				}
+				mUnscalableTiles.put(pTileKey, Boolean.TRUE);
+			}
+			return null;
+		}
+		final MapTile tile = new MapTile(pTileKey);
+		if (DEBUGMODE) {
+			logger.debug("Created scaled tile: " + tile);
+		}
+		final ScaledTileDrawable drawable = new ScaledTileDrawable(bitmap);
+		putExpiredTileIntoCache(new MapTileRequestState(tile, new MapTileModuleProviderBase[0],
+				null), drawable);
+		return drawable;
+	}
+
+	private Bitmap scaleAncestor(final long pTileKey, final int pTileSizePx) {
+		final int zoomLevel = MapTile.getZoomLevel(pTileKey);
+		final int tileX = MapTile.getX(pTileKey);
+		final int tileY = MapTile.getY(pTileKey);
+		final int maximumDiff = Math.min(SCALED_TILE_MAXIMUM_ANCESTOR_DIFF, zoomLevel);
+		for (int diff = 1; diff <= maximumDiff; diff++) {
+			final Drawable ancestor = mTileCache.getMapTile(MapTile.getKey(zoomLevel - diff,
+					tileX >> diff, tileY >> diff));
+			if (ancestor == null) {
+				continue;
+			}
+			try {
+				final Bitmap ancestorBitmap = beginUsingDrawable(ancestor);
+				if (ancestorBitmap == null || ancestorBitmap.getWidth() >> diff == 0) {
+					continue;
+				}
+				final int size = ancestorBitmap.getWidth() >> diff;
+				final int mask = (1 << diff) - 1;
+				final int left = (tileX & mask) * size;
+				final int top = (tileY & mask) * size;
+				final Bitmap bitmap = obtainBitmap(pTileSizePx, getConfig(ancestorBitmap));
+				if (bitmap.hasAlpha()) {
+					// the bitmap of the pool still has the pixels of its previous tile
+					bitmap.eraseColor(Color.TRANSPARENT);
+				}
+				new Canvas(bitmap).drawBitmap(ancestorBitmap, new Rect(left, top, left + size, top
+						+ size), new Rect(0, 0, pTileSizePx, pTileSizePx), null);
+				return bitmap;
+			} finally {
+				finishUsingDrawable(ancestor);
+			}
+		}
+		return null;
+	}
+
+	private Bitmap scaleDescendants(final long pTileKey, final int pTileSizePx) {
+		final int zoomLevel = MapTile.getZoomLevel(pTileKey);
+		final int tileX = MapTile.getX(pTileKey);
+		final int tileY = MapTile.getY(pTileKey);
+		final int maximumDiff = Math.min(SCALED_TILE_MAXIMUM_DESCENDANT_DIFF,
+				MAXIMUM_ZOOMLEVEL - zoomLevel);
+		for (int diff = 1; diff <= maximumDiff; diff++) {
+			final int count = 1 << diff;
+			final int size = pTileSizePx >> diff;
+			Bitmap bitmap = null;
+			Canvas canvas = null;
+			for (int x = 0; x < count; x++) {
+				for (int y = 0; y < count; y++) {
+					final Drawable descendant = mTileCache.getMapTile(MapTile.getKey(zoomLevel
+							+ diff, (tileX << diff) + x, (tileY << diff) + y));
+					if (descendant == null) {
+						continue;
+					}
+					try {
+						final Bitmap descendantBitmap = beginUsingDrawable(descendant);
+						if (descendantBitmap == null) {
+							continue;
+						}
+						if (bitmap == null) {
+							final Bitmap.Config config = getConfig(descendantBitmap);
+							bitmap = obtainBitmap(pTileSizePx, config);
+							canvas = new Canvas(bitmap);
+							canvas.drawColor(config == Bitmap.Config.RGB_565 ? Color.LTGRAY
+									: Color.TRANSPARENT, PorterDuff.Mode.SRC);
+						}
+						canvas.drawBitmap(descendantBitmap, null, new Rect(x * size, y * size,
+								(x + 1) * size, (y + 1) * size), null);
+					} finally {
+						finishUsingDrawable(descendant);
+					}
+				}
+			}
+			if (bitmap != null) {
+				return bitmap;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get a bitmap for a scaled tile, from the pool if possible.
+	 */
+	private static Bitmap obtainBitmap(final int pTileSizePx, final Bitmap.Config pConfig) {
+		final Bitmap bitmap = BitmapPool.getInstance().obtainBitmap(pTileSizePx, pTileSizePx,
+				pConfig);
+		if (bitmap != null) {
+			return bitmap;
+		}
+		return Bitmap.createBitmap(pTileSizePx, pTileSizePx, pConfig);
+	}
+
+	/**
+	 * The configuration of a tile scaled from another one: without alpha unless it has some, as
+	 * the tiles of a transparent overlay.
+	 */
+	private static Bitmap.Config getConfig(final Bitmap pBitmap) {
+		return pBitmap.hasAlpha() ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+	}
+
+	/**
+	 * Get the bitmap of a cached tile, which mustn't be reused until
+	 * {@link #finishUsingDrawable(Drawable)} is called.
+	 *
+	 * @return the bitmap, or null if there is none
+	 */
+	private static Bitmap beginUsingDrawable(final Drawable pDrawable) {
+		if (pDrawable instanceof ReusableBitmapDrawable) {
+			final ReusableBitmapDrawable drawable = (ReusableBitmapDrawable) pDrawable;
+			drawable.beginUsingDrawable();
+			if (!drawable.isBitmapValid()) {
+				return null;
+			}
+		}
+		if (pDrawable instanceof BitmapDrawable) {
+			return ((BitmapDrawable) pDrawable).getBitmap();
+		}
+		return null;
+	}
+
+	private static void finishUsingDrawable(final Drawable pDrawable) {
+		if (pDrawable instanceof ReusableBitmapDrawable) {
+			((ReusableBitmapDrawable) pDrawable).finishUsingDrawable();
+		}
+	}
+
 	/**
 	 * Recreate the cache using scaled versions of the tiles currently in it
 	 * @param pNewZoomLevel the zoom level that we need now
@@ -293,12 +602,13 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 			while (!mNewTiles.isEmpty()) {
 				final MapTile tile = mNewTiles.keySet().iterator().next();
 				final Bitmap bitmap = mNewTiles.remove(tile);
-				final ExpirableBitmapDrawable drawable = new ExpirableBitmapDrawable(bitmap);
-				drawable.setState(new int[] { ExpirableBitmapDrawable.EXPIRED });
-				Drawable existingTile = mTileCache.getMapTile(tile);
-				if (existingTile == null || ExpirableBitmapDrawable.isDrawableExpired(existingTile))
+				final ScaledTileDrawable drawable = new ScaledTileDrawable(bitmap);
+				if (canPutExpiredTile(tile)) {
 					putExpiredTileIntoCache(new MapTileRequestState(tile,
 							new MapTileModuleProviderBase[0], null), drawable);
+				} else {
+					BitmapPool.getInstance().returnDrawableToPool(drawable);
+				}
 			}
 		}
 
@@ -313,24 +623,28 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		public void handleTile(final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
 			// get the correct fraction of the tile from cache and scale up
 
-			final MapTile oldTile = new MapTile(mOldZoomLevel, pTile.getX() >> mDiff, pTile.getY() >> mDiff);
-			final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
-
-			if (oldDrawable instanceof BitmapDrawable) {
-				final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
-				final int xx = (pX % (1 << mDiff)) * mTileSize_2;
-				final int yy = (pY % (1 << mDiff)) * mTileSize_2;
-				mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
-				mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
-				final Bitmap bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
-				final Canvas canvas = new Canvas(bitmap);
-				canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
-				if (DEBUGMODE) {
-					logger.debug("Created scaled tile: " + pTile);
-					mDebugPaint.setTextSize(40);
-					canvas.drawText("scaled", 50, 50, mDebugPaint);
+			final Drawable oldDrawable = mTileCache.getMapTile(MapTile.getKey(mOldZoomLevel,
+					pTile.getX() >> mDiff, pTile.getY() >> mDiff));
+
+			try {
+				final Bitmap oldBitmap = beginUsingDrawable(oldDrawable);
+				if (oldBitmap != null) {
+					final int xx = (pX % (1 << mDiff)) * mTileSize_2;
+					final int yy = (pY % (1 << mDiff)) * mTileSize_2;
+					mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
+					mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
+					final Bitmap bitmap = obtainBitmap(pTileSizePx, Bitmap.Config.RGB_565);
+					final Canvas canvas = new Canvas(bitmap);
+					canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
+					if (DEBUGMODE) {
+						logger.debug("Created scaled tile: " + pTile);
+						mDebugPaint.setTextSize(40);
+						canvas.drawText("scaled", 50, 50, mDebugPaint);
+					}
+					mNewTiles.put(pTile, bitmap);
 				}
-				mNewTiles.put(pTile, bitmap);
+			} finally {
+				finishUsingDrawable(oldDrawable);
 			}
 		}
 	}
@@ -355,24 +669,23 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 			Canvas canvas = null;
 			for(int x = 0; x < numTiles; x++) {
 				for(int y = 0; y < numTiles; y++) {
-					final MapTile oldTile = new MapTile(mOldZoomLevel, xx + x, yy + y);
-					final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
-					if (oldDrawable instanceof BitmapDrawable) {
-						final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
+					final Drawable oldDrawable = mTileCache.getMapTile(MapTile.getKey(
+							mOldZoomLevel, xx + x, yy + y));
+					try {
+						final Bitmap oldBitmap = beginUsingDrawable(oldDrawable);
 						if (oldBitmap != null) {
 							if (bitmap == null) {
-								bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
+								bitmap = obtainBitmap(pTileSizePx, Bitmap.Config.RGB_565);
 								canvas = new Canvas(bitmap);
 								canvas.drawColor(Color.LTGRAY);
 							}
 							mDestRect.set(
 									x * mTileSize_2, y * mTileSize_2,
 									(x + 1) * mTileSize_2, (y + 1) * mTileSize_2);
-							if (oldBitmap != null) {
-								canvas.drawBitmap(oldBitmap, null, mDestRect, null);
-								mTileCache.mCachedTiles.remove(oldBitmap);
-							}
+							canvas.drawBitmap(oldBitmap, null, mDestRect, null);
 						}
+					} finally {
+						finishUsingDrawable(oldDrawable);
 					}
 				}
 			}
@@ -1,5 +1,6 @@
 package org.osmdroid.tileprovider;
 
+import org.osmdroid.tileprovider.modules.IReadableFilesystemCache;
 import org.osmdroid.tileprovider.modules.INetworkAvailablityCheck;
 import org.osmdroid.tileprovider.modules.MapTileDownloader;
 import org.osmdroid.tileprovider.modules.MapTileFileArchiveProvider;
@@ -44,12 +45,29 @@ public class MapTileProviderBasic extends MapTileProviderArray implements IMapTi
 	 */
 	public MapTileProviderBasic(final IRegisterReceiver pRegisterReceiver,
 			final INetworkAvailablityCheck aNetworkAvailablityCheck, final ITileSource pTileSource) {
+		this(pRegisterReceiver, aNetworkAvailablityCheck, pTileSource, null);
+	}
+
+	/**
+	 * Creates a {@link MapTileProviderBasic} whose downloaded tiles are saved to, and read from,
+	 * the specified cache, for example a
+	 * {@link org.osmdroid.tileprovider.modules.SegmentedTileStore}.
+	 * 
+	 * @param pFilesystemCache
+	 *            the file system cache, or null to use a {@link TileWriter}
+	 */
+	public MapTileProviderBasic(final IRegisterReceiver pRegisterReceiver,
+			final INetworkAvailablityCheck aNetworkAvailablityCheck, final ITileSource pTileSource,
+			final IReadableFilesystemCache pFilesystemCache) {
 		super(pTileSource, pRegisterReceiver);
 
-		final TileWriter tileWriter = new TileWriter();
+		final IReadableFilesystemCache tileWriter = pFilesystemCache != null ? pFilesystemCache
+				: new TileWriter();
 
 		final MapTileFilesystemProvider fileSystemProvider = new MapTileFilesystemProvider(
-				pRegisterReceiver, pTileSource);
+				pRegisterReceiver, pTileSource, DEFAULT_MAXIMUM_CACHED_FILE_AGE,
+				NUMBER_OF_TILE_FILESYSTEM_THREADS, TILE_FILESYSTEM_MAXIMUM_QUEUE_SIZE,
+				tileWriter);
 		mTileProviderList.add(fileSystemProvider);
 
 		final MapTileFileArchiveProvider archiveProvider = new MapTileFileArchiveProvider(
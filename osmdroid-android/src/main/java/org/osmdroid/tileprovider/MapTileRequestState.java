@@ -6,12 +6,20 @@ import java.util.Queue;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
 
+import android.graphics.drawable.Drawable;
+
 public class MapTileRequestState {
 
 	private final Queue<MapTileModuleProviderBase> mProviderQueue;
 	private final MapTile mMapTile;
 	private final IMapTileProviderCallback mCallback;
 	private MapTileModuleProviderBase mCurrentProvider;
+	private volatile boolean mCancelled;
+	private volatile Drawable mExpiredDrawable;
+	private volatile boolean mRevalidated;
+	private volatile boolean mFailureTransient;
+	private volatile boolean mPrefetch;
+	private volatile long mQueueTimeNanos;
 
 	public MapTileRequestState(final MapTile mapTile,
 			final MapTileModuleProviderBase[] providers,
@@ -36,10 +44,88 @@ public class MapTileRequestState {
 
 	public MapTileModuleProviderBase getNextProvider() {
 		mCurrentProvider = mProviderQueue.poll();
+		mFailureTransient = false;
 		return mCurrentProvider;
 	}
 
 	public MapTileModuleProviderBase getCurrentProvider() {
 		return mCurrentProvider;
 	}
+
+	/**
+	 * Mark the request as no longer needed, typically because the tile left the viewport. Tile
+	 * providers stop working on a cancelled request as soon as they notice it.
+	 */
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	/**
+	 * Gets the expired tile found by a previous provider of the chain, which a later provider may
+	 * revalidate rather than load again.
+	 *
+	 * @return the expired tile, or null if none was found
+	 */
+	public Drawable getExpiredDrawable() {
+		return mExpiredDrawable;
+	}
+
+	public void setExpiredDrawable(final Drawable pExpiredDrawable) {
+		mExpiredDrawable = pExpiredDrawable;
+	}
+
+	/**
+	 * Mark the expired tile as still valid, as the tile source says it hasn't changed. The current
+	 * provider completes the request with the expired tile, which the callback caches as a tile that
+	 * isn't expired.
+	 */
+	public void setRevalidated() {
+		mRevalidated = true;
+	}
+
+	public boolean isRevalidated() {
+		return mRevalidated;
+	}
+
+	/**
+	 * Mark the failure of the current provider as one that may not happen again, such as a network
+	 * error, rather than the tile missing from the provider. The tile isn't remembered as missing.
+	 */
+	public void setFailureTransient() {
+		mFailureTransient = true;
+	}
+
+	public boolean isFailureTransient() {
+		return mFailureTransient;
+	}
+
+	/**
+	 * Mark the request as one for a tile that isn't drawn yet but is expected to come into view,
+	 * which tile providers load after the other ones.
+	 */
+	public void setPrefetch(final boolean pPrefetch) {
+		mPrefetch = pPrefetch;
+	}
+
+	public boolean isPrefetch() {
+		return mPrefetch;
+	}
+
+	/**
+	 * Set when the request is queued by a tile provider, to measure how long it waits there.
+	 *
+	 * @param pQueueTimeNanos
+	 *            the time given by {@link System#nanoTime()}
+	 */
+	public void setQueueTime(final long pQueueTimeNanos) {
+		mQueueTimeNanos = pQueueTimeNanos;
+	}
+
+	public long getQueueTime() {
+		return mQueueTimeNanos;
+	}
 }
@@ -0,0 +1,55 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Bitmap;
+
+/**
+ * An {@link ExpirableBitmapDrawable} whose bitmap is given to the {@link BitmapPool} when its tile
+ * is removed from the memory cache, so that another tile is decoded into it.
+ * <p>
+ * The bitmap is only given back while nobody draws it: draw the drawable between
+ * {@link #beginUsingDrawable()} and {@link #finishUsingDrawable()}, and only if
+ * {@link #isBitmapValid()}.
+ */
+public class ReusableBitmapDrawable extends ExpirableBitmapDrawable {
+
+	private boolean mBitmapRecycled = false;
+	private int mUsageCount = 0;
+
+	public ReusableBitmapDrawable(final Bitmap pBitmap) {
+		super(pBitmap);
+	}
+
+	/**
+	 * Prevent the bitmap from being reused until {@link #finishUsingDrawable()} is called.
+	 */
+	public synchronized void beginUsingDrawable() {
+		mUsageCount++;
+	}
+
+	public synchronized void finishUsingDrawable() {
+		mUsageCount--;
+		if (mUsageCount < 0) {
+			throw new IllegalStateException("Unbalanced finishUsingDrawable()");
+		}
+	}
+
+	/**
+	 * @return false if the bitmap has been given to the pool, and the drawable must not be drawn
+	 */
+	public synchronized boolean isBitmapValid() {
+		return !mBitmapRecycled;
+	}
+
+	/**
+	 * Give up the bitmap, unless the drawable is being used.
+	 *
+	 * @return the bitmap, which the drawable won't draw any more, or null if it's being used
+	 */
+	synchronized Bitmap tryRecycle() {
+		if (mUsageCount > 0 || mBitmapRecycled) {
+			return null;
+		}
+		mBitmapRecycled = true;
+		return getBitmap();
+	}
+}
@@ -0,0 +1,16 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Bitmap;
+
+/**
+ * A tile scaled from a cached tile of another zoom level, drawn while the tile is loaded. It's
+ * always expired, and unlike an expired tile loaded from a tile provider it's replaced in the
+ * memory cache by any tile loaded for it, expired or not.
+ */
+public class ScaledTileDrawable extends ReusableBitmapDrawable {
+
+	public ScaledTileDrawable(final Bitmap pBitmap) {
+		super(pBitmap);
+		setState(new int[] { EXPIRED });
+	}
+}
@@ -48,6 +48,24 @@ public interface OpenStreetMapTileProviderConstants {
 
 	public static final int NUMBER_OF_TILE_FILESYSTEM_THREADS = 8;
 
+	/**
+	 * Maximum number of kept-alive connections to the tile servers, across all of the hosts of a
+	 * tile source.
+	 */
+	public static final int TILE_DOWNLOAD_MAXIMUM_CONNECTIONS = 16;
+
+	/** Timeout, in milliseconds, to connect to a tile server. */
+	public static final int TILE_DOWNLOAD_CONNECT_TIMEOUT_MILLISECONDS = 15 * 1000;
+
+	/** Timeout, in milliseconds, while waiting for data from a tile server. */
+	public static final int TILE_DOWNLOAD_READ_TIMEOUT_MILLISECONDS = 30 * 1000;
+
+	/**
+	 * Percentile of the download latency beyond which a hedged download asks another mirror of the
+	 * tile source for the tile, when hedging is enabled.
+	 */
+	public static final double TILE_DOWNLOAD_HEDGE_PERCENTILE = 0.95;
+
 	public static final long ONE_SECOND = 1000;
 	public static final long ONE_MINUTE = ONE_SECOND * 60;
 	public static final long ONE_HOUR = ONE_MINUTE * 60;
@@ -59,6 +77,57 @@ public interface OpenStreetMapTileProviderConstants {
 	public static final int TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE = 40;
 	public static final int TILE_FILESYSTEM_MAXIMUM_QUEUE_SIZE = 40;
 
+	/**
+	 * Maximum number of tiles read and waiting to be decoded, beyond which the tile loaders decode
+	 * the tiles they read themselves.
+	 */
+	public static final int TILE_DECODE_MAXIMUM_QUEUE_SIZE = 16;
+
+	/**
+	 * Maximum number of pending tiles read from the archives at once, about a row of tiles
+	 * revealed by panning.
+	 */
+	public static final int TILE_ARCHIVE_MAXIMUM_BATCH_SIZE = 8;
+
+	/**
+	 * Number of tiles around the viewport whose requests are kept when the map moves. Requests for
+	 * tiles further away are cancelled.
+	 */
+	public static final int TILE_REQUEST_VIEWPORT_MARGIN = 1;
+
+	/** Maximum number of tiles requested ahead of a fling or a zoom, before they come into view. */
+	public static final int TILE_PREFETCH_MAXIMUM_TILES = 24;
+
+	/**
+	 * Number of tiles an AreaDownloader downloads at the same time, as many as the download
+	 * threads.
+	 */
+	public static final int AREA_DOWNLOAD_MAXIMUM_REQUESTS = NUMBER_OF_TILE_DOWNLOAD_THREADS;
+
+	/** Number of times an AreaDownloader tries again a tile whose download failed. */
+	public static final int AREA_DOWNLOAD_MAXIMUM_RETRIES = 2;
+
+	/** Number of tiles an AreaDownloader downloads between two saves of its journal. */
+	public static final int AREA_DOWNLOAD_JOURNAL_INTERVAL = 50;
+
+	/** Size of a tile used to estimate the size of an area to download, about a Mapnik tile. */
+	public static final long AREA_DOWNLOAD_AVERAGE_TILE_SIZE_BYTES = 15 * 1024;
+
+	/** Maximum number of tiles remembered as missing from the tile providers. */
+	public static final int MISSING_TILE_CACHE_SIZE = 1000;
+
+	/** How long a tile missing from a tile provider isn't looked for again, by default. */
+	public static final long MISSING_TILE_TIME_TO_LIVE_MILLISECONDS = ONE_MINUTE;
+
+	/** How long a tile missing from the archives isn't looked for again, unless media is mounted. */
+	public static final long MISSING_ARCHIVE_TILE_TIME_TO_LIVE_MILLISECONDS = 30 * ONE_MINUTE;
+
+	/** How long a tile that the tile server doesn't have isn't downloaded again. */
+	public static final long MISSING_DOWNLOAD_TILE_TIME_TO_LIVE_MILLISECONDS = 10 * ONE_MINUTE;
+
+	/** Maximum amount of bitmap bytes kept for reuse by the BitmapPool, 16 tiles of 256x256. */
+	public static final long BITMAP_POOL_MAXIMUM_SIZE_BYTES = 16 * 256 * 256 * 4;
+
 	/** 30 days */
 	public static final long TILE_EXPIRY_TIME_MILLISECONDS = 1000L * 60 * 60 * 24 * 30;
 
@@ -0,0 +1,193 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.MapTile;
+
+/**
+ * The tiles that an {@link IArchiveFile} may contain, so that the archives which can't contain a
+ * tile aren't queried for it.
+ * <p>
+ * The coverage is made of the bounds of the tiles of each zoom level and, when the tiles of the
+ * archive are known one by one, of a compact membership filter. The filter may say that the
+ * archive contains a tile it doesn't contain, but never the opposite.
+ */
+public class ArchiveCoverage {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Tile coordinates are ints, so there can't be more zoom levels. */
+	private static final int ZOOM_LEVELS = 32;
+
+	private static final int FILTER_BITS_PER_TILE = 8;
+	private static final int FILTER_HASHES = 3;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int[] mXMin = new int[ZOOM_LEVELS];
+	private final int[] mXMax = new int[ZOOM_LEVELS];
+	private final int[] mYMin = new int[ZOOM_LEVELS];
+	private final int[] mYMax = new int[ZOOM_LEVELS];
+
+	/** membership filter of the tiles, null if not all the tiles are known */
+	private long[] mFilter;
+	private int mFilterMask;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Creates an empty coverage without membership filter, to which bounds are added.
+	 */
+	public ArchiveCoverage() {
+		for (int zoom = 0; zoom < ZOOM_LEVELS; zoom++) {
+			mXMin[zoom] = Integer.MAX_VALUE;
+			mXMax[zoom] = Integer.MIN_VALUE;
+			mYMin[zoom] = Integer.MAX_VALUE;
+			mYMax[zoom] = Integer.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Creates an empty coverage with a membership filter, to which tiles are added one by one.
+	 *
+	 * @param pExpectedTiles
+	 *            the number of tiles that will be added, to size the filter
+	 */
+	public ArchiveCoverage(final int pExpectedTiles) {
+		this();
+		int bits = 64;
+		while (bits < pExpectedTiles * FILTER_BITS_PER_TILE && bits < 1 << 30) {
+			bits <<= 1;
+		}
+		mFilter = new long[bits >>> 6];
+		mFilterMask = bits - 1;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Add a tile of the archive.
+	 */
+	public void add(final int pZoom, final int pX, final int pY) {
+		if (pZoom < 0 || pZoom >= ZOOM_LEVELS) {
+			return;
+		}
+		extend(pZoom, pX, pX, pY, pY);
+		if (mFilter != null) {
+			long hash = hash(pZoom, pX, pY);
+			for (int i = 0; i < FILTER_HASHES; i++) {
+				final int bit = (int) hash & mFilterMask;
+				mFilter[bit >>> 6] |= 1L << bit;
+				hash >>>= 21;
+			}
+		}
+	}
+
+	/**
+	 * Add a range of tiles of the archive, which may not contain all of them. The membership
+	 * filter can't be used any more.
+	 */
+	public void addBounds(final int pZoom, final int pXMin, final int pXMax, final int pYMin,
+			final int pYMax) {
+		if (pZoom < 0 || pZoom >= ZOOM_LEVELS) {
+			return;
+		}
+		extend(pZoom, pXMin, pXMax, pYMin, pYMax);
+		mFilter = null;
+	}
+
+	/**
+	 * Add the tiles covering a geographic area for a range of zoom levels, with a margin of one
+	 * tile since the bounds given by archives are often rounded.
+	 *
+	 * @param pWest
+	 *            longitude of the west edge, in degrees
+	 * @param pSouth
+	 *            latitude of the south edge, in degrees
+	 * @param pEast
+	 *            longitude of the east edge, in degrees
+	 * @param pNorth
+	 *            latitude of the north edge, in degrees
+	 */
+	public void addBounds(final int pMinZoom, final int pMaxZoom, final double pWest,
+			final double pSouth, final double pEast, final double pNorth) {
+		for (int zoom = Math.max(pMinZoom, 0); zoom <= Math.min(pMaxZoom, ZOOM_LEVELS - 1); zoom++) {
+			addBounds(zoom, getTileX(pWest, zoom) - 1, getTileX(pEast, zoom) + 1,
+					getTileY(pNorth, zoom) - 1, getTileY(pSouth, zoom) + 1);
+		}
+	}
+
+	/**
+	 * Add the whole world for a range of zoom levels.
+	 */
+	public void addZoomLevels(final int pMinZoom, final int pMaxZoom) {
+		for (int zoom = Math.max(pMinZoom, 0); zoom <= Math.min(pMaxZoom, ZOOM_LEVELS - 1); zoom++) {
+			addBounds(zoom, 0, (int) ((1L << zoom) - 1), 0, (int) ((1L << zoom) - 1));
+		}
+	}
+
+	public boolean mayContain(final MapTile pTile) {
+		return mayContain(pTile.getZoomLevel(), pTile.getX(), pTile.getY());
+	}
+
+	/**
+	 * Whether the archive may contain the tile.
+	 *
+	 * @return false if the archive doesn't contain the tile, true if it may
+	 */
+	public boolean mayContain(final int pZoom, final int pX, final int pY) {
+		if (pZoom < 0 || pZoom >= ZOOM_LEVELS) {
+			return false;
+		}
+		if (pX < mXMin[pZoom] || pX > mXMax[pZoom] || pY < mYMin[pZoom] || pY > mYMax[pZoom]) {
+			return false;
+		}
+		final long[] filter = mFilter;
+		if (filter != null) {
+			long hash = hash(pZoom, pX, pY);
+			for (int i = 0; i < FILTER_HASHES; i++) {
+				final int bit = (int) hash & mFilterMask;
+				if ((filter[bit >>> 6] & 1L << bit) == 0) {
+					return false;
+				}
+				hash >>>= 21;
+			}
+		}
+		return true;
+	}
+
+	private void extend(final int pZoom, final int pXMin, final int pXMax, final int pYMin,
+			final int pYMax) {
+		mXMin[pZoom] = Math.min(mXMin[pZoom], pXMin);
+		mXMax[pZoom] = Math.max(mXMax[pZoom], pXMax);
+		mYMin[pZoom] = Math.min(mYMin[pZoom], pYMin);
+		mYMax[pZoom] = Math.max(mYMax[pZoom], pYMax);
+	}
+
+	private static long hash(final int pZoom, final int pX, final int pY) {
+		// mix of the tile coordinates, whose bits are used by groups of 21
+		long hash = ((long) pZoom << 58) ^ ((long) pX << 29) ^ pY;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static int getTileX(final double pLongitude, final int pZoom) {
+		return (int) Math.floor((pLongitude + 180) / 360 * (1L << pZoom));
+	}
+
+	private static int getTileY(final double pLatitude, final int pZoom) {
+		final double latitude = Math.toRadians(Math.max(-85.0511, Math.min(85.0511, pLatitude)));
+		return (int) Math.floor((1 - Math.log(Math.tan(latitude) + 1 / Math.cos(latitude))
+				/ Math.PI) / 2 * (1L << pZoom));
+	}
+}
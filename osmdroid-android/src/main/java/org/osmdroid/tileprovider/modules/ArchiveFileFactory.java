@@ -23,6 +23,9 @@ public class ArchiveFileFactory {
 				return ZipFileArchive.getZipFileArchive(pFile);
 			} catch (final IOException e) {
 				logger.error("Error opening ZIP file", e);
+			} catch (final RuntimeException e) {
+				// ZipFile throws IllegalArgumentException for entry names it can't decode
+				logger.error("Error opening ZIP file", e);
 			}
 		}
 
@@ -0,0 +1,255 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.TreeSet;
+
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the progress of an {@link AreaDownloader}, so that the download of an area can be
+ * resumed after the process died.
+ * <p>
+ * The tiles of the area are numbered in the order they are downloaded. The journal remembers the
+ * number of the next tile to download and the numbers of the tiles taken before it that aren't
+ * done yet, because they were being downloaded or failed. It's small and rewritten as a whole
+ * by {@link #save()}.
+ */
+public class AreaDownloadJournal {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(AreaDownloadJournal.class);
+
+	private static final String SOURCE = "SOURCE";
+	private static final String AREA = "AREA";
+	private static final String NEXT = "NEXT";
+	private static final String PENDING = "PENDING";
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFile;
+
+	private String mTileSourceName;
+	private final int[] mArea = new int[6];
+
+	private int mNextIndex;
+	private final TreeSet<Integer> mPendingIndices = new TreeSet<Integer>();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public AreaDownloadJournal(final File pFile) {
+		mFile = pFile;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public File getFile() {
+		return mFile;
+	}
+
+	public synchronized String getTileSourceName() {
+		return mTileSourceName;
+	}
+
+	/**
+	 * @return the bounds of the area in microdegrees and its zoom levels: north, east, south, west,
+	 *         minimum and maximum zoom levels
+	 */
+	public synchronized int[] getArea() {
+		return mArea.clone();
+	}
+
+	/**
+	 * @return the number of the next tile to download
+	 */
+	public synchronized int getNextIndex() {
+		return mNextIndex;
+	}
+
+	/**
+	 * @return the number of tiles before the next one that aren't done
+	 */
+	public synchronized int getPendingCount() {
+		return mPendingIndices.size();
+	}
+
+	/**
+	 * @return the numbers of the tiles before the next one that aren't done, in ascending order
+	 */
+	public synchronized int[] getPendingIndices() {
+		final int[] indices = new int[mPendingIndices.size()];
+		int i = 0;
+		for (final Integer index : mPendingIndices) {
+			indices[i++] = index;
+		}
+		return indices;
+	}
+
+	/**
+	 * @return the number of tiles done
+	 */
+	public synchronized int getDoneCount() {
+		return mNextIndex - mPendingIndices.size();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Start the journal of the download of an area from scratch.
+	 */
+	public synchronized void reset(final String pTileSourceName, final int pNorthE6,
+			final int pEastE6, final int pSouthE6, final int pWestE6, final int pMinZoomLevel,
+			final int pMaxZoomLevel) {
+		mTileSourceName = pTileSourceName;
+		mArea[0] = pNorthE6;
+		mArea[1] = pEastE6;
+		mArea[2] = pSouthE6;
+		mArea[3] = pWestE6;
+		mArea[4] = pMinZoomLevel;
+		mArea[5] = pMaxZoomLevel;
+		mNextIndex = 0;
+		mPendingIndices.clear();
+	}
+
+	/**
+	 * Whether the journal is the one of the download of this area.
+	 */
+	public synchronized boolean matches(final String pTileSourceName, final int pNorthE6,
+			final int pEastE6, final int pSouthE6, final int pWestE6, final int pMinZoomLevel,
+			final int pMaxZoomLevel) {
+		return pTileSourceName.equals(mTileSourceName) && mArea[0] == pNorthE6
+				&& mArea[1] == pEastE6 && mArea[2] == pSouthE6 && mArea[3] == pWestE6
+				&& mArea[4] == pMinZoomLevel && mArea[5] == pMaxZoomLevel;
+	}
+
+	/**
+	 * Take the next tile to download. It stays pending until {@link #done(int)} is called.
+	 *
+	 * @param pTileCount
+	 *            the number of tiles of the area
+	 * @return the number of the tile, or -1 if all the tiles have been taken
+	 */
+	public synchronized int takeNext(final int pTileCount) {
+		if (mNextIndex >= pTileCount) {
+			return -1;
+		}
+		mPendingIndices.add(mNextIndex);
+		return mNextIndex++;
+	}
+
+	/**
+	 * Record that a tile is done, whether it has been downloaded or the server doesn't have it.
+	 */
+	public synchronized void done(final int pIndex) {
+		mPendingIndices.remove(pIndex);
+	}
+
+	/**
+	 * Read the journal file.
+	 *
+	 * @return false if there is no journal file or if it isn't valid
+	 */
+	public synchronized boolean load() throws IOException {
+		if (!mFile.exists()) {
+			return false;
+		}
+		mTileSourceName = null;
+		mNextIndex = -1;
+		mPendingIndices.clear();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(mFile), "UTF-8"), StreamUtils.IO_BUFFER_SIZE);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int separator = line.indexOf(' ');
+				if (separator < 0) {
+					continue;
+				}
+				final String key = line.substring(0, separator);
+				final String value = line.substring(separator + 1);
+				if (SOURCE.equals(key)) {
+					mTileSourceName = value;
+				} else if (AREA.equals(key)) {
+					final String[] values = value.split(" ");
+					if (values.length != mArea.length) {
+						return false;
+					}
+					for (int i = 0; i < mArea.length; i++) {
+						mArea[i] = Integer.parseInt(values[i]);
+					}
+				} else if (NEXT.equals(key)) {
+					mNextIndex = Integer.parseInt(value);
+				} else if (PENDING.equals(key)) {
+					mPendingIndices.add(Integer.valueOf(value));
+				}
+			}
+		} catch (final NumberFormatException e) {
+			logger.warn("Invalid area download journal: " + mFile);
+			return false;
+		} finally {
+			StreamUtils.closeStream(reader);
+		}
+		return mTileSourceName != null && mNextIndex >= 0;
+	}
+
+	/**
+	 * Write the journal file, replacing it at once so that it's never left half written.
+	 */
+	public synchronized void save() {
+		final File parent = mFile.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		final File tmpFile = new File(mFile.getPath() + ".tmp");
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+					"UTF-8"), StreamUtils.IO_BUFFER_SIZE);
+			writer.write(SOURCE + " " + mTileSourceName + "\n");
+			writer.write(AREA);
+			for (final int value : mArea) {
+				writer.write(" " + value);
+			}
+			writer.write("\n" + NEXT + " " + mNextIndex + "\n");
+			for (final Integer index : mPendingIndices) {
+				writer.write(PENDING + " " + index + "\n");
+			}
+			writer.close();
+			writer = null;
+			if (!tmpFile.renameTo(mFile)) {
+				logger.warn("Can't rename " + tmpFile + " to " + mFile);
+			}
+		} catch (final IOException e) {
+			logger.warn("Error writing area download journal: " + e);
+		} finally {
+			StreamUtils.closeStream(writer);
+		}
+	}
+
+	/**
+	 * Delete the journal file, once the area has been downloaded.
+	 */
+	public synchronized void delete() {
+		mFile.delete();
+	}
+}
@@ -0,0 +1,524 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import microsoft.mappoint.TileSystem;
+
+import org.osmdroid.tileprovider.IMapTileProviderCallback;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.BoundingBoxE6;
+import org.osmdroid.util.MyMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Point;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Downloads all the tiles of an area, between two zoom levels, into a file system cache so that
+ * they are available offline. The tiles go through a {@link MapTileDownloader} of its own, a few at
+ * a time, which saves them without decoding them, and the tiles that are still fresh in the cache
+ * are skipped.
+ * <p>
+ * The progress is saved in an {@link AreaDownloadJournal}, so that a download that has been
+ * stopped, or whose process died, resumes where it was when it's started again with the same
+ * journal file. See {@link #fromJournal}.
+ */
+public class AreaDownloader implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(AreaDownloader.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final ITileSource mTileSource;
+	private final IReadableFilesystemCache mFilesystemCache;
+	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
+	private final long mMaximumCachedFileAge;
+
+	private final BoundingBoxE6 mBoundingBox;
+	private final int mMinZoomLevel;
+
+	/** the tiles of the area at each zoom level */
+	private final MapTileArea[] mAreas;
+	private final int mTileCount;
+
+	private final AreaDownloadJournal mJournal;
+
+	private OnAreaDownloadListener mListener;
+	private MapTileDownloader mDownloader;
+
+	private boolean mRunning;
+	private int mRequestCount;
+	private int mFailedCount;
+	private int mUnsavedCount;
+	private final LinkedList<Integer> mRetryIndices = new LinkedList<Integer>();
+	private final HashMap<Integer, Integer> mRetryCounts = new HashMap<Integer, Integer>();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pJournalFile
+	 *            the file to keep track of the progress in
+	 */
+	public AreaDownloader(final ITileSource pTileSource,
+			final IReadableFilesystemCache pFilesystemCache,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck,
+			final BoundingBoxE6 pBoundingBox, final int pMinZoomLevel, final int pMaxZoomLevel,
+			final File pJournalFile) {
+		this(pTileSource, pFilesystemCache, pNetworkAvailablityCheck, pBoundingBox,
+				pMinZoomLevel, pMaxZoomLevel, new AreaDownloadJournal(pJournalFile));
+	}
+
+	private AreaDownloader(final ITileSource pTileSource,
+			final IReadableFilesystemCache pFilesystemCache,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck,
+			final BoundingBoxE6 pBoundingBox, final int pMinZoomLevel, final int pMaxZoomLevel,
+			final AreaDownloadJournal pJournal) {
+		mTileSource = pTileSource;
+		mFilesystemCache = pFilesystemCache;
+		mNetworkAvailablityCheck = pNetworkAvailablityCheck;
+		mMaximumCachedFileAge = DEFAULT_MAXIMUM_CACHED_FILE_AGE;
+		mBoundingBox = pBoundingBox;
+		mMinZoomLevel = Math.max(pMinZoomLevel, pTileSource.getMinimumZoomLevel());
+		final int maxZoomLevel = Math.min(pMaxZoomLevel, pTileSource.getMaximumZoomLevel());
+		mJournal = pJournal;
+
+		mAreas = new MapTileArea[Math.max(0, maxZoomLevel - mMinZoomLevel + 1)];
+		final Point upperLeft = new Point();
+		final Point lowerRight = new Point();
+		long tileCount = 0;
+		for (int i = 0; i < mAreas.length; i++) {
+			final int zoomLevel = mMinZoomLevel + i;
+			TileSystem.LatLongToPixelXY(pBoundingBox.getLatNorthE6() / 1E6,
+					pBoundingBox.getLonWestE6() / 1E6, zoomLevel, upperLeft);
+			TileSystem.PixelXYToTileXY(upperLeft.x, upperLeft.y, upperLeft);
+			TileSystem.LatLongToPixelXY(pBoundingBox.getLatSouthE6() / 1E6,
+					pBoundingBox.getLonEastE6() / 1E6, zoomLevel, lowerRight);
+			TileSystem.PixelXYToTileXY(lowerRight.x, lowerRight.y, lowerRight);
+			if (lowerRight.x < upperLeft.x) {
+				// the area crosses the 180th meridian
+				lowerRight.x += 1 << zoomLevel;
+			}
+			mAreas[i] = new MapTileArea(zoomLevel, upperLeft.x, upperLeft.y, lowerRight.x,
+					lowerRight.y);
+			tileCount += getTileCount(mAreas[i]);
+		}
+		if (tileCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many tiles: " + tileCount);
+		}
+		mTileCount = (int) tileCount;
+	}
+
+	/**
+	 * Get the download of an area to resume it, after the process died for example.
+	 *
+	 * @param pJournalFile
+	 *            the journal file of the download
+	 * @param pTileSource
+	 *            the tile source of the download
+	 * @return the download, or null if there is no journal of a download from that tile source
+	 */
+	public static AreaDownloader fromJournal(final File pJournalFile,
+			final ITileSource pTileSource, final IReadableFilesystemCache pFilesystemCache,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck) throws IOException {
+		final AreaDownloadJournal journal = new AreaDownloadJournal(pJournalFile);
+		if (!journal.load() || !pTileSource.name().equals(journal.getTileSourceName())) {
+			return null;
+		}
+		final int[] area = journal.getArea();
+		return new AreaDownloader(pTileSource, pFilesystemCache, pNetworkAvailablityCheck,
+				new BoundingBoxE6(area[0], area[1], area[2], area[3]), area[4], area[5], journal);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public BoundingBoxE6 getBoundingBox() {
+		return mBoundingBox;
+	}
+
+	/**
+	 * @return the number of tiles of the area, over all of its zoom levels
+	 */
+	public int getTileCount() {
+		return mTileCount;
+	}
+
+	/**
+	 * @return a rough estimate of the size of the tiles of the area, for a tile source whose tiles
+	 *         have about the size of {@link #AREA_DOWNLOAD_AVERAGE_TILE_SIZE_BYTES}
+	 */
+	public long getEstimatedSizeBytes() {
+		return mTileCount * AREA_DOWNLOAD_AVERAGE_TILE_SIZE_BYTES;
+	}
+
+	/**
+	 * @return the number of tiles downloaded, found fresh in the cache or missing from the server
+	 */
+	public int getDoneCount() {
+		return mJournal.getDoneCount();
+	}
+
+	/**
+	 * @return the number of tiles that couldn't be downloaded since the download was started
+	 */
+	public synchronized int getFailedCount() {
+		return mFailedCount;
+	}
+
+	public synchronized boolean isRunning() {
+		return mRunning;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Start or resume the download in the background.
+	 *
+	 * @param pListener
+	 *            told about the progress of the download from the download threads, or null
+	 */
+	public synchronized void start(final OnAreaDownloadListener pListener) {
+		if (mRunning) {
+			return;
+		}
+		final int[] area = new int[] { mBoundingBox.getLatNorthE6(),
+				mBoundingBox.getLonEastE6(), mBoundingBox.getLatSouthE6(),
+				mBoundingBox.getLonWestE6(), mMinZoomLevel, mMinZoomLevel + mAreas.length - 1 };
+		boolean resumed = false;
+		try {
+			resumed = mJournal.load()
+					&& mJournal.matches(mTileSource.name(), area[0], area[1], area[2], area[3],
+							area[4], area[5]);
+		} catch (final IOException e) {
+			logger.warn("Error reading area download journal: " + e);
+		}
+		if (resumed) {
+			if (DEBUGMODE) {
+				logger.debug("Resuming area download at " + mJournal.getDoneCount() + "/"
+						+ mTileCount);
+			}
+		} else {
+			mJournal.reset(mTileSource.name(), area[0], area[1], area[2], area[3], area[4],
+					area[5]);
+		}
+		// the tiles that were pending are tried again first
+		mRetryIndices.clear();
+		for (final int index : mJournal.getPendingIndices()) {
+			mRetryIndices.add(index);
+		}
+		mRetryCounts.clear();
+		mRequestCount = 0;
+		mFailedCount = 0;
+		mListener = pListener;
+		mDownloader = new MapTileDownloader(mTileSource, mFilesystemCache,
+				mNetworkAvailablityCheck, AREA_DOWNLOAD_MAXIMUM_REQUESTS,
+				AREA_DOWNLOAD_MAXIMUM_REQUESTS);
+		mDownloader.setStoreOnly(true);
+		mRunning = true;
+		new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, "area downloader").newThread(
+				new Dispatcher(mDownloader)).start();
+	}
+
+	/**
+	 * Stop the download. The tiles being downloaded are dropped, the journal keeps them to resume
+	 * the download later.
+	 */
+	public void stop() {
+		final MapTileDownloader downloader;
+		synchronized (this) {
+			if (!mRunning) {
+				return;
+			}
+			mRunning = false;
+			downloader = mDownloader;
+			notifyAll();
+		}
+		downloader.detach();
+		mJournal.save();
+	}
+
+	/**
+	 * The download is over, whether all the tiles have been downloaded or some of them failed.
+	 */
+	private void finish(final MapTileDownloader pDownloader) {
+		pDownloader.detach();
+		if (mJournal.getPendingCount() == 0) {
+			mJournal.delete();
+		} else {
+			// so that the failed tiles are tried again when the download is resumed
+			mJournal.save();
+		}
+		if (mListener != null) {
+			mListener.onAreaDownloadFinished(this);
+		}
+	}
+
+	/**
+	 * Take the next tile to download, the ones to try again first.
+	 *
+	 * @return the number of the tile, or -1 if there are none left
+	 */
+	private int takeNextIndex() {
+		if (!mRetryIndices.isEmpty()) {
+			return mRetryIndices.removeFirst();
+		}
+		return mJournal.takeNext(mTileCount);
+	}
+
+	private void tileDone(final MapTileDownloader pDownloader, final int pIndex,
+			final boolean pFailed) {
+		final boolean save;
+		synchronized (this) {
+			mJournal.done(pIndex);
+			if (pDownloader != mDownloader) {
+				// done by a download that has been stopped
+				return;
+			}
+			if (pFailed) {
+				mFailedCount++;
+			}
+			mRequestCount--;
+			save = ++mUnsavedCount >= AREA_DOWNLOAD_JOURNAL_INTERVAL;
+			if (save) {
+				mUnsavedCount = 0;
+			}
+			notifyAll();
+		}
+		if (save) {
+			mJournal.save();
+		}
+		notifyProgress();
+	}
+
+	private void tileFailedTransient(final MapTileDownloader pDownloader, final int pIndex) {
+		synchronized (this) {
+			if (pDownloader != mDownloader) {
+				return;
+			}
+			final Integer retryCount = mRetryCounts.get(pIndex);
+			final int retries = retryCount == null ? 0 : retryCount;
+			if (retries < AREA_DOWNLOAD_MAXIMUM_RETRIES) {
+				mRetryCounts.put(pIndex, retries + 1);
+				mRetryIndices.addLast(pIndex);
+			} else {
+				// the tile stays pending in the journal
+				mRetryCounts.remove(pIndex);
+				mFailedCount++;
+			}
+			mRequestCount--;
+			notifyAll();
+		}
+		notifyProgress();
+	}
+
+	private void notifyProgress() {
+		final OnAreaDownloadListener listener = mListener;
+		if (listener != null) {
+			listener.onAreaDownloadProgress(this, getDoneCount(), getFailedCount(), mTileCount);
+		}
+	}
+
+	/**
+	 * Whether the tile is in the cache and hasn't expired.
+	 */
+	private boolean isFresh(final MapTile pTile) {
+		final long lastModified = mFilesystemCache.getLastModified(mTileSource, pTile);
+		if (lastModified == 0) {
+			return false;
+		}
+		final long now = System.currentTimeMillis();
+		if (lastModified >= now - mMaximumCachedFileAge) {
+			return true;
+		}
+		final CacheValidators validators = mFilesystemCache.getValidators(mTileSource, pTile);
+		return validators != null && validators.getExpires() >= now;
+	}
+
+	private boolean isDispatching(final MapTileDownloader pDownloader) {
+		return mRunning && mDownloader == pDownloader;
+	}
+
+	/**
+	 * Get the tile of the given number. The tiles are numbered by zoom level, then row by row.
+	 */
+	private MapTile getMapTile(int pIndex) {
+		for (final MapTileArea area : mAreas) {
+			final int count = (int) getTileCount(area);
+			if (pIndex < count) {
+				final int width = area.getRight() - area.getLeft() + 1;
+				return new MapTile(area.getZoomLevel(), MyMath.mod(area.getLeft() + pIndex
+						% width, 1 << area.getZoomLevel()), area.getTop() + pIndex / width);
+			}
+			pIndex -= count;
+		}
+		throw new IllegalArgumentException("No tile " + pIndex);
+	}
+
+	/**
+	 * Get the number of a tile of the area, the reverse of {@link #getMapTile(int)}.
+	 */
+	private int getIndex(final MapTile pTile) {
+		int index = 0;
+		for (final MapTileArea area : mAreas) {
+			if (area.getZoomLevel() == pTile.getZoomLevel()) {
+				final int width = area.getRight() - area.getLeft() + 1;
+				return index + (pTile.getY() - area.getTop()) * width
+						+ MyMath.mod(pTile.getX() - area.getLeft(), 1 << area.getZoomLevel());
+			}
+			index += (int) getTileCount(area);
+		}
+		throw new IllegalArgumentException("Not in the area: " + pTile);
+	}
+
+	private static long getTileCount(final MapTileArea pArea) {
+		return (long) (pArea.getRight() - pArea.getLeft() + 1)
+				* (pArea.getBottom() - pArea.getTop() + 1);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * Told about the progress of the download of an area, from the download threads.
+	 */
+	public static interface OnAreaDownloadListener {
+
+		/**
+		 * A tile is done or failed.
+		 *
+		 * @param pDone
+		 *            the number of tiles done, including those done before the download resumed
+		 * @param pFailed
+		 *            the number of tiles that failed since the download started
+		 * @param pTotal
+		 *            the number of tiles of the area
+		 */
+		void onAreaDownloadProgress(AreaDownloader pDownloader, int pDone, int pFailed, int pTotal);
+
+		/**
+		 * There are no more tiles to download. Those that failed are tried again if the download
+		 * is started again.
+		 */
+		void onAreaDownloadFinished(AreaDownloader pDownloader);
+	}
+
+	/**
+	 * Gives the tiles to the downloader, no more at once than it has threads, so that its queue
+	 * never drops any of them.
+	 */
+	private class Dispatcher implements Runnable {
+
+		private final MapTileDownloader mDispatchedDownloader;
+		private final IMapTileProviderCallback mCallback;
+
+		Dispatcher(final MapTileDownloader pDownloader) {
+			mDispatchedDownloader = pDownloader;
+			mCallback = new DownloadCallback(pDownloader);
+		}
+
+		@Override
+		public void run() {
+			final MapTileModuleProviderBase[] providers = new MapTileModuleProviderBase[] { mDispatchedDownloader };
+			while (true) {
+				final int index;
+				synchronized (AreaDownloader.this) {
+					try {
+						while (isDispatching(mDispatchedDownloader)
+								&& mRequestCount >= AREA_DOWNLOAD_MAXIMUM_REQUESTS) {
+							AreaDownloader.this.wait();
+						}
+						if (!isDispatching(mDispatchedDownloader)) {
+							return;
+						}
+						index = takeNextIndex();
+						if (index < 0) {
+							if (mRequestCount > 0) {
+								// tiles being downloaded may have to be tried again
+								AreaDownloader.this.wait();
+								continue;
+							}
+							mRunning = false;
+						} else {
+							mRequestCount++;
+						}
+					} catch (final InterruptedException e) {
+						return;
+					}
+				}
+				if (index < 0) {
+					finish(mDispatchedDownloader);
+					return;
+				}
+
+				final MapTile tile = getMapTile(index);
+				if (isFresh(tile)) {
+					tileDone(mDispatchedDownloader, index, false);
+					continue;
+				}
+				if (DEBUGMODE) {
+					logger.debug("Area download of " + tile);
+				}
+				final MapTileRequestState state = new MapTileRequestState(tile, providers,
+						mCallback);
+				state.getNextProvider();
+				mDispatchedDownloader.loadMapTileAsync(state);
+			}
+		}
+	}
+
+	private class DownloadCallback implements IMapTileProviderCallback {
+
+		private final MapTileDownloader mCallbackDownloader;
+
+		DownloadCallback(final MapTileDownloader pDownloader) {
+			mCallbackDownloader = pDownloader;
+		}
+
+		@Override
+		public void mapTileRequestCompleted(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+			tileDone(mCallbackDownloader, getIndex(aState.getMapTile()), false);
+		}
+
+		@Override
+		public void mapTileRequestFailed(final MapTileRequestState aState) {
+			if (aState.isFailureTransient()) {
+				tileFailedTransient(mCallbackDownloader, getIndex(aState.getMapTile()));
+			} else {
+				// the server doesn't have the tile
+				tileDone(mCallbackDownloader, getIndex(aState.getMapTile()), true);
+			}
+		}
+
+		@Override
+		public void mapTileRequestExpiredTile(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+			tileDone(mCallbackDownloader, getIndex(aState.getMapTile()), false);
+		}
+
+		@Override
+		public boolean useDataConnection() {
+			return true;
+		}
+	}
+}
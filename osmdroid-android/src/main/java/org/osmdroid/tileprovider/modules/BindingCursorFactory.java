@@ -0,0 +1,42 @@
+package org.osmdroid.tileprovider.modules;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+/**
+ * Binds the arguments of a query with their own type, rather than as strings as
+ * {@link SQLiteDatabase#rawQuery(String, String[])} does, so that integers are compared to integer
+ * columns without converting them. The query is run with
+ * {@link SQLiteDatabase#rawQueryWithFactory(SQLiteDatabase.CursorFactory, String, String[], String)}
+ * and null selection arguments.
+ */
+class BindingCursorFactory implements SQLiteDatabase.CursorFactory {
+
+	private final Object[] mArguments;
+
+	/**
+	 * @param pArguments
+	 *            the arguments of the query, Long or String
+	 */
+	BindingCursorFactory(final Object... pArguments) {
+		mArguments = pArguments;
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public Cursor newCursor(final SQLiteDatabase pDatabase, final SQLiteCursorDriver pDriver,
+			final String pEditTable, final SQLiteQuery pQuery) {
+		for (int i = 0; i < mArguments.length; i++) {
+			if (mArguments[i] instanceof Long) {
+				pQuery.bindLong(i + 1, (Long) mArguments[i]);
+			} else {
+				pQuery.bindString(i + 1, (String) mArguments[i]);
+			}
+		}
+		// the constructor available before Honeycomb too
+		return new SQLiteCursor(pDatabase, pDriver, pEditTable, pQuery);
+	}
+}
@@ -0,0 +1,224 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+/**
+ * The HTTP validators of a cached tile: its ETag, its Last-Modified date and the time until which
+ * the server said it's fresh. They're stored in a small file next to the tile so that an expired
+ * tile can be revalidated with a conditional request instead of being downloaded again. The cache
+ * counts that file in the size of the tile, and deletes it with the tile.
+ */
+public class CacheValidators {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Extension of the file holding the validators, appended to the name of the tile file. */
+	public static final String VALIDATORS_EXTENSION = ".validators";
+
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String EXPIRES = "Expires";
+
+	private static final String MAX_AGE = "max-age=";
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mETag;
+	private final String mLastModified;
+	private final long mExpires;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pETag
+	 *            the ETag header, or null
+	 * @param pLastModified
+	 *            the Last-Modified header, or null
+	 * @param pExpires
+	 *            the time in milliseconds until which the tile is fresh, or 0 if unknown
+	 */
+	public CacheValidators(final String pETag, final String pLastModified, final long pExpires) {
+		mETag = pETag;
+		mLastModified = pLastModified;
+		mExpires = pExpires;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public String getETag() {
+		return mETag;
+	}
+
+	public String getLastModified() {
+		return mLastModified;
+	}
+
+	public long getExpires() {
+		return mExpires;
+	}
+
+	/**
+	 * @return true if there is nothing to make a conditional request with
+	 */
+	public boolean isEmpty() {
+		return mETag == null && mLastModified == null;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Gets the validators of a response.
+	 *
+	 * @param pResponse
+	 *            the response of the tile server
+	 * @param pNow
+	 *            the time the response was received, used to compute the expiry time from the
+	 *            max-age of the Cache-Control header
+	 */
+	public static CacheValidators fromResponse(final HttpResponse pResponse, final long pNow) {
+		long expires = 0;
+		final Header cacheControl = pResponse.getFirstHeader("Cache-Control");
+		if (cacheControl != null) {
+			for (final String directive : cacheControl.getValue().split(",")) {
+				final String trimmed = directive.trim();
+				if (trimmed.startsWith(MAX_AGE)) {
+					try {
+						expires = pNow + Long.parseLong(trimmed.substring(MAX_AGE.length()))
+								* 1000;
+					} catch (final NumberFormatException e) {
+						// ignore an invalid max-age
+					}
+				}
+			}
+		}
+		return new CacheValidators(getHeaderValue(pResponse, ETAG), getHeaderValue(pResponse,
+				LAST_MODIFIED), expires);
+	}
+
+	/**
+	 * Returns these validators updated with the ones of a more recent response, such as a 304 Not
+	 * Modified, which may only contain some of them.
+	 */
+	public CacheValidators update(final CacheValidators pValidators) {
+		return new CacheValidators(pValidators.mETag != null ? pValidators.mETag : mETag,
+				pValidators.mLastModified != null ? pValidators.mLastModified : mLastModified,
+				pValidators.mExpires != 0 ? pValidators.mExpires : mExpires);
+	}
+
+	/**
+	 * Makes the request conditional, so that the server answers 304 Not Modified if the tile
+	 * hasn't changed.
+	 */
+	public void addTo(final HttpRequest pRequest) {
+		if (mETag != null) {
+			pRequest.addHeader("If-None-Match", mETag);
+		}
+		if (mLastModified != null) {
+			pRequest.addHeader("If-Modified-Since", mLastModified);
+		}
+	}
+
+	/**
+	 * Gets the file holding the validators of a tile file.
+	 */
+	public static File getValidatorsFile(final File pTileFile) {
+		return new File(pTileFile.getPath() + VALIDATORS_EXTENSION);
+	}
+
+	/**
+	 * Reads the validators of a tile file.
+	 *
+	 * @return the validators, or null if there are none
+	 */
+	public static CacheValidators read(final File pTileFile) {
+		final File file = getValidatorsFile(pTileFile);
+		if (!file.exists()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file), StreamUtils.IO_BUFFER_SIZE);
+			final Properties properties = new Properties();
+			properties.load(in);
+			long expires = 0;
+			final String expiresValue = properties.getProperty(EXPIRES);
+			if (expiresValue != null) {
+				expires = Long.parseLong(expiresValue);
+			}
+			return new CacheValidators(properties.getProperty(ETAG),
+					properties.getProperty(LAST_MODIFIED), expires);
+		} catch (final IOException e) {
+			return null;
+		} catch (final NumberFormatException e) {
+			return null;
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	/**
+	 * Writes the validators of a tile file, or deletes them if there are none.
+	 *
+	 * @return true if successful
+	 */
+	public boolean write(final File pTileFile) {
+		final File file = getValidatorsFile(pTileFile);
+		if (isEmpty() && mExpires == 0) {
+			return !file.exists() || file.delete();
+		}
+		final Properties properties = new Properties();
+		if (mETag != null) {
+			properties.setProperty(ETAG, mETag);
+		}
+		if (mLastModified != null) {
+			properties.setProperty(LAST_MODIFIED, mLastModified);
+		}
+		if (mExpires != 0) {
+			properties.setProperty(EXPIRES, Long.toString(mExpires));
+		}
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.IO_BUFFER_SIZE);
+			properties.store(out, null);
+			return true;
+		} catch (final IOException e) {
+			return false;
+		} finally {
+			StreamUtils.closeStream(out);
+		}
+	}
+
+	private static String getHeaderValue(final HttpResponse pResponse, final String pName) {
+		final Header header = pResponse.getFirstHeader(pName);
+		return header != null ? header.getValue() : null;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheValidators [ETag=" + mETag + ", Last-Modified=" + mLastModified
+				+ ", Expires=" + mExpires + "]";
+	}
+}
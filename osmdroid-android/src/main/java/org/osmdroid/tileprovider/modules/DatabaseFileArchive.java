@@ -3,6 +3,9 @@ package org.osmdroid.tileprovider.modules;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -11,12 +14,47 @@ import org.slf4j.LoggerFactory;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 
+/**
+ * An archive of tiles in an osmdroid SQLite database. Tiles are read with compiled statements, one
+ * per thread, and where possible without copying them to the Java heap.
+ */
 public class DatabaseFileArchive implements IArchiveFile {
 
 	private static final Logger logger = LoggerFactory.getLogger(DatabaseFileArchive.class);
 
+	private static final String SELECT_TILE = "SELECT tile FROM tiles WHERE key=? AND provider=?";
+
+	/** The number of tiles read by a query on their keys, padded with the last key. */
+	private static final int BATCH_SIZE = 16;
+
+	/** The same SQL for every batch, so that its compiled statement is cached by the database. */
+	private static final String SELECT_TILES;
+	static {
+		final StringBuilder sql = new StringBuilder(
+				"SELECT key, tile FROM tiles WHERE provider=? AND key IN (?");
+		for (int i = 1; i < BATCH_SIZE; i++) {
+			sql.append(",?");
+		}
+		SELECT_TILES = sql.append(')').toString();
+	}
+
+	/** Statements can return blobs since Honeycomb, through shared memory. */
+	private static final boolean BLOB_STATEMENTS = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+	/** The statements reading a tile, one per loader thread since they can't be shared. */
+	private final ThreadLocal<SQLiteStatement> mTileStatement = new ThreadLocal<SQLiteStatement>() {
+		@Override
+		protected SQLiteStatement initialValue() {
+			return mDatabase.compileStatement(SELECT_TILE);
+		}
+	};
+
 	private final SQLiteDatabase mDatabase;
 
 	private DatabaseFileArchive(final SQLiteDatabase pDatabase) {
@@ -30,21 +68,34 @@ public class DatabaseFileArchive implements IArchiveFile {
 	@Override
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
 		try {
-			InputStream ret = null;
-			final String[] tile = {"tile"};
 			final long x = (long) pTile.getX();
 			final long y = (long) pTile.getY();
 			final long z = (long) pTile.getZoomLevel();
 			final long index = ((z << z) + x << z) + y;
-			final Cursor cur = mDatabase.query("tiles", tile, "key = " + index + " and provider = '" + pTileSource.name() + "'", null, null, null, null);
-			if(cur.getCount() != 0) {
-				cur.moveToFirst();
+
+			if (BLOB_STATEMENTS) {
+				final SQLiteStatement statement = mTileStatement.get();
+				statement.bindLong(1, index);
+				statement.bindString(2, pTileSource.name());
+				try {
+					final ParcelFileDescriptor blob = statement.simpleQueryForBlobFileDescriptor();
+					return blob != null ? new ParcelFileDescriptor.AutoCloseInputStream(blob)
+							: null;
+				} catch (final SQLiteDoneException e) {
+					// no such tile
+					return null;
+				}
+			}
+
+			// the same SQL for every tile, so that its compiled statement is cached
+			final Cursor cur = mDatabase.rawQuery(SELECT_TILE, new String[] {
+					Long.toString(index), pTileSource.name() });
+			InputStream ret = null;
+			if (cur.moveToFirst()) {
 				ret = new ByteArrayInputStream(cur.getBlob(0));
 			}
 			cur.close();
-			if(ret != null) {
-				return ret;
-			}
+			return ret;
 		} catch(final Throwable e) {
 			logger.warn("Error getting db stream: " + pTile, e);
 		}
@@ -52,6 +103,81 @@ public class DatabaseFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	/**
+	 * Reads the tiles through the compiled statement of the thread, which since Honeycomb reads
+	 * them without copying them to the Java heap. Before, they're copied anyway, and read
+	 * {@link #BATCH_SIZE} at a time with a single query on their keys.
+	 */
+	@Override
+	public Map<MapTile, InputStream> getInputStreams(final ITileSource pTileSource,
+			final Collection<MapTile> pTiles) {
+		final Map<MapTile, InputStream> inputStreams = new HashMap<MapTile, InputStream>();
+		if (BLOB_STATEMENTS) {
+			for (final MapTile tile : pTiles) {
+				final InputStream in = getInputStream(pTileSource, tile);
+				if (in != null) {
+					inputStreams.put(tile, in);
+				}
+			}
+			return inputStreams;
+		}
+
+		final Map<Long, MapTile> tilesByKey = new HashMap<Long, MapTile>();
+		final Object[] arguments = new Object[BATCH_SIZE + 1];
+		arguments[0] = pTileSource.name();
+		int count = 0;
+		for (final MapTile tile : pTiles) {
+			final long x = (long) tile.getX();
+			final long y = (long) tile.getY();
+			final long z = (long) tile.getZoomLevel();
+			final long index = ((z << z) + x << z) + y;
+			tilesByKey.put(index, tile);
+			arguments[++count] = index;
+			if (count == BATCH_SIZE) {
+				readBatch(arguments, count, tilesByKey, inputStreams);
+				count = 0;
+			}
+		}
+		if (count > 0) {
+			readBatch(arguments, count, tilesByKey, inputStreams);
+		}
+		return inputStreams;
+	}
+
+	/**
+	 * Reads the tiles of a batch of keys.
+	 *
+	 * @param pArguments
+	 *            the provider then the keys, of which only the first pCount are set
+	 */
+	private void readBatch(final Object[] pArguments, final int pCount,
+			final Map<Long, MapTile> pTilesByKey, final Map<MapTile, InputStream> pInputStreams) {
+		for (int i = pCount + 1; i <= BATCH_SIZE; i++) {
+			pArguments[i] = pArguments[pCount];
+		}
+		try {
+			final Cursor cur = mDatabase.rawQueryWithFactory(new BindingCursorFactory(
+					pArguments), SELECT_TILES, null, null);
+			while (cur.moveToNext()) {
+				final MapTile tile = pTilesByKey.get(cur.getLong(0));
+				if (tile != null) {
+					pInputStreams.put(tile, new ByteArrayInputStream(cur.getBlob(1)));
+				}
+			}
+			cur.close();
+		} catch (final Throwable e) {
+			logger.warn("Error getting db streams: " + pTilesByKey.values(), e);
+		}
+	}
+
+	/**
+	 * The tiles are only indexed by their key, the coverage is unknown.
+	 */
+	@Override
+	public ArchiveCoverage getCoverage() {
+		return null;
+	}
+
 	@Override
 	public String toString() {
 		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + "]";
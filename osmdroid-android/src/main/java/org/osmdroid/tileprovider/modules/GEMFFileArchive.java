@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -13,8 +16,15 @@ public class GEMFFileArchive implements IArchiveFile {
 
 	private final GEMFFile mFile;
 
+	private final ArchiveCoverage mCoverage;
+
 	private GEMFFileArchive(final File pFile) throws FileNotFoundException, IOException {
 		mFile = new GEMFFile(pFile);
+		mCoverage = new ArchiveCoverage();
+		for (final int zoom : mFile.getZoomLevels()) {
+			final int[] bounds = mFile.getTileBounds(zoom);
+			mCoverage.addBounds(zoom, bounds[0], bounds[1], bounds[2], bounds[3]);
+		}
 	}
 
 	public static GEMFFileArchive getGEMFFileArchive(final File pFile) throws FileNotFoundException, IOException {
@@ -26,6 +36,24 @@ public class GEMFFileArchive implements IArchiveFile {
 		return mFile.getInputStream(pTile.getX(), pTile.getY(), pTile.getZoomLevel());
 	}
 
+	@Override
+	public Map<MapTile, InputStream> getInputStreams(final ITileSource pTileSource,
+			final Collection<MapTile> pTiles) {
+		final Map<MapTile, InputStream> inputStreams = new HashMap<MapTile, InputStream>();
+		for (final MapTile tile : pTiles) {
+			final InputStream in = getInputStream(pTileSource, tile);
+			if (in != null) {
+				inputStreams.put(tile, in);
+			}
+		}
+		return inputStreams;
+	}
+
+	@Override
+	public ArchiveCoverage getCoverage() {
+		return mCoverage;
+	}
+
 	@Override
 	public String toString() {
 		return "GEMFFileArchive [mGEMFFile=" + mFile.getName() + "]";
@@ -1,6 +1,8 @@
 package org.osmdroid.tileprovider.modules;
 
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -8,9 +10,23 @@ import org.osmdroid.tileprovider.tilesource.ITileSource;
 public interface IArchiveFile {
 
 	/**
-	 * Get the input stream for the requested tile.
+	 * Get the input stream for the requested tile. May be called by several threads at the same
+	 * time.
 	 * @return the input stream, or null if the archive doesn't contain an entry for the requested tile
 	 */
 	InputStream getInputStream(ITileSource tileSource, MapTile tile);
 
+	/**
+	 * Get the input streams for several tiles at once, typically adjacent ones, which some archives
+	 * can read with a single query. May be called by several threads at the same time.
+	 * @return the input streams of the tiles that the archive contains, by tile
+	 */
+	Map<MapTile, InputStream> getInputStreams(ITileSource tileSource, Collection<MapTile> tiles);
+
+	/**
+	 * Get the tiles that the archive may contain, read when the archive was opened.
+	 * @return the coverage, or null if it's unknown and the archive may contain any tile
+	 */
+	ArchiveCoverage getCoverage();
+
 }
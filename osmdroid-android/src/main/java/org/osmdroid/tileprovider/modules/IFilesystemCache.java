@@ -6,7 +6,8 @@ import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 
 /**
- * Represents a write-only interface into a file system cache.
+ * Represents a write-only interface into a file system cache. The caches whose tiles can also be
+ * read back implement {@link IReadableFilesystemCache}.
  * 
  * @author Marc Kurtz
  * 
@@ -0,0 +1,66 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.InputStream;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+/**
+ * A file system cache whose tiles are read back by the {@link MapTileFilesystemProvider}. It also
+ * keeps the HTTP validators of the tiles, so that the {@link MapTileDownloader} can revalidate them
+ * when they expire rather than download them again. The downloader checks whether its cache
+ * implements this interface, so that the caches only implementing {@link IFilesystemCache} keep
+ * working.
+ */
+public interface IReadableFilesystemCache extends IFilesystemCache {
+
+	/**
+	 * Save an InputStream as the specified tile in the file system cache for the specified tile
+	 * source, along with the HTTP validators it was served with.
+	 * 
+	 * @param pValidators
+	 *            the validators, or null if there are none
+	 * @return true if successful
+	 */
+	boolean saveFile(final ITileSource pTileSourceInfo, MapTile pTile,
+			final InputStream pStream, CacheValidators pValidators);
+
+	/**
+	 * Get the HTTP validators of a cached tile.
+	 * 
+	 * @return the validators, or null if the tile isn't cached or has no validators
+	 */
+	CacheValidators getValidators(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * Mark a cached tile as fresh again, typically after the server answered a conditional request
+	 * with 304 Not Modified.
+	 * 
+	 * @param pValidators
+	 *            the up-to-date validators of the tile
+	 * @return true if successful
+	 */
+	boolean refreshFile(final ITileSource pTileSourceInfo, MapTile pTile,
+			CacheValidators pValidators);
+
+	/**
+	 * Get the time a cached tile was saved or last refreshed.
+	 * 
+	 * @return the time in milliseconds, or 0 if the tile isn't cached
+	 */
+	long getLastModified(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * Open a cached tile. The caller must close the stream.
+	 * 
+	 * @return the content of the tile, or null if the tile isn't cached
+	 */
+	InputStream getInputStream(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * Remove a tile from the cache, typically because it can't be decoded.
+	 * 
+	 * @return true if the tile isn't in the cache any more
+	 */
+	boolean remove(final ITileSource pTileSourceInfo, MapTile pTile);
+}
@@ -3,6 +3,11 @@ package org.osmdroid.tileprovider.modules;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -11,14 +16,24 @@ import org.slf4j.LoggerFactory;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 
+/**
+ * An archive of tiles in the MBTiles format. Tiles are read with compiled statements, one per
+ * thread, and where possible without copying them to the Java heap.
+ */
 public class MBTilesFileArchive implements IArchiveFile {
 
 	private static final Logger logger = LoggerFactory.getLogger(MBTilesFileArchive.class);
 
 	private final SQLiteDatabase mDatabase;
 
+	private final ArchiveCoverage mCoverage;
+
 	//	TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB);
 	public final static String TABLE_TILES = "tiles";
 	public final static String COL_TILES_ZOOM_LEVEL = "zoom_level";
@@ -26,8 +41,45 @@ public class MBTilesFileArchive implements IArchiveFile {
 	public final static String COL_TILES_TILE_ROW = "tile_row";
 	public final static String COL_TILES_TILE_DATA = "tile_data";
 
+	//	TABLE metadata (name TEXT, value TEXT);
+	public final static String TABLE_METADATA = "metadata";
+	public final static String COL_METADATA_NAME = "name";
+	public final static String COL_METADATA_VALUE = "value";
+
+	/**
+	 * A batch of tiles is read with a query on the rectangle around them, unless it has more
+	 * than that many times as many tiles.
+	 */
+	private static final int MAXIMUM_BATCH_SPARSENESS = 4;
+
+	static final String SELECT_TILE = "SELECT " + COL_TILES_TILE_DATA + " FROM "
+			+ TABLE_TILES + " WHERE " + COL_TILES_ZOOM_LEVEL + "=? AND " + COL_TILES_TILE_COLUMN
+			+ "=? AND " + COL_TILES_TILE_ROW + "=?";
+
+	static final String SELECT_TILES = "SELECT " + COL_TILES_TILE_COLUMN + ", "
+			+ COL_TILES_TILE_ROW + ", " + COL_TILES_TILE_DATA + " FROM " + TABLE_TILES + " WHERE "
+			+ COL_TILES_ZOOM_LEVEL + "=? AND " + COL_TILES_TILE_COLUMN + " BETWEEN ? AND ? AND "
+			+ COL_TILES_TILE_ROW + " BETWEEN ? AND ?";
+
+	static final String SELECT_BOUNDS = "SELECT " + COL_TILES_ZOOM_LEVEL + ", MIN("
+			+ COL_TILES_TILE_COLUMN + "), MAX(" + COL_TILES_TILE_COLUMN + "), MIN("
+			+ COL_TILES_TILE_ROW + "), MAX(" + COL_TILES_TILE_ROW + ") FROM " + TABLE_TILES
+			+ " GROUP BY " + COL_TILES_ZOOM_LEVEL;
+
+	/** Statements can return blobs since Honeycomb, through shared memory. */
+	private static final boolean BLOB_STATEMENTS = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+	/** The statements reading a tile, one per loader thread since they can't be shared. */
+	private final ThreadLocal<SQLiteStatement> mTileStatement = new ThreadLocal<SQLiteStatement>() {
+		@Override
+		protected SQLiteStatement initialValue() {
+			return mDatabase.compileStatement(SELECT_TILE);
+		}
+	};
+
 	private MBTilesFileArchive(final SQLiteDatabase pDatabase) {
 		mDatabase = pDatabase;
+		mCoverage = readCoverage(pDatabase);
 	}
 
 	public static MBTilesFileArchive getDatabaseFileArchive(final File pFile) throws SQLiteException {
@@ -41,24 +93,34 @@ public class MBTilesFileArchive implements IArchiveFile {
 	@Override
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
 		try {
-			InputStream ret = null;
-			final String[] tile = { COL_TILES_TILE_DATA };
-			final String[] xyz = {
-					  Integer.toString(pTile.getX())
-					, Double.toString(Math.pow(2, pTile.getZoomLevel()) - pTile.getY() - 1)  // Use Google Tiling Spec
-					, Integer.toString(pTile.getZoomLevel())
-			};
+			final int zoom = pTile.getZoomLevel();
+			final long row = (1L << zoom) - pTile.getY() - 1; // Use Google Tiling Spec
 
-			final Cursor cur = mDatabase.query(TABLE_TILES, tile, "tile_column=? and tile_row=? and zoom_level=?", xyz, null, null, null);
+			if (BLOB_STATEMENTS) {
+				final SQLiteStatement statement = mTileStatement.get();
+				statement.bindLong(1, zoom);
+				statement.bindLong(2, pTile.getX());
+				statement.bindLong(3, row);
+				try {
+					final ParcelFileDescriptor blob = statement.simpleQueryForBlobFileDescriptor();
+					return blob != null ? new ParcelFileDescriptor.AutoCloseInputStream(blob)
+							: null;
+				} catch (final SQLiteDoneException e) {
+					// no such tile
+					return null;
+				}
+			}
 
-			if(cur.getCount() != 0) {
-				cur.moveToFirst();
+			// the same SQL for every tile, so that its compiled statement is cached
+			final String[] xyz = { Integer.toString(zoom), Integer.toString(pTile.getX()),
+					Long.toString(row) };
+			final Cursor cur = mDatabase.rawQuery(SELECT_TILE, xyz);
+			InputStream ret = null;
+			if (cur.moveToFirst()) {
 				ret = new ByteArrayInputStream(cur.getBlob(0));
 			}
 			cur.close();
-			if(ret != null) {
-				return ret;
-			}
+			return ret;
 		} catch(final Throwable e) {
 			logger.warn("Error getting db stream: " + pTile, e);
 		}
@@ -66,6 +128,171 @@ public class MBTilesFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	/**
+	 * Reads the tiles through the compiled statement of the thread, which since Honeycomb reads
+	 * them without copying them to the Java heap. Before, they're copied anyway, and the tiles of
+	 * each zoom level are read with a single query on the rectangle around them, which uses the
+	 * index of the tiles table. The tiles too far apart for that are read one by one.
+	 */
+	@Override
+	public Map<MapTile, InputStream> getInputStreams(final ITileSource pTileSource,
+			final Collection<MapTile> pTiles) {
+		final Map<MapTile, InputStream> inputStreams = new HashMap<MapTile, InputStream>();
+		if (BLOB_STATEMENTS) {
+			for (final MapTile tile : pTiles) {
+				final InputStream in = getInputStream(pTileSource, tile);
+				if (in != null) {
+					inputStreams.put(tile, in);
+				}
+			}
+			return inputStreams;
+		}
+
+		final Map<Integer, List<MapTile>> tilesByZoomLevel = new HashMap<Integer, List<MapTile>>();
+		for (final MapTile tile : pTiles) {
+			List<MapTile> tiles = tilesByZoomLevel.get(tile.getZoomLevel());
+			if (tiles == null) {
+				tiles = new ArrayList<MapTile>();
+				tilesByZoomLevel.put(tile.getZoomLevel(), tiles);
+			}
+			tiles.add(tile);
+		}
+
+		for (final Map.Entry<Integer, List<MapTile>> entry : tilesByZoomLevel.entrySet()) {
+			final int zoom = entry.getKey();
+			final List<MapTile> tiles = entry.getValue();
+
+			// rows are numbered from the south in MBTiles, use Google Tiling Spec
+			final Map<Long, MapTile> tilesByColumnAndRow = new HashMap<Long, MapTile>();
+			int minColumn = Integer.MAX_VALUE, maxColumn = Integer.MIN_VALUE;
+			int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+			for (final MapTile tile : tiles) {
+				final int row = (int) ((1L << zoom) - tile.getY() - 1);
+				tilesByColumnAndRow.put(((long) tile.getX() << 32) | (row & 0xFFFFFFFFL), tile);
+				minColumn = Math.min(minColumn, tile.getX());
+				maxColumn = Math.max(maxColumn, tile.getX());
+				minRow = Math.min(minRow, row);
+				maxRow = Math.max(maxRow, row);
+			}
+
+			final long area = ((long) maxColumn - minColumn + 1) * ((long) maxRow - minRow + 1);
+			if (tiles.size() == 1 || area > MAXIMUM_BATCH_SPARSENESS * tiles.size()) {
+				for (final MapTile tile : tiles) {
+					final InputStream in = getInputStream(pTileSource, tile);
+					if (in != null) {
+						inputStreams.put(tile, in);
+					}
+				}
+				continue;
+			}
+
+			try {
+				// the same SQL for every batch, so that its compiled statement is cached
+				final Cursor cur = mDatabase.rawQueryWithFactory(new BindingCursorFactory(
+						(long) zoom, (long) minColumn, (long) maxColumn, (long) minRow,
+						(long) maxRow), SELECT_TILES, null, null);
+				while (cur.moveToNext()) {
+					final MapTile tile = tilesByColumnAndRow.get(((long) cur.getInt(0) << 32)
+							| (cur.getInt(1) & 0xFFFFFFFFL));
+					if (tile != null) {
+						inputStreams.put(tile, new ByteArrayInputStream(cur.getBlob(2)));
+					}
+				}
+				cur.close();
+			} catch (final Throwable e) {
+				logger.warn("Error getting db streams: " + tiles, e);
+			}
+		}
+
+		return inputStreams;
+	}
+
+	@Override
+	public ArchiveCoverage getCoverage() {
+		return mCoverage;
+	}
+
+	/**
+	 * Read the coverage from the bounds of the tiles of each zoom level, or from the metadata if
+	 * the tiles can't be scanned. The metadata isn't trusted otherwise, as it's often missing or
+	 * wrong.
+	 *
+	 * @return the coverage, or null if it's unknown
+	 */
+	private static ArchiveCoverage readCoverage(final SQLiteDatabase pDatabase) {
+		final Cursor cur;
+		try {
+			cur = pDatabase.rawQuery(SELECT_BOUNDS, null);
+		} catch (final SQLiteException e) {
+			logger.warn("Can't scan the tiles of " + pDatabase.getPath()
+					+ ", reading the coverage from its metadata: " + e);
+			return readMetadataCoverage(pDatabase);
+		}
+		try {
+			final ArchiveCoverage coverage = new ArchiveCoverage();
+			while (cur.moveToNext()) {
+				final int zoom = cur.getInt(0);
+				// rows are numbered from the south in MBTiles
+				final long maxRow = (1L << zoom) - 1;
+				coverage.addBounds(zoom, cur.getInt(1), cur.getInt(2),
+						(int) (maxRow - cur.getLong(4)), (int) (maxRow - cur.getLong(3)));
+			}
+			return coverage;
+		} finally {
+			cur.close();
+		}
+	}
+
+	/**
+	 * Read the coverage from the minzoom, maxzoom and bounds of the metadata table.
+	 *
+	 * @return the coverage, or null if the metadata doesn't have the zoom levels
+	 */
+	private static ArchiveCoverage readMetadataCoverage(final SQLiteDatabase pDatabase) {
+		String minZoom = null;
+		String maxZoom = null;
+		String bounds = null;
+		try {
+			final Cursor cur = pDatabase.query(TABLE_METADATA, new String[] { COL_METADATA_NAME,
+					COL_METADATA_VALUE }, null, null, null, null, null);
+			while (cur.moveToNext()) {
+				final String name = cur.getString(0);
+				if ("minzoom".equals(name)) {
+					minZoom = cur.getString(1);
+				} else if ("maxzoom".equals(name)) {
+					maxZoom = cur.getString(1);
+				} else if ("bounds".equals(name)) {
+					bounds = cur.getString(1);
+				}
+			}
+			cur.close();
+		} catch (final Throwable e) {
+			logger.warn("Error reading metadata of " + pDatabase.getPath(), e);
+			return null;
+		}
+
+		if (minZoom == null || maxZoom == null) {
+			return null;
+		}
+		try {
+			final ArchiveCoverage coverage = new ArchiveCoverage();
+			final int min = Integer.parseInt(minZoom.trim());
+			final int max = Integer.parseInt(maxZoom.trim());
+			final String[] edges = bounds != null ? bounds.split(",") : new String[0];
+			if (edges.length == 4) {
+				coverage.addBounds(min, max, Double.parseDouble(edges[0].trim()), Double
+						.parseDouble(edges[1].trim()), Double.parseDouble(edges[2].trim()), Double
+						.parseDouble(edges[3].trim()));
+			} else {
+				coverage.addZoomLevels(min, max);
+			}
+			return coverage;
+		} catch (final NumberFormatException e) {
+			logger.warn("Invalid metadata in " + pDatabase.getPath() + ": " + e);
+			return null;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + "]";
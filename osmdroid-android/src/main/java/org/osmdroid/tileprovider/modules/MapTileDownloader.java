@@ -1,23 +1,40 @@
 package org.osmdroid.tileprovider.modules;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
 import org.osmdroid.tileprovider.MapTileRequestState;
-import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
 import org.osmdroid.tileprovider.util.StreamUtils;
@@ -25,11 +42,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.graphics.drawable.Drawable;
-import android.text.TextUtils;
 
 /**
  * The {@link MapTileDownloader} loads tiles from an HTTP server. It saves downloaded tiles to an
  * IFilesystemCache if available.
+ * <p>
+ * All the download threads share one {@link HttpClient} that keeps the connections to the tile
+ * servers alive, so that only the first tile downloaded from a host pays for opening a connection.
+ * <p>
+ * When an expired tile was found in the file system cache, it is revalidated with a conditional
+ * request and only downloaded again if it has changed.
+ * <p>
+ * When the tile source has several mirrors, the latency and the error rate of each are recorded in
+ * its {@link org.osmdroid.tileprovider.util.MirrorStatistics}, which it chooses the mirror of each
+ * tile with. With {@link #setHedgingEnabled(boolean) hedging} enabled, a download taking longer
+ * than {@link #TILE_DOWNLOAD_HEDGE_PERCENTILE} of the downloads is also sent to another mirror,
+ * and the slower of the two is aborted. Hedging is disabled by default, as it adds to the load of
+ * the tile servers.
+ * <p>
+ * The downloaded tiles are decoded by the threads of the {@link TileDecodeStage}, so that the
+ * download threads go on with the next tiles meanwhile.
  *
  * @author Marc Kurtz
  * @author Nicolas Gramlich
@@ -50,10 +82,28 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	private final IFilesystemCache mFilesystemCache;
 
+	/** The cache if it keeps the validators of the tiles, or else null. */
+	private final IReadableFilesystemCache mReadableFilesystemCache;
+
 	private OnlineTileSourceBase mTileSource;
 
 	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
 
+	protected final HttpClient mHttpClient;
+
+	/** The HTTP requests in progress, so that they can be aborted when cancelled. */
+	private final HashMap<MapTileRequestState, Transfer> mInFlight = new HashMap<MapTileRequestState, Transfer>();
+
+	/** Sends the hedged requests, with a thread per download thread. */
+	private final ScheduledExecutorService mHedgeExecutor;
+
+	private volatile boolean mHedgingEnabled;
+
+	private volatile boolean mStoreOnly;
+
+	private final AtomicLong mHedgedCount = new AtomicLong();
+	private final AtomicLong mHedgeWonCount = new AtomicLong();
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -77,10 +127,27 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 			final IFilesystemCache pFilesystemCache,
 			final INetworkAvailablityCheck pNetworkAvailablityCheck, int pThreadPoolSize,
 			int pPendingQueueSize) {
+		this(pTileSource, pFilesystemCache, pNetworkAvailablityCheck, pThreadPoolSize,
+				pPendingQueueSize, pThreadPoolSize);
+	}
+
+	/**
+	 * @param pMaximumConnectionsPerHost
+	 *            the maximum number of simultaneous connections to each host of the tile source
+	 */
+	public MapTileDownloader(final ITileSource pTileSource,
+			final IFilesystemCache pFilesystemCache,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck, int pThreadPoolSize,
+			int pPendingQueueSize, final int pMaximumConnectionsPerHost) {
 		super(pThreadPoolSize, pPendingQueueSize);
 
 		mFilesystemCache = pFilesystemCache;
+		mReadableFilesystemCache = pFilesystemCache instanceof IReadableFilesystemCache
+				? (IReadableFilesystemCache) pFilesystemCache : null;
 		mNetworkAvailablityCheck = pNetworkAvailablityCheck;
+		mHttpClient = createHttpClient(pMaximumConnectionsPerHost);
+		mHedgeExecutor = new ScheduledThreadPoolExecutor(pThreadPoolSize,
+				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "hedging"));
 		setTileSource(pTileSource);
 	}
 
@@ -92,6 +159,46 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return mTileSource;
 	}
 
+	public boolean isHedgingEnabled() {
+		return mHedgingEnabled;
+	}
+
+	/**
+	 * Enable sending the downloads taking longer than {@link #TILE_DOWNLOAD_HEDGE_PERCENTILE} of
+	 * the downloads to another mirror of the tile source as well, keeping the first answer. This
+	 * cuts the longest latencies at the cost of a few more requests to the tile servers.
+	 */
+	public void setHedgingEnabled(final boolean pHedgingEnabled) {
+		mHedgingEnabled = pHedgingEnabled;
+	}
+
+	public boolean isStoreOnly() {
+		return mStoreOnly;
+	}
+
+	/**
+	 * Only save the downloaded tiles to the filesystem cache, without decoding them, for the
+	 * downloads filling the cache such as those of the {@link AreaDownloader}. The requests of the
+	 * saved tiles complete with a null drawable, and those of the tiles that can't be saved fail.
+	 */
+	public void setStoreOnly(final boolean pStoreOnly) {
+		mStoreOnly = pStoreOnly;
+	}
+
+	/**
+	 * @return the number of downloads sent to a second mirror
+	 */
+	public long getHedgedCount() {
+		return mHedgedCount.get();
+	}
+
+	/**
+	 * @return the number of downloads that the second mirror answered first
+	 */
+	public long getHedgeWonCount() {
+		return mHedgeWonCount.get();
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -101,6 +208,32 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return true;
 	}
 
+	@Override
+	public long getMissingTileTimeToLive() {
+		return MISSING_DOWNLOAD_TILE_TIME_TO_LIVE_MILLISECONDS;
+	}
+
+	@Override
+	public void detach() {
+		super.detach();
+		mHedgeExecutor.shutdownNow();
+		mHttpClient.getConnectionManager().shutdown();
+	}
+
+	/**
+	 * Also exports the hedged downloads and the statistics of the mirrors of the tile source.
+	 */
+	@Override
+	public void exportMetrics(final Map<String, Long> pMetrics) {
+		super.exportMetrics(pMetrics);
+		pMetrics.put(getThreadGroupName() + ".hedged", getHedgedCount());
+		pMetrics.put(getThreadGroupName() + ".hedge_won", getHedgeWonCount());
+		final OnlineTileSourceBase tileSource = mTileSource;
+		if (tileSource != null) {
+			tileSource.getMirrorStatistics().export(getThreadGroupName() + ".mirror", pMetrics);
+		}
+	}
+
 	@Override
 	protected String getName() {
 		return "Online Tile Download Provider";
@@ -137,6 +270,68 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		}
 	}
 
+	/**
+	 * Also aborts the transfers of the tiles that have been cancelled, see
+	 * {@link #onRequestsCancelled()}.
+	 */
+	@Override
+	public void setViewport(final MapTileArea pArea) {
+		super.setViewport(pArea);
+		onRequestsCancelled();
+	}
+
+	/**
+	 * Aborts the transfers of the tiles that have been cancelled, so that they stop using
+	 * bandwidth and free their download thread and connection.
+	 */
+	@Override
+	public void onRequestsCancelled() {
+		synchronized (mInFlight) {
+			final Iterator<MapTileRequestState> iterator = mInFlight.keySet().iterator();
+			while (iterator.hasNext()) {
+				final MapTileRequestState state = iterator.next();
+				if (state.isCancelled()) {
+					if (DEBUGMODE) {
+						logger.debug("Abort download of " + state.getMapTile());
+					}
+					mInFlight.get(state).abort();
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Creates the HTTP client shared by the download threads. Each host of the tile source gets its
+	 * own pool of kept-alive connections.
+	 *
+	 * @param pMaximumConnectionsPerHost
+	 *            the maximum number of simultaneous connections to a host
+	 */
+	protected HttpClient createHttpClient(final int pMaximumConnectionsPerHost) {
+		final HttpParams params = new BasicHttpParams();
+		ConnManagerParams.setMaxTotalConnections(params, Math.max(pMaximumConnectionsPerHost,
+				TILE_DOWNLOAD_MAXIMUM_CONNECTIONS));
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(
+				pMaximumConnectionsPerHost));
+		HttpConnectionParams.setConnectionTimeout(params, TILE_DOWNLOAD_CONNECT_TIMEOUT_MILLISECONDS);
+		HttpConnectionParams.setSoTimeout(params, TILE_DOWNLOAD_READ_TIMEOUT_MILLISECONDS);
+		// checking a pooled connection costs a blocking read per tile, a stale connection is
+		// detected by the failed request instead, which is retried
+		HttpConnectionParams.setStaleCheckingEnabled(params, false);
+
+		final SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+		return new DefaultHttpClient(new ThreadSafeClientConnManager(params, schemeRegistry),
+				params);
+	}
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -150,8 +345,6 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 				return null;
 			}
 
-			InputStream in = null;
-			OutputStream out = null;
 			final MapTile tile = aState.getMapTile();
 
 			try {
@@ -161,6 +354,7 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 					if (DEBUGMODE) {
 						logger.debug("Skipping " + getName() + " due to NetworkAvailabliltyCheck.");
 					}
+					aState.setFailureTransient();
 					return null;
 				}
 
@@ -170,73 +364,307 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 					logger.debug("Downloading Maptile from url: " + tileURLString);
 				}
 
-				if (TextUtils.isEmpty(tileURLString)) {
+				if (tileURLString == null || tileURLString.length() == 0) {
 					return null;
 				}
 
-				final HttpClient client = new DefaultHttpClient();
 				final HttpUriRequest head = new HttpGet(tileURLString);
-				final HttpResponse response = client.execute(head);
+
+				// revalidate the expired tile rather than download it again
+				final Drawable expiredDrawable = aState.getExpiredDrawable();
+				CacheValidators validators = null;
+				if (mReadableFilesystemCache != null && expiredDrawable != null) {
+					validators = mReadableFilesystemCache.getValidators(mTileSource, tile);
+					if (validators != null) {
+						validators.addTo(head);
+					}
+				}
+
+				final Transfer transfer = new Transfer(mTileSource, tileURLString, head,
+						validators);
+				synchronized (mInFlight) {
+					// the tile may have been cancelled since it was taken from the queue
+					if (aState.isCancelled()) {
+						aState.setFailureTransient();
+						return null;
+					}
+					mInFlight.put(aState, transfer);
+				}
+				final Download download = transfer.download();
+				final HttpResponse response = download.mResponse;
 
 				// Check to see if we got success
 				final org.apache.http.StatusLine line = response.getStatusLine();
+				if (line.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && validators != null) {
+					if (DEBUGMODE) {
+						logger.debug("MapTile not modified: " + tile);
+					}
+					mReadableFilesystemCache.refreshFile(mTileSource, tile, validators
+							.update(CacheValidators.fromResponse(response,
+									System.currentTimeMillis())));
+					aState.setRevalidated();
+					return expiredDrawable;
+				}
 				if (line.getStatusCode() != 200) {
 					logger.warn("Problem downloading MapTile: " + tile + " HTTP response: " + line);
+					// only remember the tiles that the server says it doesn't have
+					if (line.getStatusCode() != HttpStatus.SC_NOT_FOUND
+							&& line.getStatusCode() != HttpStatus.SC_GONE) {
+						aState.setFailureTransient();
+					}
 					return null;
 				}
 
-				final HttpEntity entity = response.getEntity();
-				if (entity == null) {
+				if (download.mData == null) {
 					logger.warn("No content downloading MapTile: " + tile);
+					aState.setFailureTransient();
 					return null;
 				}
-				in = entity.getContent();
 
-				final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-				out = new BufferedOutputStream(dataStream, StreamUtils.IO_BUFFER_SIZE);
-				StreamUtils.copy(in, out);
-				out.flush();
-				final byte[] data = dataStream.toByteArray();
+				final byte[] data = download.mData;
 				final ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
 
 				// Save the data to the filesystem cache
-				if (mFilesystemCache != null) {
-					mFilesystemCache.saveFile(mTileSource, tile, byteStream);
-					byteStream.reset();
+				boolean saved = false;
+				if (mReadableFilesystemCache != null) {
+					saved = mReadableFilesystemCache.saveFile(mTileSource, tile, byteStream,
+							CacheValidators.fromResponse(response, System.currentTimeMillis()));
+				} else if (mFilesystemCache != null) {
+					saved = mFilesystemCache.saveFile(mTileSource, tile, byteStream);
+				}
+
+				if (mStoreOnly) {
+					if (!saved) {
+						logger.warn("Error saving MapTile: " + tile);
+						aState.setFailureTransient();
+						return null;
+					}
+					return tileStored(aState);
 				}
-				final Drawable result = mTileSource.getDrawable(byteStream);
 
-				return result;
+				// decode the tile without holding up the next download, it's handed to the
+				// callback rather than read and decoded again from the filesystem cache
+				return decodeApart(aState, mTileSource, data, false);
 			} catch (final UnknownHostException e) {
 				// no network connection so empty the queue
 				logger.warn("UnknownHostException downloading MapTile: " + tile + " : " + e);
 				throw new CantContinueException(e);
-			} catch (final LowMemoryException e) {
-				// low memory so empty the queue
-				logger.warn("LowMemoryException downloading MapTile: " + tile + " : " + e);
-				throw new CantContinueException(e);
 			} catch (final FileNotFoundException e) {
 				logger.warn("Tile not found: " + tile + " : " + e);
 			} catch (final IOException e) {
-				logger.warn("IOException downloading MapTile: " + tile + " : " + e);
+				aState.setFailureTransient();
+				if (aState.isCancelled()) {
+					// the download was aborted
+					if (DEBUGMODE) {
+						logger.debug("Download cancelled: " + tile);
+					}
+				} else {
+					logger.warn("IOException downloading MapTile: " + tile + " : " + e);
+				}
 			} catch (final Throwable e) {
 				logger.error("Error downloading MapTile: " + tile, e);
+				aState.setFailureTransient();
 			} finally {
-				StreamUtils.closeStream(in);
-				StreamUtils.closeStream(out);
+				synchronized (mInFlight) {
+					mInFlight.remove(aState);
+				}
 			}
 
 			return null;
 		}
 
-		@Override
-		protected void tileLoaded(final MapTileRequestState pState, final Drawable pDrawable) {
-			removeTileFromQueues(pState.getMapTile());
-			// don't return the tile because we'll wait for the fs provider to ask for it
-            // this prevent flickering when a load of delayed downloads complete for tiles
-            // that we might not even be interested in any more
-			pState.getCallback().mapTileRequestCompleted(pState, null);
+	}
+
+	/**
+	 * A response and its content, read in full so that the connection is back in the pool.
+	 */
+	private static class Download {
+		final HttpResponse mResponse;
+		/** the content, or null if the response has none */
+		final byte[] mData;
+
+		Download(final HttpResponse pResponse, final byte[] pData) {
+			mResponse = pResponse;
+			mData = pData;
+		}
+	}
+
+	/**
+	 * The download of a tile, from its mirror and possibly from a second one when hedged. The first
+	 * answer is kept and the other request is aborted.
+	 */
+	private class Transfer {
+		private final OnlineTileSourceBase mTransferTileSource;
+		private final String mURLString;
+		private final HttpUriRequest mRequest;
+		private final CacheValidators mValidators;
+
+		private ScheduledFuture<?> mHedge;
+		private HttpUriRequest mHedgedRequest;
+		private boolean mHedgeDone;
+		private boolean mPrimaryDone;
+		private boolean mAborted;
+		private Download mResult;
+
+		Transfer(final OnlineTileSourceBase pTileSource, final String pURLString,
+				final HttpUriRequest pRequest, final CacheValidators pValidators) {
+			mTransferTileSource = pTileSource;
+			mURLString = pURLString;
+			mRequest = pRequest;
+			mValidators = pValidators;
 		}
 
+		/**
+		 * Download the tile, hedging if enabled and if the tile source has another mirror.
+		 */
+		Download download() throws IOException {
+			if (mHedgingEnabled) {
+				final long hedgeDelayNanos = mTransferTileSource.getMirrorStatistics()
+						.getLatencyPercentileNanos(TILE_DOWNLOAD_HEDGE_PERCENTILE);
+				final String hedgeURLString = hedgeDelayNanos < 0 ? null : mTransferTileSource
+						.getTileURLStringOnOtherMirror(mURLString);
+				if (hedgeURLString != null) {
+					synchronized (this) {
+						mHedge = mHedgeExecutor.schedule(new Runnable() {
+							@Override
+							public void run() {
+								hedge(hedgeURLString);
+							}
+						}, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+					}
+				}
+			}
+
+			Download download = null;
+			IOException failure = null;
+			try {
+				download = fetch(mRequest, mURLString);
+			} catch (final IOException e) {
+				failure = e;
+			}
+
+			synchronized (this) {
+				mPrimaryDone = true;
+				if (mHedge != null) {
+					mHedge.cancel(false);
+				}
+				if (mResult == null && download != null) {
+					mResult = download;
+					if (mHedgedRequest != null) {
+						mHedgedRequest.abort();
+					}
+					return download;
+				}
+				// the hedged request answered first, or the first one failed and the hedged one
+				// may still answer
+				while (mResult == null && mHedgedRequest != null && !mHedgeDone) {
+					try {
+						wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				if (mResult != null) {
+					return mResult;
+				}
+				throw failure;
+			}
+		}
+
+		private void hedge(final String pURLString) {
+			final HttpUriRequest request = new HttpGet(pURLString);
+			if (mValidators != null) {
+				mValidators.addTo(request);
+			}
+			synchronized (this) {
+				if (mPrimaryDone || mAborted) {
+					return;
+				}
+				mHedgedRequest = request;
+			}
+			mHedgedCount.incrementAndGet();
+			if (DEBUGMODE) {
+				logger.debug("Hedged download from url: " + pURLString);
+			}
+
+			Download download = null;
+			try {
+				download = fetch(request, pURLString);
+			} catch (final IOException e) {
+				// the first request may still answer
+			}
+			synchronized (this) {
+				mHedgeDone = true;
+				if (download != null && mResult == null) {
+					mResult = download;
+					mHedgeWonCount.incrementAndGet();
+					mRequest.abort();
+				}
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Send a request and read its response, and record the latency of the mirror. A request
+		 * aborted because the other one answered first counts as a slow answer.
+		 */
+		private Download fetch(final HttpUriRequest pRequest, final String pURLString)
+				throws IOException {
+			final int mirror = mTransferTileSource.getMirror(pURLString);
+			final long start = System.nanoTime();
+			try {
+				final HttpResponse response = mHttpClient.execute(pRequest);
+				byte[] data = null;
+				// the connection goes back to the pool once the content has been read or closed
+				final HttpEntity entity = response.getEntity();
+				if (entity != null) {
+					final InputStream in = entity.getContent();
+					try {
+						data = StreamUtils.readFully(in, (int) entity.getContentLength());
+					} finally {
+						StreamUtils.closeStream(in);
+					}
+				}
+				if (mirror >= 0) {
+					// a mirror answering that it doesn't have the tile is healthy
+					final int statusCode = response.getStatusLine().getStatusCode();
+					mTransferTileSource.getMirrorStatistics().record(mirror,
+							System.nanoTime() - start,
+							statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR);
+				}
+				return new Download(response, data);
+			} catch (final IOException e) {
+				final boolean aborted;
+				final boolean lost;
+				synchronized (this) {
+					aborted = mAborted;
+					lost = mResult != null;
+				}
+				if (mirror >= 0 && !aborted) {
+					mTransferTileSource.getMirrorStatistics().record(mirror,
+							System.nanoTime() - start, lost);
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Abort the requests, because the tile has been cancelled.
+		 */
+		void abort() {
+			final HttpUriRequest hedgedRequest;
+			synchronized (this) {
+				mAborted = true;
+				if (mHedge != null) {
+					mHedge.cancel(false);
+				}
+				hedgedRequest = mHedgedRequest;
+			}
+			mRequest.abort();
+			if (hedgedRequest != null) {
+				hedgedRequest.abort();
+			}
+		}
 	}
 }
@@ -4,6 +4,10 @@ package org.osmdroid.tileprovider.modules;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.IRegisterReceiver;
 import org.osmdroid.tileprovider.MapTile;
@@ -36,7 +40,11 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 	// Fields
 	// ===========================================================
 
-	private final ArrayList<IArchiveFile> mArchiveFiles = new ArrayList<IArchiveFile>();
+	/**
+	 * The archives, replaced rather than modified so that the loader threads can read them
+	 * without locking.
+	 */
+	private volatile List<IArchiveFile> mArchiveFiles = Collections.emptyList();
 
 	protected ITileSource mTileSource;
 
@@ -63,9 +71,11 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 			findArchiveFiles();
 		} else {
 			mSpecificArchivesProvided = true;
+			final List<IArchiveFile> archiveFiles = new ArrayList<IArchiveFile>();
 			for (int i = pArchives.length - 1; i >= 0; i--) {
-				mArchiveFiles.add(pArchives[i]);
+				archiveFiles.add(pArchives[i]);
 			}
+			mArchiveFiles = archiveFiles;
 		}
 
 	}
@@ -113,6 +123,11 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 		return mTileSource != null ? mTileSource.getMaximumZoomLevel() : MAXIMUM_ZOOMLEVEL;
 	}
 
+	@Override
+	public long getMissingTileTimeToLive() {
+		return MISSING_ARCHIVE_TILE_TIME_TO_LIVE_MILLISECONDS;
+	}
+
 	@Override
 	protected void onMediaMounted() {
 		if (!mSpecificArchivesProvided) {
@@ -134,9 +149,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	@Override
 	public void detach() {
-		while(!mArchiveFiles.isEmpty()) {
-			mArchiveFiles.remove(0);
-		}
+		mArchiveFiles = Collections.emptyList();
 		super.detach();
 	}
 
@@ -146,26 +159,37 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	private void findArchiveFiles() {
 
-		mArchiveFiles.clear();
-
 		if (!getSdCardAvailable()) {
+			mArchiveFiles = Collections.emptyList();
 			return;
 		}
 
+		final List<IArchiveFile> archiveFiles = new ArrayList<IArchiveFile>();
+
 		// path should be optionally configurable
 		final File[] files = OSMDROID_PATH.listFiles();
 		if (files != null) {
 			for (final File file : files) {
 				final IArchiveFile archiveFile = ArchiveFileFactory.getArchiveFile(file);
 				if (archiveFile != null) {
-					mArchiveFiles.add(archiveFile);
+					archiveFiles.add(archiveFile);
 				}
 			}
 		}
+
+		mArchiveFiles = archiveFiles;
 	}
 
-	private synchronized InputStream getInputStream(final MapTile pTile) {
+	/**
+	 * Not synchronized, the archives can be read by several threads at the same time.
+	 */
+	private InputStream getInputStream(final MapTile pTile) {
 		for (final IArchiveFile archiveFile : mArchiveFiles) {
+			// don't query the archives which can't have the tile
+			final ArchiveCoverage coverage = archiveFile.getCoverage();
+			if (coverage != null && !coverage.mayContain(pTile)) {
+				continue;
+			}
 			final InputStream in = archiveFile.getInputStream(mTileSource, pTile);
 			if (in != null) {
 				if (DEBUGMODE) {
@@ -184,6 +208,74 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	private class TileLoader extends MapTileModuleProviderBase.TileLoader {
 
+		@Override
+		protected int getMaximumBatchSize() {
+			return TILE_ARCHIVE_MAXIMUM_BATCH_SIZE;
+		}
+
+		/**
+		 * Ask each archive for all the tiles it may contain and that haven't been found yet.
+		 */
+		@Override
+		protected void loadTiles(final List<MapTileRequestState> pStates) {
+			if (pStates.size() == 1 || mTileSource == null || !getSdCardAvailable()) {
+				super.loadTiles(pStates);
+				return;
+			}
+
+			final Map<MapTile, MapTileRequestState> remaining = new HashMap<MapTile, MapTileRequestState>();
+			for (final MapTileRequestState state : pStates) {
+				if (state.isCancelled()) {
+					tileLoadedFailed(state);
+				} else {
+					remaining.put(state.getMapTile(), state);
+				}
+			}
+
+			final ITileSource tileSource = mTileSource;
+			for (final IArchiveFile archiveFile : mArchiveFiles) {
+				if (remaining.isEmpty()) {
+					break;
+				}
+				final ArchiveCoverage coverage = archiveFile.getCoverage();
+				final List<MapTile> tiles = new ArrayList<MapTile>(remaining.size());
+				for (final MapTile tile : remaining.keySet()) {
+					if (coverage == null || coverage.mayContain(tile)) {
+						tiles.add(tile);
+					}
+				}
+				if (tiles.isEmpty()) {
+					continue;
+				}
+
+				for (final Map.Entry<MapTile, InputStream> entry : archiveFile.getInputStreams(
+						tileSource, tiles).entrySet()) {
+					final MapTileRequestState state = remaining.remove(entry.getKey());
+					if (state == null) {
+						StreamUtils.closeStream(entry.getValue());
+						continue;
+					}
+					if (DEBUGMODE) {
+						logger.debug("Found tile " + entry.getKey() + " in " + archiveFile);
+					}
+					Drawable drawable = null;
+					try {
+						drawable = tileSource.getDrawable(entry.getValue());
+					} catch (final Throwable e) {
+						logger.error("Error loading tile", e);
+						state.setFailureTransient();
+					} finally {
+						StreamUtils.closeStream(entry.getValue());
+					}
+					tileLoadedOrFailed(state, drawable);
+				}
+			}
+
+			for (final MapTileRequestState state : remaining.values()) {
+				tileLoadedFailed(state);
+			}
+		}
+
 		@Override
 		public Drawable loadTile(final MapTileRequestState pState) {
 
@@ -198,6 +290,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 				if (DEBUGMODE) {
 					logger.debug("No sdcard - do nothing for tile: " + pTile);
 				}
+				pState.setFailureTransient();
 				return null;
 			}
 
@@ -217,6 +310,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 				}
 			} catch (final Throwable e) {
 				logger.error("Error loading tile", e);
+				pState.setFailureTransient();
 			} finally {
 				if (inputStream != null) {
 					StreamUtils.closeStream(inputStream);
@@ -1,14 +1,16 @@
 package org.osmdroid.tileprovider.modules;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
-import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.IRegisterReceiver;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileRequestState;
-import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.StreamUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +18,12 @@ import android.graphics.drawable.Drawable;
 
 /**
  * Implements a file system cache and provides cached tiles. This functions as a tile provider by
- * serving cached tiles for the supplied tile source.
+ * serving cached tiles for the supplied tile source. The tiles are read from the
+ * {@link IReadableFilesystemCache} the downloaded tiles are saved to if one is given, or else
+ * directly from the files written by a {@link TileWriter}.
+ * <p>
+ * The tiles are only read by the threads of this provider, and decoded by those of the
+ * {@link TileDecodeStage}.
  *
  * @author Marc Kurtz
  * @author Nicolas Gramlich
@@ -38,6 +45,8 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 
 	private ITileSource mTileSource;
 
+	private final IReadableFilesystemCache mFilesystemCache;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -67,10 +76,25 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 	public MapTileFilesystemProvider(final IRegisterReceiver pRegisterReceiver,
 			final ITileSource pTileSource, final long pMaximumCachedFileAge, int pThreadPoolSize,
 			int pPendingQueueSize) {
+		this(pRegisterReceiver, pTileSource, pMaximumCachedFileAge, pThreadPoolSize,
+				pPendingQueueSize, null);
+	}
+
+	/**
+	 * Provides a file system based cache tile provider reading the tiles from the specified cache.
+	 * 
+	 * @param pFilesystemCache
+	 *            the cache to read the tiles from, or null to read the files of a
+	 *            {@link TileWriter}
+	 */
+	public MapTileFilesystemProvider(final IRegisterReceiver pRegisterReceiver,
+			final ITileSource pTileSource, final long pMaximumCachedFileAge, int pThreadPoolSize,
+			int pPendingQueueSize, final IReadableFilesystemCache pFilesystemCache) {
 		super(pRegisterReceiver, pThreadPoolSize, pPendingQueueSize);
 		mTileSource = pTileSource;
 
 		mMaximumCachedFileAge = pMaximumCachedFileAge;
+		mFilesystemCache = pFilesystemCache;
 	}
 	// ===========================================================
 	// Getter & Setter
@@ -135,40 +159,98 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 				if (DEBUGMODE) {
 					logger.debug("No sdcard - do nothing for tile: " + tile);
 				}
+				pState.setFailureTransient();
 				return null;
 			}
 
+			if (mFilesystemCache != null) {
+				return loadTileFromCache(pState);
+			}
+
 			// Check the tile source to see if its file is available and if so, then render the
 			// drawable and return the tile
 			final File file = new File(TILE_PATH_BASE,
 					mTileSource.getTileRelativeFilenameString(tile) + TILE_PATH_EXTENSION);
 			if (file.exists()) {
 
+				final byte[] data;
+				InputStream in = null;
 				try {
-					final Drawable drawable = mTileSource.getDrawable(file.getPath());
-
-					// Check to see if file has expired
-					final long now = System.currentTimeMillis();
-					final long lastModified = file.lastModified();
-					final boolean fileExpired = lastModified < now - mMaximumCachedFileAge;
-
-					if (fileExpired) {
-						if (DEBUGMODE) {
-							logger.debug("Tile expired: " + tile);
-						}
-						drawable.setState(new int[] {ExpirableBitmapDrawable.EXPIRED });
-					}
-
-					return drawable;
-				} catch (final LowMemoryException e) {
-					// low memory so empty the queue
-					logger.warn("LowMemoryException downloading MapTile: " + tile + " : " + e);
-					throw new CantContinueException(e);
+					in = new FileInputStream(file);
+					data = StreamUtils.readFully(in, (int) file.length());
+				} catch (final IOException e) {
+					logger.warn("Error reading tile: " + tile + " : " + e);
+					pState.setFailureTransient();
+					return null;
+				} finally {
+					StreamUtils.closeStream(in);
+				}
+
+				// Check to see if file has expired
+				final long now = System.currentTimeMillis();
+				final long lastModified = file.lastModified();
+				boolean fileExpired = lastModified < now - mMaximumCachedFileAge;
+				if (fileExpired) {
+					// the server may have said that it's fresh for longer
+					final CacheValidators validators = CacheValidators.read(file);
+					fileExpired = validators == null || validators.getExpires() < now;
 				}
+
+				return decodeApart(pState, mTileSource, data, fileExpired);
 			}
 
 			// If we get here then there is no file in the file cache
 			return null;
 		}
+
+		@Override
+		protected void onTileDecodeFailed(final MapTileRequestState pState) {
+			// if we couldn't load it then it's invalid - delete it
+			if (mFilesystemCache != null) {
+				mFilesystemCache.remove(mTileSource, pState.getMapTile());
+				return;
+			}
+			final File file = new File(TILE_PATH_BASE, mTileSource.getTileRelativeFilenameString(
+					pState.getMapTile()) + TILE_PATH_EXTENSION);
+			if (!file.delete()) {
+				logger.warn("Error deleting invalid file: " + file);
+			}
+			CacheValidators.getValidatorsFile(file).delete();
+		}
+
+		private Drawable loadTileFromCache(final MapTileRequestState pState) {
+			final MapTile tile = pState.getMapTile();
+			final long lastModified = mFilesystemCache.getLastModified(mTileSource, tile);
+			if (lastModified == 0) {
+				return null;
+			}
+			final InputStream in = mFilesystemCache.getInputStream(mTileSource, tile);
+			if (in == null) {
+				return null;
+			}
+
+			final byte[] data;
+			try {
+				data = StreamUtils.readFully(in, 0);
+			} catch (final IOException e) {
+				logger.warn("Error reading tile: " + tile + " : " + e);
+				pState.setFailureTransient();
+				return null;
+			} finally {
+				StreamUtils.closeStream(in);
+			}
+
+			// Check to see if the tile has expired
+			final long now = System.currentTimeMillis();
+			boolean expired = false;
+			if (lastModified < now - mMaximumCachedFileAge) {
+				// the server may have said that it's fresh for longer
+				final CacheValidators validators = mFilesystemCache.getValidators(mTileSource,
+						tile);
+				expired = validators == null || validators.getExpires() < now;
+			}
+
+			return decodeApart(pState, mTileSource, data, expired);
+		}
 	}
 }
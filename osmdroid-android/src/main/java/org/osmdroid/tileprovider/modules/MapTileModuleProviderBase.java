@@ -1,17 +1,18 @@
 package org.osmdroid.tileprovider.modules;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 
 import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
-import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
 import org.osmdroid.tileprovider.MapTileRequestState;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,13 +80,24 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 	 */
 	public abstract void setTileSource(ITileSource tileSource);
 
+	/**
+	 * Gets how long a tile that this tile provider doesn't have isn't looked for again.
+	 *
+	 * @return the time in milliseconds, 0 to always look for the tile again
+	 */
+	public long getMissingTileTimeToLive() {
+		return MISSING_TILE_TIME_TO_LIVE_MILLISECONDS;
+	}
+
 	private final ExecutorService mExecutor;
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileModuleProviderBase.class);
 
 	protected final Object mQueueLockObject = new Object();
-	protected final HashMap<MapTile, MapTileRequestState> mWorking;
-	protected final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+	protected final MapTileRequestQueue mQueue = new MapTileRequestQueue();
+	private final int mPendingQueueSize;
+
+	private final TileProviderMetrics mMetrics = new TileProviderMetrics();
 
 	public MapTileModuleProviderBase(int pThreadPoolSize, final int pPendingQueueSize) {
 		if (pPendingQueueSize < pThreadPoolSize) {
@@ -94,45 +106,44 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		}
 		mExecutor = Executors.newFixedThreadPool(pThreadPoolSize,
 				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
+		mPendingQueueSize = pPendingQueueSize;
+	}
 
-		mWorking = new HashMap<MapTile, MapTileRequestState>();
-		mPending = new LinkedHashMap<MapTile, MapTileRequestState>(pPendingQueueSize + 2, 0.1f,
-				true) {
-
-			private static final long serialVersionUID = 6455337315681858866L;
-
-			@Override
-			protected boolean removeEldestEntry(
-					final Map.Entry<MapTile, MapTileRequestState> pEldest) {
-				if (size() > pPendingQueueSize) {
-					MapTile result = null;
-
-					// get the oldest tile that isn't in the mWorking queue
-					Iterator<MapTile> iterator = mPending.keySet().iterator();
-
-					while (result == null && iterator.hasNext()) {
-						final MapTile tile = iterator.next();
-						if (!mWorking.containsKey(tile)) {
-							result = tile;
-						}
-					}
+	/**
+	 * Gets what became of the tiles requested from this provider and how long they took.
+	 */
+	public TileProviderMetrics getMetrics() {
+		return mMetrics;
+	}
 
-					if (result != null) {
-						MapTileRequestState state = mPending.get(result);
-						removeTileFromQueues(result);
-						state.getCallback().mapTileRequestFailed(state);
-					}
-				}
-				return false;
-			}
-		};
+	/**
+	 * Put the metrics of this provider into a map, with keys starting with the name of its threads.
+	 */
+	public void exportMetrics(final Map<String, Long> pMetrics) {
+		mMetrics.export(getThreadGroupName(), pMetrics);
 	}
 
 	public void loadMapTileAsync(final MapTileRequestState pState) {
+		MapTileRequestState dropped = null;
+		pState.setQueueTime(System.nanoTime());
 		synchronized (mQueueLockObject) {
 			// this will put the tile in the queue, or move it to the front of
 			// the queue if it's already present
-			mPending.put(pState.getMapTile(), pState);
+			mQueue.put(pState);
+			// drop the oldest tile that isn't being loaded if the queue is full
+			if (mQueue.size() > mPendingQueueSize) {
+				dropped = mQueue.removeOldest();
+			}
+			mMetrics.queueDepthChanged(mQueue.getPendingCount());
+		}
+		if (dropped != null) {
+			mMetrics.tileDropped();
+			if (dropped.isPrefetch()) {
+				// not worth trying the next providers
+				dropped.cancel();
+			}
+			dropped.setFailureTransient();
+			dropped.getCallback().mapTileRequestFailed(dropped);
 		}
 		try {
 			mExecutor.execute(getTileLoader());
@@ -143,8 +154,27 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 
 	private void clearQueue() {
 		synchronized (mQueueLockObject) {
-			mPending.clear();
-			mWorking.clear();
+			mQueue.clear();
+		}
+	}
+
+	/**
+	 * Drop the pending requests, when this provider can't load tiles for now, and report them as
+	 * failed so that their callbacks don't wait for them.
+	 */
+	private void failPendingRequests() {
+		final List<MapTileRequestState> states = new ArrayList<MapTileRequestState>();
+		synchronized (mQueueLockObject) {
+			MapTileRequestState state;
+			while ((state = mQueue.removeOldest()) != null) {
+				states.add(state);
+			}
+			mMetrics.queueDepthChanged(0);
+		}
+		for (final MapTileRequestState state : states) {
+			mMetrics.tileDropped();
+			state.setFailureTransient();
+			state.getCallback().mapTileRequestFailed(state);
 		}
 	}
 
@@ -156,10 +186,31 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		this.mExecutor.shutdown();
 	}
 
-	void removeTileFromQueues(final MapTile mapTile) {
+	/**
+	 * Called when the visible tiles change. Cancelled requests that are still pending are dropped
+	 * and the other ones are sorted so that the tiles closest to the center of the viewport are
+	 * loaded first.
+	 *
+	 * @param pArea
+	 *            the visible tiles
+	 */
+	public void setViewport(final MapTileArea pArea) {
+		synchronized (mQueueLockObject) {
+			mQueue.prioritize(pArea);
+		}
+	}
+
+	/**
+	 * Called when requests have been cancelled without a change of viewport, such as the prefetch
+	 * requests of a previous prefetch area. The cancelled requests that are still pending are
+	 * skipped when they're taken, subclasses may also stop working on those in progress.
+	 */
+	public void onRequestsCancelled() {
+	}
+
+	void removeTileFromQueues(final MapTileRequestState pState) {
 		synchronized (mQueueLockObject) {
-			mPending.remove(mapTile);
-			mWorking.remove(mapTile);
+			mQueue.remove(pState);
 		}
 	}
 
@@ -170,6 +221,12 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 	 */
 	protected abstract class TileLoader implements Runnable {
 
+		/** when this loader started to load the current tile, or batch of tiles */
+		private long mLoadStartNanos;
+
+		/** whether the current tile has been handed over to the decode stage, or reported as stored */
+		private boolean mReportedApart;
+
 		/**
 		 * Load the requested tile.
 		 *
@@ -181,6 +238,131 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		protected abstract Drawable loadTile(MapTileRequestState pState)
 				throws CantContinueException;
 
+		/**
+		 * Gets the maximum number of pending tiles given at once to {@link #loadTiles(List)}.
+		 *
+		 * @return 1 by default, so that tiles are loaded one by one
+		 */
+		protected int getMaximumBatchSize() {
+			return 1;
+		}
+
+		/**
+		 * Load several requested tiles at once, for tile providers that can get them in one go,
+		 * and report each of them with {@link #tileLoadedOrFailed}. By default the tiles are
+		 * loaded one by one with {@link #loadTile(MapTileRequestState)}.
+		 *
+		 * @param pStates
+		 *            the requested tiles, the most recently requested first
+		 */
+		protected void loadTiles(final List<MapTileRequestState> pStates) {
+			for (final MapTileRequestState state : pStates) {
+				if (DEBUGMODE) {
+					logger.debug("Next tile: " + state.getMapTile());
+				}
+				if (state.isCancelled()) {
+					// the tile left the viewport while it was waiting
+					tileLoadedFailed(state);
+					continue;
+				}
+
+				Drawable result = null;
+				mLoadStartNanos = System.nanoTime();
+				mReportedApart = false;
+				try {
+					result = loadTile(state);
+				} catch (final CantContinueException e) {
+					logger.info("Tile loader can't continue: " + state.getMapTile(), e);
+					state.setFailureTransient();
+					failPendingRequests();
+				} catch (final Throwable e) {
+					logger.error("Error downloading tile: " + state.getMapTile(), e);
+					state.setFailureTransient();
+				}
+
+				if (mReportedApart) {
+					// reported once decoded
+					continue;
+				}
+				tileLoadedOrFailed(state, result);
+			}
+		}
+
+		/**
+		 * Hand the bytes of the tile being loaded over to the {@link TileDecodeStage}, so that
+		 * this I/O thread can read the next tile while they're decoded, and return what
+		 * {@link #loadTile(MapTileRequestState)} must return then. The tile is reported by the
+		 * decoding thread once decoded. If the decode stage is full, the tile is decoded and
+		 * reported by this thread before this returns.
+		 *
+		 * @param pTileSource
+		 *            the tile source to decode the bytes with
+		 * @param pData
+		 *            the bytes of the tile
+		 * @param pExpired
+		 *            whether the tile is expired
+		 * @return null
+		 */
+		protected Drawable decodeApart(final MapTileRequestState pState,
+				final ITileSource pTileSource, final byte[] pData, final boolean pExpired) {
+			final long loadStart = mLoadStartNanos;
+			mMetrics.tileRead(System.nanoTime() - loadStart, pData.length);
+			mReportedApart = true;
+			TileDecodeStage.getInstance().decode(new Runnable() {
+				@Override
+				public void run() {
+					Drawable result = null;
+					try {
+						result = pTileSource.getDrawable(new ByteArrayInputStream(pData));
+						if (result == null) {
+							onTileDecodeFailed(pState);
+						} else if (pExpired) {
+							if (DEBUGMODE) {
+								logger.debug("Tile expired: " + pState.getMapTile());
+							}
+							result.setState(new int[] { ExpirableBitmapDrawable.EXPIRED });
+						}
+					} catch (final LowMemoryException e) {
+						// low memory so empty the queue
+						logger.warn("LowMemoryException decoding MapTile: " + pState.getMapTile()
+								+ " : " + e);
+						pState.setFailureTransient();
+						failPendingRequests();
+					} catch (final Throwable e) {
+						logger.error("Error decoding tile: " + pState.getMapTile(), e);
+						pState.setFailureTransient();
+					}
+					tileLoadedOrFailed(pState, result, loadStart);
+				}
+			});
+			return null;
+		}
+
+		/**
+		 * Report the tile being loaded as stored rather than loaded, for the loaders that only
+		 * fill a cache without decoding the tiles, and return what
+		 * {@link #loadTile(MapTileRequestState)} must return then. The callback is told that the
+		 * request completed, with a null drawable.
+		 * 
+		 * @return null
+		 */
+		protected Drawable tileStored(final MapTileRequestState pState) {
+			mReportedApart = true;
+			mMetrics.tileLoaded(System.nanoTime() - mLoadStartNanos);
+			removeTileFromQueues(pState);
+			pState.getCallback().mapTileRequestCompleted(pState, null);
+			return null;
+		}
+
+		/**
+		 * Called by the decoding thread when the bytes handed over by
+		 * {@link #decodeApart(MapTileRequestState, ITileSource, byte[], boolean)} aren't a valid
+		 * tile. Does nothing by default.
+		 */
+		protected void onTileDecodeFailed(final MapTileRequestState pState) {
+			// Do nothing by default
+		}
+
 		protected void onTileLoaderInit() {
 			// Do nothing by default
 		}
@@ -189,37 +371,30 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 			// Do nothing by default
 		}
 
-		private MapTileRequestState nextTile() {
-
+		private List<MapTileRequestState> nextTiles() {
+			final int maximumBatchSize = getMaximumBatchSize();
+			final List<MapTileRequestState> states = new ArrayList<MapTileRequestState>(
+					maximumBatchSize);
 			synchronized (mQueueLockObject) {
-				MapTile result = null;
-
-				// get the most recently accessed tile
-				// - the last item in the iterator that's not already being
-				// processed
-				Iterator<MapTile> iterator = mPending.keySet().iterator();
-
-				// TODO this iterates the whole list, make this faster...
-				while (iterator.hasNext()) {
-					final MapTile tile = iterator.next();
-					if (!mWorking.containsKey(tile)) {
-						result = tile;
-					}
-				}
-
-				if (result != null) {
-					mWorking.put(result, mPending.get(result));
+				// get the most recently accessed tiles that are not already being processed
+				MapTileRequestState state;
+				while (states.size() < maximumBatchSize && (state = mQueue.takeNewest()) != null) {
+					states.add(state);
 				}
-
-				return (result != null ? mPending.get(result) : null);
+				mMetrics.queueDepthChanged(mQueue.getPendingCount());
+			}
+			final long now = System.nanoTime();
+			for (final MapTileRequestState state : states) {
+				mMetrics.tileTaken(now - state.getQueueTime());
 			}
+			return states;
 		}
 
 		/**
 		 * A tile has loaded.
 		 */
 		protected void tileLoaded(final MapTileRequestState pState, final Drawable pDrawable) {
-			removeTileFromQueues(pState.getMapTile());
+			removeTileFromQueues(pState);
 			pState.getCallback().mapTileRequestCompleted(pState, pDrawable);
 		}
 
@@ -228,15 +403,52 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		 * Return it <b>and</b> send request to next provider.
 		 */
 		protected void tileLoadedExpired(final MapTileRequestState pState, final Drawable pDrawable) {
-			removeTileFromQueues(pState.getMapTile());
+			removeTileFromQueues(pState);
 			pState.getCallback().mapTileRequestExpiredTile(pState, pDrawable);
 		}
 
 		protected void tileLoadedFailed(final MapTileRequestState pState) {
-			removeTileFromQueues(pState.getMapTile());
+			tileLoadedFailed(pState, mLoadStartNanos);
+		}
+
+		private void tileLoadedFailed(final MapTileRequestState pState, final long pLoadStartNanos) {
+			if (pState.isCancelled()) {
+				mMetrics.tileCancelled();
+			} else if (pState.isFailureTransient()) {
+				mMetrics.tileFailed();
+			} else {
+				mMetrics.tileMissing(System.nanoTime() - pLoadStartNanos);
+			}
+			removeTileFromQueues(pState);
 			pState.getCallback().mapTileRequestFailed(pState);
 		}
 
+		/**
+		 * Report the result of the load of a tile.
+		 *
+		 * @param pDrawable
+		 *            the tile, possibly expired, or null if it couldn't be loaded. An expired tile
+		 *            is reported as loaded if {@link MapTileRequestState#setRevalidated()} was
+		 *            called.
+		 */
+		protected void tileLoadedOrFailed(final MapTileRequestState pState, final Drawable pDrawable) {
+			tileLoadedOrFailed(pState, pDrawable, mLoadStartNanos);
+		}
+
+		private void tileLoadedOrFailed(final MapTileRequestState pState,
+				final Drawable pDrawable, final long pLoadStartNanos) {
+			if (pDrawable == null) {
+				tileLoadedFailed(pState, pLoadStartNanos);
+			} else if (!pState.isRevalidated()
+					&& ExpirableBitmapDrawable.isDrawableExpired(pDrawable)) {
+				mMetrics.tileExpired(System.nanoTime() - pLoadStartNanos);
+				tileLoadedExpired(pState, pDrawable);
+			} else {
+				mMetrics.tileLoaded(System.nanoTime() - pLoadStartNanos);
+				tileLoaded(pState, pDrawable);
+			}
+		}
+
 		/**
 		 * This is a functor class of type Runnable. The run method is the encapsulated function.
 		 */
@@ -245,33 +457,14 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 
 			onTileLoaderInit();
 
-			MapTileRequestState state;
-			Drawable result = null;
-			while ((state = nextTile()) != null) {
-				if (DEBUGMODE) {
-					logger.debug("Next tile: " + state.getMapTile());
-				}
-				try {
-					result = null;
-					result = loadTile(state);
-				} catch (final CantContinueException e) {
-					logger.info("Tile loader can't continue: " + state.getMapTile(), e);
-					clearQueue();
-				} catch (final Throwable e) {
-					logger.error("Error downloading tile: " + state.getMapTile(), e);
-				}
-
-				if (result == null) {
-					tileLoadedFailed(state);
-				} else if (ExpirableBitmapDrawable.isDrawableExpired(result)) {
-					tileLoadedExpired(state, result);
-				} else {
-					tileLoaded(state, result);
-				}
+			List<MapTileRequestState> states;
+			while (!(states = nextTiles()).isEmpty()) {
+				mLoadStartNanos = System.nanoTime();
+				loadTiles(states);
+			}
 
-				if (DEBUGMODE) {
-					logger.debug("No more tiles");
-				}
+			if (DEBUGMODE) {
+				logger.debug("No more tiles");
 			}
 
 			onTileLoaderShutdown();
@@ -0,0 +1,238 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.Arrays;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * The queue of tile requests of a {@link MapTileModuleProviderBase}. It holds the pending requests
+ * ordered by recency and the requests that a tile loader is currently working on. Taking the most
+ * recent pending request, dropping the oldest one and removing a request are constant time
+ * operations. Prioritizing the pending requests is linear in their number: they're bucketed by
+ * distance to the viewport rather than sorted.
+ * <p>
+ * This class is not thread safe, callers must synchronize access to it.
+ */
+public class MapTileRequestQueue {
+
+	/**
+	 * The number of distance buckets, each half a tile wide. The requests further away than the
+	 * last bucket share it.
+	 */
+	private static final int PRIORITY_BUCKET_COUNT = 64;
+
+	private final LongHashMap<Node> mNodes = new LongHashMap<Node>();
+
+	/** Sentinel of the circular list of pending requests, newest first. */
+	private final Node mPending = new Node(null, null);
+
+	private int mPendingCount;
+
+	/** The first and the last request of each distance bucket, while prioritizing. */
+	private final Node[] mBucketFirst = new Node[PRIORITY_BUCKET_COUNT];
+	private final Node[] mBucketLast = new Node[PRIORITY_BUCKET_COUNT];
+
+	public MapTileRequestQueue() {
+		mPending.mNext = mPending;
+		mPending.mPrevious = mPending;
+	}
+
+	/**
+	 * Queue a request. If a request for the same tile is already pending then it's replaced and
+	 * moved to the front of the queue. If a request for the same tile is being worked on then the
+	 * new request waits for it to be removed. A new prefetch request goes to the back of the
+	 * queue, to be taken last and dropped first.
+	 */
+	public void put(final MapTileRequestState pState) {
+		Node node = mNodes.get(pState.getMapTile().getKey());
+		if (node == null) {
+			node = new Node(pState.getMapTile(), pState);
+			mNodes.put(node.mTile.getKey(), node);
+			if (pState.isPrefetch()) {
+				linkLast(node);
+			} else {
+				linkFirst(node);
+			}
+		} else {
+			node.mState = pState;
+			if (!node.mWorking) {
+				unlink(node);
+				linkFirst(node);
+			}
+		}
+	}
+
+	/**
+	 * Take the most recent pending request and mark it as being worked on.
+	 *
+	 * @return the request, or null if there are no pending requests
+	 */
+	public MapTileRequestState takeNewest() {
+		final Node node = mPending.mNext;
+		if (node == mPending) {
+			return null;
+		}
+		unlink(node);
+		node.mWorking = true;
+		return node.mState;
+	}
+
+	/**
+	 * Remove the oldest pending request. Requests being worked on are never removed.
+	 *
+	 * @return the removed request, or null if there are no pending requests
+	 */
+	public MapTileRequestState removeOldest() {
+		final Node node = mPending.mPrevious;
+		if (node == mPending) {
+			return null;
+		}
+		unlink(node);
+		mNodes.remove(node.mTile.getKey());
+		return node.mState;
+	}
+
+	/**
+	 * Remove the request for the specified tile, whether it's pending or being worked on.
+	 */
+	public void remove(final MapTile pTile) {
+		final Node node = mNodes.remove(pTile.getKey());
+		if (node != null && !node.mWorking) {
+			unlink(node);
+		}
+	}
+
+	/**
+	 * Remove the specified request once it's been worked on. If another request for the same tile
+	 * was queued meanwhile then that one becomes pending again.
+	 */
+	public void remove(final MapTileRequestState pState) {
+		final Node node = mNodes.get(pState.getMapTile().getKey());
+		if (node == null) {
+			return;
+		}
+		if (node.mState == pState) {
+			remove(pState.getMapTile());
+		} else if (node.mWorking) {
+			node.mWorking = false;
+			linkFirst(node);
+		}
+	}
+
+	/**
+	 * Drop the cancelled pending requests and reorder the remaining ones so that the tiles closest
+	 * to the center of the area are taken first. The requests at about the same distance, within
+	 * half a tile, keep their order.
+	 */
+	public void prioritize(final MapTileArea pArea) {
+		Node node = mPending.mNext;
+		while (node != mPending) {
+			final Node next = node.mNext;
+			if (node.mState.isCancelled()) {
+				mNodes.remove(node.mTile.getKey());
+			} else {
+				// the list is rebuilt below, so mNext links the requests of a bucket meanwhile
+				final int bucket = getBucket(pArea.getDistanceSquared(node.mTile));
+				node.mNext = null;
+				if (mBucketLast[bucket] == null) {
+					mBucketFirst[bucket] = node;
+				} else {
+					mBucketLast[bucket].mNext = node;
+				}
+				mBucketLast[bucket] = node;
+			}
+			node = next;
+		}
+
+		mPending.mNext = mPending;
+		mPending.mPrevious = mPending;
+		mPendingCount = 0;
+		for (int bucket = 0; bucket < PRIORITY_BUCKET_COUNT; bucket++) {
+			node = mBucketFirst[bucket];
+			while (node != null) {
+				final Node next = node.mNext;
+				linkLast(node);
+				node = next;
+			}
+		}
+		Arrays.fill(mBucketFirst, null);
+		Arrays.fill(mBucketLast, null);
+	}
+
+	/**
+	 * @param pDistanceSquared
+	 *            the squared distance in half tiles, see
+	 *            {@link MapTileArea#getDistanceSquared(MapTile)}
+	 */
+	private static int getBucket(final long pDistanceSquared) {
+		if (pDistanceSquared >= (long) PRIORITY_BUCKET_COUNT * PRIORITY_BUCKET_COUNT) {
+			return PRIORITY_BUCKET_COUNT - 1;
+		}
+		return (int) Math.sqrt(pDistanceSquared);
+	}
+
+	public boolean contains(final MapTile pTile) {
+		return mNodes.containsKey(pTile.getKey());
+	}
+
+	/**
+	 * @return the number of pending requests and requests being worked on
+	 */
+	public int size() {
+		return mNodes.size();
+	}
+
+	/**
+	 * @return the number of requests waiting for a tile loader
+	 */
+	public int getPendingCount() {
+		return mPendingCount;
+	}
+
+	public void clear() {
+		mNodes.clear();
+		mPending.mNext = mPending;
+		mPending.mPrevious = mPending;
+		mPendingCount = 0;
+	}
+
+	private void linkFirst(final Node pNode) {
+		pNode.mPrevious = mPending;
+		pNode.mNext = mPending.mNext;
+		mPending.mNext.mPrevious = pNode;
+		mPending.mNext = pNode;
+		mPendingCount++;
+	}
+
+	private void linkLast(final Node pNode) {
+		pNode.mNext = mPending;
+		pNode.mPrevious = mPending.mPrevious;
+		mPending.mPrevious.mNext = pNode;
+		mPending.mPrevious = pNode;
+		mPendingCount++;
+	}
+
+	private void unlink(final Node pNode) {
+		pNode.mPrevious.mNext = pNode.mNext;
+		pNode.mNext.mPrevious = pNode.mPrevious;
+		pNode.mPrevious = null;
+		pNode.mNext = null;
+		mPendingCount--;
+	}
+
+	private static class Node {
+		final MapTile mTile;
+		MapTileRequestState mState;
+		boolean mWorking;
+		Node mPrevious;
+		Node mNext;
+
+		Node(final MapTile pTile, final MapTileRequestState pState) {
+			mTile = pTile;
+			mState = pState;
+		}
+	}
+}
@@ -0,0 +1,736 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.ByteBufferInputStream;
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of {@link IReadableFilesystemCache} that appends the tiles of each tile source to
+ * a few large segment files instead of writing one file per tile. An index of the location of each
+ * tile is kept in memory and persisted as an append-only log next to the segments. Reading a tile
+ * costs a lookup in the index and no file system metadata operation: the full segments are
+ * memory-mapped once, and the tiles of the segment being written are read from its channel.
+ * <p>
+ * If the store exceeds 600 Mb then its oldest segments are deleted until it's under 500 Mb.
+ */
+public class SegmentedTileStore implements IReadableFilesystemCache, OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedTileStore.class);
+
+	/** Default size above which no more tiles are appended to a segment. */
+	public static final int SEGMENT_SIZE_BYTES = 32 * 1024 * 1024;
+
+	private static final String INDEX_FILE_NAME = "index";
+	private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+	/** The index log is compacted when it has that many more records than there are tiles. */
+	private static final int INDEX_COMPACTION_THRESHOLD = 4096;
+
+	/** The segment of the index records of removed tiles, a segment that never exists. */
+	private static final int NO_SEGMENT = -1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mDirectory;
+	private final long mMaximumSizeBytes;
+	private final long mTrimSizeBytes;
+	private final int mSegmentSizeBytes;
+
+	/** The stores of the tile sources, by tile source name. */
+	private final ConcurrentHashMap<String, SourceStore> mStores = new ConcurrentHashMap<String, SourceStore>();
+
+	/** Guards the writes, the opening of the stores and the trimming. */
+	private final Object mLockObject = new Object();
+	private volatile boolean mOpened;
+	private volatile long mSizeBytes;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public SegmentedTileStore() {
+		this(new File(OSMDROID_PATH, "tilestore"));
+	}
+
+	public SegmentedTileStore(final File pDirectory) {
+		this(pDirectory, TILE_MAX_CACHE_SIZE_BYTES, TILE_TRIM_CACHE_SIZE_BYTES);
+	}
+
+	/**
+	 * @param pDirectory
+	 *            the directory of the store
+	 * @param pMaximumSizeBytes
+	 *            the size above which the store is trimmed
+	 * @param pTrimSizeBytes
+	 *            the size the store is trimmed to
+	 */
+	public SegmentedTileStore(final File pDirectory, final long pMaximumSizeBytes,
+			final long pTrimSizeBytes) {
+		this(pDirectory, pMaximumSizeBytes, pTrimSizeBytes, SEGMENT_SIZE_BYTES);
+	}
+
+	/**
+	 * @param pSegmentSizeBytes
+	 *            the size above which no more tiles are appended to a segment. The store is
+	 *            trimmed by whole segments.
+	 */
+	public SegmentedTileStore(final File pDirectory, final long pMaximumSizeBytes,
+			final long pTrimSizeBytes, final int pSegmentSizeBytes) {
+		mDirectory = pDirectory;
+		mMaximumSizeBytes = pMaximumSizeBytes;
+		mTrimSizeBytes = pTrimSizeBytes;
+		mSegmentSizeBytes = pSegmentSizeBytes;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Get the amount of disk space used by the segments of the store. This is zero until the store
+	 * has been used.
+	 *
+	 * @return size in bytes
+	 */
+	public long getSizeBytes() {
+		return mSizeBytes;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream) {
+		return saveFile(pTileSource, pTile, pStream, null);
+	}
+
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream, final CacheValidators pValidators) {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try {
+			StreamUtils.copy(pStream, data);
+		} catch (final IOException e) {
+			return false;
+		}
+
+		synchronized (mLockObject) {
+			try {
+				final SourceStore store = getStore(pTileSource, true);
+				mSizeBytes += store.append(pTile, data.toByteArray(), pValidators);
+				if (mSizeBytes > mMaximumSizeBytes) {
+					trim();
+				}
+			} catch (final IOException e) {
+				logger.warn("Error saving tile: " + pTile + " : " + e);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public CacheValidators getValidators(final ITileSource pTileSource, final MapTile pTile) {
+		final Entry entry = getEntry(pTileSource, pTile);
+		if (entry == null
+				|| (entry.mETag == null && entry.mLastModified == null && entry.mExpires == 0)) {
+			return null;
+		}
+		return new CacheValidators(entry.mETag, entry.mLastModified, entry.mExpires);
+	}
+
+	@Override
+	public boolean refreshFile(final ITileSource pTileSource, final MapTile pTile,
+			final CacheValidators pValidators) {
+		synchronized (mLockObject) {
+			try {
+				final SourceStore store = getStore(pTileSource, false);
+				return store != null && store.refresh(pTile, pValidators);
+			} catch (final IOException e) {
+				logger.warn("Error refreshing tile: " + pTile + " : " + e);
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public long getLastModified(final ITileSource pTileSource, final MapTile pTile) {
+		final Entry entry = getEntry(pTileSource, pTile);
+		return entry != null ? entry.mTimestamp : 0;
+	}
+
+	@Override
+	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+		try {
+			final SourceStore store = getStore(pTileSource, false);
+			if (store == null) {
+				return null;
+			}
+			final Entry entry = store.getEntry(pTile.getKey());
+			if (entry == null) {
+				return null;
+			}
+			final ByteBuffer buffer = store.read(entry);
+			return buffer != null ? new ByteBufferInputStream(buffer) : null;
+		} catch (final IOException e) {
+			logger.warn("Error reading tile: " + pTile + " : " + e);
+			return null;
+		}
+	}
+
+	@Override
+	public boolean remove(final ITileSource pTileSource, final MapTile pTile) {
+		synchronized (mLockObject) {
+			try {
+				final SourceStore store = getStore(pTileSource, false);
+				if (store != null) {
+					store.remove(pTile);
+				}
+				return true;
+			} catch (final IOException e) {
+				logger.warn("Error removing tile: " + pTile + " : " + e);
+				return false;
+			}
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Closes the files of the store. It's opened again when it's used.
+	 */
+	public void close() {
+		synchronized (mLockObject) {
+			for (final SourceStore store : mStores.values()) {
+				store.close();
+			}
+			mStores.clear();
+			mSizeBytes = 0;
+			mOpened = false;
+		}
+	}
+
+	private Entry getEntry(final ITileSource pTileSource, final MapTile pTile) {
+		try {
+			final SourceStore store = getStore(pTileSource, false);
+			return store != null ? store.getEntry(pTile.getKey()) : null;
+		} catch (final IOException e) {
+			logger.warn("Error opening tile store: " + e);
+			return null;
+		}
+	}
+
+	private SourceStore getStore(final ITileSource pTileSource, final boolean pCreate)
+			throws IOException {
+		if (!mOpened) {
+			synchronized (mLockObject) {
+				if (!mOpened) {
+					open();
+				}
+			}
+		}
+		SourceStore store = mStores.get(pTileSource.name());
+		if (store == null && pCreate) {
+			synchronized (mLockObject) {
+				store = mStores.get(pTileSource.name());
+				if (store == null) {
+					store = new SourceStore(new File(mDirectory, pTileSource.name()),
+							mSegmentSizeBytes);
+					mStores.put(pTileSource.name(), store);
+				}
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Open the stores of all the tile sources, so that the size of the whole store is known.
+	 */
+	private void open() throws IOException {
+		final File[] directories = mDirectory.listFiles();
+		if (directories != null) {
+			for (final File directory : directories) {
+				if (directory.isDirectory()) {
+					final SourceStore store = new SourceStore(directory, mSegmentSizeBytes);
+					mStores.put(directory.getName(), store);
+					mSizeBytes += store.getSizeBytes();
+				}
+			}
+		}
+		mOpened = true;
+		if (mSizeBytes > mMaximumSizeBytes) {
+			trim();
+		}
+	}
+
+	/**
+	 * Delete the oldest segments until the store is under the trim size.
+	 */
+	private void trim() {
+		logger.info("Trimming tile store from " + mSizeBytes + " to " + mTrimSizeBytes);
+
+		while (mSizeBytes > mTrimSizeBytes) {
+			SourceStore oldestStore = null;
+			Segment oldest = null;
+			for (final SourceStore store : mStores.values()) {
+				final Segment segment = store.getOldestSegment();
+				if (segment != null
+						&& (oldest == null || segment.mFile.lastModified() < oldest.mFile
+								.lastModified())) {
+					oldestStore = store;
+					oldest = segment;
+				}
+			}
+			if (oldest == null) {
+				// only the segments being written are left
+				break;
+			}
+			mSizeBytes -= oldestStore.removeSegment(oldest);
+		}
+
+		logger.info("Finished trimming tile store");
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The location and the validators of a tile, whose key is {@link MapTile#getKey()}.
+	 */
+	private static class Entry {
+		final long mKey;
+		final int mSegment;
+		final int mOffset;
+		final int mLength;
+		final long mTimestamp;
+		final long mExpires;
+		final String mETag;
+		final String mLastModified;
+
+		Entry(final long pKey, final int pSegment, final int pOffset, final int pLength,
+				final long pTimestamp, final CacheValidators pValidators) {
+			this(pKey, pSegment, pOffset, pLength, pTimestamp,
+					pValidators != null ? pValidators.getExpires() : 0,
+					pValidators != null ? pValidators.getETag() : null,
+					pValidators != null ? pValidators.getLastModified() : null);
+		}
+
+		Entry(final long pKey, final int pSegment, final int pOffset, final int pLength,
+				final long pTimestamp, final long pExpires, final String pETag,
+				final String pLastModified) {
+			mKey = pKey;
+			mSegment = pSegment;
+			mOffset = pOffset;
+			mLength = pLength;
+			mTimestamp = pTimestamp;
+			mExpires = pExpires;
+			mETag = pETag;
+			mLastModified = pLastModified;
+		}
+
+		static Entry read(final DataInputStream pIn) throws IOException {
+			final long key = pIn.readLong();
+			final int segment = pIn.readInt();
+			final int offset = pIn.readInt();
+			final int length = pIn.readInt();
+			final long timestamp = pIn.readLong();
+			final long expires = pIn.readLong();
+			final String eTag = pIn.readUTF();
+			final String lastModified = pIn.readUTF();
+			return new Entry(key, segment, offset, length, timestamp, expires,
+					eTag.length() > 0 ? eTag : null, lastModified.length() > 0 ? lastModified
+							: null);
+		}
+
+		void write(final DataOutputStream pOut) throws IOException {
+			pOut.writeLong(mKey);
+			pOut.writeInt(mSegment);
+			pOut.writeInt(mOffset);
+			pOut.writeInt(mLength);
+			pOut.writeLong(mTimestamp);
+			pOut.writeLong(mExpires);
+			pOut.writeUTF(mETag != null ? mETag : "");
+			pOut.writeUTF(mLastModified != null ? mLastModified : "");
+		}
+	}
+
+	/**
+	 * A segment file, to which tiles are appended until it's full. A full segment is memory-mapped
+	 * for reads, once, as it doesn't change any more.
+	 */
+	private static class Segment {
+		final int mId;
+		final File mFile;
+		private final RandomAccessFile mRandomAccessFile;
+		private final FileChannel mChannel;
+		private volatile long mSize;
+		private volatile boolean mFull;
+		private MappedByteBuffer mMapped;
+
+		Segment(final int pId, final File pFile) throws IOException {
+			mId = pId;
+			mFile = pFile;
+			mRandomAccessFile = new RandomAccessFile(pFile, "rw");
+			mChannel = mRandomAccessFile.getChannel();
+			mSize = mChannel.size();
+		}
+
+		long getSize() {
+			return mSize;
+		}
+
+		/**
+		 * Mark the segment as full: no more tiles are appended to it, and it's mapped for reads.
+		 */
+		void setFull() {
+			mFull = true;
+		}
+
+		/**
+		 * @return the offset of the data in the segment
+		 */
+		int append(final byte[] pData) throws IOException {
+			final long offset = mSize;
+			final ByteBuffer buffer = ByteBuffer.wrap(pData);
+			while (buffer.hasRemaining()) {
+				mChannel.write(buffer, offset + buffer.position());
+			}
+			mSize = offset + pData.length;
+			return (int) offset;
+		}
+
+		/**
+		 * @return the data, or null if it's not in the segment
+		 */
+		ByteBuffer read(final int pOffset, final int pLength) throws IOException {
+			final long end = (long) pOffset + pLength;
+			if (end > mSize) {
+				return null;
+			}
+			final ByteBuffer mapped = mFull ? getMapped() : null;
+			if (mapped == null) {
+				// the segment still grows, or it can't be mapped
+				return readFromChannel(pOffset, pLength);
+			}
+			final ByteBuffer buffer = mapped.duplicate();
+			buffer.position(pOffset);
+			buffer.limit(pOffset + pLength);
+			return buffer.slice();
+		}
+
+		/**
+		 * @return the whole segment, mapped the first time, or null if it can't be mapped
+		 */
+		private synchronized ByteBuffer getMapped() {
+			if (mMapped == null) {
+				try {
+					mMapped = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mSize);
+				} catch (final IOException e) {
+					// out of address space
+					return null;
+				}
+			}
+			return mMapped;
+		}
+
+		private ByteBuffer readFromChannel(final int pOffset, final int pLength)
+				throws IOException {
+			final ByteBuffer buffer = ByteBuffer.allocate(pLength);
+			while (buffer.hasRemaining()) {
+				if (mChannel.read(buffer, pOffset + buffer.position()) < 0) {
+					return null;
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+
+		synchronized void close() {
+			mMapped = null;
+			StreamUtils.closeStream(mRandomAccessFile);
+		}
+	}
+
+	/**
+	 * The segments and the index of a tile source. All the methods but {@link #getEntry(long)} and
+	 * {@link #read(Entry)} are called while holding the lock of the {@link SegmentedTileStore}.
+	 */
+	private static class SourceStore {
+		private final File mDirectory;
+		private final int mSegmentSizeBytes;
+		/** The tiles by {@link MapTile#getKey()}, guarded by itself as it's read without the lock. */
+		private final LongHashMap<Entry> mIndex = new LongHashMap<Entry>();
+		private final ConcurrentHashMap<Integer, Segment> mSegments = new ConcurrentHashMap<Integer, Segment>();
+		private Segment mCurrentSegment;
+		private DataOutputStream mIndexLog;
+		private int mIndexLogCount;
+
+		SourceStore(final File pDirectory, final int pSegmentSizeBytes) throws IOException {
+			mDirectory = pDirectory;
+			mSegmentSizeBytes = pSegmentSizeBytes;
+			if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+				throw new IOException("Can't create " + mDirectory);
+			}
+
+			final File[] files = mDirectory.listFiles();
+			if (files != null) {
+				for (final File file : files) {
+					if (file.getName().startsWith(SEGMENT_FILE_PREFIX)) {
+						try {
+							final int id = Integer.parseInt(file.getName().substring(
+									SEGMENT_FILE_PREFIX.length()));
+							final Segment segment = new Segment(id, file);
+							mSegments.put(id, segment);
+							if (mCurrentSegment == null || id > mCurrentSegment.mId) {
+								mCurrentSegment = segment;
+							}
+						} catch (final NumberFormatException e) {
+							logger.warn("Ignoring unexpected file: " + file);
+						}
+					}
+				}
+			}
+			for (final Segment segment : mSegments.values()) {
+				if (segment != mCurrentSegment) {
+					segment.setFull();
+				}
+			}
+
+			if (readIndex()) {
+				openIndexLog();
+			} else {
+				// the index log ends with a partial record
+				compactIndex();
+			}
+		}
+
+		long getSizeBytes() {
+			long size = 0;
+			for (final Segment segment : mSegments.values()) {
+				size += segment.getSize();
+			}
+			return size;
+		}
+
+		/**
+		 * @return the number of bytes added to the store
+		 */
+		long append(final MapTile pTile, final byte[] pData, final CacheValidators pValidators)
+				throws IOException {
+			if (mCurrentSegment == null
+					|| (mCurrentSegment.getSize() > 0 && mCurrentSegment.getSize()
+							+ pData.length > mSegmentSizeBytes)) {
+				final int id;
+				if (mCurrentSegment == null) {
+					id = 0;
+				} else {
+					id = mCurrentSegment.mId + 1;
+					mCurrentSegment.setFull();
+				}
+				mCurrentSegment = new Segment(id, new File(mDirectory, SEGMENT_FILE_PREFIX + id));
+				mSegments.put(id, mCurrentSegment);
+			}
+			final int offset = mCurrentSegment.append(pData);
+			writeEntry(new Entry(pTile.getKey(), mCurrentSegment.mId, offset, pData.length,
+					System.currentTimeMillis(), pValidators));
+			return pData.length;
+		}
+
+		boolean refresh(final MapTile pTile, final CacheValidators pValidators)
+				throws IOException {
+			final Entry entry = getEntry(pTile.getKey());
+			if (entry == null) {
+				return false;
+			}
+			writeEntry(new Entry(entry.mKey, entry.mSegment, entry.mOffset, entry.mLength,
+					System.currentTimeMillis(), pValidators));
+			return true;
+		}
+
+		/**
+		 * Drop a tile from the index. Its bytes stay in its segment until the segment is deleted.
+		 */
+		void remove(final MapTile pTile) throws IOException {
+			final Entry entry;
+			synchronized (mIndex) {
+				entry = mIndex.remove(pTile.getKey());
+			}
+			if (entry != null) {
+				// a record in no segment, which removes the tile when the log is replayed
+				new Entry(entry.mKey, NO_SEGMENT, 0, 0, 0, null).write(mIndexLog);
+				mIndexLog.flush();
+				mIndexLogCount++;
+			}
+		}
+
+		Entry getEntry(final long pKey) {
+			synchronized (mIndex) {
+				return mIndex.get(pKey);
+			}
+		}
+
+		ByteBuffer read(final Entry pEntry) throws IOException {
+			final Segment segment = mSegments.get(pEntry.mSegment);
+			return segment != null ? segment.read(pEntry.mOffset, pEntry.mLength) : null;
+		}
+
+		/**
+		 * @return the oldest segment that isn't being written, or null if there is none
+		 */
+		Segment getOldestSegment() {
+			Segment oldest = null;
+			for (final Segment segment : mSegments.values()) {
+				if (segment != mCurrentSegment && (oldest == null || segment.mId < oldest.mId)) {
+					oldest = segment;
+				}
+			}
+			return oldest;
+		}
+
+		/**
+		 * Delete a segment and the tiles it contains.
+		 *
+		 * @return the number of bytes removed from the store
+		 */
+		long removeSegment(final Segment pSegment) {
+			synchronized (mIndex) {
+				for (final Entry entry : mIndex.values()) {
+					if (entry.mSegment == pSegment.mId) {
+						mIndex.remove(entry.mKey);
+					}
+				}
+			}
+			mSegments.remove(pSegment.mId);
+			final long size = pSegment.getSize();
+			pSegment.close();
+			if (!pSegment.mFile.delete()) {
+				logger.warn("Can't delete " + pSegment.mFile);
+			}
+			return size;
+		}
+
+		void close() {
+			StreamUtils.closeStream(mIndexLog);
+			mIndexLog = null;
+			for (final Segment segment : mSegments.values()) {
+				segment.close();
+			}
+		}
+
+		private void writeEntry(final Entry pEntry) throws IOException {
+			final int count;
+			synchronized (mIndex) {
+				mIndex.put(pEntry.mKey, pEntry);
+				count = mIndex.size();
+			}
+			pEntry.write(mIndexLog);
+			mIndexLog.flush();
+			mIndexLogCount++;
+			if (mIndexLogCount > count * 2 + INDEX_COMPACTION_THRESHOLD) {
+				compactIndex();
+			}
+		}
+
+		/**
+		 * Replay the index log, the last record of a tile wins.
+		 *
+		 * @return false if the log ends with a partial record
+		 */
+		private boolean readIndex() throws IOException {
+			final File file = new File(mDirectory, INDEX_FILE_NAME);
+			if (!file.exists()) {
+				return true;
+			}
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), StreamUtils.IO_BUFFER_SIZE));
+			try {
+				while (in.available() > 0) {
+					final Entry entry = Entry.read(in);
+					mIndexLogCount++;
+					// ignore the tiles of deleted segments and tiles that weren't fully written
+					final Segment segment = mSegments.get(entry.mSegment);
+					synchronized (mIndex) {
+						if (segment != null
+								&& (long) entry.mOffset + entry.mLength <= segment.getSize()) {
+							mIndex.put(entry.mKey, entry);
+						} else {
+							mIndex.remove(entry.mKey);
+						}
+					}
+				}
+				return true;
+			} catch (final EOFException e) {
+				logger.warn("Tile store index is truncated: " + file);
+				return false;
+			} finally {
+				StreamUtils.closeStream(in);
+			}
+		}
+
+		private void openIndexLog() throws IOException {
+			mIndexLog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+					new File(mDirectory, INDEX_FILE_NAME), true), StreamUtils.IO_BUFFER_SIZE));
+		}
+
+		/**
+		 * Rewrite the index log with one record per tile.
+		 */
+		private void compactIndex() throws IOException {
+			StreamUtils.closeStream(mIndexLog);
+			final File file = new File(mDirectory, INDEX_FILE_NAME);
+			final File tmpFile = new File(mDirectory, INDEX_FILE_NAME + ".tmp");
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmpFile), StreamUtils.IO_BUFFER_SIZE));
+			final ArrayList<Entry> entries;
+			synchronized (mIndex) {
+				entries = mIndex.values();
+			}
+			try {
+				for (final Entry entry : entries) {
+					entry.write(out);
+				}
+			} finally {
+				StreamUtils.closeStream(out);
+			}
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Can't rename " + tmpFile + " to " + file);
+			}
+			mIndexLogCount = entries.size();
+			openIndexLog();
+		}
+	}
+}
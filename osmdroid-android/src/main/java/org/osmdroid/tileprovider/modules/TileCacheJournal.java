@@ -0,0 +1,442 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the files of a disk cache and of their sizes, from the least to the most recently
+ * used, so that the size of the cache is known without walking the file tree and so that the files
+ * to delete are known without sorting them.
+ * <p>
+ * The journal is persisted as a log of the files written and deleted, replayed on {@link #load()}
+ * and rewritten when it grows too long. Reads only update the order in memory. The log is flushed
+ * every few records, so that recording a file doesn't cost a write to the disk each time, and the
+ * owner of the journal must {@link #flush()} it once no more records are coming.
+ * <p>
+ * A journal doesn't know about the files written since its last flushed record, nor about the
+ * files deleted by other means, so its owner should check it against the disk after loading it.
+ * <p>
+ * Neither loading nor rewriting the log holds the lock that recording files needs, so that the
+ * threads saving and reading tiles don't wait for them: the records made while the log is loaded
+ * are merged into it afterwards, and those made while it's rewritten are appended afterwards.
+ */
+public class TileCacheJournal {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(TileCacheJournal.class);
+
+	private static final String PUT = "PUT";
+	private static final String REMOVE = "DEL";
+
+	/** The log is rewritten when it has that many more records than there are files. */
+	private static final int COMPACTION_THRESHOLD = 2000;
+
+	/** The log is flushed after that many records, or when a record is made after that time. */
+	private static final int FLUSH_RECORD_COUNT = 32;
+	static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFile;
+
+	/** Whether the journal file existed before anything was recorded in this instance. */
+	private final boolean mExisted;
+
+	/** The sizes of the files by path, least recently used first. */
+	private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f,
+			true);
+
+	private volatile long mSizeBytes;
+	private Writer mWriter;
+	private int mRecordCount;
+	private int mUnflushedCount;
+	private long mLastFlushTime;
+
+	/** The records made while loading, to merge into the loaded ones, or null if not loading. */
+	private List<Record> mLoadingRecords;
+
+	/** The records made while compacting, to append to the new log, or null if not compacting. */
+	private List<String> mCompactingRecords;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public TileCacheJournal(final File pFile) {
+		mFile = pFile;
+		mExisted = pFile.exists();
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Get the size of the files in the journal. Can be called from any thread without blocking.
+	 *
+	 * @return size in bytes
+	 */
+	public long getSizeBytes() {
+		return mSizeBytes;
+	}
+
+	public synchronized int getCount() {
+		return mEntries.size();
+	}
+
+	public synchronized boolean contains(final String pPath) {
+		return mEntries.containsKey(pPath);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Replay the journal file. Records made before or while loading are kept as the most recent
+	 * ones.
+	 *
+	 * @return false if there was no journal file when this instance was created
+	 */
+	public boolean load() throws IOException {
+		if (!mExisted || !mFile.exists()) {
+			return false;
+		}
+		synchronized (this) {
+			// the files recorded before loading are replayed after the loaded ones
+			mLoadingRecords = new ArrayList<Record>();
+			for (final Map.Entry<String, Long> entry : mEntries.entrySet()) {
+				mLoadingRecords.add(new Record(Record.PUT, entry.getKey(), entry.getValue()));
+			}
+		}
+		final LinkedHashMap<String, Long> loaded = new LinkedHashMap<String, Long>(0, 0.75f, true);
+		int recordCount = 0;
+		final BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile),
+					"UTF-8"), StreamUtils.IO_BUFFER_SIZE);
+		} catch (final IOException e) {
+			mergeLoaded(loaded, 0);
+			throw e;
+		}
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				recordCount++;
+				if (line.startsWith(PUT + " ")) {
+					final int separator = line.indexOf(' ', PUT.length() + 1);
+					if (separator < 0) {
+						// the last record may be truncated
+						continue;
+					}
+					try {
+						final long size = Long.parseLong(line.substring(PUT.length() + 1,
+								separator));
+						final String path = line.substring(separator + 1);
+						loaded.remove(path);
+						loaded.put(path, size);
+					} catch (final NumberFormatException e) {
+						logger.warn("Ignoring invalid journal record: " + line);
+					}
+				} else if (line.startsWith(REMOVE + " ")) {
+					loaded.remove(line.substring(REMOVE.length() + 1));
+				}
+			}
+		} finally {
+			StreamUtils.closeStream(reader);
+			mergeLoaded(loaded, recordCount);
+		}
+		return true;
+	}
+
+	/**
+	 * Make the loaded entries the eldest ones, and replay on them the records made while
+	 * loading.
+	 */
+	private synchronized void mergeLoaded(final LinkedHashMap<String, Long> pLoaded,
+			final int pRecordCount) {
+		final List<Record> records = mLoadingRecords;
+		mLoadingRecords = null;
+		mEntries.clear();
+		mSizeBytes = 0;
+		for (final Map.Entry<String, Long> entry : pLoaded.entrySet()) {
+			putEntry(entry.getKey(), entry.getValue());
+		}
+		for (final Record record : records) {
+			if (record.mType == Record.PUT) {
+				putEntry(record.mPath, record.mSize);
+			} else if (record.mType == Record.REMOVE) {
+				removeEntry(record.mPath);
+			} else {
+				mEntries.get(record.mPath);
+			}
+		}
+		mRecordCount += pRecordCount;
+	}
+
+	/**
+	 * Record that a file has been written. It becomes the most recently used one.
+	 */
+	public void put(final String pPath, final long pSize) {
+		final boolean compact;
+		synchronized (this) {
+			putEntry(pPath, pSize);
+			if (mLoadingRecords != null) {
+				mLoadingRecords.add(new Record(Record.PUT, pPath, pSize));
+			}
+			compact = append(PUT + " " + pSize + " " + pPath);
+		}
+		if (compact) {
+			compact();
+		}
+	}
+
+	/**
+	 * Record that a file has been read. It becomes the most recently used one. This isn't
+	 * persisted.
+	 */
+	public synchronized void touch(final String pPath) {
+		mEntries.get(pPath);
+		if (mLoadingRecords != null) {
+			mLoadingRecords.add(new Record(Record.TOUCH, pPath, 0));
+		}
+	}
+
+	/**
+	 * Record that a file has been deleted.
+	 */
+	public void remove(final String pPath) {
+		boolean compact = false;
+		synchronized (this) {
+			final boolean removed = removeEntry(pPath);
+			if (mLoadingRecords != null) {
+				// the file may be among those being loaded
+				mLoadingRecords.add(new Record(Record.REMOVE, pPath, 0));
+			}
+			if (removed || mLoadingRecords != null) {
+				compact = append(REMOVE + " " + pPath);
+			}
+		}
+		if (compact) {
+			compact();
+		}
+	}
+
+	/**
+	 * Add files found on disk that the journal doesn't know about yet, as the least recently used
+	 * ones, for example when the journal is first created for an existing cache.
+	 *
+	 * @param pEntries
+	 *            the sizes of the files by path, least recently used first
+	 */
+	public void addEldest(final Map<String, Long> pEntries) {
+		synchronized (this) {
+			final ArrayList<Map.Entry<String, Long>> newer = new ArrayList<Map.Entry<String, Long>>(
+					mEntries.entrySet());
+			mEntries.clear();
+			mSizeBytes = 0;
+			for (final Map.Entry<String, Long> entry : pEntries.entrySet()) {
+				putEntry(entry.getKey(), entry.getValue());
+			}
+			for (final Map.Entry<String, Long> entry : newer) {
+				putEntry(entry.getKey(), entry.getValue());
+			}
+		}
+		compact();
+	}
+
+	/**
+	 * Get the least recently used files to delete to free the given amount of space.
+	 *
+	 * @return the paths of the files, least recently used first
+	 */
+	public synchronized List<String> getEldest(final long pBytesToFree) {
+		final List<String> paths = new ArrayList<String>();
+		long freed = 0;
+		final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+		while (freed < pBytesToFree && iterator.hasNext()) {
+			final Map.Entry<String, Long> entry = iterator.next();
+			paths.add(entry.getKey());
+			freed += entry.getValue();
+		}
+		return paths;
+	}
+
+	/**
+	 * Rewrite the journal file with one record per file. The records made meanwhile are appended
+	 * to the new file.
+	 */
+	public void compact() {
+		final List<Map.Entry<String, Long>> entries;
+		synchronized (this) {
+			if (mCompactingRecords != null) {
+				return;
+			}
+			mCompactingRecords = new ArrayList<String>();
+			closeWriter();
+			entries = new ArrayList<Map.Entry<String, Long>>(mEntries.entrySet());
+		}
+
+		final File tmpFile = new File(mFile.getPath() + ".tmp");
+		Writer writer = null;
+		boolean renamed = false;
+		try {
+			final File parent = mFile.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+					"UTF-8"), StreamUtils.IO_BUFFER_SIZE);
+			for (final Map.Entry<String, Long> entry : entries) {
+				writer.write(PUT + " " + entry.getValue() + " " + entry.getKey() + "\n");
+			}
+			writer.close();
+			writer = null;
+			renamed = tmpFile.renameTo(mFile);
+			if (!renamed) {
+				logger.warn("Can't rename " + tmpFile + " to " + mFile);
+			}
+		} catch (final IOException e) {
+			logger.warn("Error writing tile cache journal: " + e);
+		} finally {
+			StreamUtils.closeStream(writer);
+		}
+
+		synchronized (this) {
+			final List<String> records = mCompactingRecords;
+			mCompactingRecords = null;
+			if (renamed) {
+				mRecordCount = entries.size();
+			}
+			for (final String record : records) {
+				append(record);
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Write the records made so far to the disk.
+	 */
+	public synchronized void flush() {
+		if (mWriter == null) {
+			return;
+		}
+		try {
+			mWriter.flush();
+		} catch (final IOException e) {
+			logger.warn("Error writing tile cache journal: " + e);
+			closeWriter();
+		}
+		mUnflushedCount = 0;
+		mLastFlushTime = System.currentTimeMillis();
+	}
+
+	public synchronized void close() {
+		closeWriter();
+	}
+
+	private void closeWriter() {
+		StreamUtils.closeStream(mWriter);
+		mWriter = null;
+		mUnflushedCount = 0;
+	}
+
+	private void putEntry(final String pPath, final long pSize) {
+		final Long previous = mEntries.remove(pPath);
+		if (previous != null) {
+			mSizeBytes -= previous;
+		}
+		mEntries.put(pPath, pSize);
+		mSizeBytes += pSize;
+	}
+
+	private boolean removeEntry(final String pPath) {
+		final Long previous = mEntries.remove(pPath);
+		if (previous != null) {
+			mSizeBytes -= previous;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Append a record to the log, or keep it for later if the log is being compacted.
+	 *
+	 * @return true if the log should be compacted, which the caller must do without holding the
+	 *         lock
+	 */
+	private boolean append(final String pRecord) {
+		if (mCompactingRecords != null) {
+			mCompactingRecords.add(pRecord);
+			return false;
+		}
+		try {
+			if (mWriter == null) {
+				final File parent = mFile.getParentFile();
+				if (parent != null && !parent.exists()) {
+					parent.mkdirs();
+				}
+				mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile,
+						true), "UTF-8"), StreamUtils.IO_BUFFER_SIZE);
+				mLastFlushTime = System.currentTimeMillis();
+			}
+			mWriter.write(pRecord + "\n");
+			mRecordCount++;
+			if (++mUnflushedCount >= FLUSH_RECORD_COUNT
+					|| System.currentTimeMillis() - mLastFlushTime >= FLUSH_INTERVAL_MILLIS) {
+				flush();
+			}
+		} catch (final IOException e) {
+			logger.warn("Error writing tile cache journal: " + e);
+			closeWriter();
+		}
+		// not while loading, as the records being loaded aren't counted yet
+		return mLoadingRecords == null
+				&& mRecordCount > mEntries.size() * 2 + COMPACTION_THRESHOLD;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * A record made while loading the log.
+	 */
+	private static class Record {
+		static final int PUT = 0;
+		static final int REMOVE = 1;
+		static final int TOUCH = 2;
+
+		final int mType;
+		final String mPath;
+		final long mSize;
+
+		Record(final int pType, final String pPath, final long pSize) {
+			mType = pType;
+			mPath = pPath;
+			mSize = pSize;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The decoding stage of the tile loading pipeline. The tile loaders read the tiles on their I/O
+ * threads and hand the decoding over to the threads of this stage, one per CPU core by default, so
+ * that slow reads don't hold up decoding and decoding doesn't hold up reads. The decodings wait in
+ * a bounded queue, and a tile loader handing over a decoding while the queue is full runs it
+ * itself, so that tiles aren't read faster than they can be decoded without a tile loader waiting
+ * for the decodings of the others, such as a download thread behind a burst of file reads.
+ * <p>
+ * The threads are started with the first decoding and are daemon threads, so that one stage can be
+ * shared by all the tile providers of the process, see {@link #getInstance()}.
+ */
+public class TileDecodeStage {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(TileDecodeStage.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private static TileDecodeStage sInstance;
+
+	private final int mThreadCount;
+	private final BlockingQueue<Decoding> mQueue;
+	private final ThreadFactory mThreadFactory;
+	private boolean mStarted;
+
+	private final AtomicLong mCallerRunCount = new AtomicLong();
+	private final AtomicLong mFailedCount = new AtomicLong();
+	private volatile int mMaximumQueueDepth;
+
+	private final LatencyHistogram mWaitLatency = new LatencyHistogram();
+	private final LatencyHistogram mDecodeLatency = new LatencyHistogram();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pThreadCount
+	 *            the number of decoding threads
+	 * @param pQueueSize
+	 *            the number of decodings that can wait before the tile loaders run them
+	 */
+	public TileDecodeStage(final int pThreadCount, final int pQueueSize) {
+		mThreadCount = pThreadCount;
+		mQueue = new ArrayBlockingQueue<Decoding>(pQueueSize);
+		mThreadFactory = new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "decoder");
+	}
+
+	/**
+	 * Gets the stage shared by the tile providers, with a decoding thread per CPU core.
+	 */
+	public static synchronized TileDecodeStage getInstance() {
+		if (sInstance == null) {
+			sInstance = new TileDecodeStage(Runtime.getRuntime().availableProcessors(),
+					OpenStreetMapTileProviderConstants.TILE_DECODE_MAXIMUM_QUEUE_SIZE);
+		}
+		return sInstance;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getThreadCount() {
+		return mThreadCount;
+	}
+
+	/**
+	 * @return the number of decodings waiting for a decoding thread
+	 */
+	public int getQueueDepth() {
+		return mQueue.size();
+	}
+
+	/**
+	 * @return the largest number of decodings that have waited for a decoding thread
+	 */
+	public int getMaximumQueueDepth() {
+		return mMaximumQueueDepth;
+	}
+
+	/**
+	 * @return the number of decodings handed over while the queue was full, which their tile loader
+	 *         ran
+	 */
+	public long getCallerRunCount() {
+		return mCallerRunCount.get();
+	}
+
+	/**
+	 * @return the number of decodings that threw
+	 */
+	public long getFailedCount() {
+		return mFailedCount.get();
+	}
+
+	/**
+	 * @return the time decodings waited in the queue for a decoding thread
+	 */
+	public LatencyHistogram getWaitLatency() {
+		return mWaitLatency;
+	}
+
+	/**
+	 * @return the time taken by the decodings, whose count is the number of tiles decoded
+	 */
+	public LatencyHistogram getDecodeLatency() {
+		return mDecodeLatency;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Hand a decoding over to the decoding threads, or run it on the calling thread if the queue
+	 * is full.
+	 */
+	public void decode(final Runnable pDecoding) {
+		startThreads();
+		final Decoding decoding = new Decoding(pDecoding);
+		if (!mQueue.offer(decoding)) {
+			mCallerRunCount.incrementAndGet();
+			run(decoding);
+			return;
+		}
+		final int depth = mQueue.size();
+		if (depth > mMaximumQueueDepth) {
+			mMaximumQueueDepth = depth;
+		}
+	}
+
+	/**
+	 * Put the counters and the latencies into a map, with keys starting with the given prefix.
+	 */
+	public void export(final String pPrefix, final Map<String, Long> pMetrics) {
+		pMetrics.put(pPrefix + ".threads", (long) getThreadCount());
+		pMetrics.put(pPrefix + ".caller_runs", getCallerRunCount());
+		pMetrics.put(pPrefix + ".failed", getFailedCount());
+		pMetrics.put(pPrefix + ".queue_depth", (long) getQueueDepth());
+		pMetrics.put(pPrefix + ".queue_depth_max", (long) getMaximumQueueDepth());
+		mWaitLatency.export(pPrefix + ".wait", pMetrics);
+		mDecodeLatency.export(pPrefix + ".decode", pMetrics);
+	}
+
+	private synchronized void startThreads() {
+		if (mStarted) {
+			return;
+		}
+		mStarted = true;
+		for (int i = 0; i < mThreadCount; i++) {
+			final Thread thread = mThreadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						try {
+							TileDecodeStage.this.run(mQueue.take());
+						} catch (final InterruptedException e) {
+							return;
+						}
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void run(final Decoding pDecoding) {
+		final long start = System.nanoTime();
+		mWaitLatency.record(start - pDecoding.mQueueTime);
+		try {
+			pDecoding.mRunnable.run();
+		} catch (final Throwable e) {
+			mFailedCount.incrementAndGet();
+			logger.error("Error decoding tile", e);
+		}
+		mDecodeLatency.record(System.nanoTime() - start);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Decoding {
+		final Runnable mRunnable;
+		final long mQueueTime = System.nanoTime();
+
+		Decoding(final Runnable pRunnable) {
+			mRunnable = pRunnable;
+		}
+	}
+}
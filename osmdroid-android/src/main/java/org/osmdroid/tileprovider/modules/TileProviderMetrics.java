@@ -0,0 +1,193 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osmdroid.tileprovider.util.LatencyHistogram;
+
+/**
+ * What became of the tiles requested from a {@link MapTileModuleProviderBase}, and how long they
+ * waited in its queue and took to load. The counters are atomic, so that the tile loaders update
+ * them without locking and they can be left enabled.
+ */
+public class TileProviderMetrics {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final AtomicLong mLoadedCount = new AtomicLong();
+	private final AtomicLong mExpiredCount = new AtomicLong();
+	private final AtomicLong mMissingCount = new AtomicLong();
+	private final AtomicLong mFailedCount = new AtomicLong();
+	private final AtomicLong mCancelledCount = new AtomicLong();
+	private final AtomicLong mDroppedCount = new AtomicLong();
+	private final AtomicLong mReadBytes = new AtomicLong();
+
+	private volatile int mQueueDepth;
+	private volatile int mMaximumQueueDepth;
+
+	private final LatencyHistogram mWaitLatency = new LatencyHistogram();
+	private final LatencyHistogram mLoadLatency = new LatencyHistogram();
+	private final LatencyHistogram mReadLatency = new LatencyHistogram();
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the number of tiles loaded, and not expired
+	 */
+	public long getLoadedCount() {
+		return mLoadedCount.get();
+	}
+
+	/**
+	 * @return the number of expired tiles loaded, which the next providers are asked for
+	 */
+	public long getExpiredCount() {
+		return mExpiredCount.get();
+	}
+
+	/**
+	 * @return the number of tiles that the provider doesn't have
+	 */
+	public long getMissingCount() {
+		return mMissingCount.get();
+	}
+
+	/**
+	 * @return the number of tiles that couldn't be loaded for now, because of a network error for
+	 *         example
+	 */
+	public long getFailedCount() {
+		return mFailedCount.get();
+	}
+
+	/**
+	 * @return the number of tiles cancelled while they were in the queue
+	 */
+	public long getCancelledCount() {
+		return mCancelledCount.get();
+	}
+
+	/**
+	 * @return the number of tiles dropped from the queue, because it was full or because the
+	 *         provider couldn't continue
+	 */
+	public long getDroppedCount() {
+		return mDroppedCount.get();
+	}
+
+	/**
+	 * @return the number of tiles waiting in the queue, as of the last request
+	 */
+	public int getQueueDepth() {
+		return mQueueDepth;
+	}
+
+	/**
+	 * @return the largest number of tiles that have waited in the queue
+	 */
+	public int getMaximumQueueDepth() {
+		return mMaximumQueueDepth;
+	}
+
+	/**
+	 * @return the time tiles waited in the queue before a tile loader took them
+	 */
+	public LatencyHistogram getWaitLatency() {
+		return mWaitLatency;
+	}
+
+	/**
+	 * @return the time tile loaders took to load tiles, decoding included
+	 */
+	public LatencyHistogram getLoadLatency() {
+		return mLoadLatency;
+	}
+
+	/**
+	 * @return the time tile loaders took to read the tiles handed over to the
+	 *         {@link TileDecodeStage}, whose count is the number of tiles read
+	 */
+	public LatencyHistogram getReadLatency() {
+		return mReadLatency;
+	}
+
+	/**
+	 * @return the number of bytes of the tiles handed over to the {@link TileDecodeStage}
+	 */
+	public long getReadBytes() {
+		return mReadBytes.get();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	void tileLoaded(final long pNanos) {
+		mLoadedCount.incrementAndGet();
+		mLoadLatency.record(pNanos);
+	}
+
+	void tileExpired(final long pNanos) {
+		mExpiredCount.incrementAndGet();
+		mLoadLatency.record(pNanos);
+	}
+
+	void tileMissing(final long pNanos) {
+		mMissingCount.incrementAndGet();
+		mLoadLatency.record(pNanos);
+	}
+
+	void tileFailed() {
+		mFailedCount.incrementAndGet();
+	}
+
+	void tileCancelled() {
+		mCancelledCount.incrementAndGet();
+	}
+
+	void tileDropped() {
+		mDroppedCount.incrementAndGet();
+	}
+
+	void tileRead(final long pNanos, final int pBytes) {
+		mReadBytes.addAndGet(pBytes);
+		mReadLatency.record(pNanos);
+	}
+
+	void tileTaken(final long pWaitNanos) {
+		mWaitLatency.record(pWaitNanos);
+	}
+
+	/**
+	 * Called with the lock of the queue held, so that the maximum is updated by one thread at a
+	 * time.
+	 */
+	void queueDepthChanged(final int pQueueDepth) {
+		mQueueDepth = pQueueDepth;
+		if (pQueueDepth > mMaximumQueueDepth) {
+			mMaximumQueueDepth = pQueueDepth;
+		}
+	}
+
+	/**
+	 * Put the counters and the latencies into a map, with keys starting with the given prefix.
+	 */
+	public void export(final String pPrefix, final Map<String, Long> pMetrics) {
+		pMetrics.put(pPrefix + ".loaded", getLoadedCount());
+		pMetrics.put(pPrefix + ".expired", getExpiredCount());
+		pMetrics.put(pPrefix + ".missing", getMissingCount());
+		pMetrics.put(pPrefix + ".failed", getFailedCount());
+		pMetrics.put(pPrefix + ".cancelled", getCancelledCount());
+		pMetrics.put(pPrefix + ".dropped", getDroppedCount());
+		pMetrics.put(pPrefix + ".queue_depth", (long) getQueueDepth());
+		pMetrics.put(pPrefix + ".queue_depth_max", (long) getMaximumQueueDepth());
+		mWaitLatency.export(pPrefix + ".wait", pMetrics);
+		mLoadLatency.export(pPrefix + ".load", pMetrics);
+		pMetrics.put(pPrefix + ".read_bytes", getReadBytes());
+		mReadLatency.export(pPrefix + ".read", pMetrics);
+	}
+}
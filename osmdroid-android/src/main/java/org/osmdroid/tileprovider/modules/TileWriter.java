@@ -2,14 +2,22 @@ package org.osmdroid.tileprovider.modules;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
@@ -19,13 +27,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * An implementation of {@link IFilesystemCache}. It writes tiles to the file system cache. If the
- * cache exceeds 600 Mb then it will be trimmed to 500 Mb.
+ * An implementation of {@link IReadableFilesystemCache}. It writes tiles to the file system cache.
+ * If the cache exceeds 600 Mb then it will be trimmed to 500 Mb.
+ * <p>
+ * The files of the cache are tracked by a {@link TileCacheJournal}, so that the cache size is
+ * known without walking the tile tree and the least recently used tiles are known without sorting
+ * the files. Trimming runs on a low priority background thread and never blocks the threads
+ * saving tiles. The {@link CacheValidators} file of a tile is counted in the size of the tile and
+ * deleted with it.
  *
  * @author Neil Boyd
  *
  */
-public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderConstants {
+public class TileWriter implements IReadableFilesystemCache, OpenStreetMapTileProviderConstants {
 
 	// ===========================================================
 	// Constants
@@ -33,35 +47,52 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	private static final Logger logger = LoggerFactory.getLogger(TileWriter.class);
 
+	/** Name of the journal file, in {@link #TILE_PATH_BASE}. */
+	private static final String JOURNAL_FILE_NAME = "journal";
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
 
-	/** amount of disk space used by tile cache **/
-	private static long mUsedCacheSpace;
+	/** the files of the tile cache, shared by all the writers since they share the directory **/
+	private static TileCacheJournal mJournal;
+
+	/**
+	 * runs the loading of the journal, its flushing and the trimming of the cache, one task at a
+	 * time
+	 **/
+	private static ScheduledExecutorService mCacheExecutor;
+
+	private static final AtomicBoolean mTrimScheduled = new AtomicBoolean();
+
+	private static final AtomicBoolean mFlushScheduled = new AtomicBoolean();
 
 	// ===========================================================
 	// Constructors
 	// ===========================================================
 
 	public TileWriter() {
-
-		// do this in the background because it takes a long time
-		final Thread t = new Thread() {
-			@Override
-			public void run() {
-				mUsedCacheSpace = 0; // because it's static
-				calculateDirectorySize(TILE_PATH_BASE);
-				if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
-					cutCurrentCache();
-				}
-				if (DEBUGMODE) {
-					logger.debug("Finished init thread");
-				}
+		synchronized (TileWriter.class) {
+			if (mJournal == null) {
+				mJournal = new TileCacheJournal(new File(TILE_PATH_BASE, JOURNAL_FILE_NAME));
+				mCacheExecutor = Executors.newSingleThreadScheduledExecutor(
+						new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, "tilecache"));
+
+				// do this in the background because it may take a long time
+				mCacheExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						loadJournal();
+						if (mJournal.getSizeBytes() > TILE_MAX_CACHE_SIZE_BYTES) {
+							trimCache();
+						}
+						if (DEBUGMODE) {
+							logger.debug("Finished init thread");
+						}
+					}
+				});
 			}
-		};
-		t.setPriority(Thread.MIN_PRIORITY);
-		t.start();
+		}
 	}
 
 	// ===========================================================
@@ -70,12 +101,13 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	/**
 	 * Get the amount of disk space used by the tile cache. This will initially be zero since the
-	 * used space is calculated in the background.
+	 * journal is loaded in the background.
 	 *
 	 * @return size in bytes
 	 */
 	public static long getUsedCacheSpace() {
-		return mUsedCacheSpace;
+		final TileCacheJournal journal = mJournal;
+		return journal != null ? journal.getSizeBytes() : 0;
 	}
 
 	// ===========================================================
@@ -85,9 +117,15 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	@Override
 	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
 			final InputStream pStream) {
+		return saveFile(pTileSource, pTile, pStream, null);
+	}
+
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream, final CacheValidators pValidators) {
 
-		final File file = new File(TILE_PATH_BASE, pTileSource.getTileRelativeFilenameString(pTile)
-				+ TILE_PATH_EXTENSION);
+		final String path = getRelativePath(pTileSource, pTile);
+		final File file = new File(TILE_PATH_BASE, path);
 
 		final File parent = file.getParentFile();
 		if (!parent.exists() && !createFolderAndCheckIfExists(parent)) {
@@ -100,10 +138,19 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 					StreamUtils.IO_BUFFER_SIZE);
 			final long length = StreamUtils.copy(pStream, outputStream);
 
-			mUsedCacheSpace += length;
-			if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
-				cutCurrentCache(); // TODO perhaps we should do this in the background
+			// replace the validators of the previous version of the tile
+			final File validatorsFile = CacheValidators.getValidatorsFile(file);
+			if (pValidators != null) {
+				pValidators.write(file);
+			} else {
+				validatorsFile.delete();
+			}
+
+			mJournal.put(path, length + validatorsFile.length());
+			if (mJournal.getSizeBytes() > TILE_MAX_CACHE_SIZE_BYTES) {
+				scheduleTrim();
 			}
+			scheduleFlush();
 		} catch (final IOException e) {
 			return false;
 		} finally {
@@ -114,10 +161,75 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 		return true;
 	}
 
+	@Override
+	public CacheValidators getValidators(final ITileSource pTileSource, final MapTile pTile) {
+		return CacheValidators.read(getFile(pTileSource, pTile));
+	}
+
+	@Override
+	public boolean refreshFile(final ITileSource pTileSource, final MapTile pTile,
+			final CacheValidators pValidators) {
+		final String path = getRelativePath(pTileSource, pTile);
+		final File file = new File(TILE_PATH_BASE, path);
+		if (!file.setLastModified(System.currentTimeMillis())) {
+			return false;
+		}
+		final boolean written = pValidators.write(file);
+		mJournal.put(path, getStoredLength(file));
+		scheduleFlush();
+		return written;
+	}
+
+	@Override
+	public long getLastModified(final ITileSource pTileSource, final MapTile pTile) {
+		return getFile(pTileSource, pTile).lastModified();
+	}
+
+	@Override
+	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+		final String path = getRelativePath(pTileSource, pTile);
+		try {
+			final InputStream in = new FileInputStream(new File(TILE_PATH_BASE, path));
+			mJournal.touch(path);
+			return in;
+		} catch (final FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean remove(final ITileSource pTileSource, final MapTile pTile) {
+		final String path = getRelativePath(pTileSource, pTile);
+		final File file = new File(TILE_PATH_BASE, path);
+		if (!file.delete() && file.exists()) {
+			logger.warn("Error deleting invalid file: " + file);
+			return false;
+		}
+		CacheValidators.getValidatorsFile(file).delete();
+		mJournal.remove(path);
+		scheduleFlush();
+		return true;
+	}
+
 	// ===========================================================
 	// Methods
 	// ===========================================================
 
+	private String getRelativePath(final ITileSource pTileSource, final MapTile pTile) {
+		return pTileSource.getTileRelativeFilenameString(pTile) + TILE_PATH_EXTENSION;
+	}
+
+	private File getFile(final ITileSource pTileSource, final MapTile pTile) {
+		return new File(TILE_PATH_BASE, getRelativePath(pTileSource, pTile));
+	}
+
+	/**
+	 * Gets the disk space used by a tile, its validators included.
+	 */
+	private static long getStoredLength(final File pTileFile) {
+		return pTileFile.length() + CacheValidators.getValidatorsFile(pTileFile).length();
+	}
+
 	private boolean createFolderAndCheckIfExists(final File pFile) {
 		if (pFile.mkdirs()) {
 			return true;
@@ -145,15 +257,77 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 		}
 	}
 
-	private void calculateDirectorySize(final File pDirectory) {
+	/**
+	 * Load the journal, or create it from the files of the cache if there is none yet. A loaded
+	 * journal is then checked against the files of the cache, as it misses the files written
+	 * since its last records were flushed, and those deleted by anything else than this class.
+	 */
+	private static void loadJournal() {
+		boolean loaded = false;
+		try {
+			loaded = mJournal.load();
+		} catch (final IOException e) {
+			logger.warn("Error reading tile cache journal, rebuilding it: " + e);
+		}
+
+		if (!loaded) {
+			logger.info("Creating tile cache journal");
+		}
+		final List<File> files = new ArrayList<File>();
+		listTileFiles(TILE_PATH_BASE, files);
+
+		// order list by files day created from old to new
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(final File f1, final File f2) {
+				return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+			}
+		});
+
+		final int baseLength = TILE_PATH_BASE.getPath().length() + 1;
+		final HashSet<String> paths = new HashSet<String>();
+		final LinkedHashMap<String, Long> untracked = new LinkedHashMap<String, Long>();
+		for (final File file : files) {
+			final String path = file.getPath().substring(baseLength);
+			paths.add(path);
+			if (!mJournal.contains(path)) {
+				untracked.put(path, getStoredLength(file));
+			}
+		}
+		if (!untracked.isEmpty()) {
+			if (loaded) {
+				logger.info("Adding " + untracked.size()
+						+ " untracked files to the tile cache journal");
+			}
+			mJournal.addEldest(untracked);
+		}
+		if (!loaded) {
+			return;
+		}
+
+		int missing = 0;
+		for (final String path : mJournal.getEldest(Long.MAX_VALUE)) {
+			// the file may have been written since the cache was listed
+			if (!paths.contains(path) && !new File(TILE_PATH_BASE, path).exists()) {
+				mJournal.remove(path);
+				missing++;
+			}
+		}
+		if (missing > 0) {
+			logger.info("Removed " + missing + " missing files from the tile cache journal");
+			mJournal.flush();
+		}
+	}
+
+	private static void listTileFiles(final File pDirectory, final List<File> pFiles) {
 		final File[] z = pDirectory.listFiles();
 		if (z != null) {
 			for (final File file : z) {
-				if (file.isFile()) {
-					mUsedCacheSpace += file.length();
+				if (file.isFile() && file.getName().endsWith(TILE_PATH_EXTENSION)) {
+					pFiles.add(file);
 				}
 				if (file.isDirectory() && !isSymbolicDirectoryLink(pDirectory, file)) {
-					calculateDirectorySize(file); // *** recurse ***
+					listTileFiles(file, pFiles); // *** recurse ***
 				}
 			}
 		}
@@ -164,10 +338,10 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	 * the canonical path of the parent directory and the parent directory of the directory's
 	 * canonical path. If they are equal, then they come from the same true parent. If not, then
 	 * pDirectory is a symbolic link. If we get an exception, we err on the side of caution and
-	 * return "true" expecting the calculateDirectorySize to now skip further processing since
-	 * something went goofy.
+	 * return "true" expecting the listTileFiles to now skip further processing since something
+	 * went goofy.
 	 */
-	private boolean isSymbolicDirectoryLink(final File pParentDirectory, final File pDirectory) {
+	private static boolean isSymbolicDirectoryLink(final File pParentDirectory, final File pDirectory) {
 		try {
 			final String canonicalParentPath1 = pParentDirectory.getCanonicalPath();
 			final String canonicalParentPath2 = pDirectory.getCanonicalFile().getParent();
@@ -182,62 +356,60 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	}
 
-	private List<File> getDirectoryFileList(final File aDirectory) {
-		final List<File> files = new ArrayList<File>();
-
-		final File[] z = aDirectory.listFiles();
-		if (z != null) {
-			for (final File file : z) {
-				if (file.isFile()) {
-					files.add(file);
-				}
-				if (file.isDirectory()) {
-					files.addAll(getDirectoryFileList(file));
+	/**
+	 * Trim the cache in the background, unless it's already going to be.
+	 */
+	private static void scheduleTrim() {
+		if (mTrimScheduled.compareAndSet(false, true)) {
+			mCacheExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					mTrimScheduled.set(false);
+					trimCache();
 				}
-			}
+			});
 		}
-
-		return files;
 	}
 
 	/**
-	 * If the cache size is greater than the max then trim it down to the trim level. This method is
-	 * synchronized so that only one thread can run it at a time.
+	 * Flush the journal in the background a moment after a record, so that the records aren't
+	 * lost if no other record follows them, without writing to the disk for each of them.
 	 */
-	private void cutCurrentCache() {
-
-		synchronized (TILE_PATH_BASE) {
-
-			if (mUsedCacheSpace > TILE_TRIM_CACHE_SIZE_BYTES) {
-
-				logger.info("Trimming tile cache from " + mUsedCacheSpace + " to "
-						+ TILE_TRIM_CACHE_SIZE_BYTES);
-
-				final List<File> z = getDirectoryFileList(TILE_PATH_BASE);
-
-				// order list by files day created from old to new
-				final File[] files = z.toArray(new File[0]);
-				Arrays.sort(files, new Comparator<File>() {
-					@Override
-					public int compare(final File f1, final File f2) {
-						return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
-					}
-				});
+	private static void scheduleFlush() {
+		if (mFlushScheduled.compareAndSet(false, true)) {
+			mCacheExecutor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					mFlushScheduled.set(false);
+					mJournal.flush();
+				}
+			}, TileCacheJournal.FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
 
-				for (final File file : files) {
-					if (mUsedCacheSpace <= TILE_TRIM_CACHE_SIZE_BYTES) {
-						break;
-					}
+	/**
+	 * If the cache size is greater than the max then trim it down to the trim level, deleting the
+	 * least recently used tiles first. Only called on the cache thread.
+	 */
+	private static void trimCache() {
+		final long usedCacheSpace = mJournal.getSizeBytes();
+		if (usedCacheSpace <= TILE_TRIM_CACHE_SIZE_BYTES) {
+			return;
+		}
 
-					final long length = file.length();
-					if (file.delete()) {
-						mUsedCacheSpace -= length;
-					}
-				}
+		logger.info("Trimming tile cache from " + usedCacheSpace + " to "
+				+ TILE_TRIM_CACHE_SIZE_BYTES);
 
-				logger.info("Finished trimming tile cache");
+		for (final String path : mJournal.getEldest(usedCacheSpace - TILE_TRIM_CACHE_SIZE_BYTES)) {
+			final File file = new File(TILE_PATH_BASE, path);
+			if (file.delete() || !file.exists()) {
+				CacheValidators.getValidatorsFile(file).delete();
+				mJournal.remove(path);
 			}
 		}
+		mJournal.flush();
+
+		logger.info("Finished trimming tile cache");
 	}
 
 }
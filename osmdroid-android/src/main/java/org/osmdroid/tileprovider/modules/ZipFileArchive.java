@@ -3,6 +3,13 @@ package org.osmdroid.tileprovider.modules;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -12,27 +19,128 @@ import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A zip archive of tiles. Its central directory is read once into a {@link ZipTileIndex} and its
+ * file mapped in memory, so that a tile is found without building its entry name and, when its
+ * entry is stored, which is usual since tiles are already compressed images, read without
+ * copying nor inflating it. Archives that can't be mapped or indexed, for example zip64 ones, are
+ * read through {@link ZipFile}.
+ */
 public class ZipFileArchive implements IArchiveFile {
 
 	private static final Logger logger = LoggerFactory.getLogger(ZipFileArchive.class);
 
-	private final ZipFile mZipFile;
+	private final File mFile;
 
-	private ZipFileArchive(final ZipFile pZipFile) {
+	/** the index of the tiles, null if the archive is read through mZipFile */
+	private final ZipTileIndex mIndex;
+
+	/** opened on demand if there is an index, for tile sources whose names can't be indexed */
+	private ZipFile mZipFile;
+
+	private final ArchiveCoverage mCoverage;
+
+	/** the group of the last tile source in the index, usually the only one */
+	private volatile TileSourceGroup mLastTileSourceGroup;
+
+	private ZipFileArchive(final File pFile, final ZipTileIndex pIndex) {
+		mFile = pFile;
+		mIndex = pIndex;
+		mCoverage = pIndex.getCoverage();
+	}
+
+	private ZipFileArchive(final File pFile, final ZipFile pZipFile) {
+		mFile = pFile;
+		mIndex = null;
 		mZipFile = pZipFile;
+		mCoverage = readCoverage(pZipFile);
 	}
 
 	public static ZipFileArchive getZipFileArchive(final File pFile) throws ZipException, IOException {
-		return new ZipFileArchive(new ZipFile(pFile));
+		try {
+			final RandomAccessFile file = new RandomAccessFile(pFile, "r");
+			try {
+				if (file.length() <= Integer.MAX_VALUE) {
+					final ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+							0, file.length());
+					return new ZipFileArchive(pFile, new ZipTileIndex(buffer));
+				}
+			} finally {
+				// the mapping stays valid
+				file.close();
+			}
+		} catch (final IOException e) {
+			logger.warn("Can't index zip file, reading it with ZipFile: " + pFile, e);
+		} catch (final RuntimeException e) {
+			// a corrupt central directory pointing outside of the file
+			logger.warn("Can't index zip file, reading it with ZipFile: " + pFile, e);
+		}
+		return new ZipFileArchive(pFile, new ZipFile(pFile));
 	}
 
 	@Override
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+		final String group = mIndex == null ? null : getGroup(pTileSource);
+		if (group == null) {
+			return getZipFileInputStream(pTileSource, pTile);
+		}
+		final int entry = mIndex.getEntry(group, pTile.getZoomLevel(), pTile.getX(), pTile.getY());
+		if (entry < 0) {
+			return null;
+		}
+		try {
+			return mIndex.getInputStream(entry);
+		} catch (final ZipException e) {
+			logger.warn("Error getting zip stream: " + pTile, e);
+		}
+		return null;
+	}
+
+	@Override
+	public Map<MapTile, InputStream> getInputStreams(final ITileSource pTileSource,
+			final Collection<MapTile> pTiles) {
+		final Map<MapTile, InputStream> inputStreams = new HashMap<MapTile, InputStream>();
+		for (final MapTile tile : pTiles) {
+			final InputStream in = getInputStream(pTileSource, tile);
+			if (in != null) {
+				inputStreams.put(tile, in);
+			}
+		}
+		return inputStreams;
+	}
+
+	@Override
+	public ArchiveCoverage getCoverage() {
+		return mCoverage;
+	}
+
+	/**
+	 * Get the group of the entries of a tile source in the index, from the name of a sample tile.
+	 *
+	 * @return the group, or null if the names of the tile source aren't made of zoom/x/y
+	 */
+	private String getGroup(final ITileSource pTileSource) {
+		TileSourceGroup tileSourceGroup = mLastTileSourceGroup;
+		if (tileSourceGroup == null || tileSourceGroup.mTileSource != pTileSource) {
+			final int[] tile = new int[3];
+			String group = ZipTileIndex.getGroup(pTileSource.getTileRelativeFilenameString(
+					new MapTile(3, 5, 6)), tile);
+			if (tile[0] != 3 || tile[1] != 5 || tile[2] != 6) {
+				group = null;
+			}
+			tileSourceGroup = new TileSourceGroup(pTileSource, group);
+			mLastTileSourceGroup = tileSourceGroup;
+		}
+		return tileSourceGroup.mGroup;
+	}
+
+	private InputStream getZipFileInputStream(final ITileSource pTileSource, final MapTile pTile) {
 		final String path = pTileSource.getTileRelativeFilenameString(pTile);
 		try {
-			final ZipEntry entry = mZipFile.getEntry(path);
+			final ZipFile zipFile = getZipFile();
+			final ZipEntry entry = zipFile.getEntry(path);
 			if (entry != null) {
-				return mZipFile.getInputStream(entry);
+				return zipFile.getInputStream(entry);
 			}
 		} catch (final IOException e) {
 			logger.warn("Error getting zip stream: " + pTile, e);
@@ -40,9 +148,42 @@ public class ZipFileArchive implements IArchiveFile {
 		return null;
 	}
 
+	private synchronized ZipFile getZipFile() throws IOException {
+		if (mZipFile == null) {
+			mZipFile = new ZipFile(mFile);
+		}
+		return mZipFile;
+	}
+
+	/**
+	 * Read the coverage from the names of the entries, which end with zoom/x/y.extension.
+	 */
+	private static ArchiveCoverage readCoverage(final ZipFile pZipFile) {
+		final ArchiveCoverage coverage = new ArchiveCoverage(pZipFile.size());
+		final int[] tile = new int[3];
+		final Enumeration<? extends ZipEntry> entries = pZipFile.entries();
+		while (entries.hasMoreElements()) {
+			final ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory() && ZipTileIndex.getGroup(entry.getName(), tile) != null) {
+				coverage.add(tile[0], tile[1], tile[2]);
+			}
+		}
+		return coverage;
+	}
+
 	@Override
 	public String toString() {
-		return "ZipFileArchive [mZipFile=" + mZipFile.getName() + "]";
+		return "ZipFileArchive [mZipFile=" + mFile.getPath() + "]";
+	}
+
+	private static class TileSourceGroup {
+		private final ITileSource mTileSource;
+		private final String mGroup;
+
+		TileSourceGroup(final ITileSource pTileSource, final String pGroup) {
+			mTileSource = pTileSource;
+			mGroup = pGroup;
+		}
 	}
 
 }
@@ -0,0 +1,357 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.osmdroid.tileprovider.util.ByteBufferInputStream;
+
+/**
+ * The tiles of a zip file, read once from its central directory, and looked up by zoom level, x
+ * and y without building their entry names. The entries are grouped by the parts of their names
+ * around zoom/x/y, typically the name of the tile source and the extension, each group having a
+ * hash table keyed by the tile coordinates.
+ * <p>
+ * The zip file is read from a buffer, normally mapped in memory, and the content of the stored
+ * entries is a slice of this buffer. Zip64 archives aren't supported.
+ */
+class ZipTileIndex {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int MAXIMUM_COMMENT_SIZE = 0xFFFF;
+	private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+
+	private static final int FLAG_ENCRYPTED = 1;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int MAXIMUM_INFLATER_BUFFER_SIZE = 8192;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final ByteBuffer mBuffer;
+
+	private final HashMap<String, Group> mGroups = new HashMap<String, Group>();
+
+	private int mEntryCount;
+	private long[] mLocalHeaderOffsets;
+	private int[] mCompressedSizes;
+	private int[] mSizes;
+	private boolean[] mDeflated;
+
+	private final ArchiveCoverage mCoverage;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Read the central directory of a zip file.
+	 *
+	 * @param pBuffer
+	 *            the whole zip file, which must not be modified afterwards
+	 * @throws ZipException
+	 *             if the buffer isn't a zip file, or a zip64 one
+	 */
+	ZipTileIndex(final ByteBuffer pBuffer) throws ZipException {
+		mBuffer = pBuffer.duplicate();
+		mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		final int end = findEndOfCentralDirectory();
+		final int count = mBuffer.getShort(end + 10) & 0xFFFF;
+		final long size = mBuffer.getInt(end + 12) & 0xFFFFFFFFL;
+		final long offset = mBuffer.getInt(end + 16) & 0xFFFFFFFFL;
+		if (count == 0xFFFF || offset + size > end) {
+			throw new ZipException("Zip64 or invalid central directory");
+		}
+
+		mLocalHeaderOffsets = new long[count];
+		mCompressedSizes = new int[count];
+		mSizes = new int[count];
+		mDeflated = new boolean[count];
+		mCoverage = new ArchiveCoverage(count);
+
+		final Map<String, ArrayList<long[]>> groups = new HashMap<String, ArrayList<long[]>>();
+		final int[] tile = new int[3];
+		int position = (int) offset;
+		for (int i = 0; i < count; i++) {
+			if (position + CENTRAL_DIRECTORY_HEADER_SIZE > end
+					|| mBuffer.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+				throw new ZipException("Invalid central directory entry " + i);
+			}
+			final int flags = mBuffer.getShort(position + 8) & 0xFFFF;
+			final int method = mBuffer.getShort(position + 10) & 0xFFFF;
+			final long compressedSize = mBuffer.getInt(position + 20) & 0xFFFFFFFFL;
+			final long entrySize = mBuffer.getInt(position + 24) & 0xFFFFFFFFL;
+			final int nameLength = mBuffer.getShort(position + 28) & 0xFFFF;
+			final int extraLength = mBuffer.getShort(position + 30) & 0xFFFF;
+			final int commentLength = mBuffer.getShort(position + 32) & 0xFFFF;
+			final long localHeaderOffset = mBuffer.getInt(position + 42) & 0xFFFFFFFFL;
+			if (compressedSize == 0xFFFFFFFFL || entrySize == 0xFFFFFFFFL
+					|| localHeaderOffset == 0xFFFFFFFFL) {
+				throw new ZipException("Zip64 entry " + i);
+			}
+
+			if (position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength > end) {
+				throw new ZipException("Invalid central directory entry " + i);
+			}
+			final String name = readName(position + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+			position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+			if ((flags & FLAG_ENCRYPTED) != 0
+					|| (method != METHOD_STORED && method != METHOD_DEFLATED)
+					|| entrySize > Integer.MAX_VALUE) {
+				continue;
+			}
+			final String group = getGroup(name, tile);
+			if (group == null) {
+				continue;
+			}
+			mLocalHeaderOffsets[mEntryCount] = localHeaderOffset;
+			mCompressedSizes[mEntryCount] = (int) compressedSize;
+			mSizes[mEntryCount] = (int) entrySize;
+			mDeflated[mEntryCount] = method == METHOD_DEFLATED;
+			ArrayList<long[]> entries = groups.get(group);
+			if (entries == null) {
+				entries = new ArrayList<long[]>();
+				groups.put(group, entries);
+			}
+			entries.add(new long[] { getKey(tile[0], tile[1], tile[2]), mEntryCount });
+			mCoverage.add(tile[0], tile[1], tile[2]);
+			mEntryCount++;
+		}
+
+		for (final Map.Entry<String, ArrayList<long[]>> group : groups.entrySet()) {
+			mGroups.put(group.getKey(), new Group(group.getValue()));
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Get the group of an entry name made of a prefix, the zoom level, x and y separated by
+	 * slashes, and a suffix starting with a dot.
+	 *
+	 * @param pTile
+	 *            receives the zoom level, x and y of the entry
+	 * @return the group of the name, or null if it isn't the name of a tile
+	 */
+	static String getGroup(final String pName, final int[] pTile) {
+		final int ySlash = pName.lastIndexOf('/');
+		final int xSlash = ySlash > 0 ? pName.lastIndexOf('/', ySlash - 1) : -1;
+		if (xSlash < 0) {
+			return null;
+		}
+		final int zoomSlash = xSlash > 0 ? pName.lastIndexOf('/', xSlash - 1) : -1;
+		int yEnd = pName.indexOf('.', ySlash + 1);
+		if (yEnd < 0) {
+			yEnd = pName.length();
+		}
+		pTile[0] = parseNumber(pName, zoomSlash + 1, xSlash);
+		pTile[1] = parseNumber(pName, xSlash + 1, ySlash);
+		pTile[2] = parseNumber(pName, ySlash + 1, yEnd);
+		if (pTile[0] < 0 || pTile[1] < 0 || pTile[2] < 0) {
+			return null;
+		}
+		return pName.substring(0, zoomSlash + 1) + '\u0000' + pName.substring(yEnd);
+	}
+
+	/**
+	 * @return the tiles of the zip file
+	 */
+	ArchiveCoverage getCoverage() {
+		return mCoverage;
+	}
+
+	/**
+	 * Find the entry of a tile. Allocates nothing.
+	 *
+	 * @param pGroup
+	 *            the group of the tile, as returned by {@link #getGroup(String, int[])}
+	 * @return the entry, or -1 if there isn't any for the tile
+	 */
+	int getEntry(final String pGroup, final int pZoom, final int pX, final int pY) {
+		final Group group = mGroups.get(pGroup);
+		return group == null ? -1 : group.get(getKey(pZoom, pX, pY));
+	}
+
+	/**
+	 * Get the content of an entry, a slice of the buffer if it's stored, or inflated from it.
+	 *
+	 * @throws ZipException
+	 *             if the local header of the entry is invalid
+	 */
+	InputStream getInputStream(final int pEntry) throws ZipException {
+		final long localHeaderOffset = mLocalHeaderOffsets[pEntry];
+		if (localHeaderOffset + LOCAL_HEADER_SIZE > mBuffer.limit()
+				|| mBuffer.getInt((int) localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header at " + localHeaderOffset);
+		}
+		final long start = localHeaderOffset + LOCAL_HEADER_SIZE
+				+ (mBuffer.getShort((int) localHeaderOffset + 26) & 0xFFFF)
+				+ (mBuffer.getShort((int) localHeaderOffset + 28) & 0xFFFF);
+		final long end = start + mCompressedSizes[pEntry];
+		if (end > mBuffer.limit()) {
+			throw new ZipException("Truncated entry at " + localHeaderOffset);
+		}
+		final ByteBuffer content = mBuffer.duplicate();
+		content.limit((int) end).position((int) start);
+		if (!mDeflated[pEntry]) {
+			return new ByteBufferInputStream(content);
+		}
+		return new EntryInflaterInputStream(new ByteBufferInputStream(content),
+				mCompressedSizes[pEntry], mSizes[pEntry]);
+	}
+
+	private int findEndOfCentralDirectory() throws ZipException {
+		final int last = mBuffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+		final int first = Math.max(0, last - MAXIMUM_COMMENT_SIZE);
+		for (int position = last; position >= first; position--) {
+			if (mBuffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				return position;
+			}
+		}
+		throw new ZipException("End of central directory not found");
+	}
+
+	private String readName(final int pPosition, final int pLength) throws ZipException {
+		final byte[] name = new byte[pLength];
+		final ByteBuffer buffer = mBuffer.duplicate();
+		buffer.position(pPosition);
+		buffer.get(name);
+		try {
+			return new String(name, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new ZipException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Parse a number written the way {@link Integer#toString(int)} does, as the entry would
+	 * otherwise not have the name that the tile source builds for the tile.
+	 *
+	 * @return the number, or -1 if it isn't one
+	 */
+	private static int parseNumber(final String pString, final int pStart, final int pEnd) {
+		if (pEnd <= pStart || pEnd - pStart > 9
+				|| pEnd - pStart > 1 && pString.charAt(pStart) == '0') {
+			return -1;
+		}
+		int number = 0;
+		for (int i = pStart; i < pEnd; i++) {
+			final char digit = pString.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			number = number * 10 + digit - '0';
+		}
+		return number;
+	}
+
+	private static long getKey(final int pZoom, final int pX, final int pY) {
+		return (long) pZoom << 58 | (long) pX << 29 | pY;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The entries of a group, in an open addressing hash table with linear probing.
+	 */
+	private static class Group {
+
+		private final long[] mKeys;
+		/** the entries plus one, zero for an empty slot */
+		private final int[] mEntries;
+		private final int mMask;
+
+		Group(final ArrayList<long[]> pEntries) {
+			int capacity = 4;
+			while (capacity < pEntries.size() * 2) {
+				capacity <<= 1;
+			}
+			mKeys = new long[capacity];
+			mEntries = new int[capacity];
+			mMask = capacity - 1;
+			for (final long[] entry : pEntries) {
+				int slot = hash(entry[0]) & mMask;
+				while (mEntries[slot] != 0 && mKeys[slot] != entry[0]) {
+					slot = (slot + 1) & mMask;
+				}
+				mKeys[slot] = entry[0];
+				mEntries[slot] = (int) entry[1] + 1;
+			}
+		}
+
+		int get(final long pKey) {
+			int slot = hash(pKey) & mMask;
+			while (mEntries[slot] != 0) {
+				if (mKeys[slot] == pKey) {
+					return mEntries[slot] - 1;
+				}
+				slot = (slot + 1) & mMask;
+			}
+			return -1;
+		}
+
+		private static int hash(final long pKey) {
+			long hash = pKey ^ (pKey >>> 33);
+			hash *= 0xff51afd7ed558ccdL;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	/**
+	 * Inflates an entry, and releases the native memory of its inflater when closed.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream {
+
+		private final int mSize;
+		private boolean mClosed;
+
+		EntryInflaterInputStream(final InputStream pIn, final int pCompressedSize,
+				final int pSize) {
+			super(pIn, new Inflater(true), Math.max(1, Math.min(pCompressedSize,
+					MAXIMUM_INFLATER_BUFFER_SIZE)));
+			mSize = pSize;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (mClosed) {
+				throw new IOException("Stream closed");
+			}
+			return inf.finished() ? 0 : Math.max(0, mSize - inf.getTotalOut());
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!mClosed) {
+				mClosed = true;
+				super.close();
+				inf.end();
+			}
+		}
+	}
+}
@@ -1,14 +1,17 @@
 package org.osmdroid.tileprovider.tilesource;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Random;
 
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.ResourceProxy.string;
-import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.BitmapPool;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.util.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +26,16 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 
 	private static int globalOrdinal = 0;
 
+	private static final int DECODING_BUFFER_SIZE = 16 * 1024;
+
+	/** The temporary storage of the decoder, allocated once per decoding thread. */
+	private static final ThreadLocal<byte[]> DECODING_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[DECODING_BUFFER_SIZE];
+		}
+	};
+
 	private final int mMinimumZoomLevel;
 	private final int mMaximumZoomLevel;
 
@@ -35,6 +48,8 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 
 	private final string mResourceId;
 
+	private final LatencyHistogram mDecodeLatency = new LatencyHistogram();
+
 	public BitmapTileSourceBase(final String aName, final string aResourceId,
 			final int aZoomMinLevel, final int aZoomMaxLevel, final int aTileSizePixels,
 			final String aImageFilenameEnding) {
@@ -85,14 +100,29 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 		return proxy.getString(mResourceId);
 	}
 
+	/**
+	 * Gets the time taken to decode the tiles, reading included when they're decoded from a stream.
+	 */
+	public LatencyHistogram getDecodeLatency() {
+		return mDecodeLatency;
+	}
+
 	@Override
 	public Drawable getDrawable(final String aFilePath) {
 		try {
-			// default implementation will load the file as a bitmap and create
-			// a BitmapDrawable from it
-			final Bitmap bitmap = BitmapFactory.decodeFile(aFilePath);
+			// default implementation will load the file as a bitmap, reusing one of the pool if
+			// possible, and create a BitmapDrawable from it
+			final long start = System.nanoTime();
+			Bitmap bitmap;
+			try {
+				bitmap = BitmapFactory.decodeFile(aFilePath, getBitmapOptions(true));
+			} catch (final IllegalArgumentException e) {
+				// the image doesn't fit in the bitmap of the pool
+				bitmap = BitmapFactory.decodeFile(aFilePath, getBitmapOptions(false));
+			}
+			mDecodeLatency.record(System.nanoTime() - start);
 			if (bitmap != null) {
-				return new ExpirableBitmapDrawable(bitmap);
+				return new ReusableBitmapDrawable(bitmap);
 			} else {
 				// if we couldn't load it then it's invalid - delete it
 				try {
@@ -125,12 +155,27 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 	@Override
 	public Drawable getDrawable(final InputStream aFileInputStream) throws LowMemoryException {
 		try {
-			// default implementation will load the file as a bitmap and create
-			// a BitmapDrawable from it
-			final Bitmap bitmap = BitmapFactory.decodeStream(aFileInputStream);
+			// default implementation will load the file as a bitmap, reusing one of the pool if
+			// the stream can be read again should the image not fit in it, and create a
+			// BitmapDrawable from it
+			final long start = System.nanoTime();
+			final boolean reuse = aFileInputStream.markSupported();
+			Bitmap bitmap;
+			if (reuse) {
+				aFileInputStream.mark(Integer.MAX_VALUE);
+			}
+			try {
+				bitmap = BitmapFactory.decodeStream(aFileInputStream, null, getBitmapOptions(reuse));
+			} catch (final IllegalArgumentException e) {
+				aFileInputStream.reset();
+				bitmap = BitmapFactory.decodeStream(aFileInputStream, null, getBitmapOptions(false));
+			}
+			mDecodeLatency.record(System.nanoTime() - start);
 			if (bitmap != null) {
-				return new ExpirableBitmapDrawable(bitmap);
+				return new ReusableBitmapDrawable(bitmap);
 			}
+		} catch (final IOException e) {
+			logger.error("Error reading bitmap again", e);
 		} catch (final OutOfMemoryError e) {
 			logger.error("OutOfMemoryError loading bitmap");
 			System.gc();
@@ -139,6 +184,22 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 		return null;
 	}
 
+	/**
+	 * Get the options to decode a tile, with a decoding buffer of the thread.
+	 *
+	 * @param pReuse
+	 *            whether to decode into a bitmap of the {@link BitmapPool}
+	 */
+	protected BitmapFactory.Options getBitmapOptions(final boolean pReuse) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inTempStorage = DECODING_BUFFER.get();
+		if (pReuse) {
+			BitmapPool.getInstance().applyReusableOptions(options, mTileSizePixels,
+					mTileSizePixels);
+		}
+		return options;
+	}
+
 	public final class LowMemoryException extends Exception {
 		private static final long serialVersionUID = 146526524087765134L;
 
@@ -2,25 +2,75 @@ package org.osmdroid.tileprovider.tilesource;
 
 import org.osmdroid.ResourceProxy.string;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.util.MirrorStatistics;
 
 public abstract class OnlineTileSourceBase extends BitmapTileSourceBase {
 
 	private final String mBaseUrls[];
 
+	private final MirrorStatistics mMirrorStatistics;
+
 	public OnlineTileSourceBase(final String aName, final string aResourceId,
 			final int aZoomMinLevel, final int aZoomMaxLevel, final int aTileSizePixels,
 			final String aImageFilenameEnding, final String... aBaseUrl) {
 		super(aName, aResourceId, aZoomMinLevel, aZoomMaxLevel, aTileSizePixels,
 				aImageFilenameEnding);
 		mBaseUrls = aBaseUrl;
+		mMirrorStatistics = new MirrorStatistics(aBaseUrl.length);
 	}
 
 	public abstract String getTileURLString(MapTile aTile);
 
 	/**
-	 * Get the base url, which will be a random one if there are more than one.
+	 * Get the base url, which will be the one of a fast and healthy mirror if there are more than
+	 * one, see {@link MirrorStatistics}.
 	 */
 	protected String getBaseUrl() {
-		return mBaseUrls[random.nextInt(mBaseUrls.length)];
+		return mBaseUrls[mBaseUrls.length == 1 ? 0 : mMirrorStatistics.choose(random)];
+	}
+
+	/**
+	 * Gets the latency and the error rate of each base url, which the downloader records.
+	 */
+	public MirrorStatistics getMirrorStatistics() {
+		return mMirrorStatistics;
+	}
+
+	/**
+	 * Get the base url a tile url starts with, up to its first format specifier if it's a format.
+	 *
+	 * @return the index of the base url, or -1 if the url doesn't start with one of them
+	 */
+	public int getMirror(final String aTileURLString) {
+		for (int i = 0; i < mBaseUrls.length; i++) {
+			if (mBaseUrls[i] != null && aTileURLString.startsWith(getMirrorPrefix(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the url of the same tile at another base url, the best of the others.
+	 *
+	 * @return the url, or null if there's no other base url or if the url doesn't start with one
+	 *         of them
+	 */
+	public String getTileURLStringOnOtherMirror(final String aTileURLString) {
+		final int mirror = getMirror(aTileURLString);
+		if (mirror < 0) {
+			return null;
+		}
+		final int other = mMirrorStatistics.choose(random, mirror);
+		if (other < 0) {
+			return null;
+		}
+		return getMirrorPrefix(other)
+				+ aTileURLString.substring(getMirrorPrefix(mirror).length());
+	}
+
+	private String getMirrorPrefix(final int pMirror) {
+		final int format = mBaseUrls[pMirror].indexOf('%');
+		return format < 0 ? mBaseUrls[pMirror] : mBaseUrls[pMirror].substring(0, format);
 	}
 }
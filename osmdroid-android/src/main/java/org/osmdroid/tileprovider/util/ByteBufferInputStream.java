@@ -0,0 +1,79 @@
+package org.osmdroid.tileprovider.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.InvalidMarkException;
+
+/**
+ * An {@link InputStream} reading the remaining bytes of a {@link ByteBuffer}, typically a slice of
+ * a memory-mapped file. The buffer is read directly, without copying it first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer mBuffer;
+
+	/**
+	 * @param pBuffer
+	 *            the buffer to read, from its position to its limit. It must not be used by
+	 *            anything else while the stream is read, pass a duplicate if needed.
+	 */
+	public ByteBufferInputStream(final ByteBuffer pBuffer) {
+		mBuffer = pBuffer;
+	}
+
+	@Override
+	public int read() {
+		if (!mBuffer.hasRemaining()) {
+			return -1;
+		}
+		return mBuffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] pBuffer, final int pOffset, final int pLength) {
+		if (pLength == 0) {
+			return 0;
+		}
+		final int count = Math.min(pLength, mBuffer.remaining());
+		if (count == 0) {
+			return -1;
+		}
+		mBuffer.get(pBuffer, pOffset, count);
+		return count;
+	}
+
+	@Override
+	public long skip(final long pCount) {
+		final int count = (int) Math.max(0, Math.min(pCount, mBuffer.remaining()));
+		mBuffer.position(mBuffer.position() + count);
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return mBuffer.remaining();
+	}
+
+	/**
+	 * Marking is free since the whole content is already in the buffer.
+	 */
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(final int pReadLimit) {
+		mBuffer.mark();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		try {
+			mBuffer.reset();
+		} catch (final InvalidMarkException e) {
+			throw new IOException("Mark not set");
+		}
+	}
+}
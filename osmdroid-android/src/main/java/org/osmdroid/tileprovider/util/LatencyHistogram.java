@@ -0,0 +1,119 @@
+package org.osmdroid.tileprovider.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets of powers of two microseconds, up to about 17 seconds, with atomic
+ * counters so that any thread records a duration without locking. The percentiles are as precise
+ * as the buckets, within a factor of two, which is enough to tell where tiles spend their time.
+ */
+public class LatencyHistogram {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Bucket 0 counts durations under a microsecond, bucket i those under 2^i microseconds. */
+	public static final int BUCKET_COUNT = 26;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mTotalMicros = new AtomicLong();
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += mCounts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of durations recorded in a bucket
+	 */
+	public long getBucketCount(final int pBucket) {
+		return mCounts.get(pBucket);
+	}
+
+	/**
+	 * @return the durations of a bucket are shorter than this, in microseconds, except for those of
+	 *         the last bucket
+	 */
+	public static long getBucketUpperBoundMicros(final int pBucket) {
+		return 1L << pBucket;
+	}
+
+	/**
+	 * @return the mean duration in microseconds, 0 if none was recorded
+	 */
+	public long getMeanMicros() {
+		final long count = getCount();
+		return count == 0 ? 0 : mTotalMicros.get() / count;
+	}
+
+	/**
+	 * Get a percentile of the durations, rounded up to the upper bound of its bucket.
+	 *
+	 * @param pPercentile
+	 *            between 0 and 1, for example 0.9 for the 90th percentile
+	 * @return the duration in microseconds, 0 if none was recorded
+	 */
+	public long getPercentileMicros(final double pPercentile) {
+		final long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = mCounts.get(i);
+			count += counts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(pPercentile * count));
+		long cumulated = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulated += counts[i];
+			if (cumulated >= rank) {
+				return getBucketUpperBoundMicros(i);
+			}
+		}
+		return getBucketUpperBoundMicros(BUCKET_COUNT - 1);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Record a duration, typically the difference of two {@link System#nanoTime()}.
+	 */
+	public void record(final long pNanos) {
+		final long micros = Math.max(0, pNanos / 1000);
+		final int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+		mCounts.incrementAndGet(bucket);
+		mTotalMicros.addAndGet(micros);
+	}
+
+	/**
+	 * Put the number of durations, their mean and their usual percentiles in microseconds into a
+	 * map, with keys starting with the given prefix.
+	 */
+	public void export(final String pPrefix, final Map<String, Long> pMetrics) {
+		pMetrics.put(pPrefix + ".count", getCount());
+		pMetrics.put(pPrefix + ".mean_us", getMeanMicros());
+		pMetrics.put(pPrefix + ".p50_us", getPercentileMicros(0.5));
+		pMetrics.put(pPrefix + ".p90_us", getPercentileMicros(0.9));
+		pMetrics.put(pPrefix + ".p99_us", getPercentileMicros(0.99));
+	}
+}
@@ -0,0 +1,220 @@
+package org.osmdroid.tileprovider.util;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The latency and the error rate of the downloads from each mirror of a tile source, to choose
+ * the mirror of each tile. A mirror is chosen among two healthy ones at random, the one with the
+ * lower expected latency, so that the faster mirrors get most of the tiles without the slower
+ * ones being left out, and a few mirrors are chosen at random so that every mirror keeps being
+ * measured. A mirror failing more often than not is avoided for a while, longer after each
+ * failure.
+ * <p>
+ * The latencies of all the mirrors are also kept in a {@link LatencyHistogram}, whose
+ * percentiles tell when a download takes long enough to be worth sending to another mirror.
+ */
+public class MirrorStatistics {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** The weight of a new download in the moving averages of a mirror. */
+	private static final double SMOOTHING = 0.2;
+
+	/** The error rate at and above which a failing mirror is avoided for a while. */
+	private static final double UNHEALTHY_ERROR_RATE = 0.5;
+
+	private static final long MINIMUM_BACKOFF_NANOS = 5 * 1000 * 1000 * 1000L;
+	private static final long MAXIMUM_BACKOFF_NANOS = 5 * 60 * 1000 * 1000 * 1000L;
+
+	/** The share of mirrors chosen at random, so that slow mirrors are measured again. */
+	private static final double EXPLORATION_RATIO = 0.05;
+
+	/** The number of downloads measured before the latency percentiles are trusted. */
+	private static final int MINIMUM_SAMPLES = 20;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final Mirror[] mMirrors;
+
+	private final LatencyHistogram mLatency = new LatencyHistogram();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MirrorStatistics(final int pMirrorCount) {
+		mMirrors = new Mirror[pMirrorCount];
+		for (int i = 0; i < pMirrorCount; i++) {
+			mMirrors[i] = new Mirror();
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getMirrorCount() {
+		return mMirrors.length;
+	}
+
+	/**
+	 * @return the moving average of the latency of a mirror, 0 if nothing was downloaded from it
+	 */
+	public synchronized long getLatencyMicros(final int pMirror) {
+		return (long) (mMirrors[pMirror].mLatencyNanos / 1000);
+	}
+
+	/**
+	 * @return the moving average of the share of failed downloads from a mirror
+	 */
+	public synchronized double getErrorRate(final int pMirror) {
+		return mMirrors[pMirror].mErrorRate;
+	}
+
+	/**
+	 * @return false if the mirror is avoided for now because it fails too often
+	 */
+	public synchronized boolean isHealthy(final int pMirror) {
+		return mMirrors[pMirror].mRetryTime - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return the latencies of the successful downloads from all the mirrors
+	 */
+	public LatencyHistogram getLatency() {
+		return mLatency;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Choose the mirror to download a tile from.
+	 */
+	public int choose(final Random pRandom) {
+		return choose(pRandom, -1);
+	}
+
+	/**
+	 * Choose the mirror to download a tile from, other than the given one.
+	 *
+	 * @param pExcluded
+	 *            the mirror not to choose, or -1
+	 * @return the mirror, or -1 if there's no other mirror
+	 */
+	public synchronized int choose(final Random pRandom, final int pExcluded) {
+		final long now = System.nanoTime();
+		final int[] candidates = new int[mMirrors.length];
+		int count = 0;
+		int soonestRetry = -1;
+		for (int i = 0; i < mMirrors.length; i++) {
+			if (i == pExcluded) {
+				continue;
+			}
+			if (mMirrors[i].mRetryTime - now <= 0) {
+				candidates[count++] = i;
+			} else if (soonestRetry < 0
+					|| mMirrors[i].mRetryTime - mMirrors[soonestRetry].mRetryTime < 0) {
+				soonestRetry = i;
+			}
+		}
+		if (count == 0) {
+			// all failing, try the one that failed the longest ago
+			return soonestRetry;
+		}
+		if (count == 1) {
+			return candidates[0];
+		}
+		final int first = candidates[pRandom.nextInt(count)];
+		if (pRandom.nextDouble() < EXPLORATION_RATIO) {
+			return first;
+		}
+		int second = candidates[pRandom.nextInt(count - 1)];
+		if (second == first) {
+			second = candidates[count - 1];
+		}
+		return mMirrors[second].getScore() < mMirrors[first].getScore() ? second : first;
+	}
+
+	/**
+	 * Record a download from a mirror.
+	 *
+	 * @param pNanos
+	 *            the time the download took
+	 * @param pSuccess
+	 *            whether the mirror answered, even that it doesn't have the tile
+	 */
+	public void record(final int pMirror, final long pNanos, final boolean pSuccess) {
+		if (pSuccess) {
+			mLatency.record(pNanos);
+		}
+		synchronized (this) {
+			final Mirror mirror = mMirrors[pMirror];
+			if (mirror.mLatencyNanos == 0) {
+				mirror.mLatencyNanos = pNanos;
+			} else {
+				mirror.mLatencyNanos += SMOOTHING * (pNanos - mirror.mLatencyNanos);
+			}
+			mirror.mErrorRate += SMOOTHING * ((pSuccess ? 0 : 1) - mirror.mErrorRate);
+			if (pSuccess) {
+				mirror.mBackoffNanos = 0;
+			} else if (mirror.mErrorRate >= UNHEALTHY_ERROR_RATE) {
+				mirror.mBackoffNanos = mirror.mBackoffNanos == 0 ? MINIMUM_BACKOFF_NANOS : Math
+						.min(mirror.mBackoffNanos * 2, MAXIMUM_BACKOFF_NANOS);
+				mirror.mRetryTime = System.nanoTime() + mirror.mBackoffNanos;
+			}
+		}
+	}
+
+	/**
+	 * Gets how long a download takes at the given percentile, as the time after which it's worth
+	 * asking another mirror for the tile.
+	 *
+	 * @return the time in nanoseconds, or -1 if too few downloads were measured yet
+	 */
+	public long getLatencyPercentileNanos(final double pPercentile) {
+		if (mLatency.getCount() < MINIMUM_SAMPLES) {
+			return -1;
+		}
+		return mLatency.getPercentileMicros(pPercentile) * 1000;
+	}
+
+	/**
+	 * Put the latency, the error rate and the health of each mirror into a map, with keys starting
+	 * with the given prefix.
+	 */
+	public void export(final String pPrefix, final Map<String, Long> pMetrics) {
+		for (int i = 0; i < mMirrors.length; i++) {
+			final String prefix = pPrefix + "." + i;
+			pMetrics.put(prefix + ".latency_us", getLatencyMicros(i));
+			pMetrics.put(prefix + ".error_rate_percent", Math.round(getErrorRate(i) * 100));
+			pMetrics.put(prefix + ".healthy", isHealthy(i) ? 1L : 0L);
+		}
+		mLatency.export(pPrefix + ".latency", pMetrics);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Mirror {
+		double mLatencyNanos;
+		double mErrorRate;
+		long mBackoffNanos;
+		long mRetryTime = System.nanoTime();
+
+		/**
+		 * The expected time to download a tile, retries included. A mirror not measured yet has
+		 * the best score, so that it gets measured.
+		 */
+		double getScore() {
+			return mLatencyNanos / (1 - Math.min(mErrorRate, 0.9));
+		}
+	}
+}
@@ -1,25 +1,106 @@
 package org.osmdroid.tileprovider.util;
 
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.views.MapView;
 
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.view.View;
 
+/**
+ * Invalidates a view when tiles arrive. The arrivals are coalesced into at most one invalidation
+ * per display frame, and if the view is a {@link MapView} and the messages carry their
+ * {@link MapTile}, only the union of the areas of the arrived tiles is invalidated.
+ */
 public class SimpleInvalidationHandler extends Handler {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** The duration of a display frame at 60 frames per second. */
+	private static final long FRAME_MS = 16;
+
+	private static final int INVALIDATE_ID = MapTile.MAPTILE_FAIL_ID + 1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
 	private final View mView;
 
+	private final Rect mDirty = new Rect();
+	private final Rect mTileRect = new Rect();
+	private boolean mInvalidateAll;
+	private boolean mInvalidatePending;
+	private long mLastInvalidateMs;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
 	public SimpleInvalidationHandler(final View pView) {
 		super();
 		mView = pView;
 	}
 
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
 	@Override
 	public void handleMessage(final Message msg) {
 		switch (msg.what) {
 		case MapTile.MAPTILE_SUCCESS_ID:
-			mView.invalidate();
+			addDirtyTile(msg.obj instanceof MapTile ? (MapTile) msg.obj : null);
+			scheduleInvalidate();
 			break;
+		case INVALIDATE_ID:
+			invalidate();
+			break;
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	private void addDirtyTile(final MapTile pTile) {
+		if (mInvalidateAll) {
+			return;
+		}
+		if (pTile != null && mView instanceof MapView
+				&& ((MapView) mView).getMapTileRect(pTile, mTileRect)) {
+			mDirty.union(mTileRect);
+		} else {
+			mInvalidateAll = true;
+		}
+	}
+
+	private void scheduleInvalidate() {
+		if (mInvalidatePending) {
+			return;
+		}
+		mInvalidatePending = true;
+		final long sinceLastMs = SystemClock.uptimeMillis() - mLastInvalidateMs;
+		if (sinceLastMs >= FRAME_MS) {
+			sendEmptyMessage(INVALIDATE_ID);
+		} else {
+			sendEmptyMessageDelayed(INVALIDATE_ID, FRAME_MS - sinceLastMs);
+		}
+	}
+
+	private void invalidate() {
+		if (mInvalidateAll) {
+			mView.invalidate();
+		} else if (!mDirty.isEmpty()) {
+			((MapView) mView).invalidateMapCoordinates(mDirty);
 		}
+		mDirty.setEmpty();
+		mInvalidateAll = false;
+		mInvalidatePending = false;
+		mLastInvalidateMs = SystemClock.uptimeMillis();
 	}
 }
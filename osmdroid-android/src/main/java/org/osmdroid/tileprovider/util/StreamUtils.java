@@ -1,6 +1,7 @@
 // Created by plusminus on 19:14:08 - 20.10.2008
 package org.osmdroid.tileprovider.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -69,6 +70,24 @@ public class StreamUtils {
 		return length;
 	}
 
+	/**
+	 * Read the content of the input stream into a byte array.
+	 * 
+	 * @param in
+	 *            The input stream to read.
+	 * @param sizeHint
+	 *            The expected length of the content, or 0 if unknown.
+	 * 
+	 * @throws IOException
+	 *             If any error occurs during the read.
+	 */
+	public static byte[] readFully(final InputStream in, final int sizeHint) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint
+				: IO_BUFFER_SIZE);
+		copy(in, out);
+		return out.toByteArray();
+	}
+
 	/**
 	 * Closes the specified stream.
 	 * 
@@ -6,6 +6,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -13,11 +16,16 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.osmdroid.tileprovider.util.ByteBufferInputStream;
+
 /**
  * GEMF File handler class.
  *
  * Reference: https://sites.google.com/site/abudden/android-map-store
  *
+ * The files of the archive are memory-mapped when it is opened, so that tiles can be read by
+ * several threads at the same time, without locking and without opening a file per tile.
+ *
  * @author A. S. Budden
  * @author Erik Burrows
  *
@@ -49,9 +57,16 @@ public class GEMFFile {
 	private final List<RandomAccessFile> mFiles = new ArrayList<RandomAccessFile>();
 	private final List<String> mFileNames = new ArrayList<String>();
 
+	// The GEMF file parts mapped in memory, empty if they couldn't be mapped, and null for the
+	// parts over 2 GB
+	private final List<MappedByteBuffer> mBuffers = new ArrayList<MappedByteBuffer>();
+
 	// Tile ranges represented within this archive
 	private final List<GEMFRange> mRangeData = new ArrayList<GEMFRange>();
 
+	// Index of the ranges for tile lookup
+	private final GEMFRangeIndex mRangeIndex = new GEMFRangeIndex();
+
 	// File sizes for offset calculation
 	private final List<Long> mFileSizes = new ArrayList<Long>();
 
@@ -59,8 +74,8 @@ public class GEMFFile {
 	private final LinkedHashMap<Integer, String> mSources = new LinkedHashMap<Integer, String>();
 
 	// Fields to restrict to a single source for reading
-	private boolean mSourceLimited = false;
-	private int mCurrentSource = 0;
+	private volatile boolean mSourceLimited = false;
+	private volatile int mCurrentSource = 0;
 
 
 	// ===========================================================
@@ -89,6 +104,7 @@ public class GEMFFile {
 		mLocation = pLocation;
 		openFiles();
 		readHeader();
+		mapFiles();
 	}
 
 
@@ -254,16 +270,19 @@ public class GEMFFile {
 					range.xMin = xList.first();
 					range.xMax = xList.last();
 
+					boolean rangeStarted = false;
 					for(int i = yList.first(); i < yList.last() + 1; ++i) {
 						if (yList.contains(new Integer(i))) {
-							if (range.yMin == null) {
+							if (!rangeStarted) {
 								range.yMin = i;
+								rangeStarted = true;
 							}
 							range.yMax = i;
 						} else {
 
-							if (range.yMin != null) {
+							if (rangeStarted) {
 								ranges.add(range);
+								rangeStarted = false;
 
 								range = new GEMFFile.GEMFRange();
 								range.zoom = zoom;
@@ -274,7 +293,7 @@ public class GEMFFile {
 						}
 					}
 
-					if (range.yMin != null) {
+					if (rangeStarted) {
 						ranges.add(range);
 					}
 				}
@@ -401,6 +420,7 @@ public class GEMFFile {
 		// Complete construction of GEMFFile object
 		openFiles();
 		readHeader();
+		mapFiles();
 	}
 
 
@@ -413,6 +433,8 @@ public class GEMFFile {
 	 * Close open GEMF file handles.
 	 */
 	public void close() throws IOException {
+		// the mappings are released when the buffers are garbage collected
+		mBuffers.clear();
 		for (final RandomAccessFile file: mFiles) {
 			file.close();
 		}
@@ -444,6 +466,31 @@ public class GEMFFile {
 	}
 
 
+	/*
+	 * Map all the files of the archive in memory. If one of them can't be, for example because
+	 * the address space is exhausted, tiles are read from the files instead. The files over 2 GB,
+	 * which a buffer can't address, aren't mapped and their tiles are read from them.
+	 */
+	private void mapFiles() {
+		try {
+			for (final RandomAccessFile file : mFiles) {
+				final long length = file.length();
+				mBuffers.add(length <= Integer.MAX_VALUE ? file.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, 0, length) : null);
+			}
+		} catch (final IOException e) {
+			mBuffers.clear();
+		}
+	}
+
+	/*
+	 * @return the mapped file of the archive, or null if it's read from the file
+	 */
+	private MappedByteBuffer getBuffer(final int pIndex) {
+		return mBuffers.isEmpty() ? null : mBuffers.get(pIndex);
+	}
+
+
 	/*
 	 * Read header of archive, cache Ranges.
 	 */
@@ -492,7 +539,9 @@ public class GEMFFile {
 			rs.sourceIndex = baseFile.readInt();
 			rs.offset = baseFile.readLong();
 			mRangeData.add(rs);
+			mRangeIndex.add(rs.zoom, rs.xMin, rs.xMax, rs.yMin, rs.yMax, rs.sourceIndex, rs.offset);
 		}
+		mRangeIndex.build();
 	}
 
 
@@ -546,28 +595,40 @@ public class GEMFFile {
 		return zoomLevels;
 	}
 
+	/*
+	 * Return the bounds of the tiles of a zoom level, in all the sources, as
+	 * {xMin, xMax, yMin, yMax}, or null if the archive has no tile at that zoom level.
+	 */
+	public int[] getTileBounds(final int pZoom) {
+		int[] bounds = null;
+
+		for (final GEMFRange rs: mRangeData) {
+			if (rs.zoom == pZoom) {
+				if (bounds == null) {
+					bounds = new int[] { rs.xMin, rs.xMax, rs.yMin, rs.yMax };
+				} else {
+					bounds[0] = Math.min(bounds[0], rs.xMin);
+					bounds[1] = Math.max(bounds[1], rs.xMax);
+					bounds[2] = Math.min(bounds[2], rs.yMin);
+					bounds[3] = Math.max(bounds[3], rs.yMax);
+				}
+			}
+		}
+
+		return bounds;
+	}
+
 	/*
 	 * Get an InputStream for the tile data specified by the Z/X/Y coordinates.
 	 *
 	 * @return InputStream of tile data, or null if not found.
 	 */
 	public InputStream getInputStream(final int pX, final int pY, final int pZ) {
-		GEMFRange range = null;
-
-		for (final GEMFRange rs: mRangeData)
-		{
-			if ((pZ == rs.zoom)
-					&& (pX >= rs.xMin)
-					&& (pX <= rs.xMax)
-					&& (pY >= rs.yMin)
-					&& (pY <= rs.yMax)
-					&& (( ! mSourceLimited) || (rs.sourceIndex == mCurrentSource))) {
-				range = rs;
-				break;
-			}
-		}
+		// Determine offset to requested tile record in the header
+		final long offset = mRangeIndex.getTileRecordOffset(pZ, pX, pY,
+				mSourceLimited ? mCurrentSource : -1);
 
-		if (range == null)	{
+		if (offset < 0)	{
 			return null;
 		}
 
@@ -576,23 +637,26 @@ public class GEMFFile {
 
 		try	{
 
-			// Determine offset to requested tile record in the header
-			final int numY = range.yMax + 1 - range.yMin;
-			final int xIndex = pX - range.xMin;
-			final int yIndex = pY - range.yMin;
-			long offset = (xIndex * numY) + yIndex;
-			offset *= (U32_SIZE + U64_SIZE);
-			offset += range.offset;
-
-
 			// Read tile record from header, get offset and size of data record
-			final RandomAccessFile baseFile = mFiles.get(0);
-			baseFile.seek(offset);
-			dataOffset = baseFile.readLong();
-			dataLength = baseFile.readInt();
+			final MappedByteBuffer baseBuffer = getBuffer(0);
+			if (baseBuffer != null) {
+				if (offset > baseBuffer.limit() - U64_SIZE - U32_SIZE) {
+					// a range pointing outside of the header
+					return null;
+				}
+				// absolute reads don't change the shared buffer
+				dataOffset = baseBuffer.getLong((int) offset);
+				dataLength = baseBuffer.getInt((int) offset + U64_SIZE);
+			} else {
+				final RandomAccessFile baseFile = mFiles.get(0);
+				synchronized (baseFile) {
+					baseFile.seek(offset);
+					dataOffset = baseFile.readLong();
+					dataLength = baseFile.readInt();
+				}
+			}
 
 			// Seek to correct data file and offset.
-			RandomAccessFile pDataFile = mFiles.get(0);
 			int index = 0;
 			if (dataOffset > mFileSizes.get(0))	{
 				final int fileListCount = mFileSizes.size();
@@ -603,17 +667,31 @@ public class GEMFFile {
 					dataOffset -= mFileSizes.get(index);
 					index += 1;
 				}
-
-				pDataFile = mFiles.get(index);
 			}
 
-			// Read data block into a byte array
-			pDataFile.seek(dataOffset);
+			final MappedByteBuffer buffer = getBuffer(index);
+			if (buffer != null) {
+				if (dataOffset < 0 || dataLength < 0
+						|| dataOffset > buffer.capacity() - (long) dataLength) {
+					// a tile record pointing outside of the archive
+					return null;
+				}
+				final ByteBuffer data = buffer.duplicate();
+				data.limit((int) dataOffset + dataLength);
+				data.position((int) dataOffset);
+				return new ByteBufferInputStream(data);
+			}
 
 			return new GEMFInputStream(mFileNames.get(index), dataOffset, dataLength);
 
 		} catch (final java.io.IOException e) {
 			return null;
+		} catch (final IndexOutOfBoundsException e) {
+			// a tile record pointing outside of the archive
+			return null;
+		} catch (final IllegalArgumentException e) {
+			// a tile record pointing outside of the archive
+			return null;
 		}
 	}
 
@@ -624,13 +702,13 @@ public class GEMFFile {
 
 	// Class to represent a range of stored tiles within the archive.
 	private class GEMFRange	{
-		Integer zoom;
-		Integer xMin;
-		Integer xMax;
-		Integer yMin;
-		Integer yMax;
-		Integer sourceIndex;
-		Long offset;
+		int zoom;
+		int xMin;
+		int xMax;
+		int yMin;
+		int yMax;
+		int sourceIndex;
+		long offset;
 
 		@Override
 		public String toString() {
@@ -0,0 +1,232 @@
+package org.osmdroid.util;
+
+import java.util.Arrays;
+
+/**
+ * Index of the tile ranges of a GEMF archive, to find the range of a tile without scanning all of
+ * them.
+ * <p>
+ * The ranges of each zoom level are kept in primitive arrays sorted by their minimum X, which are
+ * searched as an implicit interval tree: each range is the root of the ranges before and after it
+ * in the array, and also knows the maximum X of these ranges, so that the subtrees that can't
+ * contain the X of a tile are skipped. Looking up a tile is logarithmic in the number of ranges
+ * of its zoom level, plus the ranges that contain the X of the tile, and doesn't allocate.
+ */
+class GEMFRangeIndex {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Size of a tile record in the header: the offset of the tile data and its length. */
+	static final int TILE_RECORD_SIZE = 8 + 4;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The ranges by zoom level, null for a zoom level without any range. */
+	private ZoomLevel[] mZoomLevels = new ZoomLevel[0];
+
+	private int mCount;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Add a range. Ranges are added in the order of the archive, in which they have precedence
+	 * when they overlap.
+	 *
+	 * @param pOffset
+	 *            offset of the tile records of the range in the header
+	 */
+	void add(final int pZoom, final int pXMin, final int pXMax, final int pYMin, final int pYMax,
+			final int pSourceIndex, final long pOffset) {
+		if (pZoom < 0) {
+			return;
+		}
+		if (pZoom >= mZoomLevels.length) {
+			final ZoomLevel[] zoomLevels = new ZoomLevel[pZoom + 1];
+			System.arraycopy(mZoomLevels, 0, zoomLevels, 0, mZoomLevels.length);
+			mZoomLevels = zoomLevels;
+		}
+		if (mZoomLevels[pZoom] == null) {
+			mZoomLevels[pZoom] = new ZoomLevel();
+		}
+		mZoomLevels[pZoom].add(pXMin, pXMax, pYMin, pYMax, pSourceIndex, mCount++, pOffset);
+	}
+
+	/**
+	 * Sort the ranges once they have all been added, before looking up tiles.
+	 */
+	void build() {
+		for (final ZoomLevel zoomLevel : mZoomLevels) {
+			if (zoomLevel != null) {
+				zoomLevel.build();
+			}
+		}
+	}
+
+	int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Get the offset of the record of a tile in the header.
+	 *
+	 * @param pSourceIndex
+	 *            the source of the tile, or -1 to use the first range containing the tile
+	 * @return the offset, or -1 if no range contains the tile
+	 */
+	long getTileRecordOffset(final int pZ, final int pX, final int pY, final int pSourceIndex) {
+		if (pZ < 0 || pZ >= mZoomLevels.length || mZoomLevels[pZ] == null) {
+			return -1;
+		}
+		final ZoomLevel zoomLevel = mZoomLevels[pZ];
+		final int index = zoomLevel.find(0, zoomLevel.mCount, pX, pY, pSourceIndex, -1);
+		if (index < 0) {
+			return -1;
+		}
+
+		final long numY = zoomLevel.mYMax[index] + 1 - zoomLevel.mYMin[index];
+		final long xIndex = pX - zoomLevel.mXMin[index];
+		final long yIndex = pY - zoomLevel.mYMin[index];
+		return zoomLevel.mOffset[index] + (xIndex * numY + yIndex) * TILE_RECORD_SIZE;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class ZoomLevel {
+		int mCount;
+		int[] mXMin = new int[4];
+		int[] mXMax = new int[4];
+		int[] mYMin = new int[4];
+		int[] mYMax = new int[4];
+		int[] mSourceIndex = new int[4];
+		/** position of the range in the archive */
+		int[] mOrder = new int[4];
+		long[] mOffset = new long[4];
+		/** maximum X of the ranges of the subtree rooted at each range */
+		int[] mSubtreeXMax;
+
+		void add(final int pXMin, final int pXMax, final int pYMin, final int pYMax,
+				final int pSourceIndex, final int pOrder, final long pOffset) {
+			if (mCount == mXMin.length) {
+				final int capacity = mCount * 2;
+				mXMin = grow(mXMin, capacity);
+				mXMax = grow(mXMax, capacity);
+				mYMin = grow(mYMin, capacity);
+				mYMax = grow(mYMax, capacity);
+				mSourceIndex = grow(mSourceIndex, capacity);
+				mOrder = grow(mOrder, capacity);
+				mOffset = grow(mOffset, capacity);
+			}
+			mXMin[mCount] = pXMin;
+			mXMax[mCount] = pXMax;
+			mYMin[mCount] = pYMin;
+			mYMax[mCount] = pYMax;
+			mSourceIndex[mCount] = pSourceIndex;
+			mOrder[mCount] = pOrder;
+			mOffset[mCount] = pOffset;
+			mCount++;
+		}
+
+		void build() {
+			// sort by minimum X, the position in the low bits keeps the sort stable
+			final long[] keys = new long[mCount];
+			for (int i = 0; i < mCount; i++) {
+				keys[i] = ((long) mXMin[i] << 32) | i;
+			}
+			Arrays.sort(keys);
+
+			final int[] xMin = new int[mCount];
+			final int[] xMax = new int[mCount];
+			final int[] yMin = new int[mCount];
+			final int[] yMax = new int[mCount];
+			final int[] sourceIndex = new int[mCount];
+			final int[] order = new int[mCount];
+			final long[] offset = new long[mCount];
+			for (int i = 0; i < mCount; i++) {
+				final int from = (int) keys[i];
+				xMin[i] = mXMin[from];
+				xMax[i] = mXMax[from];
+				yMin[i] = mYMin[from];
+				yMax[i] = mYMax[from];
+				sourceIndex[i] = mSourceIndex[from];
+				order[i] = mOrder[from];
+				offset[i] = mOffset[from];
+			}
+			mXMin = xMin;
+			mXMax = xMax;
+			mYMin = yMin;
+			mYMax = yMax;
+			mSourceIndex = sourceIndex;
+			mOrder = order;
+			mOffset = offset;
+
+			mSubtreeXMax = new int[mCount];
+			computeSubtreeXMax(0, mCount);
+		}
+
+		private static int[] grow(final int[] pArray, final int pCapacity) {
+			final int[] array = new int[pCapacity];
+			System.arraycopy(pArray, 0, array, 0, pArray.length);
+			return array;
+		}
+
+		private static long[] grow(final long[] pArray, final int pCapacity) {
+			final long[] array = new long[pCapacity];
+			System.arraycopy(pArray, 0, array, 0, pArray.length);
+			return array;
+		}
+
+		private int computeSubtreeXMax(final int pFrom, final int pTo) {
+			if (pFrom >= pTo) {
+				return Integer.MIN_VALUE;
+			}
+			final int root = (pFrom + pTo) >>> 1;
+			final int max = Math.max(mXMax[root], Math.max(computeSubtreeXMax(pFrom, root),
+					computeSubtreeXMax(root + 1, pTo)));
+			mSubtreeXMax[root] = max;
+			return max;
+		}
+
+		/**
+		 * Find the first range of the archive containing the tile in the subtree of the ranges
+		 * from pFrom to pTo.
+		 *
+		 * @param pBest
+		 *            the best range found so far, or -1
+		 * @return the best range found, or -1
+		 */
+		int find(final int pFrom, final int pTo, final int pX, final int pY,
+				final int pSourceIndex, int pBest) {
+			if (pFrom >= pTo) {
+				return pBest;
+			}
+			final int root = (pFrom + pTo) >>> 1;
+			if (mSubtreeXMax[root] < pX) {
+				// no range of the subtree reaches that X
+				return pBest;
+			}
+
+			pBest = find(pFrom, root, pX, pY, pSourceIndex, pBest);
+
+			if (mXMin[root] > pX) {
+				// neither do the ranges after this one
+				return pBest;
+			}
+
+			if (pX <= mXMax[root] && pY >= mYMin[root] && pY <= mYMax[root]
+					&& (pSourceIndex < 0 || mSourceIndex[root] == pSourceIndex)
+					&& (pBest < 0 || mOrder[root] < mOrder[pBest])) {
+				pBest = root;
+			}
+
+			return find(root + 1, pTo, pX, pY, pSourceIndex, pBest);
+		}
+	}
+}
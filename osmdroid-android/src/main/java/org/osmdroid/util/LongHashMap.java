@@ -0,0 +1,209 @@
+package org.osmdroid.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A hash map with primitive long keys, so that looking up a value neither boxes the key nor
+ * allocates an entry. The entries are stored in two arrays with open addressing and linear
+ * probing, and the keys are mixed with {@link #hash(long)} so that keys packing several small
+ * numbers, like those of {@link org.osmdroid.tileprovider.MapTile#getKey()}, spread evenly.
+ * <p>
+ * Null values are not allowed, a null value marks an empty slot. This class is not thread safe,
+ * callers must synchronize access to it.
+ */
+public class LongHashMap<V> {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private long[] mKeys;
+	private Object[] mValues;
+	private int mMask;
+	private int mThreshold;
+	private int mSize;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public LongHashMap() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * @param pExpectedSize
+	 *            the number of entries the map can hold without growing
+	 */
+	public LongHashMap(final int pExpectedSize) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity * 3 / 4 < pExpectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Mix the bits of a key into a hash code, so that keys differing only in their high bits, or
+	 * by multiples of a power of two, don't collide. This is the finalizer of MurmurHash3.
+	 */
+	public static int hash(final long pKey) {
+		long h = pKey;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final long pKey) {
+		final int slot = find(pKey);
+		return slot < 0 ? null : (V) mValues[slot];
+	}
+
+	public boolean containsKey(final long pKey) {
+		return find(pKey) >= 0;
+	}
+
+	/**
+	 * @return the previous value of the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final long pKey, final V pValue) {
+		if (pValue == null) {
+			throw new IllegalArgumentException("null values are not allowed");
+		}
+		int slot = hash(pKey) & mMask;
+		Object value;
+		while ((value = mValues[slot]) != null) {
+			if (mKeys[slot] == pKey) {
+				mValues[slot] = pValue;
+				return (V) value;
+			}
+			slot = (slot + 1) & mMask;
+		}
+		mKeys[slot] = pKey;
+		mValues[slot] = pValue;
+		if (++mSize > mThreshold) {
+			grow();
+		}
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final long pKey) {
+		final int slot = find(pKey);
+		if (slot < 0) {
+			return null;
+		}
+		final V value = (V) mValues[slot];
+		removeSlot(slot);
+		return value;
+	}
+
+	public void clear() {
+		Arrays.fill(mValues, null);
+		mSize = 0;
+	}
+
+	/**
+	 * @return a copy of the values, which can be iterated while the map is modified
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<V> values() {
+		final ArrayList<V> values = new ArrayList<V>(mSize);
+		for (final Object value : mValues) {
+			if (value != null) {
+				values.add((V) value);
+			}
+		}
+		return values;
+	}
+
+	private int find(final long pKey) {
+		int slot = hash(pKey) & mMask;
+		while (mValues[slot] != null) {
+			if (mKeys[slot] == pKey) {
+				return slot;
+			}
+			slot = (slot + 1) & mMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Empty a slot and shift back the following entries of its run that can move closer to their
+	 * home slot, so that lookups never need tombstones.
+	 */
+	private void removeSlot(final int pSlot) {
+		int gap = pSlot;
+		int slot = pSlot;
+		while (true) {
+			slot = (slot + 1) & mMask;
+			final Object value = mValues[slot];
+			if (value == null) {
+				break;
+			}
+			final int home = hash(mKeys[slot]) & mMask;
+			// the entry can fill the gap if the gap is between its home and its slot
+			if (((slot - home) & mMask) >= ((slot - gap) & mMask)) {
+				mKeys[gap] = mKeys[slot];
+				mValues[gap] = value;
+				gap = slot;
+			}
+		}
+		mValues[gap] = null;
+		mSize--;
+	}
+
+	private void allocate(final int pCapacity) {
+		mKeys = new long[pCapacity];
+		mValues = new Object[pCapacity];
+		mMask = pCapacity - 1;
+		mThreshold = pCapacity * 3 / 4;
+	}
+
+	private void grow() {
+		final long[] keys = mKeys;
+		final Object[] values = mValues;
+		allocate(keys.length << 1);
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) {
+				int slot = hash(keys[i]) & mMask;
+				while (mValues[slot] != null) {
+					slot = (slot + 1) & mMask;
+				}
+				mKeys[slot] = keys[i];
+				mValues[slot] = values[i];
+			}
+		}
+	}
+}
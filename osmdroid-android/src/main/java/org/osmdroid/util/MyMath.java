@@ -57,6 +57,15 @@ public class MyMath implements MathConstants {
 		return number;
 	}
 
+	/**
+	 * @return the largest integer not greater than the quotient, for a positive divisor, so that
+	 *         negative map pixels fall in the tile on their left or above
+	 */
+	public static int floorDiv(final int number, final int divisor) {
+		final int quotient = number / divisor;
+		return number < 0 && quotient * divisor != number ? quotient - 1 : quotient;
+	}
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -10,6 +10,11 @@ import android.graphics.Rect;
 
 /**
  * A class that will loop around all the map tiles in the given viewport.
+ * <p>
+ * The tiles are passed to {@link #handleTile(Canvas, int, long, int, int)} as keys, see
+ * {@link MapTile#getKey(int, int, int)}, so that looping allocates nothing. Subclasses drawing
+ * every frame override it to look the tiles up by key, the others just implement
+ * {@link #handleTile(Canvas, int, MapTile, int, int)}.
  */
 public abstract class TileLooper {
 
@@ -29,11 +34,10 @@ public abstract class TileLooper {
 		/* Draw all the MapTiles (from the upper left to the lower right). */
 		for (int y = mUpperLeft.y; y <= mLowerRight.y; y++) {
 			for (int x = mUpperLeft.x; x <= mLowerRight.x; x++) {
-				// Construct a MapTile to request from the tile provider.
+				// Construct the key of the MapTile to request from the tile provider.
 				final int tileY = MyMath.mod(y, mapTileUpperBound);
 				final int tileX = MyMath.mod(x, mapTileUpperBound);
-				final MapTile tile = new MapTile(pZoomLevel, tileX, tileY);
-				handleTile(pCanvas, pTileSizePx, tile, x, y);
+				handleTile(pCanvas, pTileSizePx, MapTile.getKey(pZoomLevel, tileX, tileY), x, y);
 			}
 		}
 
@@ -44,5 +48,13 @@ public abstract class TileLooper {
 
 	public abstract void handleTile(Canvas pCanvas, int pTileSizePx, MapTile pTile, int pX, int pY);
 
+	/**
+	 * Handle the tile of the given key, by default by making a MapTile for it.
+	 */
+	public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+			final int pX, final int pY) {
+		handleTile(pCanvas, pTileSizePx, new MapTile(pTileKey), pX, pY);
+	}
+
 	public abstract void finaliseLoop();
 }
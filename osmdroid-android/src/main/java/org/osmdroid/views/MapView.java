@@ -23,6 +23,8 @@ import org.osmdroid.api.IProjection;
 import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.MapTileProviderBasic;
 import org.osmdroid.tileprovider.tilesource.IStyledTileSource;
@@ -32,6 +34,7 @@ import org.osmdroid.tileprovider.util.SimpleInvalidationHandler;
 import org.osmdroid.util.BoundingBoxE6;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.util.GeometryMath;
+import org.osmdroid.util.MyMath;
 import org.osmdroid.util.constants.GeoConstants;
 import org.osmdroid.views.overlay.Overlay;
 import org.osmdroid.views.overlay.OverlayManager;
@@ -132,6 +135,11 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	/* a point that will be reused to design added views */
 	private final Point mPoint = new Point();
 
+	/* the tiles that will be visible next, reused to prefetch them */
+	private final Rect mPrefetchRect = new Rect();
+	private final Point mPrefetchUpperLeft = new Point();
+	private final Point mPrefetchLowerRight = new Point();
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -518,6 +526,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				mTargetZoomLevel.set(mZoomLevel + 1);
 				mIsAnimating.set(true);
 				startAnimation(mZoomInAnimation);
+				prefetch(mZoomLevel + 1, getScrollX() << 1, getScrollY() << 1);
 				return true;
 			}
 		} else {
@@ -548,6 +557,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				mTargetZoomLevel.set(mZoomLevel - 1);
 				mIsAnimating.set(true);
 				startAnimation(mZoomOutAnimation);
+				prefetch(mZoomLevel - 1, getScrollX() >> 1, getScrollY() >> 1);
 				return true;
 			}
 		} else {
@@ -668,6 +678,35 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		super.invalidate(mInvalidateRect);
 	}
 
+	/**
+	 * Get the area of a tile in map coordinates, as taken by
+	 * {@link #invalidateMapCoordinates(Rect)}. Of the wrapped copies of the tile, the one nearest to
+	 * the center of the view is taken.
+	 *
+	 * @return false if the tile isn't drawn at a single area of the map, because it isn't of the
+	 *         current zoom level, because the map is being zoomed, or because the world is so small
+	 *         that the tile is repeated on the screen. The whole view should be invalidated then.
+	 */
+	public boolean getMapTileRect(final MapTile pTile, final Rect pOut) {
+		if (pTile.getZoomLevel() != mZoomLevel || isAnimating() || mMultiTouchScale != 1.0f) {
+			return false;
+		}
+		final int tileSize = TileSystem.getTileSize();
+		final int worldSize = TileSystem.MapSize(mZoomLevel);
+		if (worldSize <= this.getWidth() + this.getHeight() + tileSize) {
+			return false;
+		}
+		final int worldSize_2 = worldSize / 2;
+		final int left = pTile.getX() * tileSize - worldSize_2;
+		final int top = pTile.getY() * tileSize - worldSize_2;
+		final int dx = left + tileSize / 2 - this.getScrollX();
+		final int dy = top + tileSize / 2 - this.getScrollY();
+		pOut.set(left, top, left + tileSize, top + tileSize);
+		pOut.offset(-MyMath.floorDiv(dx + worldSize_2, worldSize) * worldSize,
+				-MyMath.floorDiv(dy + worldSize_2, worldSize) * worldSize);
+		return true;
+	}
+
 	/**
 	 * Returns a set of layout parameters with a width of
 	 * {@link android.view.ViewGroup.LayoutParams#WRAP_CONTENT}, a height of
@@ -966,8 +1005,10 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
 				// This will facilitate snapping-to any Snappable points.
 				setZoomLevel(mZoomLevel);
+				mTileProvider.setPrefetchArea(null);
 			} else {
 				scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
+				prefetchScroll();
 			}
 			postInvalidate(); // Keep on drawing until the animation has
 			// finished.
@@ -1176,6 +1217,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			multiTouchScale = 1;
 		}
 		mMultiTouchScale = multiTouchScale;
+		prefetchPinch();
 		invalidate(); // redraw
 		return true;
 	}
@@ -1236,6 +1278,53 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return tileSource;
 	}
 
+	/**
+	 * Prefetch the tiles a screen ahead along the course of the scroller, or up to where it stops
+	 * if that's closer.
+	 */
+	private void prefetchScroll() {
+		final int dx = mScroller.getFinalX() - mScroller.getCurrX();
+		final int dy = mScroller.getFinalY() - mScroller.getCurrY();
+		final float lead = Math.min(1, Math.min((float) getWidth() / (Math.abs(dx) + 1),
+				(float) getHeight() / (Math.abs(dy) + 1)));
+		prefetch(getZoomLevel(false), mScroller.getCurrX() + (int) (dx * lead),
+				mScroller.getCurrY() + (int) (dy * lead));
+	}
+
+	/**
+	 * Prefetch the tiles of the zoom level the pinch will end at, if it's released now.
+	 */
+	private void prefetchPinch() {
+		final int scaleDiffInt = (int) Math.round(Math.log(mMultiTouchScale) * ZOOM_LOG_BASE_INV);
+		final int zoomLevel = Math.max(getMinZoomLevel(),
+				Math.min(getMaxZoomLevel(), mZoomLevel + scaleDiffInt));
+		if (zoomLevel == mZoomLevel) {
+			return;
+		}
+		// the center once the map is scaled around the pinch point, at the new zoom level
+		final double zoomScale = Math.pow(2, zoomLevel - mZoomLevel);
+		final float centerX = mMultiTouchScalePoint.x + (getScrollX() - mMultiTouchScalePoint.x)
+				/ mMultiTouchScale;
+		final float centerY = mMultiTouchScalePoint.y + (getScrollY() - mMultiTouchScalePoint.y)
+				/ mMultiTouchScale;
+		prefetch(zoomLevel, (int) (centerX * zoomScale), (int) (centerY * zoomScale));
+	}
+
+	/**
+	 * Tell the tile provider which tiles the screen will show at the given zoom level and scroll
+	 * position, so that it loads them before they are needed.
+	 */
+	private void prefetch(final int pZoomLevel, final int pScrollX, final int pScrollY) {
+		final int worldSize_2 = TileSystem.MapSize(pZoomLevel) / 2;
+		final Rect screenRect = getScreenRect(mPrefetchRect);
+		screenRect.offset(pScrollX - getScrollX() + worldSize_2, pScrollY - getScrollY()
+				+ worldSize_2);
+		TileSystem.PixelXYToTileXY(screenRect.left, screenRect.top, mPrefetchUpperLeft);
+		TileSystem.PixelXYToTileXY(screenRect.right, screenRect.bottom, mPrefetchLowerRight);
+		mTileProvider.setPrefetchArea(new MapTileArea(pZoomLevel, mPrefetchUpperLeft.x,
+				mPrefetchUpperLeft.y, mPrefetchLowerRight.x, mPrefetchLowerRight.y));
+	}
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -1500,6 +1589,10 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				return true;
 			}
 
+			// the touch stops the fling, and what it was heading to isn't needed any more
+			mTileProvider.setPrefetchArea(null);
+			mScroller.forceFinished(true);
+
 			mZoomController.setVisible(mEnableZoomController);
 			return true;
 		}
@@ -1515,6 +1608,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			final int worldSize = TileSystem.MapSize(MapView.this.getZoomLevel(false));
 			mScroller.fling(getScrollX(), getScrollY(), (int) -velocityX, (int) -velocityY,
 					-worldSize, worldSize, -worldSize, worldSize);
+			prefetchScroll();
 			return true;
 		}
 
@@ -1,13 +1,19 @@
 package org.osmdroid.views.overlay;
 
+import java.util.Arrays;
+
 import microsoft.mappoint.TileSystem;
 
 import org.osmdroid.DefaultResourceProxyImpl;
 import org.osmdroid.ResourceProxy;
+import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
 import org.osmdroid.tileprovider.MapTileProviderBase;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.MyMath;
 import org.osmdroid.util.TileLooper;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.MapView.Projection;
@@ -21,6 +27,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -33,6 +40,11 @@ import android.view.SubMenu;
  * These objects are the principle consumer of map tiles.
  *
  * see {@link MapTile} for an overview of how tiles are acquired by this overlay.
+ * <p>
+ * With {@link #setUseCompositionBuffer(boolean)}, the tiles are composed in a bitmap a bit larger
+ * than the viewport, which is drawn at each frame instead of every tile. When the map scrolls out
+ * of the bitmap, its content is shifted into a second bitmap and only the exposed strips are drawn.
+ * The tiles drawn while they were loading are drawn again when they arrive.
  *
  */
 
@@ -65,6 +77,31 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	/** For overshooting the tile cache **/
 	private int mOvershootTileCache = 0;
 
+	/** The tile area of the viewport last given to the tile provider. */
+	private MapTileArea mViewportArea;
+	private final Point mViewportUpperLeft = new Point();
+	private final Point mViewportLowerRight = new Point();
+
+	/** The composition buffer and the previous one, into which the content is shifted. */
+	private boolean mUseCompositionBuffer;
+	private Bitmap mBuffer;
+	private Bitmap mScratchBuffer;
+	private Canvas mBufferCanvas;
+	private final Paint mBufferPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	/** The pixels of the map in the buffer, at mBufferZoomLevel. Empty if the buffer is invalid. */
+	private final Rect mBufferRect = new Rect();
+	private int mBufferZoomLevel;
+	private ITileSource mBufferTileSource;
+	private final Rect mNewBufferRect = new Rect();
+	private final Rect mBufferStrip = new Rect();
+	private final Rect mBufferDestRect = new Rect();
+
+	/** The tiles of the buffer drawn while they were loading, and what was drawn for them. */
+	private int mPendingTileCount;
+	private int[] mPendingTileX = new int[16];
+	private int[] mPendingTileY = new int[16];
+	private Drawable[] mPendingTileDrawn = new Drawable[16];
+
 	public TilesOverlay(final MapTileProviderBase aTileProvider, final Context aContext) {
 		this(aTileProvider, new DefaultResourceProxyImpl(aContext));
 	}
@@ -81,6 +118,7 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	@Override
 	public void onDetach(final MapView pMapView) {
 		this.mTileProvider.detach();
+		releaseCompositionBuffer();
 	}
 
 	public int getMinimumZoomLevel() {
@@ -132,7 +170,11 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 		mViewPort.offset(mWorldSize_2, mWorldSize_2);
 
 		// Draw the tiles!
-		drawTiles(c.getSafeCanvas(), pj.getZoomLevel(), TileSystem.getTileSize(), mViewPort);
+		if (!mUseCompositionBuffer
+				|| !drawComposedTiles(c.getSafeCanvas(), zoomLevel, TileSystem.getTileSize(),
+						mViewPort)) {
+			drawTiles(c.getSafeCanvas(), zoomLevel, TileSystem.getTileSize(), mViewPort);
+		}
 	}
 
 	/**
@@ -158,41 +200,408 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	}
 
 	private final TileLooper mTileLooper = new TileLooper() {
+		private int mZoomLevel;
+
 		@Override
 		public void initialiseLoop(final int pZoomLevel, final int pTileSizePx) {
+			mZoomLevel = pZoomLevel;
+
 			// make sure the cache is big enough for all the tiles
 			final int numNeeded = (mLowerRight.y - mUpperLeft.y + 1) * (mLowerRight.x - mUpperLeft.x + 1);
 			mTileProvider.ensureCapacity(numNeeded + mOvershootTileCache);
 		}
 		@Override
 		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
-			Drawable currentMapTile = mTileProvider.getMapTile(pTile);
-			if (currentMapTile == null) {
-				currentMapTile = getLoadingTile();
+			handleTile(pCanvas, pTileSizePx, pTile.getKey(), pX, pY);
+		}
+		/**
+		 * Nothing is allocated for the tiles of the memory cache.
+		 */
+		@Override
+		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey, final int pX, final int pY) {
+			drawTile(pCanvas, getTileDrawable(pTileKey), pTileKey, pTileSizePx, pX, pY, 0, 0);
+		}
+		@Override
+		public void finaliseLoop() {
+			updateViewportArea(mZoomLevel, mUpperLeft, mLowerRight);
+		}
+	};
+
+	/**
+	 * Get the drawable of a tile: the tile from the cache, or a tile scaled from another zoom level
+	 * until it's loaded, or null.
+	 */
+	private Drawable getTileDrawable(final long pTileKey) {
+		final Drawable tile = mTileProvider.getMapTile(pTileKey);
+		if (tile != null) {
+			return tile;
+		}
+		// draw the tile scaled from another zoom level until it's loaded
+		return mTileProvider.getScaledMapTile(pTileKey);
+	}
+
+	/**
+	 * Draw a tile, or the loading tile if it's null or its bitmap has been reused, with its
+	 * rectangle offset by the given amount.
+	 *
+	 * @return what was drawn
+	 */
+	private Drawable drawTile(final Canvas pCanvas, final Drawable pTile, final long pTileKey,
+			final int pTileSizePx, final int pX, final int pY, final int pOffsetX,
+			final int pOffsetY) {
+		Drawable currentMapTile = pTile;
+		// don't let the bitmap be reused while it's drawn
+		final ReusableBitmapDrawable reusableTile = currentMapTile instanceof ReusableBitmapDrawable
+				? (ReusableBitmapDrawable) currentMapTile : null;
+		if (reusableTile != null) {
+			reusableTile.beginUsingDrawable();
+			if (!reusableTile.isBitmapValid()) {
+				currentMapTile = null;
 			}
+		}
+		if (currentMapTile == null) {
+			currentMapTile = getLoadingTile();
+		}
 
+		try {
 			if (currentMapTile != null) {
-				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
-						* pTileSizePx + pTileSizePx);
+				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx
+						+ pTileSizePx, pY * pTileSizePx + pTileSizePx);
+				mTileRect.offset(pOffsetX, pOffsetY);
 				onTileReadyToDraw(pCanvas, currentMapTile, mTileRect);
 			}
+		} finally {
+			if (reusableTile != null) {
+				reusableTile.finishUsingDrawable();
+			}
+		}
+
+		if (DEBUGMODE) {
+			mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
+					* pTileSizePx + pTileSizePx);
+			mTileRect.offset(pOffsetX - mWorldSize_2, pOffsetY - mWorldSize_2);
+			pCanvas.drawText(new MapTile(pTileKey).toString(), mTileRect.left + 1,
+					mTileRect.top + mDebugPaint.getTextSize(), mDebugPaint);
+			pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.top,
+					mDebugPaint);
+			pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.left, mTileRect.bottom,
+					mDebugPaint);
+		}
+		return currentMapTile;
+	}
 
-			if (DEBUGMODE) {
-				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
-						* pTileSizePx + pTileSizePx);
-				mTileRect.offset(-mWorldSize_2, -mWorldSize_2);
-				pCanvas.drawText(pTile.toString(), mTileRect.left + 1,
-						mTileRect.top + mDebugPaint.getTextSize(), mDebugPaint);
-				pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.top,
-						mDebugPaint);
-				pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.left, mTileRect.bottom,
-						mDebugPaint);
+	/**
+	 * Let the tile provider know what's on screen, only when it changes.
+	 */
+	private void updateViewportArea(final int pZoomLevel, final Point pUpperLeft,
+			final Point pLowerRight) {
+		if (mViewportArea == null
+				|| !mViewportArea.matches(pZoomLevel, pUpperLeft.x, pUpperLeft.y, pLowerRight.x,
+						pLowerRight.y)) {
+			mViewportArea = new MapTileArea(pZoomLevel, pUpperLeft.x, pUpperLeft.y,
+					pLowerRight.x, pLowerRight.y);
+			mTileProvider.setViewport(mViewportArea);
+		}
+	}
+
+	// ===========================================================
+	// Composition buffer
+	// ===========================================================
+
+	public boolean isUsingCompositionBuffer() {
+		return mUseCompositionBuffer;
+	}
+
+	/**
+	 * Set whether to compose the tiles in an off-screen buffer, so that a frame where the map only
+	 * scrolled draws one bitmap rather than every tile. This takes two bitmaps a bit larger than
+	 * the view, with 16 bits per pixel if there is a loading background and 32 bits otherwise.
+	 */
+	public void setUseCompositionBuffer(final boolean pUseCompositionBuffer) {
+		mUseCompositionBuffer = pUseCompositionBuffer;
+		if (!pUseCompositionBuffer) {
+			releaseCompositionBuffer();
+		}
+	}
+
+	/**
+	 * Draw all the tiles again at the next frame, for example after they were changed in the
+	 * cache without being reloaded.
+	 */
+	public void invalidateCompositionBuffer() {
+		mBufferRect.setEmpty();
+		mPendingTileCount = 0;
+	}
+
+	private void releaseCompositionBuffer() {
+		invalidateCompositionBuffer();
+		mBuffer = null;
+		mScratchBuffer = null;
+		mBufferCanvas = null;
+		Arrays.fill(mPendingTileDrawn, null);
+	}
+
+	/**
+	 * Compose the tiles of the viewport in the buffer, drawing only what changed since the last
+	 * frame, and draw the buffer.
+	 *
+	 * @return false if there isn't enough memory for the buffer, in which case it's released
+	 */
+	private boolean drawComposedTiles(final Canvas pCanvas, final int pZoomLevel,
+			final int pTileSizePx, final Rect pViewPort) {
+		final int margin = pTileSizePx / 2;
+		mNewBufferRect.set(pViewPort);
+		mNewBufferRect.inset(-margin, -margin);
+		try {
+			if (!ensureBuffer(mNewBufferRect.width(), mNewBufferRect.height())) {
+				mBufferRect.setEmpty();
 			}
+		} catch (final OutOfMemoryError e) {
+			logger.error("OutOfMemoryError allocating the composition buffer");
+			releaseCompositionBuffer();
+			return false;
 		}
-		@Override
-		public void finaliseLoop() {
+
+		if (pZoomLevel != mBufferZoomLevel
+				|| mTileProvider.getTileSource() != mBufferTileSource) {
+			mBufferRect.setEmpty();
 		}
-	};
+		mBufferZoomLevel = pZoomLevel;
+		mBufferTileSource = mTileProvider.getTileSource();
+
+		// make sure the cache is big enough for all the tiles of the buffer
+		mTileProvider.ensureCapacity((mNewBufferRect.width() / pTileSizePx + 2)
+				* (mNewBufferRect.height() / pTileSizePx + 2) + mOvershootTileCache);
+
+		if (mBufferRect.isEmpty() || !Rect.intersects(mBufferRect, mNewBufferRect)) {
+			// nothing to keep
+			mBuffer.eraseColor(Color.TRANSPARENT);
+			mPendingTileCount = 0;
+			mBufferRect.set(mNewBufferRect);
+			mBufferCanvas.setBitmap(mBuffer);
+			drawBufferStrip(pZoomLevel, pTileSizePx, mBufferRect);
+		} else if (!mBufferRect.contains(pViewPort)) {
+			shiftBuffer(pZoomLevel, pTileSizePx);
+		}
+		drawPendingTiles(pZoomLevel, pTileSizePx);
+
+		mBufferDestRect.set(mBufferRect);
+		mBufferDestRect.offset(-mWorldSize_2, -mWorldSize_2);
+		pCanvas.drawBitmap(mBuffer, null, mBufferDestRect, mBufferPaint);
+
+		TileSystem.PixelXYToTileXY(pViewPort.left, pViewPort.top, mViewportUpperLeft);
+		mViewportUpperLeft.offset(-1, -1);
+		TileSystem.PixelXYToTileXY(pViewPort.right, pViewPort.bottom, mViewportLowerRight);
+		updateViewportArea(pZoomLevel, mViewportUpperLeft, mViewportLowerRight);
+		return true;
+	}
+
+	/**
+	 * Allocate the buffers if they don't have the given size.
+	 *
+	 * @return false if they had to be allocated
+	 */
+	private boolean ensureBuffer(final int pWidth, final int pHeight) {
+		final Bitmap.Config config = mLoadingBackgroundColor == Color.TRANSPARENT
+				? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+		if (mBuffer != null && mBuffer.getWidth() == pWidth && mBuffer.getHeight() == pHeight
+				&& mBuffer.getConfig() == config) {
+			return true;
+		}
+		releaseCompositionBuffer();
+		mBuffer = Bitmap.createBitmap(pWidth, pHeight, config);
+		mScratchBuffer = Bitmap.createBitmap(pWidth, pHeight, config);
+		mBufferCanvas = new Canvas();
+		return false;
+	}
+
+	/**
+	 * Move the buffer to mNewBufferRect: shift the content it has in common with the previous
+	 * position into the scratch buffer, swap them, and draw the exposed strips.
+	 */
+	private void shiftBuffer(final int pZoomLevel, final int pTileSizePx) {
+		mScratchBuffer.eraseColor(Color.TRANSPARENT);
+		mBufferCanvas.setBitmap(mScratchBuffer);
+		mBufferCanvas.drawBitmap(mBuffer, mBufferRect.left - mNewBufferRect.left, mBufferRect.top
+				- mNewBufferRect.top, null);
+		final Bitmap buffer = mBuffer;
+		mBuffer = mScratchBuffer;
+		mScratchBuffer = buffer;
+
+		// forget the pending tiles that are no longer in the buffer
+		for (int i = mPendingTileCount - 1; i >= 0; i--) {
+			mTileRect.set(mPendingTileX[i] * pTileSizePx, mPendingTileY[i] * pTileSizePx,
+					(mPendingTileX[i] + 1) * pTileSizePx, (mPendingTileY[i] + 1) * pTileSizePx);
+			if (!Rect.intersects(mTileRect, mNewBufferRect)) {
+				removePendingTile(i);
+			}
+		}
+
+		// the strips are drawn with the buffer at its new position
+		final int previousLeft = mBufferRect.left;
+		final int previousTop = mBufferRect.top;
+		final int previousRight = mBufferRect.right;
+		final int previousBottom = mBufferRect.bottom;
+		mBufferRect.set(mNewBufferRect);
+		final Rect next = mBufferRect;
+		final int top = Math.max(next.top, previousTop);
+		final int bottom = Math.min(next.bottom, previousBottom);
+		if (next.top < previousTop) {
+			drawBufferStrip(pZoomLevel, pTileSizePx, next.left, next.top, next.right, previousTop);
+		}
+		if (next.bottom > previousBottom) {
+			drawBufferStrip(pZoomLevel, pTileSizePx, next.left, previousBottom, next.right,
+					next.bottom);
+		}
+		if (next.left < previousLeft) {
+			drawBufferStrip(pZoomLevel, pTileSizePx, next.left, top, previousLeft, bottom);
+		}
+		if (next.right > previousRight) {
+			drawBufferStrip(pZoomLevel, pTileSizePx, previousRight, top, next.right, bottom);
+		}
+	}
+
+	private void drawBufferStrip(final int pZoomLevel, final int pTileSizePx, final int pLeft,
+			final int pTop, final int pRight, final int pBottom) {
+		mBufferStrip.set(pLeft, pTop, pRight, pBottom);
+		drawBufferStrip(pZoomLevel, pTileSizePx, mBufferStrip);
+	}
+
+	/**
+	 * Draw the tiles of a strip of the buffer, given in map pixels. The tiles that are loaded are
+	 * drawn whole, the others only inside the strip so that they don't cover tiles drawn before.
+	 */
+	private void drawBufferStrip(final int pZoomLevel, final int pTileSizePx, final Rect pStrip) {
+		if (pStrip.isEmpty()) {
+			return;
+		}
+		if (pStrip != mBufferStrip) {
+			mBufferStrip.set(pStrip);
+		}
+		final int mapTileUpperBound = 1 << pZoomLevel;
+		final int left = MyMath.floorDiv(mBufferStrip.left, pTileSizePx);
+		final int top = MyMath.floorDiv(mBufferStrip.top, pTileSizePx);
+		final int right = MyMath.floorDiv(mBufferStrip.right - 1, pTileSizePx);
+		final int bottom = MyMath.floorDiv(mBufferStrip.bottom - 1, pTileSizePx);
+		final int offsetX = mWorldSize_2 - mBufferRect.left;
+		final int offsetY = mWorldSize_2 - mBufferRect.top;
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				final long key = MapTile.getKey(pZoomLevel, MyMath.mod(x, mapTileUpperBound),
+						MyMath.mod(y, mapTileUpperBound));
+				final Drawable tile = getTileDrawable(key);
+				if (isTileLoaded(tile)) {
+					clearBufferTile(pTileSizePx, x, y);
+					final Drawable drawn = drawTile(mBufferCanvas, tile, key, pTileSizePx, x, y,
+							offsetX, offsetY);
+					if (drawn == tile) {
+						removePendingTile(x, y);
+						continue;
+					}
+					addPendingTile(x, y, drawn);
+				} else {
+					mBufferCanvas.save();
+					mBufferCanvas.clipRect(mBufferStrip.left - mBufferRect.left, mBufferStrip.top
+							- mBufferRect.top, mBufferStrip.right - mBufferRect.left,
+							mBufferStrip.bottom - mBufferRect.top);
+					final Drawable drawn = drawTile(mBufferCanvas, tile, key, pTileSizePx, x, y,
+							offsetX, offsetY);
+					mBufferCanvas.restore();
+					addPendingTile(x, y, drawn);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw again the tiles of the buffer that were loading when they were drawn and have changed
+	 * in the cache since. A tile stays pending until it's drawn loaded.
+	 */
+	private void drawPendingTiles(final int pZoomLevel, final int pTileSizePx) {
+		final int mapTileUpperBound = 1 << pZoomLevel;
+		final int offsetX = mWorldSize_2 - mBufferRect.left;
+		final int offsetY = mWorldSize_2 - mBufferRect.top;
+		for (int i = mPendingTileCount - 1; i >= 0; i--) {
+			final int x = mPendingTileX[i];
+			final int y = mPendingTileY[i];
+			final long key = MapTile.getKey(pZoomLevel, MyMath.mod(x, mapTileUpperBound),
+					MyMath.mod(y, mapTileUpperBound));
+			// this also requests the tile again if its request was cancelled
+			final Drawable tile = mTileProvider.getMapTile(key);
+			if (tile == null || tile == mPendingTileDrawn[i]) {
+				continue;
+			}
+			clearBufferTile(pTileSizePx, x, y);
+			final Drawable drawn = drawTile(mBufferCanvas, tile, key, pTileSizePx, x, y,
+					offsetX, offsetY);
+			if (drawn == tile && isTileLoaded(tile)) {
+				removePendingTile(i);
+			} else {
+				mPendingTileDrawn[i] = drawn;
+			}
+		}
+	}
+
+	/**
+	 * Clear a tile of a transparent buffer before drawing it whole, so that what was drawn while
+	 * it was loading doesn't show through.
+	 */
+	private void clearBufferTile(final int pTileSizePx, final int pX, final int pY) {
+		if (mBuffer.hasAlpha()) {
+			mBufferCanvas.save();
+			mBufferCanvas.clipRect(pX * pTileSizePx - mBufferRect.left, pY * pTileSizePx
+					- mBufferRect.top, (pX + 1) * pTileSizePx - mBufferRect.left, (pY + 1)
+					* pTileSizePx - mBufferRect.top);
+			mBufferCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+			mBufferCanvas.restore();
+		}
+	}
+
+	private static boolean isTileLoaded(final Drawable pTile) {
+		return pTile != null && !ExpirableBitmapDrawable.isDrawableExpired(pTile);
+	}
+
+	private void addPendingTile(final int pX, final int pY, final Drawable pDrawn) {
+		for (int i = 0; i < mPendingTileCount; i++) {
+			if (mPendingTileX[i] == pX && mPendingTileY[i] == pY) {
+				mPendingTileDrawn[i] = pDrawn;
+				return;
+			}
+		}
+		if (mPendingTileCount == mPendingTileX.length) {
+			final int capacity = mPendingTileCount * 2;
+			final int[] x = new int[capacity];
+			final int[] y = new int[capacity];
+			final Drawable[] drawn = new Drawable[capacity];
+			System.arraycopy(mPendingTileX, 0, x, 0, mPendingTileCount);
+			System.arraycopy(mPendingTileY, 0, y, 0, mPendingTileCount);
+			System.arraycopy(mPendingTileDrawn, 0, drawn, 0, mPendingTileCount);
+			mPendingTileX = x;
+			mPendingTileY = y;
+			mPendingTileDrawn = drawn;
+		}
+		mPendingTileX[mPendingTileCount] = pX;
+		mPendingTileY[mPendingTileCount] = pY;
+		mPendingTileDrawn[mPendingTileCount] = pDrawn;
+		mPendingTileCount++;
+	}
+
+	private void removePendingTile(final int pX, final int pY) {
+		for (int i = 0; i < mPendingTileCount; i++) {
+			if (mPendingTileX[i] == pX && mPendingTileY[i] == pY) {
+				removePendingTile(i);
+				return;
+			}
+		}
+	}
+
+	private void removePendingTile(final int pIndex) {
+		mPendingTileCount--;
+		mPendingTileX[pIndex] = mPendingTileX[mPendingTileCount];
+		mPendingTileY[pIndex] = mPendingTileY[mPendingTileCount];
+		mPendingTileDrawn[pIndex] = mPendingTileDrawn[mPendingTileCount];
+		mPendingTileDrawn[mPendingTileCount] = null;
+	}
 
 	protected void onTileReadyToDraw(final Canvas c, final Drawable currentMapTile,
 			final Rect tileRect) {
@@ -330,6 +739,7 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	private void clearLoadingTile() {
 		final BitmapDrawable bitmapDrawable = mLoadingTile;
 		mLoadingTile = null;
+		invalidateCompositionBuffer();
 		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
 			if (bitmapDrawable != null) {
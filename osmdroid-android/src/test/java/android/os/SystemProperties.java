@@ -0,0 +1,39 @@
+package android.os;
+
+/**
+ * Takes the place of the Android class, whose methods are native, so that {@link Build} can be
+ * initialized by the tests run against the Android classes. It answers the version of Android the
+ * library is built against, and the default value for any other property.
+ */
+public class SystemProperties {
+
+	private static final String SDK = "ro.build.version.sdk";
+	private static final String SDK_VERSION = "16";
+
+	public static String get(final String key) {
+		return get(key, "");
+	}
+
+	public static String get(final String key, final String def) {
+		return SDK.equals(key) ? SDK_VERSION : def;
+	}
+
+	public static int getInt(final String key, final int def) {
+		return SDK.equals(key) ? Integer.parseInt(SDK_VERSION) : def;
+	}
+
+	public static long getLong(final String key, final long def) {
+		return SDK.equals(key) ? Long.parseLong(SDK_VERSION) : def;
+	}
+
+	public static boolean getBoolean(final String key, final boolean def) {
+		return def;
+	}
+
+	public static void set(final String key, final String val) {
+		throw new UnsupportedOperationException("Read only on the JVM");
+	}
+
+	public static void addChangeCallback(final Runnable callback) {
+	}
+}
@@ -0,0 +1,99 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+public class ConcurrentMapTileCacheTest {
+
+	private final ConcurrentMapTileCache mCache = new ConcurrentMapTileCache(10000);
+
+	@Test
+	public void test_sizeBytes() throws Exception {
+		mCache.putTile(new MapTile(10, 1, 1), new TestDrawable(5, 5));
+		mCache.putTile(new MapTile(10, 2, 2), new TestDrawable(5, 10));
+		assertEquals("4 bytes per pixel", 300, mCache.getSizeBytes());
+
+		final Drawable replacement = new TestDrawable(3, 4);
+		mCache.putTile(new MapTile(10, 1, 1), replacement);
+		assertEquals("replaced tile counted once", 248, mCache.getSizeBytes());
+		assertSame(replacement, mCache.getMapTile(new MapTile(10, 1, 1)));
+
+		mCache.putTile(new MapTile(10, 1, 1), replacement);
+		assertEquals("same tile put again", 248, mCache.getSizeBytes());
+
+		mCache.clear();
+		assertEquals("cleared", 0, mCache.getSizeBytes());
+	}
+
+	@Test
+	public void test_trim() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			mCache.putTile(new MapTile(10, i, 0), new TestDrawable(5, 5));
+		}
+		assertEquals("full, not trimmed yet", 10000, mCache.getSizeBytes());
+		mCache.getMapTile(new MapTile(10, 0, 0));
+
+		mCache.putTile(new MapTile(10, 100, 0), new TestDrawable(5, 5));
+		assertTrue("trimmed below the maximum size: " + mCache.getSizeBytes(),
+				mCache.getSizeBytes() < 10000);
+		assertTrue("recently accessed tile kept", mCache.containsTile(new MapTile(10, 0, 0)));
+		assertFalse("least recently used tile evicted", mCache.containsTile(new MapTile(10, 1,
+				0)));
+		assertTrue("new tile kept", mCache.containsTile(new MapTile(10, 100, 0)));
+
+		final long trimmed = mCache.getSizeBytes();
+		mCache.putTile(new MapTile(10, 101, 0), new TestDrawable(5, 5));
+		assertEquals("no trim while below the maximum size", trimmed + 100,
+				mCache.getSizeBytes());
+	}
+
+	/**
+	 * A drawable without a bitmap, sized by its intrinsic size.
+	 */
+	private static class TestDrawable extends Drawable {
+
+		private final int mWidth;
+		private final int mHeight;
+
+		TestDrawable(final int pWidth, final int pHeight) {
+			mWidth = pWidth;
+			mHeight = pHeight;
+		}
+
+		@Override
+		public void draw(final Canvas pCanvas) {
+		}
+
+		@Override
+		public void setAlpha(final int pAlpha) {
+		}
+
+		@Override
+		public void setColorFilter(final ColorFilter pColorFilter) {
+		}
+
+		@Override
+		public int getOpacity() {
+			return PixelFormat.OPAQUE;
+		}
+
+		@Override
+		public int getIntrinsicWidth() {
+			return mWidth;
+		}
+
+		@Override
+		public int getIntrinsicHeight() {
+			return mHeight;
+		}
+	}
+}
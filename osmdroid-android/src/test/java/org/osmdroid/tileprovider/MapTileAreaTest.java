@@ -0,0 +1,47 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MapTileAreaTest {
+
+	@Test
+	public void test_contains() {
+		final MapTileArea area = new MapTileArea(3, 2, 2, 4, 3);
+
+		assertTrue("inside", area.contains(new MapTile(3, 2, 3), 0));
+		assertFalse("outside", area.contains(new MapTile(3, 5, 3), 0));
+		assertTrue("inside the margin", area.contains(new MapTile(3, 5, 3), 1));
+		assertFalse("outside the margin", area.contains(new MapTile(3, 6, 3), 1));
+		assertFalse("other zoom level", area.contains(new MapTile(4, 2, 3), 0));
+	}
+
+	@Test
+	public void test_contains_wrap() {
+		// a viewport across the date line, as computed by the TileLooper
+		final MapTileArea area = new MapTileArea(3, -2, 0, 1, 7);
+
+		assertTrue("left of the date line", area.contains(new MapTile(3, 6, 0), 0));
+		assertTrue("right of the date line", area.contains(new MapTile(3, 1, 0), 0));
+		assertFalse("outside", area.contains(new MapTile(3, 3, 0), 0));
+		assertTrue("area wider than the world", area.contains(new MapTile(3, 4, 0), 2));
+	}
+
+	@Test
+	public void test_getDistanceSquared() {
+		final MapTileArea area = new MapTileArea(3, 2, 2, 4, 4);
+
+		assertEquals("center", 0, area.getDistanceSquared(new MapTile(3, 3, 3)));
+		assertEquals("one tile away", 4, area.getDistanceSquared(new MapTile(3, 4, 3)));
+		assertEquals("other zoom level", Long.MAX_VALUE,
+				area.getDistanceSquared(new MapTile(2, 3, 3)));
+
+		// distances are in half tiles
+		final MapTileArea edge = new MapTileArea(3, 6, 3, 7, 3);
+		assertEquals("short way around the world", 3 * 3,
+				edge.getDistanceSquared(new MapTile(3, 0, 3)));
+	}
+}
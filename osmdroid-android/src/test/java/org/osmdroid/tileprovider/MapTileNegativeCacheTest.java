@@ -0,0 +1,110 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+public class MapTileNegativeCacheTest {
+
+	private final MapTileModuleProviderBase mArchives = new TestProvider();
+	private final MapTileModuleProviderBase mDownloader = new TestProvider();
+
+	@After
+	public void tearDown() {
+		mArchives.detach();
+		mDownloader.detach();
+	}
+
+	@Test
+	public void test_time_to_live() {
+		final MapTileNegativeCache cache = new MapTileNegativeCache(10);
+		final MapTile tile = new MapTile(5, 1, 2);
+		cache.put(tile, mArchives, 1000, 0);
+		cache.put(tile, mDownloader, 100, 0);
+
+		assertTrue(cache.contains(tile, mArchives, 500));
+		assertFalse("expired", cache.contains(tile, mDownloader, 500));
+		assertFalse("other tile", cache.contains(new MapTile(5, 1, 3), mArchives, 500));
+		assertFalse("expired", cache.contains(tile, mArchives, 1000));
+		assertEquals("expired entries dropped", 0, cache.size());
+
+		cache.put(tile, mArchives, 0, 0);
+		assertFalse("not remembered without a time to live", cache.contains(tile, mArchives, 0));
+	}
+
+	@Test
+	public void test_maximum_size() {
+		final MapTileNegativeCache cache = new MapTileNegativeCache(10);
+		for (int i = 0; i < 20; i++) {
+			cache.put(new MapTile(10, i, 0), mArchives, 1000, 0);
+		}
+		assertEquals(10, cache.size());
+		assertFalse("eldest forgotten", cache.contains(new MapTile(10, 0, 0), mArchives, 0));
+		assertTrue("newest kept", cache.contains(new MapTile(10, 19, 0), mArchives, 0));
+	}
+
+	@Test
+	public void test_remove() {
+		final MapTileNegativeCache cache = new MapTileNegativeCache(10);
+		final MapTile tile1 = new MapTile(5, 1, 2);
+		final MapTile tile2 = new MapTile(5, 1, 3);
+		cache.put(tile1, mArchives, 1000, 0);
+		cache.put(tile1, mDownloader, 1000, 0);
+		cache.put(tile2, mArchives, 1000, 0);
+
+		cache.remove(mArchives);
+		assertFalse(cache.contains(tile1, mArchives, 0));
+		assertTrue("other provider kept", cache.contains(tile1, mDownloader, 0));
+		assertEquals(1, cache.size());
+
+		cache.remove(tile1);
+		assertFalse(cache.contains(tile1, mDownloader, 0));
+		assertEquals(0, cache.size());
+	}
+
+	private static class TestProvider extends MapTileModuleProviderBase {
+
+		TestProvider() {
+			super(1, 1);
+		}
+
+		@Override
+		protected String getName() {
+			return "Test";
+		}
+
+		@Override
+		protected String getThreadGroupName() {
+			return "test";
+		}
+
+		@Override
+		protected Runnable getTileLoader() {
+			return null;
+		}
+
+		@Override
+		public boolean getUsesDataConnection() {
+			return false;
+		}
+
+		@Override
+		public int getMinimumZoomLevel() {
+			return 0;
+		}
+
+		@Override
+		public int getMaximumZoomLevel() {
+			return 18;
+		}
+
+		@Override
+		public void setTileSource(final ITileSource pTileSource) {
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class ArchiveCoverageTest {
+
+	@Test
+	public void test_tiles() {
+		final ArchiveCoverage coverage = new ArchiveCoverage(1000);
+		for (int x = 0; x < 30; x++) {
+			for (int y = 0; y < 30; y += 2) {
+				coverage.add(12, 2000 + x, 1300 + y);
+			}
+		}
+
+		int falsePositives = 0;
+		for (int x = 0; x < 30; x++) {
+			for (int y = 0; y < 30; y++) {
+				final boolean mayContain = coverage.mayContain(12, 2000 + x, 1300 + y);
+				if (y % 2 == 0) {
+					assertTrue("tile added " + x + "/" + y, mayContain);
+				} else if (mayContain) {
+					falsePositives++;
+				}
+			}
+		}
+		assertTrue("few false positives: " + falsePositives, falsePositives < 30);
+		assertFalse("outside of the bounds", coverage.mayContain(12, 1999, 1300));
+		assertFalse("other zoom level", coverage.mayContain(new MapTile(13, 4000, 2600)));
+	}
+
+	@Test
+	public void test_bounds() {
+		final ArchiveCoverage coverage = new ArchiveCoverage();
+		// around Rennes
+		coverage.addBounds(10, 16, -1.75, 48.07, -1.6, 48.15);
+
+		assertTrue(coverage.mayContain(12, 2028, 1422));
+		assertTrue("margin", coverage.mayContain(12, 2027, 1420));
+		assertFalse(coverage.mayContain(12, 2040, 1422));
+		assertFalse("zoom level not covered", coverage.mayContain(9, 253, 177));
+
+		coverage.addZoomLevels(0, 2);
+		assertTrue(coverage.mayContain(2, 3, 0));
+	}
+
+	@Test
+	public void test_zip() throws Exception {
+		final File file = File.createTempFile("archive", ".zip");
+		try {
+			final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+			out.putNextEntry(new ZipEntry("Mapnik/"));
+			out.putNextEntry(new ZipEntry("Mapnik/12/2028/1404.png"));
+			out.write(1);
+			out.putNextEntry(new ZipEntry("Mapnik/13/4057/2808.png"));
+			out.write(2);
+			out.putNextEntry(new ZipEntry("readme.txt"));
+			out.write(3);
+			out.close();
+
+			final ArchiveCoverage coverage = ZipFileArchive.getZipFileArchive(file).getCoverage();
+			assertTrue(coverage.mayContain(12, 2028, 1404));
+			assertTrue(coverage.mayContain(13, 4057, 2808));
+			assertFalse(coverage.mayContain(12, 2028, 1405));
+			assertFalse(coverage.mayContain(14, 8114, 5616));
+		} finally {
+			file.delete();
+		}
+	}
+}
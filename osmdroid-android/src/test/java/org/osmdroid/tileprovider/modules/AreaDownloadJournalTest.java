@@ -0,0 +1,58 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AreaDownloadJournalTest {
+
+	private File mFile;
+
+	@Before
+	public void setUp() throws Exception {
+		mFile = File.createTempFile("journal", "");
+		mFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		mFile.delete();
+		new File(mFile.getPath() + ".tmp").delete();
+	}
+
+	@Test
+	public void test_resume() throws Exception {
+		final AreaDownloadJournal journal = new AreaDownloadJournal(mFile);
+		assertFalse("no journal yet", journal.load());
+
+		journal.reset("Mapnik", 48150000, -1600000, 48070000, -1750000, 10, 15);
+		for (int i = 0; i < 5; i++) {
+			assertEquals("next tile", i, journal.takeNext(6));
+		}
+		journal.done(0);
+		journal.done(1);
+		journal.done(3);
+		journal.save();
+
+		final AreaDownloadJournal resumed = new AreaDownloadJournal(mFile);
+		assertTrue("journal saved", resumed.load());
+		assertTrue("same area", resumed.matches("Mapnik", 48150000, -1600000, 48070000,
+				-1750000, 10, 15));
+		assertFalse("other zoom levels", resumed.matches("Mapnik", 48150000, -1600000,
+				48070000, -1750000, 10, 16));
+		assertEquals("done tiles", 3, resumed.getDoneCount());
+		assertArrayEquals("pending tiles", new int[] { 2, 4 }, resumed.getPendingIndices());
+		assertEquals("next tile", 5, resumed.takeNext(6));
+		assertEquals("no more tiles", -1, resumed.takeNext(6));
+
+		resumed.delete();
+		assertFalse("journal deleted", new AreaDownloadJournal(mFile).load());
+	}
+}
@@ -0,0 +1,83 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class CacheValidatorsTest {
+
+	private static final String LAST_MODIFIED = "Sat, 01 Jan 2011 10:00:00 GMT";
+
+	@Test
+	public void test_fromResponse() {
+		final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.addHeader("ETag", "\"abc\"");
+		response.addHeader("Last-Modified", LAST_MODIFIED);
+		response.addHeader("Cache-Control", "public, max-age=600");
+
+		final CacheValidators validators = CacheValidators.fromResponse(response, 1000);
+
+		assertEquals("\"abc\"", validators.getETag());
+		assertEquals(LAST_MODIFIED, validators.getLastModified());
+		assertEquals("expiry from max-age", 1000 + 600 * 1000, validators.getExpires());
+	}
+
+	@Test
+	public void test_fromResponse_without_validators() {
+		final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.addHeader("Cache-Control", "no-cache");
+
+		final CacheValidators validators = CacheValidators.fromResponse(response, 1000);
+
+		assertTrue("nothing to revalidate with", validators.isEmpty());
+		assertEquals("unknown expiry", 0, validators.getExpires());
+	}
+
+	@Test
+	public void test_addTo() {
+		final HttpGet request = new HttpGet("http://localhost/1/2/3.png");
+		new CacheValidators("\"abc\"", LAST_MODIFIED, 0).addTo(request);
+
+		assertEquals("\"abc\"", request.getFirstHeader("If-None-Match").getValue());
+		assertEquals(LAST_MODIFIED, request.getFirstHeader("If-Modified-Since").getValue());
+	}
+
+	@Test
+	public void test_update() {
+		final CacheValidators validators = new CacheValidators("\"abc\"", LAST_MODIFIED, 1000)
+				.update(new CacheValidators(null, null, 2000));
+
+		assertEquals("kept", "\"abc\"", validators.getETag());
+		assertEquals("kept", LAST_MODIFIED, validators.getLastModified());
+		assertEquals("updated", 2000, validators.getExpires());
+	}
+
+	@Test
+	public void test_write_read() throws Exception {
+		final File tile = File.createTempFile("tile", ".tile");
+		final File file = CacheValidators.getValidatorsFile(tile);
+		try {
+			assertNull("no validators yet", CacheValidators.read(tile));
+
+			assertTrue(new CacheValidators("\"abc\"", null, 1234).write(tile));
+			final CacheValidators validators = CacheValidators.read(tile);
+			assertEquals("\"abc\"", validators.getETag());
+			assertNull(validators.getLastModified());
+			assertEquals(1234, validators.getExpires());
+
+			assertTrue(new CacheValidators(null, null, 0).write(tile));
+			assertFalse("empty validators aren't kept", file.exists());
+		} finally {
+			tile.delete();
+			file.delete();
+		}
+	}
+}
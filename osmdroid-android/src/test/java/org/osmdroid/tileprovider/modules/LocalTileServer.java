@@ -0,0 +1,126 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface standing in for a tile server. Every request
+ * gets the same tile, connections are kept alive unless the client asks otherwise, and accepting a
+ * connection can be slowed down to simulate the round trips of a handshake on a real network.
+ */
+class LocalTileServer {
+
+	private final ServerSocket mServerSocket;
+	private final byte[] mTile;
+	private final long mConnectionDelayMillis;
+
+	private final AtomicInteger mConnectionCount = new AtomicInteger();
+	private final AtomicInteger mRequestCount = new AtomicInteger();
+
+	LocalTileServer(final int pTileSizeBytes, final long pConnectionDelayMillis)
+			throws IOException {
+		mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		mTile = new byte[pTileSizeBytes];
+		mConnectionDelayMillis = pConnectionDelayMillis;
+
+		final Thread acceptor = new Thread("LocalTileServer") {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						serve(mServerSocket.accept());
+					}
+				} catch (final IOException e) {
+					// closed
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	String getBaseURLString() {
+		return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+	}
+
+	String getTileURLString(final int pZoomLevel, final int pX, final int pY) {
+		return getBaseURLString() + pZoomLevel + "/" + pX + "/" + pY + ".png";
+	}
+
+	int getConnectionCount() {
+		return mConnectionCount.get();
+	}
+
+	int getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	void close() throws IOException {
+		mServerSocket.close();
+	}
+
+	private void serve(final Socket pSocket) {
+		mConnectionCount.incrementAndGet();
+		final Thread handler = new Thread("LocalTileServer connection") {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(mConnectionDelayMillis);
+					final InputStream in = new BufferedInputStream(pSocket.getInputStream());
+					// one write per response, as a real server would do
+					final OutputStream out = new BufferedOutputStream(pSocket.getOutputStream(),
+							mTile.length + 256);
+					boolean keepAlive = true;
+					while (keepAlive) {
+						final String requestLine = readLine(in);
+						if (requestLine == null) {
+							break;
+						}
+						String header;
+						while ((header = readLine(in)) != null && header.length() > 0) {
+							if (header.equalsIgnoreCase("Connection: close")) {
+								keepAlive = false;
+							}
+						}
+						mRequestCount.incrementAndGet();
+						out.write(("HTTP/1.1 200 OK\r\nContent-Type: image/png\r\nContent-Length: "
+								+ mTile.length + "\r\n\r\n").getBytes("US-ASCII"));
+						out.write(mTile);
+						out.flush();
+					}
+				} catch (final Exception e) {
+					// the client went away
+				} finally {
+					try {
+						pSocket.close();
+					} catch (final IOException e) {
+						// ignore
+					}
+				}
+			}
+		};
+		handler.setDaemon(true);
+		handler.start();
+	}
+
+	private static String readLine(final InputStream pIn) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = pIn.read()) != '\n') {
+			if (c == -1) {
+				return line.length() == 0 ? null : line.toString();
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,168 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.tileprovider.IMapTileProviderCallback;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Loads tiles from a {@link LocalTileServer} with a {@link MapTileDownloader}, and checks the
+ * connections it opens to the server.
+ */
+public class MapTileDownloaderTest {
+
+	private static final int TILES = 40;
+	private static final int TILE_SIZE_BYTES = 16 * 1024;
+	/** Stands in for the round trips of the TCP handshake. */
+	private static final long CONNECTION_DELAY_MILLIS = 5;
+
+	private LocalTileServer mServer;
+	private MapTileDownloader mDownloader;
+	private final AtomicInteger mCompletedCount = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		mServer = new LocalTileServer(TILE_SIZE_BYTES, CONNECTION_DELAY_MILLIS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (mDownloader != null) {
+			mDownloader.detach();
+		}
+		mServer.close();
+	}
+
+	@Test
+	public void test_connections_are_reused() throws Exception {
+		mDownloader = createDownloader(2, 2);
+		download();
+
+		assertEquals("all tiles served", TILES, mServer.getRequestCount());
+		assertTrue("at most one connection per thread, got " + mServer.getConnectionCount(),
+				mServer.getConnectionCount() <= 2);
+	}
+
+	@Test
+	public void test_connections_per_host_are_capped() throws Exception {
+		mDownloader = createDownloader(4, 1);
+		download();
+
+		assertEquals("all tiles served", TILES, mServer.getRequestCount());
+		assertEquals("threads share the only connection", 1, mServer.getConnectionCount());
+	}
+
+	@Test
+	public void test_cancelled_download_is_aborted() throws Exception {
+		// the server takes far longer to answer than the test waits
+		mServer.close();
+		mServer = new LocalTileServer(TILE_SIZE_BYTES, 60 * 1000);
+		mDownloader = createDownloader(1, 1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final MapTileRequestState state = request(new MapTile(18, 0, 0), done);
+		final long end = System.currentTimeMillis() + 5000;
+		while (mServer.getConnectionCount() == 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals("download started", 1, mServer.getConnectionCount());
+
+		state.cancel();
+		mDownloader.onRequestsCancelled();
+		assertTrue("aborted download reported", done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void test_store_only() throws Exception {
+		final AtomicInteger saved = new AtomicInteger();
+		final IFilesystemCache cache = new IFilesystemCache() {
+			@Override
+			public boolean saveFile(final ITileSource pTileSourceInfo, final MapTile pTile,
+					final InputStream pStream) {
+				saved.incrementAndGet();
+				return true;
+			}
+		};
+		mDownloader = createDownloader(2, 2, cache);
+		mDownloader.setStoreOnly(true);
+		download();
+
+		assertEquals("all tiles saved", TILES, saved.get());
+		assertEquals("tiles that aren't images completed once saved", TILES, mCompletedCount
+				.get());
+	}
+
+	private MapTileDownloader createDownloader(final int pThreads,
+			final int pMaximumConnectionsPerHost) {
+		return createDownloader(pThreads, pMaximumConnectionsPerHost, null);
+	}
+
+	private MapTileDownloader createDownloader(final int pThreads,
+			final int pMaximumConnectionsPerHost, final IFilesystemCache pFilesystemCache) {
+		final XYTileSource tileSource = new XYTileSource("Local", null, 0, 18, 256, ".png",
+				mServer.getBaseURLString());
+		return new MapTileDownloader(tileSource, pFilesystemCache, null, pThreads, TILES,
+				pMaximumConnectionsPerHost);
+	}
+
+	/**
+	 * Request the tiles from the downloader and wait for all of them to be reported. The tiles
+	 * aren't images, so they're reported as failed once downloaded, unless the downloader only
+	 * stores them.
+	 */
+	private void download() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(TILES);
+		for (int i = 0; i < TILES; i++) {
+			request(new MapTile(18, i, i), done);
+		}
+		assertTrue("all tiles reported", done.await(20, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Request a tile from the downloader, counting down the latch when it's reported.
+	 */
+	private MapTileRequestState request(final MapTile pTile, final CountDownLatch pDone) {
+		final IMapTileProviderCallback callback = new IMapTileProviderCallback() {
+			@Override
+			public void mapTileRequestCompleted(final MapTileRequestState pState,
+					final Drawable pDrawable) {
+				mCompletedCount.incrementAndGet();
+				pDone.countDown();
+			}
+
+			@Override
+			public void mapTileRequestFailed(final MapTileRequestState pState) {
+				pDone.countDown();
+			}
+
+			@Override
+			public void mapTileRequestExpiredTile(final MapTileRequestState pState,
+					final Drawable pDrawable) {
+				pDone.countDown();
+			}
+
+			@Override
+			public boolean useDataConnection() {
+				return true;
+			}
+		};
+		final MapTileRequestState state = new MapTileRequestState(pTile,
+				new MapTileModuleProviderBase[] { mDownloader }, callback);
+		state.getNextProvider();
+		mDownloader.loadMapTileAsync(state);
+		return state;
+	}
+}
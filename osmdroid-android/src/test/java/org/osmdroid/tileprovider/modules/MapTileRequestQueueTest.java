@@ -0,0 +1,180 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
+import org.osmdroid.tileprovider.MapTileRequestState;
+
+public class MapTileRequestQueueTest {
+
+	private static MapTileRequestState request(final int pZoomLevel, final int pX, final int pY) {
+		return new MapTileRequestState(new MapTile(pZoomLevel, pX, pY),
+				new MapTileModuleProviderBase[0], null);
+	}
+
+	@Test
+	public void test_takeNewest_order() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		final MapTileRequestState state2 = request(2, 2, 2);
+		final MapTileRequestState state3 = request(3, 3, 3);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state3);
+
+		assertSame("most recent first", state3, queue.takeNewest());
+		assertSame("then the previous one", state2, queue.takeNewest());
+		assertSame("then the oldest", state1, queue.takeNewest());
+		assertNull("nothing pending", queue.takeNewest());
+		assertEquals("requests being worked on are still queued", 3, queue.size());
+	}
+
+	@Test
+	public void test_put_twice() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		final MapTileRequestState state2 = request(2, 2, 2);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state1);
+
+		assertEquals("one entry per tile", 2, queue.size());
+		assertSame("tile requested again jumps the queue", state1, queue.takeNewest());
+	}
+
+	@Test
+	public void test_put_working() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		queue.put(state1);
+		assertSame(state1, queue.takeNewest());
+
+		queue.put(request(1, 1, 1));
+		assertEquals("one entry per tile", 1, queue.size());
+		assertNull("tile is already being worked on", queue.takeNewest());
+	}
+
+	@Test
+	public void test_put_prefetch() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState prefetch = request(1, 1, 1);
+		prefetch.setPrefetch(true);
+		final MapTileRequestState state1 = request(2, 2, 2);
+		final MapTileRequestState state2 = request(3, 3, 3);
+		queue.put(state1);
+		queue.put(prefetch);
+		queue.put(state2);
+
+		assertSame("prefetch request is dropped first", prefetch, queue.removeOldest());
+		queue.put(prefetch);
+		assertSame(state2, queue.takeNewest());
+		assertSame(state1, queue.takeNewest());
+		assertSame("prefetch request is taken last", prefetch, queue.takeNewest());
+	}
+
+	@Test
+	public void test_removeOldest_skips_working() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		final MapTileRequestState state2 = request(2, 2, 2);
+		final MapTileRequestState state3 = request(3, 3, 3);
+		queue.put(state1);
+		queue.put(state2);
+		assertSame(state2, queue.takeNewest());
+		queue.put(state3);
+
+		assertSame("oldest pending", state1, queue.removeOldest());
+		assertSame("working tile is skipped", state3, queue.removeOldest());
+		assertNull("only the working tile is left", queue.removeOldest());
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void test_remove() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		final MapTileRequestState state2 = request(2, 2, 2);
+		queue.put(state1);
+		queue.put(state2);
+		assertSame(state2, queue.takeNewest());
+
+		queue.remove(state1.getMapTile());
+		queue.remove(state2.getMapTile());
+
+		assertFalse(queue.contains(state1.getMapTile()));
+		assertFalse(queue.contains(state2.getMapTile()));
+		assertEquals(0, queue.size());
+		assertEquals(0, queue.getPendingCount());
+		assertNull(queue.takeNewest());
+
+		queue.put(state1);
+		assertTrue(queue.contains(state1.getMapTile()));
+		assertSame("queue is still usable", state1, queue.takeNewest());
+	}
+
+	@Test
+	public void test_remove_state_requeues_newer_request() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState state1 = request(1, 1, 1);
+		queue.put(state1);
+		assertSame(state1, queue.takeNewest());
+		state1.cancel();
+
+		final MapTileRequestState state2 = request(1, 1, 1);
+		queue.put(state2);
+		queue.remove(state1);
+
+		assertSame("the newer request is pending again", state2, queue.takeNewest());
+		queue.remove(state2);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void test_prioritize() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState near = request(4, 5, 5);
+		final MapTileRequestState far = request(4, 9, 5);
+		final MapTileRequestState wrapped = request(4, 15, 5);
+		final MapTileRequestState cancelled = request(4, 6, 5);
+		queue.put(near);
+		queue.put(cancelled);
+		queue.put(far);
+		queue.put(wrapped);
+		cancelled.cancel();
+
+		queue.prioritize(new MapTileArea(4, 0, 4, 1, 6));
+
+		assertEquals("cancelled request is dropped", 3, queue.getPendingCount());
+		assertFalse(queue.contains(cancelled.getMapTile()));
+		assertSame("tile across the date line is the closest", wrapped, queue.takeNewest());
+		assertSame(near, queue.takeNewest());
+		assertSame(far, queue.takeNewest());
+	}
+
+	@Test
+	public void test_prioritize_keeps_order() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue();
+		final MapTileRequestState left = request(10, 9, 10);
+		final MapTileRequestState right = request(10, 11, 10);
+		final MapTileRequestState otherZoomLevel = request(11, 20, 20);
+		final MapTileRequestState farAway = request(10, 500, 500);
+		queue.put(farAway);
+		queue.put(otherZoomLevel);
+		queue.put(left);
+		queue.put(right);
+
+		queue.prioritize(new MapTileArea(10, 10, 10, 10, 10));
+
+		assertSame("same distance, most recent first", right, queue.takeNewest());
+		assertSame(left, queue.takeNewest());
+		assertSame("beyond the last bucket, most recent first", otherZoomLevel,
+				queue.takeNewest());
+		assertSame(farAway, queue.takeNewest());
+	}
+}
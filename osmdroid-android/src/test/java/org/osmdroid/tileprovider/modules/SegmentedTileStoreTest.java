@@ -0,0 +1,160 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+public class SegmentedTileStoreTest {
+
+	private static final ITileSource TILE_SOURCE = new XYTileSource("Test", null, 0, 18, 256,
+			".png", "http://localhost/");
+
+	private File mDirectory;
+
+	@Before
+	public void setUp() throws Exception {
+		mDirectory = File.createTempFile("tilestore", "");
+		mDirectory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		delete(mDirectory);
+	}
+
+	@Test
+	public void test_save_read() throws Exception {
+		final SegmentedTileStore store = new SegmentedTileStore(mDirectory);
+		final MapTile tile = new MapTile(12, 2047, 1362);
+		assertNull("not cached yet", store.getInputStream(TILE_SOURCE, tile));
+		assertEquals("not cached yet", 0, store.getLastModified(TILE_SOURCE, tile));
+
+		assertTrue(store.saveFile(TILE_SOURCE, tile, stream(tile(1, 1000))));
+		assertTrue(store.saveFile(TILE_SOURCE, new MapTile(12, 2047, 1363), stream(tile(2, 500))));
+
+		assertArrayEquals(tile(1, 1000), read(store.getInputStream(TILE_SOURCE, tile)));
+		assertTrue("saved now", store.getLastModified(TILE_SOURCE, tile) > 0);
+		assertNull("no validators", store.getValidators(TILE_SOURCE, tile));
+
+		assertTrue(store.saveFile(TILE_SOURCE, tile, stream(tile(3, 800))));
+		assertArrayEquals("overwritten", tile(3, 800), read(store.getInputStream(TILE_SOURCE, tile)));
+		store.close();
+	}
+
+	@Test
+	public void test_validators() throws Exception {
+		final SegmentedTileStore store = new SegmentedTileStore(mDirectory);
+		final MapTile tile = new MapTile(3, 1, 2);
+		store.saveFile(TILE_SOURCE, tile, stream(tile(1, 100)), new CacheValidators("\"abc\"",
+				null, 0));
+		assertEquals("\"abc\"", store.getValidators(TILE_SOURCE, tile).getETag());
+
+		assertTrue(store.refreshFile(TILE_SOURCE, tile, new CacheValidators("\"def\"", null, 42)));
+		final CacheValidators validators = store.getValidators(TILE_SOURCE, tile);
+		assertEquals("\"def\"", validators.getETag());
+		assertEquals(42, validators.getExpires());
+		assertArrayEquals("content unchanged", tile(1, 100),
+				read(store.getInputStream(TILE_SOURCE, tile)));
+		store.close();
+	}
+
+	@Test
+	public void test_reopen() throws Exception {
+		SegmentedTileStore store = new SegmentedTileStore(mDirectory);
+		for (int i = 0; i < 100; i++) {
+			store.saveFile(TILE_SOURCE, new MapTile(10, i, i), stream(tile(i, 100 + i)));
+		}
+		store.refreshFile(TILE_SOURCE, new MapTile(10, 5, 5), new CacheValidators(null,
+				"yesterday", 0));
+		store.close();
+
+		store = new SegmentedTileStore(mDirectory);
+		for (int i = 0; i < 100; i++) {
+			assertArrayEquals("tile " + i, tile(i, 100 + i),
+					read(store.getInputStream(TILE_SOURCE, new MapTile(10, i, i))));
+		}
+		assertEquals("yesterday", store.getValidators(TILE_SOURCE, new MapTile(10, 5, 5))
+				.getLastModified());
+		assertEquals(100 * 100 + 99 * 100 / 2, store.getSizeBytes());
+		store.close();
+	}
+
+	@Test
+	public void test_remove() throws Exception {
+		SegmentedTileStore store = new SegmentedTileStore(mDirectory);
+		final MapTile tile = new MapTile(8, 1, 1);
+		store.saveFile(TILE_SOURCE, tile, stream(tile(1, 100)));
+		store.saveFile(TILE_SOURCE, new MapTile(8, 1, 2), stream(tile(2, 100)));
+		assertTrue(store.remove(TILE_SOURCE, tile));
+		assertNull("removed", store.getInputStream(TILE_SOURCE, tile));
+		assertEquals("removed", 0, store.getLastModified(TILE_SOURCE, tile));
+		store.close();
+
+		store = new SegmentedTileStore(mDirectory);
+		assertNull("still removed after reopening", store.getInputStream(TILE_SOURCE, tile));
+		assertArrayEquals("other tile kept", tile(2, 100), read(store.getInputStream(TILE_SOURCE,
+				new MapTile(8, 1, 2))));
+		store.close();
+	}
+
+	@Test
+	public void test_trim() throws Exception {
+		// ten tiles per segment
+		final SegmentedTileStore store = new SegmentedTileStore(mDirectory, 5000, 3000, 1000);
+		for (int i = 0; i < 60; i++) {
+			store.saveFile(TILE_SOURCE, new MapTile(10, i, 0), stream(tile(i, 100)));
+		}
+
+		assertTrue("trimmed: " + store.getSizeBytes(), store.getSizeBytes() <= 5000);
+		assertNull("oldest tile deleted", store.getInputStream(TILE_SOURCE, new MapTile(10, 0, 0)));
+		assertNotNull("newest tile kept", store.getInputStream(TILE_SOURCE, new MapTile(10, 59, 0)));
+		assertArrayEquals("tile of a full segment", tile(45, 100), read(store.getInputStream(
+				TILE_SOURCE, new MapTile(10, 45, 0))));
+		store.close();
+	}
+
+	private static byte[] tile(final int pSeed, final int pLength) {
+		final byte[] data = new byte[pLength];
+		for (int i = 0; i < pLength; i++) {
+			data[i] = (byte) (pSeed + i);
+		}
+		return data;
+	}
+
+	private static InputStream stream(final byte[] pData) {
+		return new ByteArrayInputStream(pData);
+	}
+
+	private static byte[] read(final InputStream pIn) throws Exception {
+		assertNotNull("tile found", pIn);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamUtils.copy(pIn, out);
+		pIn.close();
+		return out.toByteArray();
+	}
+
+	private static void delete(final File pFile) {
+		final File[] files = pFile.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		pFile.delete();
+	}
+}
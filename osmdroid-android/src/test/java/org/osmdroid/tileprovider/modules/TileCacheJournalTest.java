@@ -0,0 +1,158 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileCacheJournalTest {
+
+	private File mFile;
+
+	@Before
+	public void setUp() throws Exception {
+		mFile = File.createTempFile("journal", "");
+		mFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		mFile.delete();
+		new File(mFile.getPath() + ".tmp").delete();
+	}
+
+	@Test
+	public void test_size() throws Exception {
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		assertFalse("no journal yet", journal.load());
+
+		journal.put("a/1.tile", 100);
+		journal.put("a/2.tile", 200);
+		journal.put("a/1.tile", 150);
+		assertEquals("overwritten file counted once", 350, journal.getSizeBytes());
+
+		journal.remove("a/2.tile");
+		journal.remove("a/3.tile");
+		assertEquals(150, journal.getSizeBytes());
+		assertEquals(1, journal.getCount());
+		journal.close();
+	}
+
+	@Test
+	public void test_reload() throws Exception {
+		TileCacheJournal journal = new TileCacheJournal(mFile);
+		journal.put("a/1.tile", 100);
+		journal.put("a/2.tile", 200);
+		journal.put("a/3.tile", 300);
+		journal.remove("a/2.tile");
+		journal.close();
+
+		journal = new TileCacheJournal(mFile);
+		assertTrue("journal found", journal.load());
+		assertEquals(400, journal.getSizeBytes());
+		assertTrue(journal.contains("a/3.tile"));
+		assertFalse(journal.contains("a/2.tile"));
+		journal.close();
+	}
+
+	@Test
+	public void test_flush() throws Exception {
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		journal.put("a/1.tile", 100);
+		assertEquals("record not flushed yet", 0, mFile.length());
+		journal.flush();
+		assertTrue("record flushed", mFile.length() > 0);
+		journal.close();
+	}
+
+	@Test
+	public void test_putWhileLoading() throws Exception {
+		final Writer out = new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8");
+		for (int i = 0; i < 50000; i++) {
+			out.write("PUT 1 a/" + i + ".tile\n");
+		}
+		out.close();
+
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		final Thread loader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					journal.load();
+				} catch (final IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		loader.start();
+		journal.put("b/new.tile", 100);
+		loader.join();
+
+		assertEquals("loaded and recorded files", 50000 + 100, journal.getSizeBytes());
+		assertTrue("recorded while loading", journal.contains("b/new.tile"));
+		assertEquals("loaded files the eldest", Arrays.asList("a/0.tile"), journal.getEldest(1));
+		final List<String> all = journal.getEldest(Long.MAX_VALUE);
+		assertEquals("recorded file the most recent", "b/new.tile", all.get(all.size() - 1));
+		journal.close();
+	}
+
+	@Test
+	public void test_truncated_record() throws Exception {
+		final FileOutputStream out = new FileOutputStream(mFile);
+		out.write("PUT 100 a/1.tile\nPUT 200 a/2.tile\nPUT 30".getBytes("UTF-8"));
+		out.close();
+
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		assertTrue(journal.load());
+		assertEquals("last record ignored", 300, journal.getSizeBytes());
+		journal.close();
+	}
+
+	@Test
+	public void test_getEldest() throws Exception {
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		journal.put("a/1.tile", 100);
+		journal.put("a/2.tile", 100);
+		journal.put("a/3.tile", 100);
+		journal.touch("a/1.tile");
+
+		assertEquals("least recently used first", Arrays.asList("a/2.tile", "a/3.tile"),
+				journal.getEldest(150));
+		assertEquals("nothing to free", 0, journal.getEldest(0).size());
+		journal.close();
+	}
+
+	@Test
+	public void test_addEldest() throws Exception {
+		final TileCacheJournal journal = new TileCacheJournal(mFile);
+		journal.put("a/new.tile", 100);
+
+		final LinkedHashMap<String, Long> existing = new LinkedHashMap<String, Long>();
+		existing.put("a/old.tile", 10L);
+		existing.put("a/new.tile", 100L);
+		existing.put("a/older.tile", 20L);
+		journal.addEldest(existing);
+
+		assertEquals(130, journal.getSizeBytes());
+		assertEquals("recorded files kept as the most recent", Arrays.asList("a/old.tile",
+				"a/older.tile", "a/new.tile"), journal.getEldest(Long.MAX_VALUE));
+		journal.close();
+
+		final TileCacheJournal reloaded = new TileCacheJournal(mFile);
+		assertTrue(reloaded.load());
+		assertEquals("compacted journal", 130, reloaded.getSizeBytes());
+		reloaded.close();
+	}
+}
@@ -0,0 +1,70 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TileDecodeStageTest {
+
+	@Test
+	public void test_backPressure() throws Exception {
+		final TileDecodeStage stage = new TileDecodeStage(1, 2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicInteger decoded = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+		final Runnable decoding = new Runnable() {
+			@Override
+			public void run() {
+				decoded.incrementAndGet();
+				done.countDown();
+			}
+		};
+
+		// the only thread waits, so that the queue fills up
+		stage.decode(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			}
+		});
+		assertTrue("first decoding started", started.await(5, TimeUnit.SECONDS));
+		stage.decode(decoding);
+		stage.decode(decoding);
+		assertEquals("queue full", 2, stage.getQueueDepth());
+		assertEquals("no caller runs yet", 0, stage.getCallerRunCount());
+
+		// a reader handing over a third decoding runs it itself rather than waiting for the thread
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger decodedByCaller = new AtomicInteger();
+		stage.decode(new Runnable() {
+			@Override
+			public void run() {
+				if (Thread.currentThread() == caller) {
+					decodedByCaller.incrementAndGet();
+				}
+				decoding.run();
+			}
+		});
+		assertEquals("decoded by the reader", 1, decodedByCaller.get());
+		assertEquals("decoded while the thread waits", 1, decoded.get());
+		assertEquals("caller runs", 1, stage.getCallerRunCount());
+		assertEquals("queue still full", 2, stage.getQueueDepth());
+
+		release.countDown();
+		assertTrue("all decoded", done.await(5, TimeUnit.SECONDS));
+		assertEquals("decoded", 3, decoded.get());
+		assertEquals("maximum queue depth", 2, stage.getMaximumQueueDepth());
+	}
+}
@@ -0,0 +1,134 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+
+public class ZipFileArchiveTest {
+
+	private static final ITileSource TILE_SOURCE = new XYTileSource("Test", null, 0, 18, 256,
+			".png", "http://localhost/");
+	private static final ITileSource OTHER_TILE_SOURCE = new XYTileSource("Other", null, 0, 18,
+			256, ".png", "http://localhost/");
+
+	private File mFile;
+
+	@Before
+	public void setUp() throws Exception {
+		mFile = File.createTempFile("archive", ".zip");
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mFile));
+		out.putNextEntry(new ZipEntry("Test/"));
+		for (int x = 0; x < 10; x++) {
+			for (int y = 0; y < 10; y++) {
+				// stored and deflated entries
+				final byte[] content = getContent("Test", 12, x, y);
+				final ZipEntry entry = new ZipEntry("Test/12/" + x + "/" + y + ".png");
+				if ((x + y) % 2 == 0) {
+					final CRC32 crc = new CRC32();
+					crc.update(content);
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(content.length);
+					entry.setCrc(crc.getValue());
+				}
+				out.putNextEntry(entry);
+				out.write(content);
+			}
+		}
+		out.putNextEntry(new ZipEntry("Other/3/1/2.png"));
+		out.write(getContent("Other", 3, 1, 2));
+		// not the name of tile 12/1/2
+		out.putNextEntry(new ZipEntry("Test/12/01/2.png"));
+		out.write(1);
+		out.putNextEntry(new ZipEntry("readme.txt"));
+		out.write(2);
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		mFile.delete();
+	}
+
+	@Test
+	public void test_getInputStream() throws Exception {
+		final ZipFileArchive archive = ZipFileArchive.getZipFileArchive(mFile);
+		for (int x = 0; x < 10; x++) {
+			for (int y = 0; y < 10; y++) {
+				final InputStream in = archive.getInputStream(TILE_SOURCE, new MapTile(12, x, y));
+				assertEquals("available " + x + "/" + y, 1000, in.available());
+				assertEquals("tile " + x + "/" + y, new String(getContent("Test", 12, x, y),
+						"UTF-8"), read(in));
+			}
+		}
+		assertEquals(new String(getContent("Other", 3, 1, 2), "UTF-8"), read(archive
+				.getInputStream(OTHER_TILE_SOURCE, new MapTile(3, 1, 2))));
+		assertNull("other tile source", archive.getInputStream(TILE_SOURCE, new MapTile(3, 1, 2)));
+		assertNull("missing tile", archive.getInputStream(TILE_SOURCE, new MapTile(12, 10, 0)));
+	}
+
+	@Test
+	public void test_corrupt_central_directory() throws Exception {
+		// the name of the last entry runs past the end of the file
+		final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		final byte[] content = new byte[(int) file.length()];
+		file.readFully(content);
+		int position = content.length - 4;
+		while (!(content[position] == 'P' && content[position + 1] == 'K'
+				&& content[position + 2] == 1 && content[position + 3] == 2)) {
+			position--;
+		}
+		file.seek(position + 28);
+		file.write(new byte[] { (byte) 0xFF, (byte) 0xFF });
+		file.close();
+
+		try {
+			ZipFileArchive.getZipFileArchive(mFile);
+			fail("corrupt archive opened");
+		} catch (final IOException e) {
+			// expected, rather than a runtime exception from the index
+		}
+		assertNull("no archive", ArchiveFileFactory.getArchiveFile(mFile));
+	}
+
+	private static byte[] getContent(final String pSource, final int pZ, final int pX,
+			final int pY) throws Exception {
+		// 1000 bytes, compressible
+		final StringBuilder content = new StringBuilder();
+		while (content.length() < 1000) {
+			content.append(pSource).append('/').append(pZ).append('/').append(pX).append('/')
+					.append(pY).append(' ');
+		}
+		content.setLength(1000);
+		return content.toString().getBytes("UTF-8");
+	}
+
+	private static String read(final InputStream pIn) throws Exception {
+		assertNotNull("tile found", pIn);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[64];
+		int read;
+		while ((read = pIn.read(buffer, 0, buffer.length)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		pIn.close();
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,42 @@
+package org.osmdroid.tileprovider.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void test_percentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals("nothing recorded", 0, histogram.getPercentileMicros(0.5));
+
+		for (int i = 0; i < 90; i++) {
+			histogram.record(100 * 1000L);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(10 * 1000 * 1000L);
+		}
+		histogram.record(-1);
+
+		assertEquals("count", 101, histogram.getCount());
+		assertEquals("mean", (90 * 100 + 10 * 10000) / 101, histogram.getMeanMicros());
+		assertEquals("median rounded up to a power of two", 128,
+				histogram.getPercentileMicros(0.5));
+		assertEquals("90th percentile", 128, histogram.getPercentileMicros(0.9));
+		assertEquals("99th percentile", 16384, histogram.getPercentileMicros(0.99));
+		assertEquals("negative duration in the first bucket", 1, histogram.getBucketCount(0));
+
+		histogram.record(Long.MAX_VALUE);
+		assertEquals("very long duration in the last bucket", 1,
+				histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+
+		final Map<String, Long> metrics = new HashMap<String, Long>();
+		histogram.export("load", metrics);
+		assertEquals("exported count", Long.valueOf(102), metrics.get("load.count"));
+		assertEquals("exported median", Long.valueOf(128), metrics.get("load.p50_us"));
+	}
+}
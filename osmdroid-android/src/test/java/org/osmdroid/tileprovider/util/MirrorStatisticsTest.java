@@ -0,0 +1,48 @@
+package org.osmdroid.tileprovider.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MirrorStatisticsTest {
+
+	private static final long MILLISECOND = 1000 * 1000L;
+
+	@Test
+	public void test_fastestHealthyMirrorPreferred() {
+		final MirrorStatistics statistics = new MirrorStatistics(3);
+		final Random random = new Random(42);
+		assertEquals("not enough downloads to hedge", -1,
+				statistics.getLatencyPercentileNanos(0.95));
+
+		for (int i = 0; i < 10; i++) {
+			statistics.record(0, 20 * MILLISECOND, true);
+			statistics.record(1, 200 * MILLISECOND, true);
+			statistics.record(2, 10 * MILLISECOND, false);
+		}
+		assertTrue("healthy", statistics.isHealthy(0));
+		assertFalse("failing mirror avoided", statistics.isHealthy(2));
+		assertTrue("error rate", statistics.getErrorRate(2) > 0.5);
+		assertEquals("latency", 20 * 1000, statistics.getLatencyMicros(0));
+
+		final int[] chosen = new int[3];
+		for (int i = 0; i < 1000; i++) {
+			chosen[statistics.choose(random)]++;
+		}
+		assertEquals("failing mirror never chosen", 0, chosen[2]);
+		assertTrue("fast mirror preferred, " + chosen[0] + " vs " + chosen[1],
+				chosen[0] > 10 * chosen[1]);
+		assertTrue("slow mirror still measured", chosen[1] > 0);
+
+		assertEquals("the other healthy mirror", 1, statistics.choose(random, 0));
+		assertEquals("percentile of the successful downloads", 262144 * 1000L,
+				statistics.getLatencyPercentileNanos(0.95));
+
+		final MirrorStatistics single = new MirrorStatistics(1);
+		assertEquals("no other mirror", -1, single.choose(random, 0));
+	}
+}
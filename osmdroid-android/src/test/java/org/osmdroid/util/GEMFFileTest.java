@@ -0,0 +1,186 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GEMFFileTest {
+
+	private File mDirectory;
+
+	@Before
+	public void setUp() throws Exception {
+		mDirectory = File.createTempFile("gemf", "");
+		mDirectory.delete();
+		mDirectory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(mDirectory);
+	}
+
+	@Test
+	public void test_getInputStream() throws Exception {
+		// a pattern making two ranges per column, with two sources overlapping at zoom 10
+		final File first = new File(mDirectory, "first");
+		final File second = new File(mDirectory, "second");
+		for (int x = 0; x < 20; x++) {
+			for (int y = 0; y < 30; y++) {
+				if (hasTile(x, y)) {
+					writeTile(first, 10, x, y);
+				}
+			}
+		}
+		writeTile(first, 11, 5, 7);
+		writeTile(second, 10, 3, 3);
+		writeTile(second, 10, 1, 0);
+
+		final List<File> sources = new ArrayList<File>();
+		sources.add(first);
+		sources.add(second);
+		final GEMFFile file = new GEMFFile(new File(mDirectory, "test.gemf").getPath(), sources);
+		try {
+			for (int x = 0; x < 21; x++) {
+				for (int y = 0; y < 30; y++) {
+					if (hasTile(x, y)) {
+						assertEquals(x + "/" + y, "first/10/" + x + "/" + y, read(file
+								.getInputStream(x, y, 10)));
+					} else if (x == 1 && y == 0) {
+						assertEquals("second/10/1/0", read(file.getInputStream(x, y, 10)));
+					} else {
+						assertNull("no tile " + x + "/" + y, file.getInputStream(x, y, 10));
+					}
+				}
+			}
+			assertEquals("first/11/5/7", read(file.getInputStream(5, 7, 11)));
+			assertNull("no zoom level", file.getInputStream(5, 7, 12));
+
+			file.selectSource(1);
+			assertEquals("second/10/3/3", read(file.getInputStream(3, 3, 10)));
+			assertNull("other source", file.getInputStream(4, 4, 10));
+			file.acceptAnySource();
+			assertEquals("first range of the archive", "first/10/3/3", read(file.getInputStream(
+					3, 3, 10)));
+		} finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void test_concurrent_reads() throws Exception {
+		final File source = new File(mDirectory, "source");
+		for (int x = 0; x < 20; x++) {
+			for (int y = 0; y < 30; y++) {
+				if (hasTile(x, y)) {
+					writeTile(source, 10, x, y);
+				}
+			}
+		}
+		final List<File> sources = new ArrayList<File>();
+		sources.add(source);
+		final GEMFFile file = new GEMFFile(new File(mDirectory, "test.gemf").getPath(), sources);
+
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int round = 0; round < 20; round++) {
+							for (int x = 0; x < 20; x++) {
+								for (int y = 0; y < 30; y++) {
+									if (hasTile(x, y)) {
+										assertEquals("source/10/" + x + "/" + y, read(file
+												.getInputStream(x, y, 10)));
+									}
+								}
+							}
+						}
+					} catch (final Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		file.close();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	@Test
+	public void test_part_over_2GB() throws Exception {
+		final File source = new File(mDirectory, "source");
+		writeTile(source, 10, 3, 3);
+		final List<File> sources = new ArrayList<File>();
+		sources.add(source);
+		final File archive = new File(mDirectory, "test.gemf");
+		new GEMFFile(archive.getPath(), sources).close();
+
+		// a sparse part too large to be mapped
+		final RandomAccessFile part = new RandomAccessFile(archive.getPath() + "-1", "rw");
+		part.setLength(Integer.MAX_VALUE + 1L);
+		part.close();
+
+		final GEMFFile file = new GEMFFile(archive);
+		try {
+			assertEquals("source/10/3/3", read(file.getInputStream(3, 3, 10)));
+		} finally {
+			file.close();
+		}
+	}
+
+	private static boolean hasTile(final int pX, final int pY) {
+		return pX < 20 && (pY >= pX && pY <= pX + 3 || pY >= pX + 6 && pY <= pX + 7);
+	}
+
+	private static void writeTile(final File pSource, final int pZ, final int pX, final int pY)
+			throws Exception {
+		final File directory = new File(pSource, pZ + "/" + pX);
+		directory.mkdirs();
+		final FileOutputStream out = new FileOutputStream(new File(directory, pY + ".png"));
+		out.write((pSource.getName() + "/" + pZ + "/" + pX + "/" + pY).getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static String read(final InputStream pIn) throws Exception {
+		assertNotNull("tile found", pIn);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[64];
+		int read;
+		while (pIn.available() > 0 && (read = pIn.read(buffer, 0, buffer.length)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		pIn.close();
+		return out.toString("UTF-8");
+	}
+
+	private static void delete(final File pFile) {
+		final File[] files = pFile.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		pFile.delete();
+	}
+}
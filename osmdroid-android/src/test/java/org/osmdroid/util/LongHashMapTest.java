@@ -0,0 +1,57 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class LongHashMapTest {
+
+	@Test
+	public void test_tileKey() {
+		final MapTile tile = new MapTile(22, (1 << 22) - 1, 12345);
+		final long key = tile.getKey();
+		assertEquals("zoom level", 22, MapTile.getZoomLevel(key));
+		assertEquals("x", (1 << 22) - 1, MapTile.getX(key));
+		assertEquals("y", 12345, MapTile.getY(key));
+		assertEquals("same tile from the key", tile, new MapTile(key));
+		assertFalse("coordinates not swapped",
+				key == new MapTile(22, 12345, (1 << 22) - 1).getKey());
+	}
+
+	@Test
+	public void test_putGetRemove() {
+		// the keys of a few screens of tiles, which all hash to nearby slots without mixing
+		final LongHashMap<Integer> map = new LongHashMap<Integer>();
+		final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		final Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			final long key = MapTile.getKey(15, 16224 + random.nextInt(32),
+					11360 + random.nextInt(32));
+			if (random.nextInt(3) == 0) {
+				assertEquals("removed value", expected.remove(key), map.remove(key));
+			} else {
+				assertEquals("previous value", expected.put(key, i), map.put(key, i));
+			}
+			assertEquals("size", expected.size(), map.size());
+		}
+
+		for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertTrue("still there after removals", map.containsKey(entry.getKey()));
+			assertEquals("value", entry.getValue(), map.get(entry.getKey()));
+		}
+		assertEquals("values", expected.size(), map.values().size());
+		assertNull("missing key", map.get(MapTile.getKey(14, 0, 0)));
+
+		map.clear();
+		assertTrue("cleared", map.isEmpty());
+		assertNull("cleared key", map.get(expected.keySet().iterator().next()));
+	}
+}
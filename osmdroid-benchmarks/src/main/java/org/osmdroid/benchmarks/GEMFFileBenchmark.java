@@ -0,0 +1,120 @@
+package org.osmdroid.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.util.GEMFFile;
+
+/**
+ * Random reads of tiles from a GEMF archive, by one thread and by as many threads as there are
+ * file system tile loaders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GEMFFileBenchmark {
+
+	private static final int ZOOM_LEVEL = 15;
+	private static final int LEFT = 16224;
+	private static final int TOP = 11360;
+	private static final int SIZE = 32;
+	private static final int TILE_SIZE_BYTES = 15 * 1024;
+
+	private File mDirectory;
+	private GEMFFile mFile;
+	private final byte[] mBuffer = new byte[TILE_SIZE_BYTES];
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mDirectory = File.createTempFile("gemf", "");
+		mDirectory.delete();
+		final File source = new File(mDirectory, "Mapnik");
+
+		// the tiles are random bytes of the size of an average tile
+		final Random random = new Random(42);
+		final byte[] data = new byte[TILE_SIZE_BYTES];
+		for (int x = LEFT; x < LEFT + SIZE; x++) {
+			final File xDirectory = new File(source, ZOOM_LEVEL + File.separator + x);
+			xDirectory.mkdirs();
+			for (int y = TOP; y < TOP + SIZE; y++) {
+				random.nextBytes(data);
+				final FileOutputStream out = new FileOutputStream(new File(xDirectory, y + ".png"));
+				try {
+					out.write(data);
+				} finally {
+					out.close();
+				}
+			}
+		}
+
+		final ArrayList<File> sources = new ArrayList<File>();
+		sources.add(source);
+		mFile = new GEMFFile(new File(mDirectory, "tiles.gemf").getPath(), sources);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		mFile.close();
+		delete(mDirectory);
+	}
+
+	private static void delete(final File pFile) {
+		final File[] files = pFile.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		pFile.delete();
+	}
+
+	private int read() throws IOException {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final InputStream in = mFile.getInputStream(LEFT + random.nextInt(SIZE),
+				TOP + random.nextInt(SIZE), ZOOM_LEVEL);
+		// the buffer is shared by the threads, only the number of bytes read matters
+		int total = 0;
+		try {
+			int read;
+			while ((read = in.read(mBuffer, 0, mBuffer.length)) != -1) {
+				total += read;
+			}
+		} finally {
+			in.close();
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int getInputStream() throws IOException {
+		return read();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int getInputStreamConcurrently() throws IOException {
+		return read();
+	}
+}
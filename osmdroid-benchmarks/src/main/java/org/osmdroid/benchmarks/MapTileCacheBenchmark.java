@@ -0,0 +1,88 @@
+package org.osmdroid.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.tileprovider.ConcurrentMapTileCache;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileCache;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Concurrent lookups in the memory tile caches, by a drawing thread and tile provider threads,
+ * mostly hits with misses that put tiles and evict older ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MapTileCacheBenchmark {
+
+	private static final int CAPACITY = 64;
+	private static final int ZOOM_LEVEL = 15;
+
+	@Param({ "MapTileCache", "ConcurrentMapTileCache" })
+	public String mCacheType;
+
+	private MapTileCache mCache;
+	private Drawable[] mDrawables;
+
+	@Setup
+	public void setUp() {
+		if ("ConcurrentMapTileCache".equals(mCacheType)) {
+			mCache = new ConcurrentMapTileCache(CAPACITY * TileDrawable.TILE_SIZE
+					* TileDrawable.TILE_SIZE * 4L);
+		} else {
+			mCache = new MapTileCache(CAPACITY);
+		}
+		mDrawables = new Drawable[CAPACITY * 2];
+		for (int i = 0; i < mDrawables.length; i++) {
+			mDrawables[i] = new TileDrawable();
+			if (i < CAPACITY) {
+				mCache.putTile(getTile(i), mDrawables[i]);
+			}
+		}
+	}
+
+	private static MapTile getTile(final int pIndex) {
+		return new MapTile(ZOOM_LEVEL, 16224 + (pIndex & 15), 11360 + (pIndex >> 4));
+	}
+
+	/**
+	 * Tiles of the screen, in the cache.
+	 */
+	@Benchmark
+	public Drawable getHit() {
+		return mCache.getMapTile(getTile(ThreadLocalRandom.current().nextInt(CAPACITY)));
+	}
+
+	/**
+	 * Tiles of a screen twice as large as the cache, put into it when missing.
+	 */
+	@Benchmark
+	public Drawable getOrPut() {
+		final int index = ThreadLocalRandom.current().nextInt(mDrawables.length);
+		final MapTile tile = getTile(index);
+		final Drawable drawable = mCache.getMapTile(tile);
+		if (drawable == null) {
+			mCache.putTile(tile, mDrawables[index]);
+		}
+		return drawable;
+	}
+}
@@ -0,0 +1,82 @@
+package org.osmdroid.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * Lookups of tiles in a hash map keyed by {@link MapTile}, the way the memory cache and the
+ * requests in progress are looked up for each tile drawn: with a new MapTile per lookup, for the
+ * tiles of a screen at several zoom levels. Compared with lookups by key in a {@link LongHashMap}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapTileHashBenchmark {
+
+	private static final int ZOOM_LEVEL = 15;
+	private static final int SIZE = 8;
+
+	private final HashMap<MapTile, Object> mMap = new HashMap<MapTile, Object>();
+	private final LongHashMap<Object> mKeyMap = new LongHashMap<Object>();
+	private int mX;
+	private int mY;
+
+	@Setup
+	public void setUp() {
+		// the tiles of a screen and of the zoom levels around
+		for (int zoomLevel = ZOOM_LEVEL - 2; zoomLevel <= ZOOM_LEVEL + 2; zoomLevel++) {
+			final int left = 16224 >> (ZOOM_LEVEL - Math.min(ZOOM_LEVEL, zoomLevel))
+					<< (Math.max(ZOOM_LEVEL, zoomLevel) - ZOOM_LEVEL);
+			final int top = 11360 >> (ZOOM_LEVEL - Math.min(ZOOM_LEVEL, zoomLevel))
+					<< (Math.max(ZOOM_LEVEL, zoomLevel) - ZOOM_LEVEL);
+			for (int x = 0; x < SIZE; x++) {
+				for (int y = 0; y < SIZE; y++) {
+					mMap.put(new MapTile(zoomLevel, left + x, top + y), Boolean.TRUE);
+					mKeyMap.put(MapTile.getKey(zoomLevel, left + x, top + y), Boolean.TRUE);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public Object get() {
+		mX = (mX + 1) & (SIZE - 1);
+		if (mX == 0) {
+			mY = (mY + 1) & (SIZE - 1);
+		}
+		return mMap.get(new MapTile(ZOOM_LEVEL, 16224 + mX, 11360 + mY));
+	}
+
+	@Benchmark
+	public Object getByKey() {
+		mX = (mX + 1) & (SIZE - 1);
+		if (mX == 0) {
+			mY = (mY + 1) & (SIZE - 1);
+		}
+		return mKeyMap.get(MapTile.getKey(ZOOM_LEVEL, 16224 + mX, 11360 + mY));
+	}
+
+	@Benchmark
+	public Object putRemove() {
+		mX = (mX + 1) & (SIZE - 1);
+		final MapTile tile = new MapTile(ZOOM_LEVEL, 16224 + SIZE + mX, 11360);
+		mMap.put(tile, Boolean.TRUE);
+		return mMap.remove(tile);
+	}
+}
@@ -0,0 +1,87 @@
+package org.osmdroid.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import microsoft.mappoint.TileSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.views.util.constants.MapViewConstants;
+
+import android.graphics.Point;
+
+/**
+ * The projection of the points of a path, as done by the path overlay: once at the maximum zoom
+ * level when the points change, and translated to the screen at each draw. The projection of the
+ * map view needs a view, so its two steps are reproduced here with {@link TileSystem}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathProjectionBenchmark {
+
+	private static final int ZOOM_LEVEL = 15;
+
+	@Param({ "100", "10000" })
+	public int mPointCount;
+
+	private int[] mLatitudesE6;
+	private int[] mLongitudesE6;
+	private Point[] mProjected;
+	private final Point mScreenPoint = new Point();
+
+	@Setup
+	public void setUp() {
+		// a walk around Rennes
+		final Random random = new Random(42);
+		mLatitudesE6 = new int[mPointCount];
+		mLongitudesE6 = new int[mPointCount];
+		mProjected = new Point[mPointCount];
+		int latitudeE6 = 48110000;
+		int longitudeE6 = -1680000;
+		for (int i = 0; i < mPointCount; i++) {
+			latitudeE6 += random.nextInt(201) - 100;
+			longitudeE6 += random.nextInt(201) - 100;
+			mLatitudesE6[i] = latitudeE6;
+			mLongitudesE6[i] = longitudeE6;
+			mProjected[i] = new Point();
+		}
+		project();
+	}
+
+	@Benchmark
+	public Point[] project() {
+		for (int i = 0; i < mPointCount; i++) {
+			TileSystem.LatLongToPixelXY(mLatitudesE6[i] / 1E6, mLongitudesE6[i] / 1E6,
+					MapViewConstants.MAXIMUM_ZOOMLEVEL, mProjected[i]);
+		}
+		return mProjected;
+	}
+
+	@Benchmark
+	public long translate() {
+		final int zoomDifference = MapViewConstants.MAXIMUM_ZOOMLEVEL - ZOOM_LEVEL;
+		final int offsetX = -(16224 << 8);
+		final int offsetY = -(11360 << 8);
+		long sum = 0;
+		for (int i = 0; i < mPointCount; i++) {
+			final Point in = mProjected[i];
+			mScreenPoint.set((in.x >> zoomDifference) + offsetX, (in.y >> zoomDifference) + offsetY);
+			sum += mScreenPoint.x + mScreenPoint.y;
+		}
+		return sum;
+	}
+}
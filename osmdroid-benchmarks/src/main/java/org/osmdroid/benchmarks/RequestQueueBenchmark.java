@@ -0,0 +1,82 @@
+package org.osmdroid.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileArea;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.modules.MapTileRequestQueue;
+
+/**
+ * The request queue of a tile provider, filled with the tiles of a screen and drained by the
+ * tile loaders, then filled again and prioritized as after a scroll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestQueueBenchmark {
+
+	private static final int ZOOM_LEVEL = 15;
+
+	/** The side of the square of tiles requested, 6 for a phone screen and more when prefetching. */
+	@Param({ "6", "16" })
+	public int mSize;
+
+	private final MapTileRequestQueue mQueue = new MapTileRequestQueue();
+	private MapTileRequestState[] mStates;
+	private MapTileArea mArea;
+
+	@Setup
+	public void setUp() {
+		mStates = new MapTileRequestState[mSize * mSize];
+		for (int i = 0; i < mStates.length; i++) {
+			mStates[i] = new MapTileRequestState(new MapTile(ZOOM_LEVEL, 16224 + i % mSize,
+					11360 + i / mSize), new MapTileModuleProviderBase[0], null);
+		}
+		mArea = new MapTileArea(ZOOM_LEVEL, 16224, 11360, 16224 + mSize - 1, 11360 + mSize - 1);
+	}
+
+	@Benchmark
+	public int putTakeRemove() {
+		for (int i = 0; i < mStates.length; i++) {
+			mQueue.put(mStates[i]);
+		}
+		int taken = 0;
+		MapTileRequestState state;
+		while ((state = mQueue.takeNewest()) != null) {
+			mQueue.remove(state);
+			taken++;
+		}
+		return taken;
+	}
+
+	@Benchmark
+	public int putPrioritizeTake() {
+		for (int i = 0; i < mStates.length; i++) {
+			mQueue.put(mStates[i]);
+		}
+		mQueue.prioritize(mArea);
+		int taken = 0;
+		MapTileRequestState state;
+		while ((state = mQueue.takeNewest()) != null) {
+			mQueue.remove(state);
+			taken++;
+		}
+		return taken;
+	}
+}
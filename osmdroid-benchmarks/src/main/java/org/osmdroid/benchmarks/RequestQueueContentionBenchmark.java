@@ -0,0 +1,166 @@
+package org.osmdroid.benchmarks;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.modules.MapTileRequestQueue;
+
+/**
+ * The request queue of a tile provider shared by its tile loaders, compared with the
+ * LinkedHashMap scan it replaced. Each loader takes a request from the full queue and completes
+ * it, and a new request takes its place as happens while panning, all of them synchronizing on
+ * the same lock as the tile provider does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestQueueContentionBenchmark {
+
+	private static final int QUEUE_SIZE = 40;
+
+	/** The queue handling that MapTileModuleProviderBase used to do, or the current one. */
+	@Param({ "LinkedHashMap", "MapTileRequestQueue" })
+	public String mQueueType;
+
+	private final Object mLock = new Object();
+	private final AtomicInteger mNextTile = new AtomicInteger();
+	private RequestQueue mQueue;
+
+	@Setup
+	public void setUp() {
+		mQueue = "LinkedHashMap".equals(mQueueType) ? new LinkedHashMapQueue()
+				: new RequestQueueAdapter();
+		// keep the queue full, as it is while panning
+		for (int i = 0; i < QUEUE_SIZE; i++) {
+			mQueue.put(newRequest());
+		}
+	}
+
+	@Benchmark
+	@Threads(8)
+	public MapTileRequestState takeAndComplete() {
+		final MapTileRequestState state;
+		synchronized (mLock) {
+			state = mQueue.take();
+		}
+		final MapTileRequestState request = newRequest();
+		synchronized (mLock) {
+			if (state != null) {
+				mQueue.remove(state.getMapTile());
+			}
+			mQueue.put(request);
+		}
+		return state;
+	}
+
+	private MapTileRequestState newRequest() {
+		final int index = mNextTile.getAndIncrement();
+		return new MapTileRequestState(new MapTile(16, index % 1024, (index / 1024) % 1024),
+				new MapTileModuleProviderBase[0], null);
+	}
+
+	private interface RequestQueue {
+		void put(MapTileRequestState pState);
+
+		MapTileRequestState take();
+
+		void remove(MapTile pTile);
+	}
+
+	private static class LinkedHashMapQueue implements RequestQueue {
+		final HashMap<MapTile, MapTileRequestState> mWorking = new HashMap<MapTile, MapTileRequestState>();
+		final LinkedHashMap<MapTile, MapTileRequestState> mPending = new LinkedHashMap<MapTile, MapTileRequestState>(
+				QUEUE_SIZE + 2, 0.1f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<MapTile, MapTileRequestState> pEldest) {
+				if (size() > QUEUE_SIZE) {
+					MapTile result = null;
+					final Iterator<MapTile> iterator = keySet().iterator();
+					while (result == null && iterator.hasNext()) {
+						final MapTile tile = iterator.next();
+						if (!mWorking.containsKey(tile)) {
+							result = tile;
+						}
+					}
+					if (result != null) {
+						remove(result);
+					}
+				}
+				return false;
+			}
+		};
+
+		@Override
+		public void put(final MapTileRequestState pState) {
+			mPending.put(pState.getMapTile(), pState);
+		}
+
+		@Override
+		public MapTileRequestState take() {
+			MapTile result = null;
+			final Iterator<MapTile> iterator = mPending.keySet().iterator();
+			while (iterator.hasNext()) {
+				final MapTile tile = iterator.next();
+				if (!mWorking.containsKey(tile)) {
+					result = tile;
+				}
+			}
+			if (result != null) {
+				mWorking.put(result, mPending.get(result));
+			}
+			return (result != null ? mPending.get(result) : null);
+		}
+
+		@Override
+		public void remove(final MapTile pTile) {
+			mPending.remove(pTile);
+			mWorking.remove(pTile);
+		}
+	}
+
+	private static class RequestQueueAdapter implements RequestQueue {
+		final MapTileRequestQueue mQueue = new MapTileRequestQueue();
+
+		@Override
+		public void put(final MapTileRequestState pState) {
+			mQueue.put(pState);
+			if (mQueue.size() > QUEUE_SIZE) {
+				mQueue.removeOldest();
+			}
+		}
+
+		@Override
+		public MapTileRequestState take() {
+			return mQueue.takeNewest();
+		}
+
+		@Override
+		public void remove(final MapTile pTile) {
+			mQueue.remove(pTile);
+		}
+	}
+}
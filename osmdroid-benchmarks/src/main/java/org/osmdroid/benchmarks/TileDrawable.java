@@ -0,0 +1,42 @@
+package org.osmdroid.benchmarks;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A drawable with the size of a tile and without a bitmap, which isn't available on the JVM.
+ * Drawing it does nothing, so that only the work of the map around the tiles is measured.
+ */
+class TileDrawable extends Drawable {
+
+	static final int TILE_SIZE = 256;
+
+	@Override
+	public void draw(final Canvas pCanvas) {
+	}
+
+	@Override
+	public void setAlpha(final int pAlpha) {
+	}
+
+	@Override
+	public void setColorFilter(final ColorFilter pColorFilter) {
+	}
+
+	@Override
+	public int getOpacity() {
+		return PixelFormat.OPAQUE;
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return TILE_SIZE;
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return TILE_SIZE;
+	}
+}
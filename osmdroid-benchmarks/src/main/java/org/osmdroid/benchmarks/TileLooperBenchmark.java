@@ -0,0 +1,144 @@
+package org.osmdroid.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.TileLooper;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A pan of 60 frames over tiles that are all in the memory cache, with the tiles looked up by key
+ * as the tiles overlay does, and with a MapTile made for each tile as the overlay used to. The
+ * overlay itself can't be made on the JVM, so the tile loopers reproduce its handleTile. Run it
+ * with the GC profiler to count the bytes allocated per pan:
+ *
+ * <pre>
+ * java -jar osmdroid-benchmarks/target/benchmarks.jar TileLooper -prof gc
+ * </pre>
+ *
+ * and compare the gc.alloc.rate.norm of both. The canvas is null and the tiles draw nothing, so
+ * that only the looping and the lookups are measured. Escape analysis is disabled, as the Android
+ * runtimes don't have it and HotSpot would otherwise remove the short-lived MapTiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:-DoEscapeAnalysis")
+public class TileLooperBenchmark {
+
+	private static final int ZOOM_LEVEL = 15;
+	private static final int LEFT = 16224;
+	private static final int TOP = 11360;
+	private static final int SCREEN_WIDTH = 1080;
+	private static final int SCREEN_HEIGHT = 1920;
+	private static final int FRAMES = 60;
+	private static final int PAN_PER_FRAME = 8;
+
+	private MapTileProviderArray mProvider;
+	private TileLooper mLooper;
+	private TileLooper mAllocatingLooper;
+	private final Rect mViewPort = new Rect();
+	private final Rect mTileRect = new Rect();
+
+	@Setup
+	public void setUp() {
+		mProvider = new MapTileProviderArray(TileSourceFactory.MAPNIK, null,
+				new MapTileModuleProviderBase[0]);
+
+		// the tiles of the pan, and one more around
+		final int right = LEFT + (SCREEN_WIDTH + FRAMES * PAN_PER_FRAME) / TileDrawable.TILE_SIZE
+				+ 1;
+		final int bottom = TOP + SCREEN_HEIGHT / TileDrawable.TILE_SIZE + 1;
+		mProvider.ensureCapacity((right - LEFT + 2) * (bottom - TOP + 2));
+		for (int x = LEFT - 1; x <= right; x++) {
+			for (int y = TOP - 1; y <= bottom; y++) {
+				final MapTile tile = new MapTile(ZOOM_LEVEL, x, y);
+				mProvider.mapTileRequestCompleted(new MapTileRequestState(tile,
+						new MapTileModuleProviderBase[0], mProvider), new TileDrawable());
+			}
+		}
+
+		mLooper = new DrawingTileLooper() {
+			@Override
+			public void handleTile(final Canvas pCanvas, final int pTileSizePx,
+					final MapTile pTile, final int pX, final int pY) {
+				handleTile(pCanvas, pTileSizePx, pTile.getKey(), pX, pY);
+			}
+
+			@Override
+			public void handleTile(final Canvas pCanvas, final int pTileSizePx,
+					final long pTileKey, final int pX, final int pY) {
+				draw(pCanvas, mProvider.getMapTile(pTileKey), pTileSizePx, pX, pY);
+			}
+		};
+		mAllocatingLooper = new DrawingTileLooper() {
+			@Override
+			public void handleTile(final Canvas pCanvas, final int pTileSizePx,
+					final MapTile pTile, final int pX, final int pY) {
+				draw(pCanvas, mProvider.getMapTile(pTile), pTileSizePx, pX, pY);
+			}
+		};
+	}
+
+	private void setViewPort(final int pFrame) {
+		final int left = LEFT * TileDrawable.TILE_SIZE + pFrame * PAN_PER_FRAME;
+		final int top = TOP * TileDrawable.TILE_SIZE;
+		mViewPort.set(left, top, left + SCREEN_WIDTH, top + SCREEN_HEIGHT);
+	}
+
+	@Benchmark
+	public Rect pan() {
+		for (int frame = 0; frame < FRAMES; frame++) {
+			setViewPort(frame);
+			mLooper.loop(null, ZOOM_LEVEL, TileDrawable.TILE_SIZE, mViewPort);
+		}
+		return mViewPort;
+	}
+
+	@Benchmark
+	public Rect panAllocatingTiles() {
+		for (int frame = 0; frame < FRAMES; frame++) {
+			setViewPort(frame);
+			mAllocatingLooper.loop(null, ZOOM_LEVEL, TileDrawable.TILE_SIZE, mViewPort);
+		}
+		return mViewPort;
+	}
+
+	private abstract class DrawingTileLooper extends TileLooper {
+
+		@Override
+		public void initialiseLoop(final int pZoomLevel, final int pTileSizePx) {
+		}
+
+		protected void draw(final Canvas pCanvas, final Drawable pDrawable, final int pTileSizePx,
+				final int pX, final int pY) {
+			mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
+					* pTileSizePx + pTileSizePx);
+			pDrawable.setBounds(mTileRect);
+			pDrawable.draw(pCanvas);
+		}
+
+		@Override
+		public void finaliseLoop() {
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.osmdroid.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import microsoft.mappoint.TileSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.util.GeoPoint;
+
+import android.graphics.Point;
+
+/**
+ * The conversions of {@link TileSystem} done for every point and tile drawn, with recycled
+ * results as the map view does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileSystemBenchmark {
+
+	private static final int POINTS = 1024;
+	private static final int ZOOM_LEVEL = 15;
+
+	private final double[] mLatitudes = new double[POINTS];
+	private final double[] mLongitudes = new double[POINTS];
+	private final int[] mPixelsX = new int[POINTS];
+	private final int[] mPixelsY = new int[POINTS];
+	private int mIndex;
+
+	private final Point mPoint = new Point();
+	private final GeoPoint mGeoPoint = new GeoPoint(0, 0);
+
+	@Setup
+	public void setUp() {
+		// points around Rennes
+		final Random random = new Random(42);
+		for (int i = 0; i < POINTS; i++) {
+			mLatitudes[i] = 48.05 + random.nextDouble() * 0.1;
+			mLongitudes[i] = -1.75 + random.nextDouble() * 0.2;
+			TileSystem.LatLongToPixelXY(mLatitudes[i], mLongitudes[i], ZOOM_LEVEL, mPoint);
+			mPixelsX[i] = mPoint.x;
+			mPixelsY[i] = mPoint.y;
+		}
+	}
+
+	private int next() {
+		mIndex = (mIndex + 1) & (POINTS - 1);
+		return mIndex;
+	}
+
+	@Benchmark
+	public Point latLongToPixelXY() {
+		final int i = next();
+		return TileSystem.LatLongToPixelXY(mLatitudes[i], mLongitudes[i], ZOOM_LEVEL, mPoint);
+	}
+
+	@Benchmark
+	public GeoPoint pixelXYToLatLong() {
+		final int i = next();
+		return TileSystem.PixelXYToLatLong(mPixelsX[i], mPixelsY[i], ZOOM_LEVEL, mGeoPoint);
+	}
+
+	@Benchmark
+	public Point pixelXYToTileXY() {
+		final int i = next();
+		return TileSystem.PixelXYToTileXY(mPixelsX[i], mPixelsY[i], mPoint);
+	}
+
+	@Benchmark
+	public String tileXYToQuadKey() {
+		final int i = next();
+		return TileSystem.TileXYToQuadKey(mPixelsX[i] >> 8, mPixelsY[i] >> 8, ZOOM_LEVEL);
+	}
+}
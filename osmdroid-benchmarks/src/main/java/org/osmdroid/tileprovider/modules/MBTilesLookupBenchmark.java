@@ -0,0 +1,207 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The tile lookups of {@link MBTilesFileArchive} in a large MBTiles file. The SQLite of Android
+ * is native and doesn't run on the JVM, so the statements of the archive are run through the JDBC
+ * driver of SQLite, bound the way the archive binds them:
+ * <ul>
+ * <li>the way it used to read a tile, with a new query per tile and the row formatted as a double,
+ * compared by SQLite as text to an integer column,</li>
+ * <li>the way it reads a tile now, with a compiled statement reused for every tile and integer
+ * bindings,</li>
+ * <li>the two ways it reads a batch of 3x3 tiles: the compiled statement for each tile, and a
+ * single query on the rectangle around them.</li>
+ * </ul>
+ * It's in the package of the archive, whose SQL isn't public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MBTilesLookupBenchmark {
+
+	private static final int MIN_ZOOM = 10;
+	private static final int MAX_ZOOM = 15;
+	private static final int TILE_SIZE = 600;
+	private static final int TILE_COUNT = 4096;
+
+	private File mFile;
+	private Connection mConnection;
+	private PreparedStatement mTileStatement;
+	private PreparedStatement mTilesStatement;
+
+	/** The zoom level, x and y of the tiles looked up, in turn, most of them in the file. */
+	private final int[] mTiles = new int[TILE_COUNT * 3];
+	private int mNext;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		Class.forName("org.sqlite.JDBC");
+		mFile = File.createTempFile("benchmark", ".mbtiles");
+		create(mFile);
+		mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getPath());
+		mTileStatement = mConnection.prepareStatement(MBTilesFileArchive.SELECT_TILE);
+		mTilesStatement = mConnection.prepareStatement(MBTilesFileArchive.SELECT_TILES);
+
+		// tiles around Rennes
+		final Random random = new Random(42);
+		for (int i = 0; i < TILE_COUNT; i++) {
+			final int zoom = MIN_ZOOM + random.nextInt(MAX_ZOOM - MIN_ZOOM + 1);
+			mTiles[i * 3] = zoom;
+			mTiles[i * 3 + 1] = (507 << (zoom - MIN_ZOOM)) + random.nextInt(4 << (zoom - MIN_ZOOM));
+			mTiles[i * 3 + 2] = (355 << (zoom - MIN_ZOOM)) + random.nextInt(4 << (zoom - MIN_ZOOM));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		mTileStatement.close();
+		mTilesStatement.close();
+		mConnection.close();
+		mFile.delete();
+	}
+
+	@Benchmark
+	public int queryPerTile() throws SQLException {
+		final int i = nextTile();
+		final PreparedStatement query = mConnection.prepareStatement("SELECT "
+				+ MBTilesFileArchive.COL_TILES_TILE_DATA + " FROM " + MBTilesFileArchive.TABLE_TILES
+				+ " WHERE tile_column=? and tile_row=? and zoom_level=?");
+		try {
+			query.setString(1, Integer.toString(mTiles[i + 1]));
+			query.setString(2, Double.toString(Math.pow(2, mTiles[i]) - mTiles[i + 2] - 1));
+			query.setString(3, Integer.toString(mTiles[i]));
+			return read(query);
+		} finally {
+			query.close();
+		}
+	}
+
+	@Benchmark
+	public int compiledStatement() throws SQLException {
+		final int i = nextTile();
+		return readTile(mTiles[i], mTiles[i + 1], mTiles[i + 2]);
+	}
+
+	@Benchmark
+	public int batchThroughCompiledStatement() throws SQLException {
+		final int i = nextTile();
+		int found = 0;
+		for (int x = mTiles[i + 1]; x < mTiles[i + 1] + 3; x++) {
+			for (int y = mTiles[i + 2]; y < mTiles[i + 2] + 3; y++) {
+				found += readTile(mTiles[i], x, y);
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int batchThroughRangeQuery() throws SQLException {
+		final int i = nextTile();
+		final int zoom = mTiles[i];
+		final long maxRow = (1L << zoom) - mTiles[i + 2] - 1;
+		mTilesStatement.setInt(1, zoom);
+		mTilesStatement.setInt(2, mTiles[i + 1]);
+		mTilesStatement.setInt(3, mTiles[i + 1] + 2);
+		mTilesStatement.setLong(4, maxRow - 2);
+		mTilesStatement.setLong(5, maxRow);
+		final ResultSet result = mTilesStatement.executeQuery();
+		int found = 0;
+		try {
+			while (result.next()) {
+				if (result.getBytes(3) != null) {
+					found++;
+				}
+			}
+		} finally {
+			result.close();
+		}
+		return found;
+	}
+
+	private int nextTile() {
+		final int i = mNext;
+		mNext = (i + 3) % mTiles.length;
+		return i;
+	}
+
+	private int readTile(final int pZoom, final int pX, final int pY) throws SQLException {
+		// rows are numbered from the south in MBTiles
+		mTileStatement.setInt(1, pZoom);
+		mTileStatement.setInt(2, pX);
+		mTileStatement.setLong(3, (1L << pZoom) - pY - 1);
+		return read(mTileStatement);
+	}
+
+	private static int read(final PreparedStatement pStatement) throws SQLException {
+		final ResultSet result = pStatement.executeQuery();
+		try {
+			return result.next() && result.getBytes(1) != null ? 1 : 0;
+		} finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * Create an MBTiles file with all the tiles of a 4x4 area at zoom level 10, down to zoom
+	 * level 15, about 20000 tiles.
+	 */
+	private static void create(final File pFile) throws SQLException {
+		final Connection connection = DriverManager.getConnection("jdbc:sqlite:" + pFile.getPath());
+		final Statement statement = connection.createStatement();
+		statement.executeUpdate("CREATE TABLE metadata (name TEXT, value TEXT)");
+		statement.executeUpdate("CREATE TABLE tiles (zoom_level INTEGER, tile_column INTEGER,"
+				+ " tile_row INTEGER, tile_data BLOB)");
+		statement.executeUpdate("CREATE UNIQUE INDEX tile_index ON tiles (zoom_level,"
+				+ " tile_column, tile_row)");
+		statement.close();
+
+		connection.setAutoCommit(false);
+		final PreparedStatement insert = connection.prepareStatement(
+				"INSERT INTO tiles VALUES (?, ?, ?, ?)");
+		final byte[] data = new byte[TILE_SIZE];
+		new Random(0).nextBytes(data);
+		for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+			final int size = 4 << (zoom - MIN_ZOOM);
+			final int xStart = 507 << (zoom - MIN_ZOOM);
+			final int yStart = 355 << (zoom - MIN_ZOOM);
+			for (int x = xStart; x < xStart + size; x++) {
+				for (int y = yStart; y < yStart + size; y++) {
+					insert.setInt(1, zoom);
+					insert.setInt(2, x);
+					insert.setLong(3, (1L << zoom) - y - 1);
+					insert.setBytes(4, data);
+					insert.executeUpdate();
+				}
+			}
+		}
+		insert.close();
+		connection.commit();
+		connection.close();
+	}
+}
@@ -0,0 +1,95 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiles per second downloaded from the {@link LocalTileServer} of the tests by two download
+ * threads, through the shared client of the {@link MapTileDownloader} and its kept-alive
+ * connections, and through a new client per tile as the downloader used to do. The server delays
+ * each new connection to stand in for the round trips of the TCP handshake.
+ * <p>
+ * It's in the package of the server and of the client of the downloader, which aren't public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+public class TileDownloadBenchmark {
+
+	private static final int THREADS = 2;
+	private static final int TILE_SIZE_BYTES = 16 * 1024;
+	private static final long CONNECTION_DELAY_MILLIS = 5;
+
+	private LocalTileServer mServer;
+	private MapTileDownloader mDownloader;
+	private final AtomicInteger mNextTile = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mServer = new LocalTileServer(TILE_SIZE_BYTES, CONNECTION_DELAY_MILLIS);
+		mDownloader = new MapTileDownloader(null, null, null, THREADS, THREADS, THREADS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		mDownloader.detach();
+		mServer.close();
+	}
+
+	@Benchmark
+	public int sharedClient() throws IOException {
+		return download(mDownloader.mHttpClient);
+	}
+
+	@Benchmark
+	public int clientPerTile() throws IOException {
+		final HttpClient client = new DefaultHttpClient();
+		try {
+			return download(client);
+		} finally {
+			client.getConnectionManager().shutdown();
+		}
+	}
+
+	private int download(final HttpClient pClient) throws IOException {
+		final int tile = mNextTile.getAndIncrement() & 0x3FFFF;
+		final HttpResponse response = pClient.execute(new HttpGet(mServer.getTileURLString(18,
+				tile, tile)));
+		final InputStream in = response.getEntity().getContent();
+		final byte[] buffer = new byte[8192];
+		int total = 0;
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				total += read;
+			}
+		} finally {
+			in.close();
+		}
+		return total;
+	}
+}
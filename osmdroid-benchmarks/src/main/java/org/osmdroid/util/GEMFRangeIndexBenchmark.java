@@ -0,0 +1,135 @@
+package org.osmdroid.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The lookup of tiles in the {@link GEMFRangeIndex}, compared with the scan of the range list that
+ * GEMFFile used to do, on a synthetic archive with as many ranges as one covering a whole country:
+ * each zoom level is covered by strips of tiles of a few columns, split where tiles are missing.
+ * <p>
+ * It's in the package of the index, which isn't public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GEMFRangeIndexBenchmark {
+
+	private static final int MIN_ZOOM = 8;
+	private static final int MAX_ZOOM = 14;
+	private static final int TILE_COUNT = 4096;
+
+	private final List<Range> mRanges = new ArrayList<Range>();
+	private final GEMFRangeIndex mIndex = new GEMFRangeIndex();
+
+	/** The zoom level, x and y of the tiles looked up, in turn. */
+	private final int[] mTiles = new int[TILE_COUNT * 3];
+	private int mNext;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		long offset = 0;
+		for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+			// a country about 64 tiles wide at zoom 8
+			final int xStart = 130 << (zoom - MIN_ZOOM);
+			final int size = 1 << (zoom - 2);
+			for (int x = xStart; x < xStart + size;) {
+				final int width = 1 + random.nextInt(8);
+				for (int y = xStart; y < xStart + size;) {
+					final int height = 1 + random.nextInt(size / 4 + 1);
+					final Range range = new Range(zoom, x, x + width - 1, y, y + height - 1, offset);
+					mRanges.add(range);
+					mIndex.add(zoom, range.mXMin, range.mXMax, range.mYMin, range.mYMax, 0, offset);
+					offset += (long) width * height * GEMFRangeIndex.TILE_RECORD_SIZE;
+					// leave a gap of missing tiles
+					y += height + random.nextInt(3);
+				}
+				x += width;
+			}
+		}
+		mIndex.build();
+
+		for (int i = 0; i < TILE_COUNT; i++) {
+			final int zoom = MIN_ZOOM + random.nextInt(MAX_ZOOM - MIN_ZOOM + 1);
+			final int xStart = 130 << (zoom - MIN_ZOOM);
+			final int size = 1 << (zoom - 2);
+			mTiles[i * 3] = zoom;
+			mTiles[i * 3 + 1] = xStart + random.nextInt(size);
+			mTiles[i * 3 + 2] = xStart + random.nextInt(size);
+
+			// check that both find the same tiles
+			final long expected = scan(mTiles[i * 3], mTiles[i * 3 + 1], mTiles[i * 3 + 2]);
+			final long actual = mIndex.getTileRecordOffset(mTiles[i * 3], mTiles[i * 3 + 1],
+					mTiles[i * 3 + 2], -1);
+			if (expected >= 0 != actual >= 0 || actual >= 0 && actual < expected) {
+				throw new IllegalStateException("Mismatch for tile " + mTiles[i * 3] + "/"
+						+ mTiles[i * 3 + 1] + "/" + mTiles[i * 3 + 2]);
+			}
+		}
+	}
+
+	@Benchmark
+	public long index() {
+		final int i = nextTile();
+		return mIndex.getTileRecordOffset(mTiles[i], mTiles[i + 1], mTiles[i + 2], -1);
+	}
+
+	@Benchmark
+	public long scan() {
+		final int i = nextTile();
+		return scan(mTiles[i], mTiles[i + 1], mTiles[i + 2]);
+	}
+
+	private int nextTile() {
+		final int i = mNext;
+		mNext = (i + 3) % mTiles.length;
+		return i;
+	}
+
+	private long scan(final int pZ, final int pX, final int pY) {
+		for (final Range range : mRanges) {
+			if (pZ == range.mZoom && pX >= range.mXMin && pX <= range.mXMax && pY >= range.mYMin
+					&& pY <= range.mYMax) {
+				return range.mOffset;
+			}
+		}
+		return -1;
+	}
+
+	/** A range in archive order, as GEMFFile used to keep them. */
+	private static class Range {
+		final int mZoom;
+		final int mXMin;
+		final int mXMax;
+		final int mYMin;
+		final int mYMax;
+		final long mOffset;
+
+		Range(final int pZoom, final int pXMin, final int pXMax, final int pYMin,
+				final int pYMax, final long pOffset) {
+			mZoom = pZoom;
+			mXMin = pXMin;
+			mXMax = pXMax;
+			mYMin = pYMin;
+			mYMax = pYMax;
+			mOffset = pOffset;
+		}
+	}
+}